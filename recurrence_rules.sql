@@ -0,0 +1,25 @@
+-- Recurring appointments are stored as one rule each, and expanded by the application (see model.Schedule.RecurrenceStore).
+-- The application runs without this table; recurring appointments are disabled until it's created.
+CREATE TABLE IF NOT EXISTS recurrence_rules (
+    Rule_ID INT(10) NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    Title VARCHAR(50),
+    Description VARCHAR(50),
+    Location VARCHAR(50),
+    Type VARCHAR(50),
+    Customer_ID INT(10),
+    User_ID INT(10),
+    Contact_ID INT(10),
+    First_Start DATETIME NOT NULL,
+    Duration_Minutes INT(10) NOT NULL,
+    Frequency VARCHAR(10) NOT NULL, -- DAILY, WEEKLY, or MONTHLY
+    Repeat_Interval INT(10) NOT NULL DEFAULT 1,
+    Until DATE,
+    Exceptions TEXT, -- Comma-separated yyyy-MM-dd dates on which the rule doesn't occur
+    Create_Date DATETIME,
+    Created_By VARCHAR(50),
+    Last_Update TIMESTAMP,
+    Last_Updated_By VARCHAR(50),
+    CONSTRAINT fk_recurrence_customer FOREIGN KEY (Customer_ID) REFERENCES customers (Customer_ID) ON DELETE CASCADE,
+    CONSTRAINT fk_recurrence_user FOREIGN KEY (User_ID) REFERENCES users (User_ID),
+    CONSTRAINT fk_recurrence_contact FOREIGN KEY (Contact_ID) REFERENCES contacts (Contact_ID)
+);
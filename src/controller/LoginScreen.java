@@ -12,7 +12,11 @@ import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
+import model.Query.QueryStats;
 import model.Query.SConnection;
+import model.Schedule.AppointmentIndex;
+import model.Schedule.BusinessCalendar;
+import model.Schedule.RecurrenceStore;
 import model.Session;
 
 import javax.naming.AuthenticationException;
@@ -72,23 +76,27 @@ public class LoginScreen implements Initializable {
         try {
             // Construct a Statement which will retrieve any appointments which will start in the next 15 minutes for our particular user.
             Date now = new Date();
-            PreparedStatement upcomingApptsStatement = SConnection.getDConn().getValue().prepareStatement("SELECT Appointment_ID, Start, Title FROM appointments WHERE User_ID = ? AND Start >= ? AND Start < ?");
+            String upcomingApptsQuery = "SELECT Appointment_ID, Start, Title FROM appointments WHERE User_ID = ? AND Start >= ? AND Start < ?";
+            PreparedStatement upcomingApptsStatement = SConnection.getDConn().getValue().prepareStatement(upcomingApptsQuery);
             upcomingApptsStatement.setInt(1, Session.GetUserID());
             upcomingApptsStatement.setTimestamp(2, new Timestamp(now.getTime()));
             upcomingApptsStatement.setTimestamp(3, new Timestamp(now.getTime() + 15 * 60 * 1000)); // 15 minutes, converted to millis. I know it's a magic variable.
 
             // Execute the query which will retrieve upcoming appointments
-            ResultSet upcomingApptsResultSet = upcomingApptsStatement.executeQuery();
-
-            // For any matching appointments, construct a String describing that appointment.
-            while (upcomingApptsResultSet.next()) {
-                Integer aptID = upcomingApptsResultSet.getInt(1);
-                LocalDateTime startTime = upcomingApptsResultSet.getTimestamp(2).toLocalDateTime();
-                String title = upcomingApptsResultSet.getString(3);
-
-                // TODO: Trim: Use Locale time formatting
-                MessageFormat formatter = new MessageFormat(this.bundle.getString("login.upcoming.single_upcoming{title,ID,startTimeStr}"));
-                upcomingAppts.add(formatter.format(new Object[]{title, aptID, startTime.format(DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT))}));
+            try (QueryStats.Timer timer = QueryStats.start(upcomingApptsQuery)) {
+                ResultSet upcomingApptsResultSet = upcomingApptsStatement.executeQuery();
+
+                // For any matching appointments, construct a String describing that appointment.
+                while (upcomingApptsResultSet.next()) {
+                    Integer aptID = upcomingApptsResultSet.getInt(1);
+                    LocalDateTime startTime = upcomingApptsResultSet.getTimestamp(2).toLocalDateTime();
+                    String title = upcomingApptsResultSet.getString(3);
+
+                    // TODO: Trim: Use Locale time formatting
+                    MessageFormat formatter = new MessageFormat(this.bundle.getString("login.upcoming.single_upcoming{title,ID,startTimeStr}"));
+                    upcomingAppts.add(formatter.format(new Object[]{title, aptID, startTime.format(DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT))}));
+                }
+                timer.stop(upcomingAppts.size());
             }
         } catch (SQLException ex) {
             throw new RuntimeException(ex);
@@ -111,6 +119,11 @@ public class LoginScreen implements Initializable {
         upcomingAppointmentsAlert.show();
 
 
+        // Load the shared schedule indexes here, on the JavaFX thread, before anything can validate appointments in the background
+        BusinessCalendar.shared();
+        AppointmentIndex.shared();
+        RecurrenceStore.shared();
+
         // Reach into the underlying window and swap out the current Scene/Controller to the main application page (the Scheduling Tabs)
         try {
             Parent mainPage = FXMLLoader.load(getClass().getResource("/view/SchedulingTabs.fxml"), this.bundle);
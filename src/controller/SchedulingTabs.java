@@ -1,16 +1,23 @@
 package controller;
 
 import javafx.beans.value.ObservableValue;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
+import model.Query.BaseQuery;
 import model.Query.BuildSingleQuery;
 import model.Query.ConstrainedQuery;
+import model.Query.KeyLookup;
 import model.Row.IBaseRow;
+import model.Schedule.OverlapAudit;
 import view.ConstrainedQueryView;
+import view.ExportButton;
 import view.QueryTableView;
 import java.net.URL;
+import java.sql.Timestamp;
+import java.text.MessageFormat;
 import java.util.*;
 
 
@@ -73,49 +80,115 @@ public class SchedulingTabs implements Initializable {
         //      How many appointments there are in each month which has any appointments
         //      How many appointments there are in each combination of month and Type, where that combination has any appointments
         // and returns those counts, associated with the Type and MonthOf which that count was grouped by, or null if that count was not grouped by any (Type | Month).
-        QueryTableView<IBaseRow<ObservableValue<?>>> appointmentCountsTableView = new QueryTableView<>(BuildSingleQuery.buildSingleQuery("""
+        BaseQuery<IBaseRow<ObservableValue<?>>> appointmentCountsQuery = BuildSingleQuery.buildSingleQuery("""
                 SELECT Type AS Type, NULL AS MonthOf, COUNT(*) AS Count FROM appointments GROUP BY Type
                 UNION ALL
                 SELECT NULL AS Type, DATE(DATE_SUB(Start, INTERVAL DAYOFMONTH(Start)-1 DAY)) AS MonthOf, COUNT(*) AS Count FROM appointments GROUP BY MonthOf
                 UNION ALL
                 SELECT Type AS Type, DATE(DATE_SUB(Start, INTERVAL DAYOFMONTH(Start)-1 DAY)) AS MonthOf, COUNT(*) AS Count FROM appointments GROUP BY Type, MonthOf;""",
-                "appointments")
-        );
+                "appointments");
+        QueryTableView<IBaseRow<ObservableValue<?>>> appointmentCountsTableView = new QueryTableView<>(appointmentCountsQuery);
 
-        VBox aptCountBox = new VBox(appointmentCountsLabel, appointmentCountsTableView);
+        VBox aptCountBox = new VBox(new HBox(appointmentCountsLabel, new ExportButton(appointmentCountsQuery, "appointment_counts")), appointmentCountsTableView);
 
         // Contact Schedules
         Label contactSchedulesLabel = new Label(this.bundle.getString("schedulingTabs.reportsTab.ApptsByContact"));
 
         // Construct a TableView over an SQL query which groups appointments by their Contact, and orders them by date. This gives a schedule for each contact,
         // though that schedule could be just as easily viewed by sorting the Appointments tab.
-        QueryTableView<IBaseRow<ObservableValue<?>>> contactSchedulesTableView = new QueryTableView<>(BuildSingleQuery.buildSingleQuery("""
+        BaseQuery<IBaseRow<ObservableValue<?>>> contactSchedulesQuery = BuildSingleQuery.buildSingleQuery("""
                     SELECT appointments.Contact_ID, contacts.Contact_Name, Appointment_ID, Title, Type, Description, Start, End, Customer_ID 
                     FROM appointments 
                     INNER JOIN contacts ON appointments.Contact_ID = contacts.Contact_ID 
                     ORDER BY Contact_ID, Start;
-                    ""","appointments", "contacts"
-        ), false);
+                    ""","appointments", "contacts");
+        QueryTableView<IBaseRow<ObservableValue<?>>> contactSchedulesTableView = new QueryTableView<>(contactSchedulesQuery, false);
 
-        VBox contactScheduleBox = new VBox(contactSchedulesLabel, contactSchedulesTableView);
+        VBox contactScheduleBox = new VBox(new HBox(contactSchedulesLabel, new ExportButton(contactSchedulesQuery, "contact_schedules")), contactSchedulesTableView);
 
         // Not-New customers which have had no appointments
         Label noApptCustomersLabel = new Label(this.bundle.getString("schedulingTabs.reportsTab.CustomersNoAppts"));
 
         // Construct a TableView over an SQL query which finds Customers who have been in the system for more than 6 months,
         // but have never had an appointment.
-        QueryTableView<IBaseRow<ObservableValue<?>>> noAppointmentCustomersTableView = new QueryTableView<>(BuildSingleQuery.buildSingleQuery("""
+        BaseQuery<IBaseRow<ObservableValue<?>>> noAppointmentCustomersQuery = BuildSingleQuery.buildSingleQuery("""
                     SELECT * FROM customers WHERE Create_Date < DATE_ADD(NOW(), INTERVAL -6 MONTH)
                     AND NOT EXISTS (
                         SELECT Appointment_ID FROM appointments WHERE appointments.Customer_ID = customers.Customer_ID
                     )
-                    """, "customers"
-        ), false);
+                    """, "customers");
+        QueryTableView<IBaseRow<ObservableValue<?>>> noAppointmentCustomersTableView = new QueryTableView<>(noAppointmentCustomersQuery, false);
 
-        VBox noApptCustomersBox = new VBox(noApptCustomersLabel, noAppointmentCustomersTableView);
+        VBox noApptCustomersBox = new VBox(new HBox(noApptCustomersLabel, new ExportButton(noAppointmentCustomersQuery, "customers_without_appointments")), noAppointmentCustomersTableView);
 
         // Put all these reports into the VBox inside the Tab we're returning.
-        multiReport.getChildren().addAll(aptCountBox, contactScheduleBox, noApptCustomersBox);
+        multiReport.getChildren().addAll(aptCountBox, contactScheduleBox, noApptCustomersBox, constructOverlapAuditBox());
         return tab;
     }
+
+    /**
+     * The most overlaps listed in the audit report; the rest are only counted.
+     */
+    private static final int maxListedOverlaps = 1000;
+
+    /**
+     * This function constructs the overlap audit: a report, run on request, of every pair of appointments which double-book
+     * a customer (and optionally a contact), however they came to be saved.
+     * @return A box holding the audit's controls and its report.
+     */
+    private VBox constructOverlapAuditBox(){
+        Label auditLabel = new Label(this.bundle.getString("schedulingTabs.reportsTab.OverlapAudit"));
+        CheckBox includeContacts = new CheckBox(this.bundle.getString("schedulingTabs.reportsTab.OverlapAuditContacts"));
+        Button runAudit = new Button(this.bundle.getString("schedulingTabs.reportsTab.OverlapAuditRun"));
+        Label auditStatus = new Label();
+        TextArea auditReport = new TextArea();
+        auditReport.setEditable(false);
+        auditReport.setPrefRowCount(8);
+
+        MessageFormat progressFormat = new MessageFormat(this.bundle.getString("schedulingTabs.reportsTab.OverlapAuditProgress{read}"));
+        MessageFormat summaryFormat = new MessageFormat(this.bundle.getString("schedulingTabs.reportsTab.OverlapAuditSummary{scanned,overlaps,millis}"));
+        MessageFormat overlapFormat = new MessageFormat(this.bundle.getString("schedulingTabs.reportsTab.OverlapAuditLine{resource,id,first,second,start,end}"));
+        runAudit.setOnAction(event -> {
+            List<String> columns = includeContacts.isSelected() ? List.of("Customer_ID", "Contact_ID") : List.of("Customer_ID");
+            // Reading every appointment takes a while, so audit away from the JavaFX thread
+            Task<OverlapAudit.Report> auditTask = new Task<>() {
+                @Override
+                protected OverlapAudit.Report call() {
+                    return new OverlapAudit().run(columns, read -> updateMessage(progressFormat.format(new Object[]{read})));
+                }
+            };
+            auditStatus.textProperty().bind(auditTask.messageProperty());
+            runAudit.disableProperty().bind(auditTask.runningProperty());
+            auditTask.setOnSucceeded(e -> {
+                OverlapAudit.Report report = auditTask.getValue();
+                auditStatus.textProperty().unbind();
+                auditStatus.setText(summaryFormat.format(new Object[]{report.getAppointmentsScanned(), report.getOverlaps().size(), report.getElapsedMillis()}));
+                StringBuilder lines = new StringBuilder();
+                report.getOverlaps().stream().limit(maxListedOverlaps).forEach(overlap -> lines.append(overlapFormat.format(new Object[]{
+                        this.bundle.getString("table.columnName." + overlap.resourceColumn), resourceName(overlap.resourceColumn, overlap.resourceId),
+                        String.valueOf(overlap.firstAppointmentId), String.valueOf(overlap.secondAppointmentId),
+                        new Timestamp(overlap.overlapStart), new Timestamp(overlap.overlapEnd)})).append('\n'));
+                auditReport.setText(lines.toString());
+            });
+            auditTask.setOnFailed(e -> {
+                auditStatus.textProperty().unbind();
+                auditStatus.setText(auditTask.getException().getMessage());
+            });
+
+            Thread auditThread = new Thread(auditTask, "overlap-audit");
+            auditThread.setDaemon(true);
+            auditThread.start();
+        });
+
+        return new VBox(new HBox(auditLabel, includeContacts, runAudit, auditStatus), auditReport);
+    }
+
+    /**
+     * @return The name of a customer, contact, or user from the shared {@link KeyLookup}, followed by its ID.
+     */
+    private static String resourceName(String resourceColumn, int resourceId) {
+        KeyLookup lookup = KeyLookup.forKeyColumn(resourceColumn);
+        String name = lookup == null ? null : lookup.label(resourceId);
+        return name == null ? String.valueOf(resourceId) : name + " (" + resourceId + ")";
+    }
 }
\ No newline at end of file
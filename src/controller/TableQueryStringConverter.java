@@ -1,89 +1,63 @@
 package controller;
 
-import javafx.beans.InvalidationListener;
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.util.StringConverter;
-import model.Query.ITableQuery;
-import model.Query.TableQuery;
-import model.Row.IBaseRow;
+import model.Query.KeyLookup;
 
 import java.util.*;
 
 /**
- * A StringConverter subclass, which converts between (the V-type Primary Key of rows in the given table) and (the String-type values
- * of the given reprColum (Representative Column)).
- *
- * @param <V> The (often sql) type of the Key which is being mapped to string values.
+ * A StringConverter subclass, which converts between (the Integer Primary Key of rows in the given table) and (the String-type values
+ * of the given reprColum (Representative Column)). Keys are Integers because the {@link KeyLookup} behind it only holds int keys.
  */
-public class TableQueryStringConverter<V> extends StringConverter<V>{
+public class TableQueryStringConverter extends StringConverter<Integer>{
 
     @Override
-    public String toString(V primaryKey) {
-        return names.get(primaryKey);
+    public String toString(Integer primaryKey) {
+        return primaryKey == null ? null : lookup.display(primaryKey);
     }
 
+    /**
+     * @param s A label, or a label followed by its key in brackets, as {@link #toString} shows labels which several keys share.
+     * @return The key, looked up in the {@link KeyLookup}'s reverse index, or null if the String doesn't identify exactly one.
+     */
     @Override
-    public V fromString(String s) {
-        return null;
+    public Integer fromString(String s) {
+        return lookup.keyFor(s);
     }
 
-    // Should these be Dependables? No, they work fine as-is.
-    private final Map<V, String> names = new HashMap<>();
-    private final ObservableList<V> options = FXCollections.observableArrayList();
-    private final ITableQuery<?> backingTableQuery;
+    private final KeyLookup lookup;
 
     /**
      * Constructor for a StringConverter, which converts between the Primary Key of a table, and a given column which identifies that key.
-     * This constructor uses a Lambda to minimize code reuse when defining an {@link InvalidationListener} defining the relationship between PKeys and Identifiers.
+     * The keys and names are held by the application's shared {@link KeyLookup} for that table, so every converter over the
+     * same table and column reads the same index, which is kept up to date as rows change.
      *
      * @param tableName The name of the table from which to draw conversions
      * @param reprColumnName The name of the column to use as a representation of a Primary Key
      */
     public TableQueryStringConverter(String tableName, String reprColumnName) {
         if (tableName == null) throw new NullPointerException("QueryTableConfig *MUST* have real names");
+        lookup = KeyLookup.of(tableName, reprColumnName);
+    }
 
-        // Step 1: Construct a TableQuery which fits the requirements we have (One Primary Key, row type extends IBaseRow)
-        backingTableQuery = new TableQuery<>(tableName);
-
-        Set<String> pkColumns = backingTableQuery.getPKColumns(); // Get all the columns which are Primary Keys, based on metadata (often JDBC metadata)
-        if(pkColumns.size() != 1) throw new IllegalArgumentException("QueryComboBox cannot run on tables without exactly one Primary Key");
-        String keyColumnName = pkColumns.iterator().next();
-
-        backingTableQuery.clearRequestedColumns();
-        backingTableQuery.addRequestedColumn(keyColumnName);
-        backingTableQuery.addRequestedColumn(reprColumnName);
-
-        // Step 2: Listen to changes in the TableData, and update accordingly
-        InvalidationListener updateNamesOptions = (tableData) -> {
-            Map<V, String> newNames = new HashMap<>();
-            List<V> newOptions = new ArrayList<>();
-            for (IBaseRow<?> row : (List<IBaseRow<?>>)tableData) {
-                V key = (V) row.getEntryValue(keyColumnName);
-                String value = (String) row.getEntryValue(reprColumnName);
-                newNames.put(key, value);
-                newOptions.add(key);
-            }
-            names.clear();
-            names.putAll(newNames);
-
-            options.clear();
-            options.setAll(newOptions);
-        };
-
-
-        // Step 3: Bind the listeners
-        backingTableQuery.getRows().addListener(updateNamesOptions);
-        updateNamesOptions.invalidated(backingTableQuery.getRows()); // Trigger a refresh
-
-
+    public KeyLookup getLookup() {
+        return lookup;
     }
 
-    public Map<V, String> getNames() {
-        return Collections.unmodifiableMap(names);
+    /**
+     * Find the keys whose labels start with the given text, ignoring case, eg for type-ahead.
+     * @param prefix The start of a label.
+     * @param limit The most keys to return.
+     * @return Up to {@code limit} keys, in order of their labels.
+     */
+    public List<Integer> startingWith(String prefix, int limit) {
+        List<Integer> found = new ArrayList<>();
+        for (int key : lookup.keysStartingWith(prefix, limit)) found.add(key);
+        return found;
     }
 
-    public ObservableList<V> getOptions() {
-        return FXCollections.unmodifiableObservableList(options);
+    public ObservableList<Integer> getOptions() {
+        return lookup.getKeys();
     }
-}
\ No newline at end of file
+}
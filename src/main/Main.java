@@ -4,6 +4,8 @@ import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.*;
 import javafx.stage.Stage;
+import model.Query.QueryStats;
+import model.Query.WindowPrefetcher;
 import model.Session;
 
 
@@ -18,6 +20,14 @@ public class Main extends Application {
         stage.show();
     }
 
+    /**
+     * When the application closes, report how the database performed during this session.
+     */
+    @Override
+    public void stop() {
+        QueryStats.logSummary(WindowPrefetcher.summary());
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -1,5 +1,6 @@
 package model.Query;
 
+import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
 import javafx.beans.property.*;
@@ -10,6 +11,7 @@ import model.Row.*;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -23,6 +25,7 @@ import java.util.stream.Collectors;
  */
 public abstract class BaseQuery<R extends IBaseRow<?>> extends SConnection implements IBaseQuery<R>{
     private static final Map<String, Set<InvalidationListener>> updateChannels = new HashMap<>();
+    private static final Map<String, Integer> undeliveredEvents = new ConcurrentHashMap<>(); // Published from other threads, not yet delivered
 
     /**
      * BaseQuery can be instantiated with names of channels to subscribe to. When a channel publishes, all
@@ -62,6 +65,16 @@ public abstract class BaseQuery<R extends IBaseRow<?>> extends SConnection imple
         });
     }
 
+    /**
+     * This method subscribes a listener to a channel, so it's invalidated whenever that channel publishes, without the
+     * listener being a BaseQuery. This lets things which mirror a table some other way stay in sync with edits made through queries.
+     * @param channel The name of the channel to subscribe to.
+     * @param listener The listener to invalidate when the channel publishes.
+     */
+    public static void subscribe(String channel, InvalidationListener listener){
+        updateChannels.computeIfAbsent(channel, newCat -> new HashSet<>()).add(listener);
+    }
+
     public static void updateChannels(Observable updater, String... channelsToUpdate){
         updateChannels(updater, new HashSet<String>(List.of(channelsToUpdate)));
     }
@@ -74,6 +87,62 @@ public abstract class BaseQuery<R extends IBaseRow<?>> extends SConnection imple
                 .forEach(listener -> listener.invalidated(updater)); // Call invalidated once on each unique member of each channel we named in channelsToUpdate.
     }
 
+    /**
+     * This method publishes a {@link ChannelEvent} on every channel it names, so each subscriber is invalidated exactly once
+     * with the event as the Observable.
+     * @param event The event describing what changed.
+     * @param excluded Subscribers which should not be invalidated, eg because they already reflect the change.
+     */
+    public static void publish(ChannelEvent event, InvalidationListener... excluded){
+        Set<InvalidationListener> skip = Set.of(excluded);
+        event.getChannels().stream()
+                .map(updateChannels::get)
+                .filter(Objects::nonNull) // Nothing has subscribed to that channel
+                .flatMap(Collection::stream)
+                .filter(listener -> !skip.contains(listener))
+                .collect(Collectors.toSet())
+                .forEach(listener -> listener.invalidated(event));
+    }
+
+    /**
+     * This method publishes a {@link ChannelEvent} like {@link #publish}, but may be called from any thread: subscribers are
+     * always invalidated on the JavaFX Application Thread.
+     * @param event The event describing what changed.
+     */
+    public static void publishLater(ChannelEvent event){
+        if (Platform.isFxApplicationThread()) {
+            publish(event);
+            return;
+        }
+        Set<String> channels = Set.copyOf(event.getChannels());
+        for (String channel : channels) undeliveredEvents.merge(channel, 1, Integer::sum);
+        Runnable delivered = () -> {
+            for (String channel : channels) undeliveredEvents.computeIfPresent(channel, (c, count) -> count == 1 ? null : count - 1);
+        };
+        try {
+            Platform.runLater(() -> {
+                try {
+                    publish(event);
+                } finally {
+                    delivered.run();
+                }
+            });
+        } catch (IllegalStateException e) { // The toolkit isn't running, so the event can never be delivered
+            delivered.run();
+            throw e;
+        }
+    }
+
+    /**
+     * This method tells whether a change to a channel has been published from another thread (see {@link #publishLater}),
+     * but not yet delivered to its subscribers. Until it has, anything mirroring the channel may be missing the change.
+     * @param channel The name of a channel.
+     * @return Whether an event on the channel is still waiting for the JavaFX Application Thread.
+     */
+    public static boolean hasUndeliveredEvents(String channel){
+        return undeliveredEvents.containsKey(channel);
+    }
+
     // The nuts and bolts of the query /////////////////////////////////////////////
     /**
      * `statement` wraps a {@link Statement} which {@link Dependable<Statement> depends} on the {@link SConnection#getDConn() shared JDBC Connection}, and which
@@ -204,8 +273,12 @@ public abstract class BaseQuery<R extends IBaseRow<?>> extends SConnection imple
 
         @Override
         protected ResultSet InnerConstruct(Map<String, ?> depValues) throws Throwable {
-            return ((Statement)depValues.get("statement"))
-                    .executeQuery((String)depValues.get("sqlQuery"));
+            String sql = (String)depValues.get("sqlQuery");
+            try (QueryStats.Timer timer = QueryStats.start(sql)) {
+                ResultSet rs = ((Statement)depValues.get("statement")).executeQuery(sql);
+                timer.stop(QueryStats.rowCount(rs));
+                return rs;
+            }
         }
 
         /**
@@ -289,6 +362,17 @@ public abstract class BaseQuery<R extends IBaseRow<?>> extends SConnection imple
     }
 
 
+    /**
+     * This method decides which rows of {@link #resultSet} become rows of this query. By default, every row does; subclasses
+     * which read more than they show (eg {@link ConstrainedQuery}, when filtering a cached superset) override it.
+     * @param rs The ResultSet, positioned on the row in question.
+     * @return Whether to construct a row for the current row of the ResultSet.
+     * @throws SQLException If the row can't be read.
+     */
+    protected boolean includeRow(ResultSet rs) throws SQLException {
+        return true;
+    }
+
     /**
      * rowsList is a wrapper around an {@link ObservableList} which holds all the objects generated by {@link #resultSet}.
      * rowsList {@link Dependable depends} on {@link #resultSet}, meaning that whenever {@link #resultSet} is invalidated,
@@ -342,7 +426,7 @@ public abstract class BaseQuery<R extends IBaseRow<?>> extends SConnection imple
             List<R> newList = new ArrayList<>();
             ResultSet rs = (ResultSet) depValues.get("resultSet");
             rs.beforeFirst();
-            while (rs.next()) newList.add(newRow(rs.getRow()));
+            while (rs.next()) if (includeRow(rs)) newList.add(newRow(rs.getRow()));
 
             if (rootObject == null) rootObject = FXCollections.observableList(newList);
             else rootObject.setAll(newList);
@@ -356,6 +440,11 @@ public abstract class BaseQuery<R extends IBaseRow<?>> extends SConnection imple
         return rowsList.getValue();
     }
 
+    @Override
+    public Dependable<String> getDsqlQuery(){
+        return sqlQuery;
+    }
+
     @Override
     public Dependable<ResultSet> getDResultSet(){
         return resultSet;
@@ -0,0 +1,354 @@
+package model.Query;
+
+import model.Row.DetachedRow;
+import model.Row.IWritableRow;
+import model.Row.RowPredicate.RowValidationFailedException;
+import model.Row.RowPredicate.ValidationEngine;
+import model.Session;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.text.MessageFormat;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * CSVImporter streams records from CSV text into the table of a {@link WritableTableQuery}. Columns are matched to the table by
+ * the names in the CSV's header row, and each value is converted to its column's type according to the table's
+ * {@link ResultSetMetaData}. Records are read in batches: each batch is validated by the query's validators, and the valid
+ * records are INSERTed as one JDBC batch in their own transaction. Only one batch of records is held in memory at a time.
+ * <br>
+ * Each committed batch is published on the table's channel straight away, so later batches are validated against the
+ * records already imported (eg for conflicts), rather than against a picture of the table from before the import.
+ * <br>
+ * Imports use their own Connection (see {@link SConnection#openConnection()}) for validation as well as inserts, so they can
+ * run away from the JavaFX thread.
+ */
+public class CSVImporter extends SConnection {
+    public static final int defaultBatchSize = 500;
+
+    /**
+     * At most this many error messages are kept in a {@link Report}; further errors are only counted.
+     */
+    private static final int maxReportedErrors = 1000;
+
+    private final WritableTableQuery target;
+    private int batchSize = defaultBatchSize;
+
+    /**
+     * Construct a CSVImporter which imports into the table of the given query, using that query's validators.
+     * @param target The query whose table records are imported into.
+     */
+    public CSVImporter(WritableTableQuery target) {
+        this.target = target;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize The number of records to validate and INSERT together.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * This class describes the progress, and eventually the outcome, of an import.
+     */
+    public static class Report {
+        private int recordsRead = 0;
+        private int recordsInserted = 0;
+        private int errorCount = 0;
+        private final List<String> errors = new ArrayList<>();
+
+        /**
+         * @return The number of records read from the CSV so far, excluding the header.
+         */
+        public int getRecordsRead() {
+            return recordsRead;
+        }
+
+        /**
+         * @return The number of records INSERTed into the database so far.
+         */
+        public int getRecordsInserted() {
+            return recordsInserted;
+        }
+
+        /**
+         * @return The number of records which could not be imported so far.
+         */
+        public int getErrorCount() {
+            return errorCount;
+        }
+
+        /**
+         * @return A message for each record which could not be imported, up to a limit.
+         */
+        public List<String> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        private void addError(int recordNumber, String message) {
+            errorCount++;
+            if (errors.size() < maxReportedErrors)
+                errors.add(MessageFormat.format(Session.getBundle().getString("csvImport.RecordError{record,message}"), recordNumber, message));
+        }
+    }
+
+    /**
+     * This method reads every record from the given CSV source and imports it. Records which can't be converted, fail
+     * validation, or are rejected by the database are reported rather than stopping the import; a batch which the database
+     * rejects is rolled back as a whole. A {@link ChannelEvent} is published for the table after each batch is committed.
+     * @param source CSV text, whose first record is a header naming the table's columns.
+     * @param progress Called with the running Report after each batch. May be null.
+     * @return The final Report.
+     * @throws IOException If the source can't be read.
+     * @throws SQLException If the database can't be reached, or the table can't be described.
+     * @throws IllegalArgumentException If the header names a column the table doesn't have.
+     */
+    public Report importFrom(Reader source, Consumer<Report> progress) throws IOException, SQLException {
+        Report report = new Report();
+        CSVReader csv = new CSVReader(source);
+
+        try (Connection importConn = openConnection()) {
+            // Step 1: Describe the table, and match the header to its columns
+            Map<String, Integer> columnIndices = new LinkedHashMap<>();
+            List<Class<?>> columnClasses = new ArrayList<>();
+            String describeSQL = String.format("SELECT * FROM %s WHERE FALSE", target.getTableName());
+            try (QueryStats.Timer describeTimer = QueryStats.start(describeSQL);
+                 Statement s = importConn.createStatement();
+                 ResultSet empty = s.executeQuery(describeSQL)) {
+                describeTimer.stop(0);
+                ResultSetMetaData md = empty.getMetaData();
+                for (int i = 1; i < md.getColumnCount() + 1; i++) {
+                    columnIndices.put(md.getColumnName(i), i);
+                    columnClasses.add(Class.forName(md.getColumnClassName(i)));
+                }
+            } catch (ClassNotFoundException e) {
+                throw new SQLException(e);
+            }
+
+            List<String> header = csv.next();
+            if (header == null) return report;
+            int[] headerColumns = new int[header.size()];
+            for (int h = 0; h < header.size(); h++) {
+                String name = header.get(h).trim();
+                headerColumns[h] = columnIndices.entrySet().stream()
+                        .filter(e -> e.getKey().equalsIgnoreCase(name))
+                        .mapToInt(Map.Entry::getValue)
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalArgumentException("The table " + target.getTableName() + " has no column " + name));
+            }
+
+            // Step 2: Work out the INSERT shared by every record: the header's columns, plus any audit columns it left out
+            List<Integer> insertColumns = new ArrayList<>();
+            for (int columnId : headerColumns) insertColumns.add(columnId);
+            List<String> auditColumns = new ArrayList<>(WritableTableQuery.auditUpdateColumns);
+            auditColumns.addAll(WritableTableQuery.auditCreateColumns);
+            Map<Integer, String> auditFills = new HashMap<>();
+            for (String auditColumn : auditColumns) {
+                Integer columnId = columnIndices.get(auditColumn);
+                if (columnId != null && !insertColumns.contains(columnId)) {
+                    insertColumns.add(columnId);
+                    auditFills.put(columnId, auditColumn);
+                }
+            }
+            List<String> columnNames = new ArrayList<>(columnIndices.keySet());
+            String insertSQL = target.buildInsertSQL(insertColumns.stream().map(id -> columnNames.get(id - 1)).toList());
+
+            // Step 3: Stream the records through, one batch at a time
+            ValidationEngine validators = target.getValidationEngine();
+            List<DetachedRow> batch = new ArrayList<>();
+            List<Integer> batchRecordNumbers = new ArrayList<>();
+            List<String> record;
+            while ((record = csv.next()) != null) {
+                int recordNumber = ++report.recordsRead;
+                if (record.size() != header.size()) {
+                    report.addError(recordNumber, MessageFormat.format(Session.getBundle().getString("csvImport.WrongFieldCount{expected,found}"), header.size(), record.size()));
+                } else {
+                    DetachedRow row = toRow(record, headerColumns, auditFills, columnIndices, columnClasses, recordNumber, report);
+                    if (row != null) {
+                        batch.add(row);
+                        batchRecordNumbers.add(recordNumber);
+                    }
+                }
+                if (batch.size() == batchSize) {
+                    insertBatch(importConn, insertSQL, insertColumns, validators, batch, batchRecordNumbers, report);
+                    if (progress != null) progress.accept(report);
+                }
+            }
+            insertBatch(importConn, insertSQL, insertColumns, validators, batch, batchRecordNumbers, report);
+            if (progress != null) progress.accept(report);
+        }
+        return report;
+    }
+
+    /**
+     * Convert one CSV record into a {@link DetachedRow}, filling in the audit columns the CSV left out, and reporting any
+     * value which can't be converted.
+     * @return The converted row, or null if any value could not be converted.
+     */
+    private static DetachedRow toRow(List<String> record, int[] headerColumns, Map<Integer, String> auditFills, Map<String, Integer> columnIndices,
+                                     List<Class<?>> columnClasses, int recordNumber, Report report) {
+        Object[] values = new Object[columnClasses.size()];
+        for (int h = 0; h < headerColumns.length; h++) {
+            int columnId = headerColumns[h];
+            String text = record.get(h);
+            try {
+                values[columnId - 1] = convert(text, columnClasses.get(columnId - 1));
+            } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+                String columnName = new ArrayList<>(columnIndices.keySet()).get(columnId - 1);
+                report.addError(recordNumber, MessageFormat.format(Session.getBundle().getString("csvImport.BadValue{column,value}"), columnName, text));
+                return null;
+            }
+        }
+        auditFills.forEach((columnId, auditColumn) -> values[columnId - 1] = WritableTableQuery.auditValue(auditColumn));
+        return new DetachedRow(columnIndices, values);
+    }
+
+    /**
+     * Convert CSV text into a value of the given column class. Empty text is null.
+     */
+    private static Object convert(String text, Class<?> columnClass) {
+        if (text.isEmpty()) return null;
+        if (columnClass == String.class) return text;
+        String trimmed = text.trim();
+        if (columnClass == Integer.class) return Integer.valueOf(trimmed);
+        if (columnClass == Long.class) return Long.valueOf(trimmed);
+        if (columnClass == Timestamp.class) return Timestamp.valueOf(LocalDateTime.parse(trimmed.replace(' ', 'T')));
+        if (columnClass == java.sql.Date.class) return java.sql.Date.valueOf(trimmed);
+        if (columnClass == LocalDateTime.class) return LocalDateTime.parse(trimmed.replace(' ', 'T'));
+        if (columnClass == Boolean.class) return Boolean.valueOf(trimmed);
+        if (columnClass == Double.class) return Double.valueOf(trimmed);
+        if (columnClass == BigDecimal.class) return new BigDecimal(trimmed);
+        throw new IllegalArgumentException("Unsupported column type " + columnClass);
+    }
+
+    /**
+     * Validate the given batch of rows, then INSERT the valid ones as one JDBC batch in a single transaction, and publish
+     * them once it's committed. The batch lists are cleared afterwards.
+     */
+    private void insertBatch(Connection importConn, String insertSQL, List<Integer> insertColumns, ValidationEngine validators,
+                                    List<DetachedRow> batch, List<Integer> batchRecordNumbers, Report report) throws SQLException {
+        List<DetachedRow> valid = new ArrayList<>();
+        List<Integer> validRecordNumbers = new ArrayList<>();
+        Map<IWritableRow, RowValidationFailedException> invalid = validators.validateAll(batch, importConn);
+        for (int r = 0; r < batch.size(); r++) {
+            DetachedRow row = batch.get(r);
+            if (invalid.containsKey(row)) {
+                report.addError(batchRecordNumbers.get(r), invalid.get(row).getMessage());
+            } else {
+                valid.add(row);
+                validRecordNumbers.add(batchRecordNumbers.get(r));
+            }
+        }
+        batch.clear();
+        batchRecordNumbers.clear();
+        if (valid.isEmpty()) return;
+
+        try {
+            List<Object> keys = inTransaction(importConn, conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(insertSQL, Statement.RETURN_GENERATED_KEYS)) {
+                    for (DetachedRow row : valid) {
+                        int i = 1;
+                        for (int columnId : insertColumns) {
+                            ps.setObject(i++, row.getEntryValue(columnId));
+                        }
+                        ps.addBatch();
+                    }
+                    try (QueryStats.Timer timer = QueryStats.start(insertSQL)) {
+                        ps.executeBatch();
+                        timer.stop(valid.size());
+                    }
+                    List<Object> generated = new ArrayList<>();
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        while (rs.next()) generated.add(rs.getObject(1));
+                    }
+                    return generated;
+                }
+            });
+            report.recordsInserted += valid.size();
+            // Where the new rows' keys weren't all generated (eg the CSV gave them), every subscriber of the table reloads
+            BaseQuery.publishLater(new ChannelEvent(target.getTableName(), keys.size() == valid.size() ? keys : null));
+        } catch (BatchUpdateException e) {
+            int[] counts = e.getUpdateCounts();
+            String rolledBack = Session.getBundle().getString("rowCommit.RolledBack");
+            for (int r = 0; r < valid.size(); r++) {
+                boolean failed = r >= counts.length || counts[r] == Statement.EXECUTE_FAILED;
+                report.addError(validRecordNumbers.get(r), failed ? e.getMessage() : rolledBack);
+            }
+        }
+    }
+
+    /**
+     * CSVReader splits CSV text into records one at a time, following RFC 4180: fields are separated by commas, and a field
+     * wrapped in double quotes may contain commas, line breaks, and doubled ("") quotes.
+     */
+    private static class CSVReader {
+        private final Reader in;
+        private int pushedBack = -2;
+
+        CSVReader(Reader in) {
+            this.in = in;
+        }
+
+        private int read() throws IOException {
+            if (pushedBack != -2) {
+                int c = pushedBack;
+                pushedBack = -2;
+                return c;
+            }
+            return in.read();
+        }
+
+        /**
+         * @return The fields of the next record, or null if there are no more records.
+         */
+        List<String> next() throws IOException {
+            int c = read();
+            if (c == '\uFEFF') c = read(); // Byte order mark
+            while (c == '\r' || c == '\n') c = read(); // Skip blank lines
+            if (c == -1) return null;
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) throw new IOException("Unterminated quoted field in CSV");
+                    if (c == '"') {
+                        int following = read();
+                        if (following == '"') field.append('"');
+                        else {
+                            quoted = false;
+                            c = following;
+                            continue;
+                        }
+                    } else field.append((char) c);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n' || c == -1) {
+                    if (c == '\r') {
+                        int following = read();
+                        if (following != '\n') pushedBack = following;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package model.Query;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+
+import java.util.*;
+
+/**
+ * A ChannelEvent describes a change which was pushed to the Database, by naming the {@link BaseQuery} channels it affects and,
+ * where they're known, the Primary Keys of the rows which changed in each channel.
+ * <br>
+ * A ChannelEvent is passed as the {@link Observable} when a channel publishes (see {@link BaseQuery#publish}), so listeners which
+ * only need to know that <i>something</i> changed keep working as before, while listeners which can update themselves
+ * incrementally can inspect which rows changed.
+ */
+public class ChannelEvent implements Observable {
+    /**
+     * A map from each affected channel to the keys which changed in it. A null value means the changed keys aren't known,
+     * and listeners should treat every row in that channel as changed.
+     */
+    private final Map<String, Set<Object>> changedKeys = new HashMap<>();
+
+    public ChannelEvent() {
+    }
+
+    /**
+     * Construct a ChannelEvent describing changes to the given keys in a single channel.
+     * @param channel The channel which changed.
+     * @param keys The Primary Keys of the rows which changed, or null if they aren't known.
+     */
+    public ChannelEvent(String channel, Collection<?> keys) {
+        with(channel, keys);
+    }
+
+    /**
+     * Record that rows in the given channel changed. Recording the same channel more than once merges the keys.
+     * @param channel The channel which changed.
+     * @param keys The Primary Keys of the rows which changed, or null if they aren't known.
+     * @return This ChannelEvent, for chaining.
+     */
+    public ChannelEvent with(String channel, Collection<?> keys) {
+        if (keys == null) {
+            changedKeys.put(channel, null);
+        } else if (!changedKeys.containsKey(channel)) {
+            changedKeys.put(channel, new HashSet<>(keys));
+        } else if (changedKeys.get(channel) != null) {
+            changedKeys.get(channel).addAll(keys);
+        }
+        return this;
+    }
+
+    /**
+     * @return The names of every channel this event affects.
+     */
+    public Set<String> getChannels() {
+        return Collections.unmodifiableSet(changedKeys.keySet());
+    }
+
+    /**
+     * @param channel The name of a channel.
+     * @return Whether this event affects the given channel.
+     */
+    public boolean affects(String channel) {
+        return changedKeys.containsKey(channel);
+    }
+
+    /**
+     * @param channel The name of a channel this event affects.
+     * @return The Primary Keys of the rows which changed in that channel, or null if they aren't known (or the channel isn't affected).
+     */
+    public Set<Object> getChangedKeys(String channel) {
+        Set<Object> keys = changedKeys.get(channel);
+        return keys == null ? null : Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * ChannelEvents don't change once they're published, so there's nothing to listen to.
+     */
+    @Override
+    public void addListener(InvalidationListener invalidationListener) {
+    }
+
+    @Override
+    public void removeListener(InvalidationListener invalidationListener) {
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelEvent" + changedKeys;
+    }
+}
@@ -1,11 +1,16 @@
 package model.Query;
 
+import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
 import javafx.beans.property.*;
 import javafx.collections.FXCollections;
 import model.Dependable;
 import model.Row.IWritableRow;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.function.UnaryOperator;
 
 
 // nTODO: Stability: Refuse to add constraints if that column is *known* not to exist
@@ -13,6 +18,12 @@ import java.util.*;
 /**
  * ConstrainedQuery is a class extending TableQuery, which can add constraints to the underlying SQL query, limiting
  * the results to those within the constraints.
+ * <br>
+ * Given a {@link #setSupersetWidener superset widener}, a ConstrainedQuery fetches a wider result than its constraints ask
+ * for (eg a quarter of appointments when a week is asked for), and evaluates the constraints in memory
+ * ({@link SQLQueryConstraint#test}) to decide which rows to show. While later constraints fall inside what was fetched
+ * ({@link SQLQueryConstraint#impliesAll}), changing them only re-filters the rows already held; the database is only
+ * queried again once they move outside it.
  * <br><br>{@inheritDoc}
  * @see SQLQueryConstraint
  */
@@ -63,9 +74,11 @@ public class ConstrainedQuery extends WritableTableQuery implements IConstrained
     @Override
     protected Dependable<String> constructDsqlQuery(){
         ReadOnlySetWrapper<SQLQueryConstraint> locCon = new ReadOnlySetWrapper<>(FXCollections.observableSet(new HashSet<>()));
+        ReadOnlyObjectWrapper<Set<SQLQueryConstraint>> locFetched = new ReadOnlyObjectWrapper<>(Set.of());
         this.constraints = locCon;
+        this.fetchedConstraints = locFetched;
         return new CQSQLQuery(new HashMap<>(){{
-            put("constraints", locCon);
+            put("constraints", locFetched);
         }});
     }
 
@@ -94,18 +107,48 @@ public class ConstrainedQuery extends WritableTableQuery implements IConstrained
          */
         @Override
         protected String InnerConstruct(Map<String, ?> depValues) throws Throwable {
-            System.out.println("CQSQLQuery on DepValues: " + depValues);
             String tabledQuery = super.InnerConstruct(depValues);
-            String columns = "*";
-
-            String whereConstraints = "";
             Set<SQLQueryConstraint> _constraints = (Set<SQLQueryConstraint>) depValues.get("constraints");
-            if (_constraints.size() > 0) {
-                whereConstraints = _constraints.stream().map(SQLQueryConstraint::BuildSQLConstraint).reduce(" WHERE ", (BuildingConstraints, NewConstraint) -> BuildingConstraints + NewConstraint + " AND ") + "TRUE";
-                tabledQuery += whereConstraints;
-            }
-            System.out.println(tabledQuery);
-            return tabledQuery;
+            return tabledQuery + whereClause(_constraints);
+        }
+    }
+
+    /**
+     * @return The WHERE clause imposing the constraints, or an empty String if there are none. The constraints are written
+     * in a fixed order, so equal sets of constraints always produce the same SQL.
+     */
+    private static String whereClause(Set<SQLQueryConstraint> _constraints) {
+        if (_constraints.isEmpty()) return "";
+        return _constraints.stream().map(SQLQueryConstraint::BuildSQLConstraint).sorted().reduce(" WHERE ", (BuildingConstraints, NewConstraint) -> BuildingConstraints + NewConstraint + " AND ") + "TRUE";
+    }
+
+    /**
+     * This method in {@link ConstrainedQuery} overrides {@link BaseQuery#constructDResultSet} so a result prefetched by the
+     * {@link #setPrefetcher prefetcher} is used instead of executing the same SQL again.
+     * <br><br>{@inheritDoc}
+     */
+    @Override
+    protected Dependable<ResultSet> constructDResultSet() {
+        return new CQResultSet();
+    }
+
+    /**
+     * CQResultSet is a {@link model.Query.BaseQuery.BQResultSet} which first asks the {@link WindowPrefetcher} (if any)
+     * for its SQL's result, and which drops prefetched results over this table whenever it's refreshed by anything but
+     * new SQL (eg its channel publishing), since they're as stale as its own.
+     */
+    protected class CQResultSet extends BaseQuery<IWritableRow>.BQResultSet {
+        @Override
+        protected ResultSet InnerConstruct(Map<String, ?> depValues) throws Throwable {
+            ResultSet prefetched = prefetcher == null ? null : prefetcher.take((String) depValues.get("sqlQuery"));
+            heldResultStale = false;
+            return prefetched != null ? prefetched : super.InnerConstruct(depValues);
+        }
+
+        @Override
+        public void invalidated(Observable o) {
+            if (prefetcher != null && o != sqlQuery) prefetcher.invalidate(getTableName());
+            super.invalidated(o);
         }
     }
 
@@ -114,11 +157,155 @@ public class ConstrainedQuery extends WritableTableQuery implements IConstrained
 
     // The configuration parameters of the query
     private ReadOnlySetWrapper<SQLQueryConstraint> constraints; // new ReadOnlySetWrapper<>(FXCollections.observableSet(new HashSet<>()));
+    // The constraints the SQL was built from, which the constraints above must imply. Also constructed in `constructDsqlQuery`.
+    private ReadOnlyObjectWrapper<Set<SQLQueryConstraint>> fetchedConstraints;
     // `constraints` hasn't initialized before ConstrainedQuery calls super(), so we can't construct it here, we have
     // to construct it inside `constructDsqlQuery`. I hate it, but it does run.
 
+    private UnaryOperator<Set<SQLQueryConstraint>> supersetWidener;
+    private WindowPrefetcher prefetcher;
+    private Set<SQLQueryConstraint> rowFilter = Set.of(); // The constraints rows are tested against in memory
+    private boolean replacingConstraints;
+    private boolean heldResultStale; // Whether a row was committed since the ResultSet was read, so re-filtering must re-read it
+
     {
-        constraints.addListener(getDResultSet());
+        constraints.addListener((InvalidationListener) observable -> {
+            if (!replacingConstraints) reconcileConstraints();
+        });
+    }
+
+    /**
+     * This method makes the query fetch a superset of what its constraints ask for, and filter it in memory, so
+     * constraints which stay inside the superset don't query the database again.
+     * @param widener Given the constraints, returns the constraints of the superset to fetch instead, which the given
+     *                constraints must imply (otherwise the given constraints are fetched as they are). Null to always fetch
+     *                exactly what the constraints ask for.
+     */
+    public void setSupersetWidener(UnaryOperator<Set<SQLQueryConstraint>> widener) {
+        this.supersetWidener = widener;
+        reconcileConstraints();
+    }
+
+    /**
+     * This method lets the query use results read ahead of time by a {@link WindowPrefetcher}, see {@link #prefetch}.
+     * @param prefetcher The prefetcher to take results from, or null to always execute the SQL.
+     */
+    public void setPrefetcher(WindowPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * This method reads, in the background, what the query would fetch if its constraints became the given ones, so
+     * changing to them later doesn't wait for the database. Nothing is read if the rows already fetched cover them.
+     * @param constraints Constraints the query may be given next.
+     */
+    public void prefetch(Set<SQLQueryConstraint> constraints) {
+        if (prefetcher == null) return;
+        Set<SQLQueryConstraint> toFetch = toFetch(Set.copyOf(constraints));
+        if (toFetch == null) return; // Already covered
+        prefetcher.prefetch(getTableName(), String.format(getBaseQuery(), getTableName()) + whereClause(toFetch));
+    }
+
+    /**
+     * This method in {@link ConstrainedQuery} overrides {@link IBaseQuery#getVisibleSQL} to select what the current
+     * constraints ask for, rather than the superset which may have been fetched in their place.
+     * <br><br>{@inheritDoc}
+     */
+    @Override
+    public String getVisibleSQL() {
+        return String.format(getBaseQuery(), getTableName()) + whereClause(Set.copyOf(getConstraints()));
+    }
+
+    /**
+     * @return The constraints the current result was fetched with. Every constraint in {@link #getConstraints()} implies them.
+     */
+    public ReadOnlyObjectProperty<Set<SQLQueryConstraint>> getFetchedConstraints() {
+        return fetchedConstraints.getReadOnlyProperty();
+    }
+
+    /**
+     * Decide whether the current constraints can be answered from the rows already fetched. If so, only re-filter
+     * them; otherwise fetch the constraints (or their superset) from the database.
+     */
+    private void reconcileConstraints() {
+        Set<SQLQueryConstraint> requested = Set.copyOf(constraints);
+        Set<SQLQueryConstraint> toFetch = toFetch(requested);
+        if (toFetch == null) {
+            refilter(requested, fetchedConstraints.get());
+        } else {
+            rowFilter = requested.equals(toFetch) ? Set.of() : requested;
+            fetchedConstraints.set(toFetch); // Rebuilds the SQL, which re-executes the query
+        }
+    }
+
+    /**
+     * @return The constraints to fetch to answer the requested ones (widened, if there's a widener), or null if the rows
+     * already fetched cover them.
+     */
+    private Set<SQLQueryConstraint> toFetch(Set<SQLQueryConstraint> requested) {
+        Set<SQLQueryConstraint> fetched = fetchedConstraints.get();
+        boolean testable = requested.stream().allMatch(SQLQueryConstraint::isTestable);
+        if (supersetWidener != null && testable && SQLQueryConstraint.impliesAll(requested, fetched)) return null;
+
+        Set<SQLQueryConstraint> toFetch = requested;
+        if (supersetWidener != null && testable) {
+            Set<SQLQueryConstraint> widened = supersetWidener.apply(requested);
+            if (widened != null && SQLQueryConstraint.impliesAll(requested, widened)) toFetch = Set.copyOf(widened);
+        }
+        return toFetch.equals(fetched) ? null : toFetch;
+    }
+
+    private void refilter(Set<SQLQueryConstraint> requested, Set<SQLQueryConstraint> fetched) {
+        Set<SQLQueryConstraint> newFilter = requested.equals(fetched) ? Set.of() : requested;
+        if (newFilter.equals(rowFilter)) return;
+        rowFilter = newFilter;
+        if (heldResultStale) getDResultSet().invalidated(sqlQuery); // Re-execute the same SQL, which rebuilds the rows
+        else rowsList.invalidated(); // Rebuild the rows from the ResultSet already held
+    }
+
+    /**
+     * This method in {@link ConstrainedQuery} overrides {@link WritableTableQuery#committedInPlace} so rows rebuilt by
+     * re-filtering don't bring back the committed row's old values (and old version). The ResultSet is only re-read when
+     * it's next re-filtered, and results prefetched before the commit are dropped.
+     * <br><br>{@inheritDoc}
+     */
+    @Override
+    protected void committedInPlace(IWritableRow row) {
+        heldResultStale = true;
+        if (prefetcher != null) prefetcher.invalidate(getTableName());
+    }
+
+    /**
+     * This method in {@link ConstrainedQuery} overrides {@link BaseQuery#includeRow} to show only the fetched rows which
+     * satisfy the current constraints, when more was fetched than they ask for.
+     * <br><br>{@inheritDoc}
+     */
+    @Override
+    protected boolean includeRow(ResultSet rs) throws SQLException {
+        for (SQLQueryConstraint constraint : rowFilter) {
+            Object value = constraint.getColumnName() == null ? null : rs.getObject(constraint.getColumnName());
+            if (!constraint.test(value)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * This method in {@link ConstrainedQuery} overrides {@link WritableTableQuery#stillMatches} to test the row's current
+     * values against the constraints. Constraints which can't be tested in memory count as not matching, so the query is refreshed.
+     * <br><br>{@inheritDoc}
+     */
+    @Override
+    protected boolean stillMatches(IWritableRow row) {
+        try {
+            for (SQLQueryConstraint constraint : getConstraints()) {
+                if (!constraint.isTestable()) return false;
+                Object value = constraint.getColumnName() == null ? null : row.getEntryValue(constraint.getColumnName());
+                if (!constraint.test(value)) return false;
+            }
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false; // A value which doesn't compare with its constraint
+        }
     }
 
     @Override
@@ -145,6 +332,18 @@ public class ConstrainedQuery extends WritableTableQuery implements IConstrained
     public boolean removeConstraint(Set<SQLQueryConstraint> toRemoveConSet) {
         return this.getConstraints().removeAll(toRemoveConSet);
     }
+
+    @Override
+    public void replaceConstraints(Set<SQLQueryConstraint> toRemove, Set<SQLQueryConstraint> toAdd) {
+        replacingConstraints = true;
+        try {
+            this.getConstraints().removeAll(toRemove);
+            this.getConstraints().addAll(toAdd);
+        } finally {
+            replacingConstraints = false;
+        }
+        reconcileConstraints();
+    }
 }
 
 
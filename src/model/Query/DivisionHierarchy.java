@@ -0,0 +1,171 @@
+package model.Query;
+
+import javafx.beans.Observable;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * DivisionHierarchy records which country each first-level division belongs to, and which divisions each country has.
+ * <br>
+ * The hierarchy is held as an immutable {@link Version}, which is replaced atomically (see {@link VersionedIndex}), so any
+ * number of cells can read it on any thread without locks, and never see it half-updated. It starts from the divisions'
+ * {@link ReferenceSnapshot}. When the first_level_divisions channel publishes the divisions which changed, only those
+ * rows are re-read, and only those divisions and the countries they left or joined are re-indexed. When the snapshot
+ * itself refreshes, it's diffed in, so a refresh which agrees with the changes already applied changes nothing.
+ */
+public class DivisionHierarchy extends VersionedIndex<DivisionHierarchy.Version> {
+    public static final String tableName = "first_level_divisions";
+    private static final String selectSQL = "SELECT Division_ID, Country_ID FROM first_level_divisions WHERE Division_ID IN ";
+
+    private static DivisionHierarchy shared;
+
+    private static final Updater updater = new Updater("division-hierarchy-update");
+
+    private final ReferenceSnapshot snapshot;
+
+    /**
+     * One immutable state of the hierarchy.
+     */
+    public static final class Version {
+        private final Map<Integer, Integer> countryByDivision;
+        private final Map<Integer, List<Integer>> divisionsByCountry;
+
+        private Version(Map<Integer, Integer> countryByDivision, Map<Integer, List<Integer>> divisionsByCountry) {
+            this.countryByDivision = Collections.unmodifiableMap(countryByDivision);
+            this.divisionsByCountry = Collections.unmodifiableMap(divisionsByCountry);
+        }
+
+        /**
+         * @param divisionId A Division_ID, or null.
+         * @return The Country_ID of that division's country, or null if there's no such division.
+         */
+        public Integer countryOf(Integer divisionId) {
+            return divisionId == null ? null : countryByDivision.get(divisionId);
+        }
+
+        /**
+         * @param countryId A Country_ID, or null.
+         * @return The Division_IDs of that country's divisions, in ascending order (an immutable List, empty for no such country).
+         */
+        public List<Integer> divisionsOf(Integer countryId) {
+            List<Integer> divisions = countryId == null ? null : divisionsByCountry.get(countryId);
+            return divisions == null ? List.of() : divisions;
+        }
+
+        static Version of(List<Object[]> rows) {
+            Map<Integer, Integer> countryByDivision = new HashMap<>();
+            for (Object[] row : rows) if (row[0] != null && row[2] != null) countryByDivision.put((Integer) row[0], (Integer) row[2]);
+            Map<Integer, List<Integer>> building = new HashMap<>();
+            countryByDivision.forEach((division, country) -> building.computeIfAbsent(country, c -> new ArrayList<>()).add(division));
+            Map<Integer, List<Integer>> divisionsByCountry = new HashMap<>();
+            building.forEach((country, divisions) -> divisionsByCountry.put(country, sortedCopy(divisions)));
+            return new Version(countryByDivision, divisionsByCountry);
+        }
+
+        /**
+         * @return The changes which turn this version into the given rows: each changed division's new country, or null if it's gone.
+         */
+        Map<Integer, Integer> diff(List<Object[]> rows) {
+            Map<Integer, Integer> changes = new HashMap<>();
+            Set<Integer> seen = new HashSet<>();
+            for (Object[] row : rows) {
+                if (row[0] == null || row[2] == null) continue;
+                seen.add((Integer) row[0]);
+                if (!row[2].equals(countryByDivision.get(row[0]))) changes.put((Integer) row[0], (Integer) row[2]);
+            }
+            for (Integer division : countryByDivision.keySet()) if (!seen.contains(division)) changes.put(division, null);
+            return changes;
+        }
+
+        /**
+         * @return The next version, with the given changes (or this version, if there are none). Only the countries which gained or lost divisions have their lists rebuilt.
+         */
+        Version patched(Map<Integer, Integer> changes) {
+            if (changes.isEmpty()) return this;
+            Map<Integer, Integer> newCountryByDivision = new HashMap<>(countryByDivision);
+            Set<Integer> affectedCountries = new HashSet<>();
+            changes.forEach((division, country) -> {
+                Integer oldCountry = country == null ? newCountryByDivision.remove(division) : newCountryByDivision.put(division, country);
+                if (oldCountry != null) affectedCountries.add(oldCountry);
+                if (country != null) affectedCountries.add(country);
+            });
+            Map<Integer, List<Integer>> newDivisionsByCountry = new HashMap<>(divisionsByCountry);
+            for (Integer country : affectedCountries) {
+                Set<Integer> divisions = new HashSet<>(divisionsOf(country));
+                changes.forEach((division, newCountry) -> {
+                    if (country.equals(newCountry)) divisions.add(division);
+                    else divisions.remove(division);
+                });
+                if (divisions.isEmpty()) newDivisionsByCountry.remove(country);
+                else newDivisionsByCountry.put(country, sortedCopy(divisions));
+            }
+            return new Version(newCountryByDivision, newDivisionsByCountry);
+        }
+
+        private static List<Integer> sortedCopy(Collection<Integer> divisions) {
+            Integer[] sorted = divisions.toArray(new Integer[0]);
+            Arrays.sort(sorted);
+            return List.of(sorted);
+        }
+    }
+
+    /**
+     * @return The application's shared DivisionHierarchy, which loads the first time it's requested.
+     */
+    public static synchronized DivisionHierarchy shared() {
+        if (shared == null) shared = new DivisionHierarchy(ReferenceSnapshot.of(tableName, "Division_ID", "Division", "Country_ID"));
+        return shared;
+    }
+
+    private DivisionHierarchy(ReferenceSnapshot snapshot) {
+        super(updater, Version.of(snapshot.getRows()));
+        this.snapshot = snapshot;
+        snapshot.rowsProperty().addListener(observable -> applySnapshot());
+        BaseQuery.subscribe(tableName, this::onChannelChange);
+    }
+
+    /**
+     * @return The current version. Hold on to it to read a consistent hierarchy across several lookups.
+     */
+    public Version current() {
+        return contents();
+    }
+
+    // Keeping in sync ////////////////////////////////////////////
+
+    /**
+     * When the divisions channel publishes the divisions which changed, re-read just those rows. Otherwise the snapshot
+     * (which also listens to the channel) re-reads the whole table, and its refresh is diffed in.
+     */
+    private void onChannelChange(Observable observable) {
+        Set<Object> changedKeys = observable instanceof ChannelEvent ? ((ChannelEvent) observable).getChangedKeys(tableName) : null;
+        if (changedKeys == null || changedKeys.isEmpty()) return;
+        List<Object> changed = new ArrayList<>(changedKeys);
+        queuePatch(c -> read(c, changed), Version::patched);
+    }
+
+    private static Map<Integer, Integer> read(Connection c, List<Object> divisionIds) throws SQLException {
+        Map<Integer, Integer> changes = new HashMap<>();
+        for (Object divisionId : divisionIds) changes.put(((Number) divisionId).intValue(), null); // Removed, unless re-read below
+        String sql = selectSQL + "(" + String.join(", ", Collections.nCopies(divisionIds.size(), "?")) + ")";
+        int read = 0;
+        try (QueryStats.Timer timer = QueryStats.start(sql); PreparedStatement ps = c.prepareStatement(sql)) {
+            int i = 1;
+            for (Object divisionId : divisionIds) ps.setObject(i++, divisionId);
+            try (ResultSet rs = ps.executeQuery()) {
+                for (; rs.next(); read++) changes.put(rs.getInt(1), rs.getInt(2));
+            }
+            timer.stop(read);
+        }
+        return changes;
+    }
+
+    /**
+     * Diff the snapshot's latest rows into the hierarchy. This supersedes any re-reads still running.
+     */
+    private void applySnapshot() {
+        List<Object[]> rows = snapshot.getRows();
+        refresh(stamp(), current -> current.patched(current.diff(rows)));
+    }
+}
@@ -22,6 +22,17 @@ public interface IBaseQuery<R extends IBaseRow<?>> {
      * @return The ObservableList of R-type objects encapsulating the rows from executing the underlying Query.
      */
     ObservableList<R> getRows();
+    /**
+     * @return The ObservableValue of the SQL which this Query executes.
+     */
+    ObservableValue<String> getDsqlQuery();
+    /**
+     * @return SQL which selects exactly the rows this Query shows, eg to export them. By default that's the SQL it executes,
+     * but a Query may fetch more than it shows and filter the rest out in memory.
+     */
+    default String getVisibleSQL() {
+        return getDsqlQuery().getValue();
+    }
     ObservableValue<ResultSet> getDResultSet();
     ObservableValue<ResultSetMetaData> getDResultSetMetaData();
 
@@ -21,4 +21,11 @@ public interface IConstrainedQuery {
     boolean removeConstraint(SQLQueryConstraint toRemove);
 
     boolean removeConstraint(Set<SQLQueryConstraint> toRemoveConSet);
+
+    /**
+     * Remove some constraints and add others as one change, so the query is only re-evaluated once.
+     * @param toRemove The constraints to remove.
+     * @param toAdd The constraints to add.
+     */
+    void replaceConstraints(Set<SQLQueryConstraint> toRemove, Set<SQLQueryConstraint> toAdd);
 }
@@ -0,0 +1,597 @@
+package model.Query;
+
+import javafx.application.Platform;
+import javafx.beans.Observable;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.util.StringConverter;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * A KeyLookup maps the integer Primary Keys of a table (eg Customer_ID) to a column which represents them to users (eg
+ * Customer_Name), and back again. There's one KeyLookup per table and label column for the whole application, shared by
+ * every combo box, cell, and report which shows those keys as names.
+ * <br>
+ * Labels are held in a primitive int-keyed map, with a reverse index from each label to the keys carrying it, and a sorted
+ * index of case-folded labels for prefix searches, so type-ahead over tens of thousands of customers is a binary search.
+ * Labels shared by several keys are shown with the key appended (see {@link #disambiguate}). All three are
+ * immutable once published and are replaced atomically (see {@link VersionedIndex}), so readers on any thread never lock.
+ * The lookup starts from the table's {@link ReferenceSnapshot} (usually read from disk), and then stays in sync
+ * incrementally: when the table's channel publishes the keys which changed, only those rows are re-read. When the snapshot
+ * itself refreshes, it's diffed against the lookup, so a refresh which agrees with the changes already applied changes nothing.
+ */
+public class KeyLookup extends VersionedIndex<KeyLookup.Contents> {
+    private static final Map<String, KeyLookup> lookups = new HashMap<>();
+
+    /**
+     * The table and label column behind each foreign key column which is shown by name.
+     */
+    private static final Map<String, String[]> keyColumnTables = Map.of(
+            "Customer_ID", new String[]{"customers", "Customer_Name"},
+            "User_ID", new String[]{"users", "User_Name"},
+            "Contact_ID", new String[]{"contacts", "Contact_Name"},
+            "Division_ID", new String[]{"first_level_divisions", "Division"},
+            "Country_ID", new String[]{"countries", "Country"},
+            "Appointment_ID", new String[]{"appointments", "Title"}
+    );
+
+    /**
+     * Every lookup re-reads its changed rows on this one thread.
+     */
+    private static final Updater updater = new Updater("key-lookup-update");
+
+    private final String tableName;
+    private final String keyColumn;
+    private final String labelColumn;
+    private final ReferenceSnapshot snapshot;
+    private final ObservableList<Integer> keys = FXCollections.observableArrayList();
+
+    /**
+     * Get the shared lookup from a table's Primary Key to one of its columns, loading it if this is the first request for it.
+     * @param tableName The name of a table with a single integer Primary Key.
+     * @param labelColumn The column to represent each key by.
+     * @return The shared KeyLookup.
+     */
+    public static synchronized KeyLookup of(String tableName, String labelColumn) {
+        return lookups.computeIfAbsent(tableName + "->" + labelColumn, key -> create(tableName, labelColumn));
+    }
+
+    /**
+     * Get the shared lookup for a foreign key column, eg Contact_ID to Contact_Name.
+     * @param keyColumn The name of a foreign key column.
+     * @return The shared KeyLookup, or null if that column isn't shown by name.
+     */
+    public static KeyLookup forKeyColumn(String keyColumn) {
+        String[] tableLabel = keyColumnTables.get(keyColumn);
+        return tableLabel == null ? null : of(tableLabel[0], tableLabel[1]);
+    }
+
+    /**
+     * @param keyColumn The name of a foreign key column.
+     * @return The table that column refers to, or null if it isn't shown by name.
+     */
+    public static String tableForKeyColumn(String keyColumn) {
+        String[] tableLabel = keyColumnTables.get(keyColumn);
+        return tableLabel == null ? null : tableLabel[0];
+    }
+
+    /**
+     * @param keyColumn The name of a foreign key column.
+     * @return The column which represents that column's keys, or null if it isn't shown by name.
+     */
+    public static String labelColumnForKeyColumn(String keyColumn) {
+        String[] tableLabel = keyColumnTables.get(keyColumn);
+        return tableLabel == null ? null : tableLabel[1];
+    }
+
+    /**
+     * @return The label in the form prefix searches compare: lower case, regardless of the user's locale.
+     */
+    public static String fold(String label) {
+        return label.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return How a label shared by several keys is shown for one of them.
+     */
+    public static String disambiguate(String label, Object key) {
+        return label + " (" + key + ")";
+    }
+
+    private static KeyLookup create(String tableName, String labelColumn) {
+        Set<String> pkColumns = TableQuery.getPKColumns(tableName);
+        if (pkColumns.size() != 1) throw new IllegalArgumentException("KeyLookup cannot run on tables without exactly one Primary Key: " + tableName);
+        String keyColumn = pkColumns.iterator().next();
+        return new KeyLookup(tableName, keyColumn, labelColumn, ReferenceSnapshot.of(tableName, keyColumn, labelColumn));
+    }
+
+    private KeyLookup(String tableName, String keyColumn, String labelColumn, ReferenceSnapshot snapshot) {
+        super(updater, Contents.of(snapshot.getRows()));
+        this.tableName = tableName;
+        this.keyColumn = keyColumn;
+        this.labelColumn = labelColumn;
+        this.snapshot = snapshot;
+
+        keys.setAll(contents().boxedKeys());
+        snapshot.rowsProperty().addListener(observable -> applySnapshot());
+        BaseQuery.subscribe(tableName, this::onChannelChange);
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getKeyColumn() {
+        return keyColumn;
+    }
+
+    public String getLabelColumn() {
+        return labelColumn;
+    }
+
+    /**
+     * @param key A Primary Key.
+     * @return The key's label, or null if there's no such key.
+     */
+    public String label(int key) {
+        return contents().labels.get(key);
+    }
+
+    /**
+     * @param key A Primary Key, or null.
+     * @return The key's label, or null if it's null or there's no such key.
+     */
+    public String label(Integer key) {
+        return key == null ? null : label(key.intValue());
+    }
+
+    /**
+     * @param label A label.
+     * @return Every key carrying exactly that label, in ascending order. Don't modify the array.
+     */
+    public int[] keysFor(String label) {
+        int[] found = label == null ? null : contents().keysByLabel.get(label);
+        return found == null ? Contents.noKeys : found;
+    }
+
+    /**
+     * @param key A Primary Key, or null.
+     * @return How the key is shown: its label, followed by the key if another key shares that label. Null if there's no such key.
+     */
+    public String display(Integer key) {
+        String label = label(key);
+        if (label == null) return null;
+        return keysFor(label).length == 1 ? label : disambiguate(label, key);
+    }
+
+    /**
+     * @param s A label, or a label followed by its key in brackets (as {@link #display} shows labels which several keys share).
+     * @return The key the String identifies, or null if none does, or if several keys carry it and it doesn't say which.
+     */
+    public Integer keyFor(String s) {
+        if (s == null) return null;
+        int[] found = keysFor(s);
+        if (found.length > 0) return found.length == 1 ? found[0] : null;
+        int open = s.lastIndexOf(" (");
+        if (open < 0 || !s.endsWith(")")) return null;
+        try {
+            int key = Integer.parseInt(s.substring(open + 2, s.length() - 1));
+            return Arrays.binarySearch(keysFor(s.substring(0, open)), key) >= 0 ? key : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Find the keys whose labels start with the given text, ignoring case.
+     * @param prefix The start of a label.
+     * @param limit The most keys to return.
+     * @return Up to {@code limit} keys, in order of their labels.
+     */
+    public int[] keysStartingWith(String prefix, int limit) {
+        Contents current = contents();
+        String folded = fold(prefix);
+        int from = current.firstAtOrAfter(folded);
+        int to = from;
+        while (to < current.foldedLabels.length && to - from < limit && current.foldedLabels[to].startsWith(folded)) to++;
+        return Arrays.copyOfRange(current.foldedKeys, from, to);
+    }
+
+    /**
+     * @return How many keys there are.
+     */
+    public int size() {
+        return contents().labels.size();
+    }
+
+    /**
+     * @return Every key, in ascending order, as a list which is updated in place (on the JavaFX thread) as keys are added,
+     * removed, or relabelled, so it can back a ComboBox directly.
+     */
+    public ObservableList<Integer> getKeys() {
+        return FXCollections.unmodifiableObservableList(keys);
+    }
+
+    /**
+     * @return A StringConverter between this lookup's keys and their labels.
+     */
+    public StringConverter<Integer> converter() {
+        return new StringConverter<>() {
+            @Override
+            public String toString(Integer key) {
+                return display(key);
+            }
+
+            @Override
+            public Integer fromString(String label) {
+                return keyFor(label);
+            }
+        };
+    }
+
+    // Keeping in sync ////////////////////////////////////////////
+
+    /**
+     * When the table's channel publishes the keys which changed, re-read just those rows. Otherwise the snapshot (which
+     * also listens to the channel) re-reads the whole table, and its refresh is diffed in.
+     */
+    private void onChannelChange(Observable observable) {
+        Set<Object> changedKeys = observable instanceof ChannelEvent ? ((ChannelEvent) observable).getChangedKeys(tableName) : null;
+        if (changedKeys == null || changedKeys.isEmpty()) return;
+        List<Object> changed = new ArrayList<>(changedKeys);
+        queuePatch(c -> read(c, changed), this::applyChanges);
+    }
+
+    /**
+     * Read the current labels of the given keys.
+     * @return The new label of each key which is still present, and the keys which are gone.
+     */
+    private Changes read(Connection c, List<Object> changedKeys) throws SQLException {
+        Changes changes = new Changes();
+        for (Object key : changedKeys) changes.remove(((Number) key).intValue()); // Unless re-read below
+        String sql = "SELECT " + keyColumn + ", " + labelColumn + " FROM " + tableName
+                + " WHERE " + keyColumn + " IN (" + String.join(", ", Collections.nCopies(changedKeys.size(), "?")) + ")";
+        int read = 0;
+        try (QueryStats.Timer timer = QueryStats.start(sql); PreparedStatement ps = c.prepareStatement(sql)) {
+            int i = 1;
+            for (Object key : changedKeys) ps.setObject(i++, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                for (; rs.next(); read++) changes.put(rs.getInt(1), Objects.toString(rs.getObject(2), null));
+            }
+            timer.stop(read);
+        }
+        return changes;
+    }
+
+    /**
+     * Diff the snapshot's latest rows into the lookup. This supersedes any re-reads still running, which may have read
+     * their rows before the snapshot did.
+     */
+    private void applySnapshot() {
+        List<Object[]> rows = snapshot.getRows();
+        refresh(stamp(), current -> applyChanges(current, current.diff(rows)));
+    }
+
+    /**
+     * Build new Contents with the given changes, and queue the same changes to {@link #keys}. Called while the Contents are
+     * being published, so batches are queued in the order their Contents were published, and the list passes through the
+     * same states.
+     */
+    private Contents applyChanges(Contents before, Changes changes) {
+        if (changes.isEmpty()) return before;
+        Contents after = before.patched(changes);
+        List<Integer> changedKeys = changes.sortedKeys();
+        Platform.runLater(() -> {
+            for (Integer key : changedKeys) {
+                int position = Collections.binarySearch(keys, key);
+                boolean present = after.labels.containsKey(key);
+                if (position >= 0 && !present) keys.remove(position);
+                else if (position >= 0) keys.set(position, key); // Relabelled: replacing it redraws cells showing it
+                else if (present) keys.add(-position - 1, key);
+            }
+        });
+        return after;
+    }
+
+    /**
+     * The changes between two versions of a lookup: the new label of each key which was added or relabelled (which may be
+     * null), and the keys which were removed.
+     */
+    static final class Changes {
+        final Map<Integer, String> labels = new HashMap<>();
+        final Set<Integer> removed = new HashSet<>();
+
+        void put(int key, String label) {
+            removed.remove(key);
+            labels.put(key, label);
+        }
+
+        void remove(int key) {
+            labels.remove(key);
+            removed.add(key);
+        }
+
+        boolean contains(int key) {
+            return labels.containsKey(key) || removed.contains(key);
+        }
+
+        boolean isEmpty() {
+            return labels.isEmpty() && removed.isEmpty();
+        }
+
+        List<Integer> sortedKeys() {
+            List<Integer> keys = new ArrayList<>(labels.keySet());
+            keys.addAll(removed);
+            Collections.sort(keys);
+            return keys;
+        }
+    }
+
+    /**
+     * An immutable set of labels, with a reverse index and a prefix index.
+     */
+    static final class Contents {
+        static final int[] noKeys = new int[0];
+
+        final IntStringMap labels;
+        final Map<String, int[]> keysByLabel;
+        final String[] foldedLabels; // Sorted, with ties in key order
+        final int[] foldedKeys; // Parallel to foldedLabels
+
+        Contents(IntStringMap labels, Map<String, int[]> keysByLabel, String[] foldedLabels, int[] foldedKeys) {
+            this.labels = labels;
+            this.keysByLabel = keysByLabel;
+            this.foldedLabels = foldedLabels;
+            this.foldedKeys = foldedKeys;
+        }
+
+        /**
+         * @return The position of the first entry in the prefix index which sorts at or after the given folded label.
+         */
+        int firstAtOrAfter(String folded) {
+            int lo = 0, hi = foldedLabels.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (foldedLabels[mid].compareTo(folded) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        static Contents of(List<Object[]> rows) {
+            IntStringMap labels = new IntStringMap(rows.size());
+            for (Object[] row : rows) {
+                if (row[0] != null) labels.put(((Number) row[0]).intValue(), Objects.toString(row[1], null));
+            }
+            Map<String, int[]> keysByLabel = new HashMap<>();
+            List<Integer> labelled = new ArrayList<>();
+            for (int key : labels.sortedKeys()) {
+                String label = labels.get(key);
+                if (label == null) continue;
+                keysByLabel.merge(label, new int[]{key}, Contents::union);
+                labelled.add(key);
+            }
+            labelled.sort(Comparator.comparing((Integer key) -> fold(labels.get(key))).thenComparing(key -> key));
+            String[] foldedLabels = new String[labelled.size()];
+            int[] foldedKeys = new int[labelled.size()];
+            for (int i = 0; i < foldedKeys.length; i++) {
+                foldedKeys[i] = labelled.get(i);
+                foldedLabels[i] = fold(labels.get(foldedKeys[i]));
+            }
+            return new Contents(labels, keysByLabel, foldedLabels, foldedKeys);
+        }
+
+        /**
+         * @return The changes which turn these Contents into the given rows.
+         */
+        Changes diff(List<Object[]> rows) {
+            Changes changes = new Changes();
+            IntStringMap seen = new IntStringMap(rows.size());
+            for (Object[] row : rows) {
+                if (row[0] == null) continue;
+                int key = ((Number) row[0]).intValue();
+                String label = Objects.toString(row[1], null);
+                seen.put(key, label);
+                if (!labels.containsKey(key) || !Objects.equals(labels.get(key), label)) changes.put(key, label);
+            }
+            for (int key : labels.keys()) if (!seen.containsKey(key)) changes.remove(key);
+            return changes;
+        }
+
+        /**
+         * @return New Contents with the given changes. Only the labels which changed are re-indexed, and the prefix index
+         * is merged rather than re-sorted.
+         */
+        Contents patched(Changes changes) {
+            IntStringMap newLabels = labels.copy();
+            Map<String, int[]> newKeysByLabel = new HashMap<>(keysByLabel);
+            for (int key : changes.sortedKeys()) {
+                String oldLabel = labels.get(key);
+                if (oldLabel != null) newKeysByLabel.computeIfPresent(oldLabel, (l, keys) -> without(keys, key));
+            }
+            for (Integer key : changes.removed) newLabels.remove(key);
+            List<Integer> added = new ArrayList<>();
+            changes.labels.forEach((key, label) -> {
+                newLabels.put(key, label);
+                if (label != null) {
+                    newKeysByLabel.merge(label, new int[]{key}, Contents::union);
+                    added.add(key);
+                }
+            });
+
+            // Drop every changed key from the prefix index, then merge the changed keys back in at their new labels
+            added.sort(Comparator.comparing((Integer key) -> fold(newLabels.get(key))).thenComparing(key -> key));
+            int kept = 0;
+            for (int key : foldedKeys) if (!changes.contains(key)) kept++;
+            String[] newFoldedLabels = new String[kept + added.size()];
+            int[] newFoldedKeys = new int[newFoldedLabels.length];
+            int i = 0, a = 0, k = 0;
+            while (i < foldedKeys.length || a < added.size()) {
+                if (i < foldedKeys.length && changes.contains(foldedKeys[i])) {
+                    i++;
+                    continue;
+                }
+                String addedLabel = a < added.size() ? fold(newLabels.get(added.get(a))) : null;
+                boolean takeOld = addedLabel == null || (i < foldedKeys.length
+                        && (foldedLabels[i].compareTo(addedLabel) < 0 || (foldedLabels[i].equals(addedLabel) && foldedKeys[i] < added.get(a))));
+                if (takeOld) {
+                    newFoldedLabels[k] = foldedLabels[i];
+                    newFoldedKeys[k++] = foldedKeys[i++];
+                } else {
+                    newFoldedLabels[k] = addedLabel;
+                    newFoldedKeys[k++] = added.get(a++);
+                }
+            }
+            return new Contents(newLabels, newKeysByLabel, newFoldedLabels, newFoldedKeys);
+        }
+
+        List<Integer> boxedKeys() {
+            List<Integer> boxed = new ArrayList<>(labels.size());
+            for (int key : labels.sortedKeys()) boxed.add(key);
+            return boxed;
+        }
+
+        /**
+         * @return The sorted union of two sorted arrays of keys.
+         */
+        private static int[] union(int[] a, int[] b) {
+            int[] merged = new int[a.length + b.length];
+            int i = 0, j = 0, k = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] == b[j]) j++; // Already present
+                else merged[k++] = a[i] < b[j] ? a[i++] : b[j++];
+            }
+            while (i < a.length) merged[k++] = a[i++];
+            while (j < b.length) merged[k++] = b[j++];
+            return k == merged.length ? merged : Arrays.copyOf(merged, k);
+        }
+
+        /**
+         * @return The array without the given key, or null (removing the label) if that was its last key.
+         */
+        private static int[] without(int[] keys, int key) {
+            int position = Arrays.binarySearch(keys, key);
+            if (position < 0) return keys;
+            if (keys.length == 1) return null;
+            int[] remaining = new int[keys.length - 1];
+            System.arraycopy(keys, 0, remaining, 0, position);
+            System.arraycopy(keys, position + 1, remaining, position, keys.length - position - 1);
+            return remaining;
+        }
+    }
+
+    /**
+     * An open-addressing hash map from primitive ints to Strings, which avoids boxing every key and allocating an entry per
+     * mapping. Values may be null; whether a key is present is tracked separately.
+     */
+    static final class IntStringMap {
+        private static final int empty = Integer.MIN_VALUE; // Not a valid auto-increment key
+        private int[] keys;
+        private String[] values;
+        private int size;
+
+        IntStringMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+            keys = new int[capacity];
+            Arrays.fill(keys, empty);
+            values = new String[capacity];
+        }
+
+        private IntStringMap(IntStringMap other) {
+            keys = other.keys.clone();
+            values = other.values.clone();
+            size = other.size;
+        }
+
+        IntStringMap copy() {
+            return new IntStringMap(this);
+        }
+
+        int size() {
+            return size;
+        }
+
+        private static int home(int key, int mask) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private int slot(int key) {
+            int mask = keys.length - 1;
+            int i = home(key, mask);
+            while (keys[i] != empty && keys[i] != key) i = (i + 1) & mask;
+            return i;
+        }
+
+        boolean containsKey(int key) {
+            return keys[slot(key)] == key;
+        }
+
+        String get(int key) {
+            int i = slot(key);
+            return keys[i] == key ? values[i] : null;
+        }
+
+        void put(int key, String value) {
+            if (key == empty) throw new IllegalArgumentException("Unsupported key " + key);
+            int i = slot(key);
+            if (keys[i] != key) {
+                if ((size + 1) * 2 > keys.length) {
+                    resize();
+                    i = slot(key);
+                }
+                keys[i] = key;
+                size++;
+            }
+            values[i] = value;
+        }
+
+        /**
+         * Remove a key, shifting later members of its probe sequence back so lookups never need tombstones.
+         */
+        void remove(int key) {
+            int mask = keys.length - 1;
+            int i = slot(key);
+            if (keys[i] != key) return;
+            size--;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (keys[j] == empty) break;
+                int home = home(keys[j], mask);
+                // Move j back into the hole at i, unless its home lies cyclically in (i, j]
+                if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) continue;
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+            keys[i] = empty;
+            values[i] = null;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            String[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            Arrays.fill(keys, empty);
+            values = new String[keys.length];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) if (oldKeys[i] != empty) put(oldKeys[i], oldValues[i]);
+        }
+
+        int[] keys() {
+            int[] found = new int[size];
+            int k = 0;
+            for (int key : keys) if (key != empty) found[k++] = key;
+            return found;
+        }
+
+        int[] sortedKeys() {
+            int[] found = keys();
+            Arrays.sort(found);
+            return found;
+        }
+    }
+}
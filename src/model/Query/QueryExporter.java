@@ -0,0 +1,205 @@
+package model.Query;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.*;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Consumer;
+
+/**
+ * QueryExporter writes the results of a Query's SQL to CSV or JSON, without building any Rows. The SQL is executed on its
+ * own Connection (see {@link SConnection#openConnection()}) with a forward-only, read-only Statement which streams results
+ * from the database, and each row is written to a buffered sink as soon as it's read, so memory use doesn't grow with the
+ * size of the result.
+ */
+public class QueryExporter extends SConnection {
+    public enum Format {
+        CSV, JSON
+    }
+
+    /**
+     * Progress is reported after every this many rows.
+     */
+    private static final int progressInterval = 10_000;
+
+    private static final DateTimeFormatter timestampFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * This class describes the progress, and eventually the outcome, of an export.
+     */
+    public static class Stats {
+        private final long startNanos = System.nanoTime();
+        private long rows = 0;
+        private long elapsedNanos = 0;
+
+        /**
+         * @return The number of rows written so far.
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return The time spent exporting so far, in milliseconds.
+         */
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * @return The rate rows have been written at so far.
+         */
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+        }
+
+        private void tick() {
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * Export the rows a Query currently shows, as selected by its {@link IBaseQuery#getVisibleSQL() visible SQL}.
+     * @see #export(String, Format, Writer, Consumer)
+     */
+    public static Stats export(IBaseQuery<?> query, Format format, Writer out, Consumer<Stats> progress) throws SQLException, IOException {
+        return export(query.getVisibleSQL(), format, out, progress);
+    }
+
+    /**
+     * Export the results of the given SQL to the given Writer. The Writer is flushed, but not closed.
+     * @param sql The SQL query to export the results of.
+     * @param format The format to write.
+     * @param out The destination of the export.
+     * @param progress Called with the running Stats periodically, and once when finished. May be null.
+     * @return The final Stats of the export.
+     * @throws SQLException If the query can't be executed.
+     * @throws IOException If the destination can't be written to.
+     */
+    public static Stats export(String sql, Format format, Writer out, Consumer<Stats> progress) throws SQLException, IOException {
+        Stats stats = new Stats();
+        BufferedWriter sink = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out, 1 << 16);
+
+        try (Connection exportConn = openConnection();
+             Statement s = exportConn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            s.setFetchSize(Integer.MIN_VALUE); // Tells the MySQL driver to stream rows, rather than reading them all up front
+            try (QueryStats.Timer timer = QueryStats.start(sql); ResultSet rs = s.executeQuery(sql)) {
+                ResultSetMetaData md = rs.getMetaData();
+                int columnCount = md.getColumnCount();
+                String[] labels = new String[columnCount];
+                for (int i = 0; i < columnCount; i++) labels[i] = md.getColumnLabel(i + 1);
+
+                // Header
+                if (format == Format.CSV) {
+                    for (int i = 0; i < columnCount; i++) {
+                        if (i > 0) sink.write(',');
+                        writeCSVField(sink, labels[i]);
+                    }
+                    sink.write("\r\n");
+                } else {
+                    sink.write('[');
+                }
+
+                // Rows
+                while (rs.next()) {
+                    if (format == Format.CSV) {
+                        for (int i = 0; i < columnCount; i++) {
+                            if (i > 0) sink.write(',');
+                            Object value = rs.getObject(i + 1);
+                            if (value != null) writeCSVField(sink, toText(value));
+                        }
+                        sink.write("\r\n");
+                    } else {
+                        sink.write(stats.rows == 0 ? "\n{" : ",\n{");
+                        for (int i = 0; i < columnCount; i++) {
+                            if (i > 0) sink.write(',');
+                            writeJSONString(sink, labels[i]);
+                            sink.write(':');
+                            writeJSONValue(sink, rs.getObject(i + 1));
+                        }
+                        sink.write('}');
+                    }
+
+                    if (++stats.rows % progressInterval == 0) {
+                        stats.tick();
+                        if (progress != null) progress.accept(stats);
+                    }
+                }
+
+                if (format == Format.JSON) sink.write("\n]\n");
+                timer.stop(stats.rows);
+            }
+        } finally {
+            sink.flush();
+        }
+
+        stats.tick();
+        if (progress != null) progress.accept(stats);
+        return stats;
+    }
+
+    /**
+     * @return The textual form of a value, as written to either format.
+     */
+    private static String toText(Object value) {
+        if (value instanceof Timestamp) return ((Timestamp) value).toLocalDateTime().format(timestampFormat);
+        return value.toString();
+    }
+
+    /**
+     * Write a CSV field, quoting it only if it contains a comma, quote, or line break.
+     */
+    static void writeCSVField(Writer sink, String text) throws IOException {
+        boolean needsQuotes = false;
+        for (int i = 0; i < text.length() && !needsQuotes; i++) {
+            char c = text.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            sink.write(text);
+            return;
+        }
+        sink.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') sink.write('"');
+            sink.write(c);
+        }
+        sink.write('"');
+    }
+
+    /**
+     * Write a JSON value: numbers and booleans bare, anything else as a String. JSON has no NaN or Infinity, so those are null.
+     */
+    static void writeJSONValue(Writer sink, Object value) throws IOException {
+        if (value == null || isNonFinite(value)) sink.write("null");
+        else if (value instanceof Number || value instanceof Boolean) sink.write(value.toString());
+        else writeJSONString(sink, toText(value));
+    }
+
+    private static boolean isNonFinite(Object value) {
+        if (value instanceof Double) return !Double.isFinite((Double) value);
+        if (value instanceof Float) return !Float.isFinite((Float) value);
+        return false;
+    }
+
+    static void writeJSONString(Writer sink, String text) throws IOException {
+        sink.write('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> sink.write("\\\"");
+                case '\\' -> sink.write("\\\\");
+                case '\n' -> sink.write("\\n");
+                case '\r' -> sink.write("\\r");
+                case '\t' -> sink.write("\\t");
+                default -> {
+                    if (c < 0x20) sink.write(String.format("\\u%04x", (int) c));
+                    else sink.write(c);
+                }
+            }
+        }
+        sink.write('"');
+    }
+}
@@ -0,0 +1,238 @@
+package model.Query;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * QueryStats records how long each SQL statement the application executes takes, and how many rows it touches.
+ * <br>
+ * Statements are grouped by their normalized "shape" (literals and IN-lists replaced by placeholders, whitespace collapsed),
+ * so the same query with different values is counted together. Each shape keeps a histogram of latencies in power-of-two
+ * microsecond buckets, which is enough to estimate percentiles without keeping every sample.
+ * <br>
+ * Any statement slower than the {@code scheduling.slowQueryMillis} system property (250ms by default) is also written, with its
+ * full SQL, to a slow-query log named by {@code scheduling.slowQueryLog} ({@code slow_queries.log} by default). The log rolls
+ * over once it reaches 1MB, keeping a few previous files. When the application closes, {@link #logSummary()} appends the
+ * session's {@link #summary()} to the same log.
+ * <br>
+ * Row counts for scrollable results cost a walk over the whole cursor, so {@link #rowCount(ResultSet)} only takes them when
+ * the {@code scheduling.queryRowCounts} system property is true.
+ * <br>
+ * Usage: open a Timer with {@link #start(String)} in a try-with-resources immediately before executing a statement, and call
+ * {@link Timer#stop(long)} once its results have been read. A statement which throws before then is still recorded, when
+ * the Timer closes, with an unknown row count.
+ */
+public final class QueryStats {
+    private static final long slowThresholdNanos = Long.getLong("scheduling.slowQueryMillis", 250) * 1_000_000;
+    private static final Path slowLogPath = Path.of(System.getProperty("scheduling.slowQueryLog", "slow_queries.log"));
+    private static final long slowLogMaxBytes = 1 << 20;
+    private static final int slowLogKeptFiles = 3;
+    private static PrintStream slowLog;
+    private static final boolean countScrollableRows = Boolean.getBoolean("scheduling.queryRowCounts");
+
+    private static final int bucketCount = 32;
+
+    private static final Pattern stringLiteral = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    private static final Pattern numberLiteral = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern placeholderList = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern whitespace = Pattern.compile("\\s+");
+
+    private static final Map<String, String> shapeCache = new ConcurrentHashMap<>();
+    private static final int shapeCacheLimit = 1024;
+    private static final Map<String, ShapeStats> statsPerShape = new ConcurrentHashMap<>();
+
+    private QueryStats() {
+    }
+
+    /**
+     * A Timer measures one execution of one statement, which is recorded once: when it's stopped, or failing that when it's closed.
+     */
+    public static final class Timer implements AutoCloseable {
+        private final String sql;
+        private final long startNanos = System.nanoTime();
+        private boolean stopped = false;
+
+        private Timer(String sql) {
+            this.sql = sql;
+        }
+
+        /**
+         * Record the execution as finished.
+         * @param rows The number of rows the statement returned or affected, or -1 if that isn't known.
+         */
+        public void stop(long rows) {
+            if (stopped) return;
+            stopped = true;
+            record(sql, System.nanoTime() - startNanos, rows);
+        }
+
+        /**
+         * Record the execution, if it wasn't already stopped (eg because the statement failed), with an unknown row count.
+         */
+        @Override
+        public void close() {
+            stop(-1);
+        }
+    }
+
+    /**
+     * The statistics gathered for a single shape of SQL.
+     */
+    private static final class ShapeStats {
+        private final long[] buckets = new long[bucketCount];
+        private long count = 0;
+        private long totalNanos = 0;
+        private long maxNanos = 0;
+        private long rows = 0;
+
+        synchronized void add(long nanos, long rowCount) {
+            long micros = nanos / 1000;
+            buckets[Math.min(bucketCount - 1, 64 - Long.numberOfLeadingZeros(micros))]++;
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            if (rowCount > 0) rows += rowCount;
+        }
+
+        /**
+         * @return An upper bound on the given percentile of latency, in milliseconds.
+         */
+        synchronized double percentileMillis(double percentile) {
+            long target = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < bucketCount; i++) {
+                seen += buckets[i];
+                if (seen >= target) return Math.min((1L << i) / 1000.0, maxNanos / 1e6); // Bucket i holds latencies under 2^i microseconds
+            }
+            return maxNanos / 1e6;
+        }
+    }
+
+    /**
+     * Begin timing the execution of a statement.
+     * @param sql The SQL being executed.
+     * @return A Timer to stop once the statement's results have been read, and to close whether or not they were.
+     */
+    public static Timer start(String sql) {
+        return new Timer(sql);
+    }
+
+    /**
+     * Record one execution of a statement.
+     * @param sql The SQL which was executed.
+     * @param nanos How long it took.
+     * @param rows The number of rows it returned or affected, or -1 if that isn't known.
+     */
+    public static void record(String sql, long nanos, long rows) {
+        statsPerShape.computeIfAbsent(shapeOf(sql), shape -> new ShapeStats()).add(nanos, rows);
+        if (nanos >= slowThresholdNanos) logSlow(sql, nanos, rows);
+    }
+
+    /**
+     * @param sql Some SQL.
+     * @return The SQL with its literal values and lists of placeholders replaced, so statements which differ only in their
+     * values have the same shape.
+     */
+    public static String shapeOf(String sql) {
+        String shape = shapeCache.get(sql);
+        if (shape != null) return shape;
+
+        shape = stringLiteral.matcher(sql).replaceAll("?");
+        shape = numberLiteral.matcher(shape).replaceAll("?");
+        shape = placeholderList.matcher(shape).replaceAll("(?...)");
+        shape = whitespace.matcher(shape).replaceAll(" ").strip();
+        if (shape.endsWith(";")) shape = shape.substring(0, shape.length() - 1).strip();
+
+        if (shapeCache.size() >= shapeCacheLimit) shapeCache.clear(); // Constrained queries can produce endless distinct SQL
+        shapeCache.put(sql, shape);
+        return shape;
+    }
+
+    /**
+     * Count the rows in a freshly executed ResultSet, to pass to {@link Timer#stop(long)}, if row counts are enabled.
+     * @param rs A ResultSet whose cursor is before its first row, where it's left.
+     * @return The number of rows, or -1 if the ResultSet is forward-only or row counts aren't enabled.
+     * @throws SQLException If the driver fails to move the cursor.
+     */
+    public static long rowCount(ResultSet rs) throws SQLException {
+        if (!countScrollableRows || rs.getType() == ResultSet.TYPE_FORWARD_ONLY) return -1;
+        long rows = rs.last() ? rs.getRow() : 0;
+        rs.beforeFirst();
+        return rows;
+    }
+
+    /**
+     * @return A table describing every shape of SQL executed so far, slowest in total first.
+     */
+    public static String summary() {
+        StringBuilder summary = new StringBuilder(String.format("%8s %10s %9s %9s %9s %9s %9s %9s  %s%n",
+                "count", "total ms", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms", "rows", "sql"));
+        statsPerShape.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, ShapeStats> e) -> e.getValue().totalNanos).reversed())
+                .forEach(e -> {
+                    ShapeStats s = e.getValue();
+                    synchronized (s) {
+                        summary.append(String.format("%8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9d  %s%n",
+                                s.count, s.totalNanos / 1e6, s.totalNanos / 1e6 / s.count,
+                                s.percentileMillis(0.5), s.percentileMillis(0.95), s.percentileMillis(0.99),
+                                s.maxNanos / 1e6, s.rows, e.getKey()));
+                    }
+                });
+        return summary.toString();
+    }
+
+    // The slow-query log ////////////////////////////////////////////
+
+    /**
+     * Append the {@link #summary()} of every statement executed so far to the slow-query log, eg as the application closes.
+     * @param notes Lines from other parts of the data layer to log with it, eg {@link WindowPrefetcher#summary()}.
+     */
+    public static synchronized void logSummary(String... notes) {
+        if (statsPerShape.isEmpty()) return;
+        try {
+            slowLog().printf("%s\tsummary%n%s", LocalDateTime.now(), summary());
+            for (String note : notes) slowLog().println(note);
+            if (Files.size(slowLogPath) >= slowLogMaxBytes) rollSlowLog();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static PrintStream slowLog() throws IOException {
+        if (slowLog == null) slowLog = new PrintStream(new FileOutputStream(slowLogPath.toFile(), true), true);
+        return slowLog;
+    }
+
+    private static synchronized void logSlow(String sql, long nanos, long rows) {
+        try {
+            slowLog().printf("%s\t%.1fms\trows=%d\tthread=%s\t%s%n", LocalDateTime.now(), nanos / 1e6, rows,
+                    Thread.currentThread().getName(), whitespace.matcher(sql).replaceAll(" ").strip());
+            if (Files.size(slowLogPath) >= slowLogMaxBytes) rollSlowLog();
+        } catch (IOException e) {
+            e.printStackTrace(); // Losing the log shouldn't stop the query
+        }
+    }
+
+    /**
+     * Move each kept log file along by one (dropping the oldest), and start a fresh log.
+     */
+    private static void rollSlowLog() throws IOException {
+        slowLog.close();
+        slowLog = null;
+        for (int i = slowLogKeptFiles - 1; i >= 1; i--) {
+            Path older = Path.of(slowLogPath + "." + i);
+            if (Files.exists(older)) Files.move(older, Path.of(slowLogPath + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(slowLogPath, Path.of(slowLogPath + ".1"), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
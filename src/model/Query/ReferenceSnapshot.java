@@ -0,0 +1,341 @@
+package model.Query;
+
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A ReferenceSnapshot holds the rows of a small, rarely-changing lookup table (eg countries, or contacts), and keeps a copy
+ * of them on disk so they don't have to be re-read from the database every session.
+ * <br>
+ * When a snapshot is first requested, it's loaded from its file under {@link #cacheDirectory}, and a background thread
+ * checks whether it's stale by comparing a cheap fingerprint of the table (its row count and latest {@code Last_Update},
+ * or a checksum of the requested columns for tables without one) with the fingerprint stored in the file. Only a stale
+ * snapshot is re-read, in which case the file is replaced and {@link #rowsProperty()} updates on the JavaFX thread. If there's
+ * no usable file, the rows are read immediately instead, so callers always start with real data.
+ * <br>
+ * Snapshots subscribe to their table's channel (see {@link BaseQuery#subscribe}), so edits made during the session are
+ * picked up too.
+ */
+public class ReferenceSnapshot extends SConnection {
+    private static final Path cacheDirectory = Path.of("reference_cache");
+    private static final int magic = 0x43313935; // "C195"
+    private static final int formatVersion = 1;
+
+    // Value tags in the snapshot file
+    private static final byte tagNull = 0;
+    private static final byte tagInteger = 1;
+    private static final byte tagLong = 2;
+    private static final byte tagString = 3;
+    private static final byte tagTimestamp = 4;
+    private static final byte tagBoolean = 5;
+    private static final byte tagDouble = 6;
+
+    private static final Map<String, ReferenceSnapshot> snapshots = new HashMap<>();
+
+    /**
+     * Every snapshot is checked and refreshed on this one thread, which owns {@link #refreshConn}.
+     */
+    private static final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "reference-snapshot-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+    private static Connection refreshConn;
+
+    private final String tableName;
+    private final List<String> columns;
+    private final Path file;
+    private final ReadOnlyObjectWrapper<List<Object[]>> rows = new ReadOnlyObjectWrapper<>(List.of());
+    private final AtomicBoolean refreshQueued = new AtomicBoolean(false);
+    private final InvalidationListener channelListener = observable -> refreshLater(true);
+    private volatile long[] fingerprint;
+
+    /**
+     * This class holds the contents of a snapshot, as read from the database or from disk.
+     */
+    private static class Contents {
+        final long[] fingerprint;
+        final List<Object[]> rows;
+
+        Contents(long[] fingerprint, List<Object[]> rows) {
+            this.fingerprint = fingerprint;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Get the shared snapshot of the given columns of a table, loading it if this is the first request for it.
+     * @param tableName The name of the table.
+     * @param columns The columns to hold, which are the order of the values in each row.
+     * @return The shared ReferenceSnapshot.
+     */
+    public static synchronized ReferenceSnapshot of(String tableName, String... columns) {
+        return snapshots.computeIfAbsent(tableName + List.of(columns), key -> new ReferenceSnapshot(tableName, List.of(columns)));
+    }
+
+    private ReferenceSnapshot(String tableName, List<String> columns) {
+        this.tableName = tableName;
+        this.columns = columns;
+        this.file = cacheDirectory.resolve(tableName + "-" + String.join("-", columns) + ".snapshot");
+
+        Contents contents = readFile();
+        if (contents != null) {
+            fingerprint = contents.fingerprint;
+            rows.set(contents.rows);
+            refreshLater(false);
+        } else {
+            // Nothing to start from, so read the table now, as it would have been without a snapshot
+            try {
+                contents = fetch(getDConn().getValue());
+                fingerprint = contents.fingerprint;
+                rows.set(contents.rows);
+                writeFile(contents);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            } catch (IOException e) {
+                e.printStackTrace(); // The snapshot still works, it just can't be reused next session
+            }
+        }
+
+        BaseQuery.subscribe(tableName, channelListener);
+    }
+
+    /**
+     * @return The rows of the snapshot, as arrays of values in the order of the requested columns. Each List is immutable,
+     * and is replaced (on the JavaFX thread) whenever the snapshot is refreshed.
+     */
+    public ReadOnlyObjectProperty<List<Object[]>> rowsProperty() {
+        return rows.getReadOnlyProperty();
+    }
+
+    public List<Object[]> getRows() {
+        return rows.get();
+    }
+
+    /**
+     * @param columnName The name of one of the requested columns.
+     * @return The index of that column's values within each row.
+     */
+    public int indexOf(String columnName) {
+        return columns.indexOf(columnName);
+    }
+
+    /**
+     * Queue a refresh of this snapshot on the background thread. Requests made while one is already queued are merged.
+     * @param force Whether to re-read the table even if its fingerprint hasn't changed.
+     */
+    private void refreshLater(boolean force) {
+        if (!refreshQueued.compareAndSet(false, true)) return;
+        refresher.execute(() -> {
+            refreshQueued.set(false);
+            try {
+                Connection c = getRefreshConnection();
+                if (!force && Arrays.equals(fingerprint(c), fingerprint)) return;
+                Contents contents = fetch(c);
+                fingerprint = contents.fingerprint;
+                Platform.runLater(() -> rows.set(contents.rows));
+                writeFile(contents);
+            } catch (SQLException | IOException e) {
+                e.printStackTrace(); // Keep using the rows we have
+            }
+        });
+    }
+
+    /**
+     * @return The Connection used by the refresher thread, opening it if it's missing or broken.
+     */
+    private static Connection getRefreshConnection() throws SQLException {
+        if (refreshConn == null || !refreshConn.isValid(5)) refreshConn = openConnection();
+        return refreshConn;
+    }
+
+    // Reading the database ////////////////////////////////////////////
+
+    /**
+     * @return A cheap summary of the table which changes whenever the requested rows are likely to have changed.
+     */
+    private long[] fingerprint(Connection c) throws SQLException {
+        boolean hasLastUpdate;
+        try (ResultSet lastUpdate = c.getMetaData().getColumns(getCatalog(), null, tableName, "Last_Update")) {
+            hasLastUpdate = lastUpdate.next();
+        }
+        String stampSQL = hasLastUpdate
+                ? "UNIX_TIMESTAMP(MAX(Last_Update))"
+                : "BIT_XOR(CRC32(CONCAT_WS(0x1F, " + String.join(", ", columns) + ")))";
+        String sql = "SELECT COUNT(*), " + stampSQL + " FROM " + tableName;
+        try (QueryStats.Timer timer = QueryStats.start(sql); Statement s = c.createStatement(); ResultSet rs = s.executeQuery(sql)) {
+            rs.next();
+            timer.stop(1);
+            return new long[]{rs.getLong(1), rs.getLong(2)};
+        }
+    }
+
+    private Contents fetch(Connection c) throws SQLException {
+        long[] newFingerprint = fingerprint(c);
+        List<Object[]> newRows = new ArrayList<>();
+        String sql = "SELECT " + String.join(", ", columns) + " FROM " + tableName;
+        try (QueryStats.Timer timer = QueryStats.start(sql); Statement s = c.createStatement(); ResultSet rs = s.executeQuery(sql)) {
+            while (rs.next()) {
+                Object[] row = new Object[columns.size()];
+                for (int i = 0; i < row.length; i++) row[i] = rs.getObject(i + 1);
+                newRows.add(row);
+            }
+            timer.stop(newRows.size());
+        }
+        return new Contents(newFingerprint, Collections.unmodifiableList(newRows));
+    }
+
+    // The snapshot file ////////////////////////////////////////////
+    // magic, version, fingerprint[2], column count, column names, row count, then each value as a tag followed by its data.
+
+    /**
+     * Read this snapshot's file, if there is one which describes the same columns.
+     * <br>The whole file is read with a single read into one buffer. These files are a few KB, and mapping them into memory
+     * would stop the refresher replacing them on Windows for as long as the mapping lived.
+     * @return The contents of the file, or null if it's missing, unreadable, or describes something else. An unreadable
+     * file is deleted, so it's never read again; the snapshot is rebuilt from the Database either way.
+     */
+    private Contents readFile() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) if (channel.read(buffer) < 0) break;
+            buffer.flip();
+
+            if (buffer.getInt() != magic || buffer.getInt() != formatVersion) return null;
+            long[] storedFingerprint = {buffer.getLong(), buffer.getLong()};
+            int columnCount = buffer.getInt();
+            List<String> storedColumns = new ArrayList<>();
+            for (int i = 0; i < columnCount; i++) storedColumns.add(readString(buffer));
+            if (!storedColumns.equals(columns)) return null;
+
+            int rowCount = readLength(buffer); // Every row takes at least a byte
+            List<Object[]> storedRows = new ArrayList<>(rowCount);
+            for (int r = 0; r < rowCount; r++) {
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) row[i] = readValue(buffer);
+                storedRows.add(row);
+            }
+            return new Contents(storedFingerprint, Collections.unmodifiableList(storedRows));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            e.printStackTrace();
+            deleteFile();
+            return null;
+        }
+    }
+
+    private void deleteFile() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write the snapshot's file, replacing the old one atomically, so a reader never sees a partial file.
+     */
+    private void writeFile(Contents contents) throws IOException {
+        Files.createDirectories(cacheDirectory);
+        Path temporary = Files.createTempFile(cacheDirectory, tableName, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(magic);
+                out.writeInt(formatVersion);
+                out.writeLong(contents.fingerprint[0]);
+                out.writeLong(contents.fingerprint[1]);
+                out.writeInt(columns.size());
+                for (String column : columns) writeString(out, column);
+                out.writeInt(contents.rows.size());
+                for (Object[] row : contents.rows)
+                    for (Object value : row) writeValue(out, value);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(tagNull);
+        } else if (value instanceof Integer) {
+            out.writeByte(tagInteger);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(tagLong);
+            out.writeLong((Long) value);
+        } else if (value instanceof String) {
+            out.writeByte(tagString);
+            writeString(out, (String) value);
+        } else if (value instanceof Timestamp) {
+            out.writeByte(tagTimestamp);
+            out.writeLong(((Timestamp) value).getTime());
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte(tagTimestamp);
+            out.writeLong(Timestamp.valueOf((LocalDateTime) value).getTime());
+        } else if (value instanceof Boolean) {
+            out.writeByte(tagBoolean);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            out.writeByte(tagDouble);
+            out.writeDouble((Double) value);
+        } else {
+            throw new IOException("Snapshots can't hold values of " + value.getClass());
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        return switch (tag) {
+            case tagNull -> null;
+            case tagInteger -> buffer.getInt();
+            case tagLong -> buffer.getLong();
+            case tagString -> readString(buffer);
+            case tagTimestamp -> new Timestamp(buffer.getLong());
+            case tagBoolean -> buffer.get() != 0;
+            case tagDouble -> buffer.getDouble();
+            default -> throw new IllegalArgumentException("Unknown value tag " + tag);
+        };
+    }
+
+    /**
+     * Read a count of bytes or rows which follow in the buffer, checking it could be right, so a corrupt count is an
+     * unreadable file rather than a huge or negative allocation.
+     */
+    private static int readLength(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IllegalArgumentException("Corrupt length " + length);
+        return length;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readLength(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -10,6 +10,7 @@ import java.net.URI;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -26,38 +27,38 @@ public class SConnection {
         return catalog;
     }
 
-    private static final Dependable<Connection> conn = new Dependable<>() {
-        @Override
-        protected boolean InnerValidate() throws Throwable {
-            return rootObject.isValid(5);
-        }
+    /**
+     * Grab, parse, and construct a connection string based on an application-external `database.xml` file.<br>
+     * If, during use of this application, the configuration of the server changes, the database.xml file will be
+     * re-parsed until a functioning connection is established, meaning the application can durably swap between different
+     * underlying databases.
+     *
+     * @return A URI-structured String describing a connection to a Database.
+     * @throws Exception IO-like exceptions in extracting from database.xml
+     */
+    private static String connectionStringFromFile() throws Exception {
+        File databaseConfigFile = new File("database.xml");
+        Document databaseConfigDoc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(databaseConfigFile);
+        databaseConfigDoc.getDocumentElement().normalize();
 
-        /**
-         * Grab, parse, and construct a connection string based on an application-external `database.xml` file.<br>
-         * If, during use of this application, the configuration of the server changes, the database.xml file will be
-         * re-parsed until a functioning connection is established, meaning the application can durably swap between different
-         * underlying databases.
-         *
-         * @return A URI-structured String describing a connection to a Database.
-         * @throws Exception IO-like exceptions in extracting from database.xml
-         */
-        private String connectionStringFromFile() throws Exception {
-            File databaseConfigFile = new File("database.xml");
-            Document databaseConfigDoc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(databaseConfigFile);
-            databaseConfigDoc.getDocumentElement().normalize();
+        Function<String, String> getDBParam = (String name) -> databaseConfigDoc.getElementsByTagName(name).item(0).getTextContent();
 
-            Function<String, String> getDBParam = (String name) -> databaseConfigDoc.getElementsByTagName(name).item(0).getTextContent();
+        String serverName = getDBParam.apply("server");
+        int port = Integer.parseInt(getDBParam.apply("port"));
+        String name = getDBParam.apply("name");
 
-            String serverName = getDBParam.apply("server");
-            int port = Integer.parseInt(getDBParam.apply("port"));
-            String name = getDBParam.apply("name");
+        String user = getDBParam.apply("user");
+        String password = getDBParam.apply("password");
 
-            String user = getDBParam.apply("user");
-            String password = getDBParam.apply("password");
+        String query = String.format("user=%s&password=%s", user, password);
 
-            String query = String.format("user=%s&password=%s", user, password);
+        return new URI("jdbc:mysql", null, serverName, port, "/" + name, query, null).toString();
+    }
 
-            return new URI("jdbc:mysql", null, serverName, port, "/" + name, query, null).toString();
+    private static final Dependable<Connection> conn = new Dependable<>() {
+        @Override
+        protected boolean InnerValidate() throws Throwable {
+            return rootObject.isValid(5);
         }
 
         @Override
@@ -66,6 +67,23 @@ public class SConnection {
         }
     };
 
+    /**
+     * This method opens a new Connection, configured like the shared one but independent of it. Work which runs away from
+     * the JavaFX thread, or which holds its Connection busy for a long time (eg streaming or long transactions), should use
+     * its own Connection so it doesn't interfere with the shared one. The caller is responsible for closing it.
+     * @return A newly opened Connection.
+     * @throws SQLException If the Connection could not be opened, including if database.xml could not be read.
+     */
+    public static Connection openConnection() throws SQLException {
+        try {
+            return DriverManager.getConnection(connectionStringFromFile());
+        } catch (SQLException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException(e);
+        }
+    }
+
     public static Dependable<Connection> getDConn(){
         return conn;
     }
@@ -86,5 +104,47 @@ public class SConnection {
         return connMetaData;
     }
 
+    /**
+     * This interface describes a unit of work which runs against a {@link Connection}, for use with {@link #inTransaction}.
+     * @param <T> The type of result produced by the work.
+     */
+    @FunctionalInterface
+    public interface TransactionWork<T> {
+        T apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * This method runs the given work inside a single transaction on the shared Connection.
+     * @see #inTransaction(Connection, TransactionWork)
+     */
+    public static <T> T inTransaction(TransactionWork<T> work) throws SQLException {
+        return inTransaction(getDConn().getValue(), work);
+    }
+
+    /**
+     * This method runs the given work inside a single transaction on the given Connection. If the work completes, the transaction
+     * is committed; if it throws, the transaction is rolled back and the exception is re-thrown. Either way, the Connection's
+     * auto-commit setting is restored afterwards.
+     * @param c The Connection to run the transaction on.
+     * @param work The work to perform inside the transaction.
+     * @param <T> The type of result produced by the work.
+     * @return The result of the work.
+     * @throws SQLException Any errors encountered by the work, or while committing.
+     */
+    public static <T> T inTransaction(Connection c, TransactionWork<T> work) throws SQLException {
+        boolean priorAutoCommit = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try {
+            T result = work.apply(c);
+            c.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(priorAutoCommit);
+        }
+    }
+
 
 }
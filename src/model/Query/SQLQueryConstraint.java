@@ -1,13 +1,22 @@
 package model.Query;
 
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import static java.util.Map.entry;
 
 /**
  * This object encapsulates a simple constraint in an SQL query. For example, this object could encapsulate that the column
  * 'Height' should be constrained to values which are greater than 115 for a particular query.
+ * <br>
+ * A constraint can also be evaluated in memory, against a value already read from the database ({@link #test}), and
+ * compared with another constraint to tell whether everything it allows, the other allows too ({@link #implies}). Together
+ * these let a query filter rows it already holds, instead of asking the database again.
  */
 public class SQLQueryConstraint {
     public enum SQLComparators {
@@ -47,6 +56,129 @@ public class SQLQueryConstraint {
         return String.format("%s %s '%s'", columnName, operators.get(comparator), compareTo.toString());
     }
 
+    /**
+     * This method evaluates the constraint against a value, the way the database would.
+     * @param value The value of {@link #getColumnName() the column} in some row.
+     * @return Whether a row with that value satisfies this constraint. Like SQL, a null value satisfies no comparison.
+     * @throws IllegalArgumentException If the value can't be compared with {@link #getCompareTo()} (see {@link #isTestable()}).
+     */
+    public boolean test(Object value) {
+        if (comparator == SQLComparators.ALL_PASS) return true;
+        if (comparator == SQLComparators.ALL_FAIL) return false;
+        if (value == null || compareTo == null) return false;
+        return satisfies(compare(value, compareTo));
+    }
+
+    /**
+     * @return Whether {@link #test} can evaluate this constraint, ie it compares against a number, a date or time, or a String.
+     */
+    public boolean isTestable() {
+        return comparator == SQLComparators.ALL_PASS || comparator == SQLComparators.ALL_FAIL || comparable(compareTo) != null;
+    }
+
+    /**
+     * This method checks whether this constraint is at least as strict as another, so every value which satisfies this
+     * constraint also satisfies the other. It only recognises the simple cases (eg {@code Start >= March} implies
+     * {@code Start >= January}); when it can't tell, it answers false.
+     * @param other Another constraint.
+     * @return Whether every value satisfying this constraint is known to satisfy the other.
+     */
+    public boolean implies(SQLQueryConstraint other) {
+        if (other.comparator == SQLComparators.ALL_PASS || comparator == SQLComparators.ALL_FAIL || this.equals(other)) return true;
+        if (!isTestable() || !other.isTestable() || !Objects.equals(columnName, other.columnName)) return false;
+        if (comparator == SQLComparators.ALL_PASS || other.comparator == SQLComparators.ALL_FAIL) return false;
+        if (comparator == SQLComparators.NEQ) return false; // Nothing but NEQ of the same value, which is equal
+        int bound;
+        try {
+            if (comparator == SQLComparators.EQ) return other.test(compareTo);
+            bound = compare(compareTo, other.compareTo); // This bound, relative to the other's
+        } catch (IllegalArgumentException e) {
+            return false; // The values are of kinds which don't compare, eg a number and a date
+        }
+        switch (other.comparator) {
+            case GT:
+            case GTE:
+                if (comparator != SQLComparators.GT && comparator != SQLComparators.GTE) return false;
+                return bound > 0 || (bound == 0 && (comparator == SQLComparators.GT || other.comparator == SQLComparators.GTE));
+            case LT:
+            case LTE:
+                if (comparator != SQLComparators.LT && comparator != SQLComparators.LTE) return false;
+                return bound < 0 || (bound == 0 && (comparator == SQLComparators.LT || other.comparator == SQLComparators.LTE));
+            case NEQ:
+                // Every allowed value is on one side of the excluded one
+                switch (comparator) {
+                    case LT: return bound <= 0;
+                    case LTE: return bound < 0;
+                    case GT: return bound >= 0;
+                    case GTE: return bound > 0;
+                    default: return false;
+                }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * This method checks whether a set of constraints (which must all hold) is at least as strict as another set, so every
+     * row satisfying the first set satisfies the second. This is the case when each constraint of the second set is
+     * implied by some constraint of the first.
+     * @param constraints The constraints which must all hold.
+     * @param others The constraints which might be implied.
+     * @return Whether every row satisfying {@code constraints} is known to satisfy {@code others}.
+     */
+    public static boolean impliesAll(Set<SQLQueryConstraint> constraints, Set<SQLQueryConstraint> others) {
+        for (SQLQueryConstraint other : others) {
+            if (constraints.stream().noneMatch(constraint -> constraint.implies(other))) return false;
+        }
+        return true;
+    }
+
+    private boolean satisfies(int comparison) {
+        switch (comparator) {
+            case LT: return comparison < 0;
+            case LTE: return comparison <= 0;
+            case GT: return comparison > 0;
+            case GTE: return comparison >= 0;
+            case EQ: return comparison == 0;
+            case NEQ: return comparison != 0;
+            default: throw new IllegalStateException(comparator.toString());
+        }
+    }
+
+    /**
+     * Compare two values the way the database compares a column with a literal: numbers by value, dates and times by the
+     * instant they name (a String literal being read as a timestamp), and Strings ignoring case, as the database's default
+     * collation does.
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(Object value, Object literal) {
+        Object left = comparable(value);
+        Object right = comparable(literal);
+        if (left == null || right == null) throw new IllegalArgumentException("Can't compare " + value + " with " + literal);
+        if (left instanceof Long && right instanceof String) right = comparable(Timestamp.valueOf((String) right));
+        if (left instanceof String && right instanceof Long) left = comparable(Timestamp.valueOf((String) left));
+        if (left.getClass() != right.getClass()) throw new IllegalArgumentException("Can't compare " + value + " with " + literal);
+        if (left instanceof String) return String.CASE_INSENSITIVE_ORDER.compare((String) left, (String) right);
+        return ((Comparable<Object>) left).compareTo(right);
+    }
+
+    /**
+     * @return The value in a form which compares like the database compares it: numbers as BigDecimals, dates and times as
+     * epoch milliseconds, and Strings as themselves, or null if it's none of those.
+     */
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> comparable(Object value) {
+        Comparable<?> result = null;
+        if (value instanceof BigDecimal) result = (BigDecimal) value;
+        else if (value instanceof Number) result = new BigDecimal(value.toString());
+        else if (value instanceof Timestamp) result = ((Timestamp) value).getTime();
+        else if (value instanceof java.util.Date) result = ((java.util.Date) value).getTime();
+        else if (value instanceof LocalDateTime) result = Timestamp.valueOf((LocalDateTime) value).getTime();
+        else if (value instanceof LocalDate) result = Timestamp.valueOf(((LocalDate) value).atStartOfDay()).getTime();
+        else if (value instanceof String) result = (String) value;
+        return (Comparable<Object>) result;
+    }
+
     public String getColumnName() {
         return columnName;
     }
@@ -93,7 +93,15 @@ public class TableQuery<R extends IBaseRow<?>> extends BaseQuery<R> implements I
 
     @Override
     public Set<String> getPKColumns() {
-        String _tableName = getTableName();
+        return getPKColumns(getTableName());
+    }
+
+    /**
+     * This method looks up (and remembers) the Primary Key columns of any table in the database, without needing a TableQuery over it.
+     * @param _tableName The name of the table.
+     * @return The Set of Primary Key column names in that table.
+     */
+    public static Set<String> getPKColumns(String _tableName) {
         Map<String, Set<String>> PKCpT = PKColumnsPerTable; // NOT the public access, we need modifiability
         if (!PKCpT.containsKey(_tableName)) {
             Set<String> pkSet = new HashSet<>();
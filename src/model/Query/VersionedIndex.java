@@ -0,0 +1,175 @@
+package model.Query;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * A VersionedIndex holds part of the database in memory as immutable contents, which are replaced atomically, so readers
+ * on any thread never lock and never see them half-updated. Every replacement gets the next version number, which
+ * {@link #versionProperty()} follows on the JavaFX thread.
+ * <br>
+ * Contents change in two ways. A refresh brings in everything, eg a full re-read, or a {@link ReferenceSnapshot}'s rows
+ * diffed in. A patch re-reads just the rows a channel named. Both are stamped with {@link #stamp()}, and a patch is dropped
+ * if a refresh stamped after it has already been applied: the patch's rows may have been read before the refresh's, and
+ * a refresh stamped after a change either includes it or is followed by one which does.
+ * <br>
+ * Reads run on an {@link Updater}, a background thread with its own Connection, which several indexes may share.
+ * @param <C> The type of the contents. They must never be modified once published.
+ */
+public abstract class VersionedIndex<C> extends SConnection {
+    private final Updater updater;
+    private final AtomicInteger pendingUpdates = new AtomicInteger(0);
+    private final ReadOnlyLongWrapper version = new ReadOnlyLongWrapper(0);
+    private volatile C contents;
+    private long published = 0; // Guarded by this, like the stamps below
+    private long stamps = 0;
+    private long refreshedAt = 0; // The stamp of the latest refresh applied
+
+    /**
+     * A background thread with its own Connection, on which indexes read from the database.
+     */
+    public static final class Updater {
+        private final ExecutorService executor;
+        private Connection conn; // Only used on the executor's thread
+
+        /**
+         * @param threadName The name of the thread, as it appears in thread dumps.
+         */
+        public Updater(String threadName) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, threadName);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Something read from the database on the {@link Updater}'s thread.
+     */
+    protected interface Read<T> {
+        T read(Connection c) throws SQLException;
+    }
+
+    /**
+     * @param updater The thread to read on.
+     * @param contents The first contents, or null if they're still to be read.
+     */
+    protected VersionedIndex(Updater updater, C contents) {
+        this.updater = updater;
+        this.contents = contents;
+    }
+
+    /**
+     * @return The current contents. Hold on to them to read consistently across several lookups.
+     */
+    protected final C contents() {
+        return contents;
+    }
+
+    /**
+     * @return A number which increases (on the JavaFX thread) whenever the contents are replaced.
+     */
+    public ReadOnlyLongProperty versionProperty() {
+        return version.getReadOnlyProperty();
+    }
+
+    /**
+     * @return Whether reads have been queued which haven't finished yet.
+     */
+    protected final boolean hasPendingUpdates() {
+        return pendingUpdates.get() > 0;
+    }
+
+    /**
+     * @return A stamp which orders a patch or refresh against every other.
+     */
+    protected final synchronized long stamp() {
+        return ++stamps;
+    }
+
+    /**
+     * Replace the contents with a refresh, superseding every patch stamped before it.
+     * @param stamp When the refresh was stamped.
+     * @param refreshed Builds the new contents from the current ones. Returning the current ones changes nothing.
+     */
+    protected final synchronized void refresh(long stamp, UnaryOperator<C> refreshed) {
+        refreshedAt = Math.max(refreshedAt, stamp);
+        publish(refreshed.apply(contents));
+    }
+
+    /**
+     * Patch the contents, unless a refresh stamped after the patch has already been applied.
+     * @param stamp When the patch was stamped.
+     * @param patched Builds the new contents from the current ones. Returning the current ones changes nothing.
+     * @return Whether the patch was applied.
+     */
+    protected final synchronized boolean patch(long stamp, UnaryOperator<C> patched) {
+        if (stamp < refreshedAt) return false;
+        publish(patched.apply(contents));
+        return true;
+    }
+
+    private void publish(C next) {
+        if (next == contents) return;
+        contents = next;
+        long number = ++published;
+        Platform.runLater(() -> { if (version.get() < number) version.set(number); });
+    }
+
+    /**
+     * Read the whole contents on the updater's thread, and refresh with them. The refresh is stamped as the read starts.
+     */
+    protected final void queueRefresh(Read<C> read) {
+        submit(c -> {
+            long stamp = stamp();
+            C next = read.read(c);
+            refresh(stamp, current -> next);
+            return null;
+        });
+    }
+
+    /**
+     * Read some changes on the updater's thread, and patch them in. The patch is stamped now, as it's queued.
+     * @param read Reads the changes.
+     * @param patched Builds the new contents from the current ones and the changes.
+     */
+    protected final <T> void queuePatch(Read<T> read, BiFunction<C, T, C> patched) {
+        long stamp = stamp();
+        submit(c -> {
+            T changes = read.read(c);
+            patch(stamp, current -> patched.apply(current, changes));
+            return null;
+        });
+    }
+
+    private void submit(Read<Void> update) {
+        pendingUpdates.incrementAndGet();
+        updater.executor.execute(() -> {
+            try {
+                if (updater.conn == null || !updater.conn.isValid(5)) updater.conn = openConnection();
+                update.read(updater.conn);
+            } catch (SQLException e) {
+                updateFailed(e);
+            } finally {
+                pendingUpdates.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Called on the updater's thread when a queued read fails. By default the contents are kept as they are.
+     */
+    protected void updateFailed(SQLException e) {
+        e.printStackTrace();
+    }
+}
@@ -0,0 +1,237 @@
+package model.Query;
+
+import javafx.beans.Observable;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WindowPrefetcher runs queries the user is likely to ask for next (eg the weeks either side of the one being shown) in the
+ * background, and holds their results until a query asks for exactly that SQL.
+ * <br>
+ * Results are read on the prefetcher's own connection and copied into disconnected {@link CachedRowSet CachedRowSets}, which
+ * are scrollable and have an insert row like the ResultSets a {@link BaseQuery} executes itself, so a {@link ConstrainedQuery}
+ * can use one in place of executing its SQL. Being disconnected, a result taken on the JavaFX thread never touches the
+ * prefetcher's connection, which may be reading the next result at the same time. Only a few
+ * results are held, least recently prefetched or asked for first out. A result is handed over at most once; after that
+ * it belongs to the query. Whenever a table's channel publishes, every result over that table is dropped, including any
+ * still being read, so a stale result is never shown.
+ * <br>
+ * How often queries found their result waiting is reported by {@link #summary()}, which is logged with the
+ * {@link QueryStats#logSummary query summary} when the application closes.
+ */
+public class WindowPrefetcher extends SConnection {
+    private static final int capacity = Integer.getInteger("scheduling.prefetchWindows", 4);
+
+    private static WindowPrefetcher shared;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong prefetched = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong(); // Evicted for space, or invalidated, before being used
+
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "window-prefetch");
+        t.setDaemon(true);
+        return t;
+    });
+    private Connection prefetchConn; // Only used on the prefetcher thread; nothing read from it outlives the read
+
+    /**
+     * A prefetched result, from the SQL which produced it. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<String, Held> held = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * The SQL being read right now, or waiting to be. Guarded by {@code this}.
+     */
+    private final Set<String> pending = new HashSet<>();
+    /**
+     * How many times each table's channel has published; a result read across a publish is stale. Guarded by {@code this}.
+     */
+    private final Map<String, Long> generations = new HashMap<>();
+
+    private static final class Held {
+        final String tableName;
+        final CachedRowSet resultSet;
+
+        Held(String tableName, CachedRowSet resultSet) {
+            this.tableName = tableName;
+            this.resultSet = resultSet;
+        }
+    }
+
+    /**
+     * @return The application's shared WindowPrefetcher.
+     */
+    public static synchronized WindowPrefetcher shared() {
+        if (shared == null) shared = new WindowPrefetcher();
+        return shared;
+    }
+
+    private WindowPrefetcher() {
+    }
+
+    /**
+     * Read the result of some SQL in the background, unless it's already held or being read.
+     * @param tableName The table the SQL reads, whose channel says when the result is stale.
+     * @param sql The SQL, exactly as the query which may want it will execute it.
+     */
+    public synchronized void prefetch(String tableName, String sql) {
+        if (held.containsKey(sql) || !pending.add(sql)) return;
+        if (!generations.containsKey(tableName)) {
+            generations.put(tableName, 0L);
+            BaseQuery.subscribe(tableName, this::onChannelChange);
+        }
+        long generation = generations.get(tableName);
+        prefetcher.execute(() -> {
+            CachedRowSet rs = null;
+            try {
+                if (prefetchConn == null || !prefetchConn.isValid(5)) prefetchConn = openConnection();
+                rs = execute(prefetchConn, sql);
+            } catch (SQLException e) {
+                e.printStackTrace(); // The query will execute the SQL itself when it's asked for
+            }
+            store(tableName, sql, generation, rs);
+        });
+    }
+
+    /**
+     * Execute some SQL, and copy its whole result into a CachedRowSet, which keeps the column classes the driver reported.
+     */
+    private static CachedRowSet execute(Connection c, String sql) throws SQLException {
+        try (QueryStats.Timer timer = QueryStats.start(sql);
+             Statement statement = c.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+             ResultSet rs = statement.executeQuery(sql)) {
+            CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+            rows.populate(rs);
+            rows.setMetaData(new CopiedMetaData(rs.getMetaData()));
+            timer.stop(rows.size());
+            return rows;
+        }
+    }
+
+    /**
+     * CopiedMetaData describes the columns of a copied result as the driver described the original. CachedRowSet's own copy
+     * guesses each column's class from its SQL type, which isn't always the class of the values it holds (eg DATETIME).
+     */
+    private static final class CopiedMetaData extends RowSetMetaDataImpl {
+        private static final long serialVersionUID = 1L;
+        private final String[] classNames;
+
+        CopiedMetaData(ResultSetMetaData md) throws SQLException {
+            setColumnCount(md.getColumnCount());
+            classNames = new String[md.getColumnCount()];
+            for (int i = 1; i < md.getColumnCount() + 1; i++) {
+                classNames[i - 1] = md.getColumnClassName(i);
+                setColumnName(i, md.getColumnName(i));
+                setColumnLabel(i, md.getColumnLabel(i));
+                setColumnType(i, md.getColumnType(i));
+                setColumnTypeName(i, md.getColumnTypeName(i));
+                setTableName(i, md.getTableName(i));
+                setSchemaName(i, md.getSchemaName(i));
+                setCatalogName(i, md.getCatalogName(i));
+                setAutoIncrement(i, md.isAutoIncrement(i));
+                setCaseSensitive(i, md.isCaseSensitive(i));
+                setCurrency(i, md.isCurrency(i));
+                setNullable(i, md.isNullable(i));
+                setSigned(i, md.isSigned(i));
+                setSearchable(i, md.isSearchable(i));
+                setColumnDisplaySize(i, Math.max(0, md.getColumnDisplaySize(i)));
+                setPrecision(i, Math.max(0, md.getPrecision(i)));
+                setScale(i, Math.max(0, md.getScale(i)));
+            }
+        }
+
+        @Override
+        public String getColumnClassName(int columnIndex) throws SQLException {
+            if (columnIndex < 1 || columnIndex > classNames.length) throw new SQLException("Invalid column index " + columnIndex);
+            return classNames[columnIndex - 1];
+        }
+    }
+
+    private synchronized void store(String tableName, String sql, long generation, CachedRowSet rs) {
+        pending.remove(sql);
+        if (rs == null) return;
+        if (generations.get(tableName) != generation) {
+            close(rs); // The table changed while this was being read
+            return;
+        }
+        prefetched.incrementAndGet();
+        held.put(sql, new Held(tableName, rs));
+        Iterator<Held> eldest = held.values().iterator();
+        while (held.size() > capacity) {
+            close(eldest.next().resultSet);
+            eldest.remove();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Hand over the prefetched result of some SQL, if it's held. Results still being read aren't waited for.
+     * @param sql The SQL about to be executed.
+     * @return The result, positioned before the first row, which now belongs to the caller; or null if it isn't held.
+     */
+    public synchronized ResultSet take(String sql) {
+        Held found = held.remove(sql);
+        if (found == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return found.resultSet;
+    }
+
+    /**
+     * Drop every result over a table, and any being read, eg because a query over it was refreshed.
+     * @param tableName The name of the table.
+     */
+    public synchronized void invalidate(String tableName) {
+        if (!generations.containsKey(tableName)) return; // Nothing over it was ever prefetched
+        generations.merge(tableName, 1L, Long::sum);
+        held.values().removeIf(h -> {
+            if (!h.tableName.equals(tableName)) return false;
+            close(h.resultSet);
+            dropped.incrementAndGet();
+            return true;
+        });
+    }
+
+    private void onChannelChange(Observable observable) {
+        for (String tableName : observable instanceof ChannelEvent ? ((ChannelEvent) observable).getChannels() : generationsSnapshot())
+            invalidate(tableName);
+    }
+
+    private synchronized Set<String> generationsSnapshot() {
+        return new HashSet<>(generations.keySet());
+    }
+
+    private static void close(ResultSet rs) {
+        try {
+            rs.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return The fraction of queries, since the application started, which found their result prefetched, or NaN if none asked.
+     */
+    public static double hitRate() {
+        long asked = hits.get() + misses.get();
+        return asked == 0 ? Double.NaN : (double) hits.get() / asked;
+    }
+
+    /**
+     * @return A line describing how well prefetching has worked since the application started.
+     */
+    public static String summary() {
+        return String.format("prefetch: %d hits, %d misses (%.1f%% hit rate), %d prefetched, %d dropped unused",
+                hits.get(), misses.get(), hits.get() + misses.get() == 0 ? 0.0 : hitRate() * 100, prefetched.get(), dropped.get());
+    }
+}
@@ -1,21 +1,27 @@
 package model.Query;
 
-import javafx.beans.property.Property;
-import javafx.beans.property.ReadOnlyBooleanProperty;
-import javafx.beans.property.ReadOnlyBooleanWrapper;
-import javafx.beans.property.SimpleObjectProperty;
+import javafx.application.Platform;
+import javafx.beans.property.*;
 import javafx.collections.ObservableList;
 import model.Dependable;
+import model.Row.CommitResult;
+import model.Row.DetachedRow;
 import model.Row.IWritableRow;
 import model.Row.RowPredicate.IRowPredicate;
+import model.Row.RowPredicate.RowValidationFailedException;
+import model.Row.RowPredicate.ValidationEngine;
 import model.Session;
 
+import javax.sql.rowset.CachedRowSet;
 import java.sql.*;
 import java.text.MessageFormat;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * WritableTableQuery provides a base for writing to the database from a TableQuery. This includes validating rows, by passing
@@ -99,47 +105,455 @@ public class WritableTableQuery extends TableQuery<IWritableRow> {
         protected ObservableList<IWritableRow> InnerConstruct(Map<String, ?> depValues) throws Throwable {
             ObservableList<IWritableRow> BQRoot = super.InnerConstruct(depValues);
             if (includeInsertRow) BQRoot.add(newRow(-1)); // An 'Insert' Row
+            currentRows = BQRoot;
+            countDirtyRows();
             return BQRoot;
         }
     }
 
+    /**
+     * This method checks whether a row, with the values it now holds, would still be shown if this query were refreshed.
+     * A row whose saved edits mean it wouldn't is dropped by refreshing, rather than left showing until something else
+     * refreshes. By default every row matches; subclasses which limit their rows (eg {@link ConstrainedQuery}) override it.
+     * @param row One of this query's rows.
+     * @return Whether the row would still be shown.
+     */
+    protected boolean stillMatches(IWritableRow row) {
+        return true;
+    }
+
+    /**
+     * This method is called after a row's edits were written optimistically and adopted without refreshing the query,
+     * so the ResultSet it was read from still holds the row as it was. Subclasses which rebuild rows from that ResultSet
+     * without re-executing it (eg {@link ConstrainedQuery}) override it to re-read it first.
+     * @param row The row which was committed.
+     */
+    protected void committedInPlace(IWritableRow row) {
+    }
+
+    private List<IWritableRow> currentRows = List.of(); // The rows last built, which dirtyRowCount counts
+    private final ReadOnlyIntegerWrapper dirtyRowCount = new ReadOnlyIntegerWrapper(0);
+
+    /**
+     * @return The number of rows with local edits, eg to enable saving them all only when there's something to save.
+     */
+    public ReadOnlyIntegerProperty dirtyRowCountProperty() {
+        return dirtyRowCount.getReadOnlyProperty();
+    }
+
+    private void countDirtyRows() {
+        int dirty = 0;
+        for (IWritableRow row : currentRows) if (row.hasLiveEditsProperty().get()) dirty++;
+        dirtyRowCount.set(dirty);
+    }
+
     protected Set<IRowPredicate> validators = new HashSet<>();
+    /**
+     * Guards the validators, and rebuilding {@link #validationEngine} from them, since imports and background validation read
+     * them away from the FX thread.
+     */
+    private final Object validatorLock = new Object();
+    private volatile ValidationEngine validationEngine;
 
     protected Set<IRowPredicate> getValidators() {
         return validators;
     }
 
+    /**
+     * @return A {@link ValidationEngine} over the current validators, which is rebuilt whenever they change.
+     */
+    protected ValidationEngine getValidationEngine() {
+        ValidationEngine engine = validationEngine;
+        if (engine != null) return engine;
+        synchronized (validatorLock) {
+            if (validationEngine == null) validationEngine = new ValidationEngine(getValidators());
+            return validationEngine;
+        }
+    }
+
     public void addValidator(IRowPredicate validator){
-        getValidators().add(validator);
+        synchronized (validatorLock) {
+            getValidators().add(validator);
+            validationEngine = null;
+        }
     }
 
     public void addValidator(Set<IRowPredicate> validators){
-        getValidators().addAll(validators);
+        synchronized (validatorLock) {
+            getValidators().addAll(validators);
+            validationEngine = null;
+        }
     }
 
     public boolean removeValidator(IRowPredicate validator){
-        return getValidators().remove(validator);
+        synchronized (validatorLock) {
+            validationEngine = null;
+            return getValidators().remove(validator);
+        }
     }
 
     public boolean removeValidator(Set<IRowPredicate> validators) {
-        return getValidators().removeAll(validators);
+        synchronized (validatorLock) {
+            validationEngine = null;
+            return getValidators().removeAll(validators);
+        }
     }
 
+    // Validating while editing ////////////////////////////////////////////////////
     /**
-     * This object is a wrapper around a PreparedStatement, to maximize the ease with which appointments can be quickly deleted by their customer ID.
+     * How long a row must go without edits before it's validated, so typing doesn't start a check per keystroke.
      */
-    private static final Dependable<PreparedStatement> AppointmentDeleter = new Dependable<PreparedStatement>("conn", getDConn()) {
-        @Override
-        protected boolean InnerValidate() throws Throwable {
-            return !rootObject.isClosed();
+    protected static final long liveValidationDelayMillis = Long.getLong("scheduling.liveValidationDelayMillis", 300);
+
+    /**
+     * Runs the validation of rows being edited, away from the FX thread. Results are delivered back with {@link Platform#runLater}.
+     */
+    private static final ScheduledExecutorService liveValidator;
+
+    static {
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        liveValidator = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "live-validation-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Writing rows ///////////////////////////////////////////////////////////////
+    /**
+     * These columns record who last changed a row and when. They're maintained by the application rather than the user, and
+     * are filled in whenever a row is written, if the table has them.
+     */
+    protected static final List<String> auditUpdateColumns = List.of("Last_Update", "Last_Updated_By");
+
+    /**
+     * These columns record who created a row and when. They're filled in whenever a row is inserted, if the table has them.
+     */
+    protected static final List<String> auditCreateColumns = List.of("Create_Date", "Created_By");
+
+    /**
+     * When writing optimistically, this column acts as the row's version: an UPDATE only succeeds if this column still holds
+     * the value it had when the row was read.
+     * @see #setOptimisticWrites
+     */
+    protected static final String versionColumn = "Last_Update";
+
+    private boolean optimisticWrites = false;
+
+    /**
+     * @return Whether rows in this query are written optimistically.
+     * @see #setOptimisticWrites
+     */
+    public boolean isOptimisticWrites() {
+        return optimisticWrites;
+    }
+
+    /**
+     * Configure whether rows in this query are written optimistically. An optimistic write only UPDATEs a row if its
+     * {@link #versionColumn} hasn't changed in the Database since the row was read, and reports a conflict otherwise.
+     * Successful optimistic writes don't refresh this query; other queries on the same channel are notified with a
+     * {@link ChannelEvent} naming the changed row.
+     * <br>Otherwise, writes overwrite the row unconditionally and refresh the query, which is the default.
+     * @param optimisticWrites Whether to write optimistically.
+     */
+    public void setOptimisticWrites(boolean optimisticWrites) {
+        this.optimisticWrites = optimisticWrites;
+    }
+
+    /**
+     * This helper provides the value to store in an audit column. Times are truncated to whole seconds, to match what the
+     * Database will store.
+     * @param auditColumn The name of the audit column being written.
+     * @return The value to write into that column.
+     */
+    protected static Object auditValue(String auditColumn) {
+        return auditColumn.endsWith("By")
+                ? Session.getUserName()
+                : new Timestamp(System.currentTimeMillis() / 1000 * 1000);
+    }
+
+    /**
+     * @return A map from the names of the columns in this query, to their 1-indexed positions.
+     */
+    protected Map<String, Integer> getColumnIndices() {
+        ResultSetMetaData md = getDResultSetMetaData().getValue();
+        Map<String, Integer> indices = new LinkedHashMap<>();
+        try {
+            for (int i = 1; i < md.getColumnCount() + 1; i++) indices.put(md.getColumnName(i), i);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
         }
+        return indices;
+    }
 
-        @Override
-        protected PreparedStatement InnerConstruct(Map<String, ?> depValues) throws Throwable {
-            System.out.println("Constructing AppointmentDeleter");
-            return ((Connection) depValues.get("conn")).prepareStatement("DELETE FROM appointments WHERE Customer_ID = ?");
+    /**
+     * @param setColumns The columns to assign, in the order their parameters will be bound.
+     * @param whereColumns The columns identifying the row(s) to update, in the order their parameters will be bound.
+     *                     The {@link #versionColumn} is compared null-safely, since it may not have been set yet.
+     * @return A parameterized UPDATE statement over this query's table.
+     */
+    protected String buildUpdateSQL(List<String> setColumns, List<String> whereColumns) {
+        return String.format("UPDATE %s SET %s WHERE %s",
+                getTableName(),
+                setColumns.stream().map(c -> c + " = ?").collect(Collectors.joining(", ")),
+                whereColumns.stream().map(c -> c + (c.equals(versionColumn) ? " <=> ?" : " = ?")).collect(Collectors.joining(" AND ")));
+    }
+
+    /**
+     * @param columns The columns to insert, in the order their parameters will be bound.
+     * @return A parameterized INSERT statement over this query's table.
+     */
+    protected String buildInsertSQL(List<String> columns) {
+        return String.format("INSERT INTO %s (%s) VALUES (%s)",
+                getTableName(),
+                String.join(", ", columns),
+                columns.stream().map(c -> "?").collect(Collectors.joining(", ")));
+    }
+
+    /**
+     * RowWrite pairs a parameterized SQL statement with the parameters which write one row. Rows whose writes share the
+     * same SQL can be sent to the Database together, in a single JDBC batch.
+     */
+    protected static class RowWrite {
+        protected final String sql;
+        protected final List<Object> params;
+        /**
+         * The columns this write assigns, and the values it assigns them.
+         */
+        protected final Map<String, Object> written;
+
+        public RowWrite(String sql, List<Object> params, Map<String, Object> written) {
+            this.sql = sql;
+            this.params = params;
+            this.written = written;
+        }
+
+        /**
+         * Bind this write's parameters to a PreparedStatement built from {@link #sql}.
+         * @param ps The PreparedStatement to bind to.
+         * @throws SQLException Any errors encountered binding the parameters.
+         */
+        protected void bind(PreparedStatement ps) throws SQLException {
+            bindAll(ps, params);
         }
-    };
+    }
+
+    /**
+     * This method saves every row which has local edits, in one pass. Every edited row is validated first, and rows which
+     * fail validation are reported and left unsaved. The remaining rows are sent to the Database inside a single transaction,
+     * as one JDBC batch per statement shape: since each row only writes the columns it edited, rows which edited the same
+     * columns share a statement and a batch, and rows which edited different columns are batched separately. This query
+     * is refreshed once at the end. If any write fails,
+     * the whole transaction is rolled back. If this query {@link #isOptimisticWrites() writes optimistically}, a row which
+     * changed in the Database since it was read also fails the save.
+     * <br>Local edits on rows which weren't saved are re-applied after the refresh, so they aren't lost.
+     * @return A map from each edited row which was not saved, to the reason it was not saved. An empty map means every edited row was saved.
+     */
+    public Map<IWritableRow, RuntimeException> commitAllRowEdits() {
+        Map<IWritableRow, RuntimeException> failures = new LinkedHashMap<>();
+        List<WritableTableQueryRow> toWrite = new ArrayList<>();
+
+        // Step 1: Validate every edited row, collecting failures rather than stopping at the first
+        List<IWritableRow> complete = new ArrayList<>();
+        for (IWritableRow row : getRows()) {
+            if (!row.hasLiveEditsProperty().get()) continue;
+            // Not meetsSubmissionCriteria, which is also false for a row live validation found INVALID: that's re-checked below, and reported as such
+            if (((WritableTableQueryRow) row).isComplete()) complete.add(row);
+            else failures.put(row, new RowValidationFailedException(Session.getBundle().getString("rowValidation.Incomplete")));
+        }
+        Map<IWritableRow, RowValidationFailedException> invalid = getValidationEngine().validateAll(complete);
+        failures.putAll(invalid);
+        for (IWritableRow row : complete) {
+            if (!invalid.containsKey(row)) toWrite.add((WritableTableQueryRow) row);
+        }
+        if (toWrite.isEmpty()) return failures;
+
+        // Step 2: Group the writes by statement (ie by which columns were edited), and send each group as one batch inside a single transaction
+        Map<String, List<WritableTableQueryRow>> rowsBySQL = new LinkedHashMap<>();
+        Map<WritableTableQueryRow, RowWrite> writes = new HashMap<>();
+        for (WritableTableQueryRow row : toWrite) {
+            RowWrite write = row.prepareWrite(isOptimisticWrites());
+            writes.put(row, write);
+            rowsBySQL.computeIfAbsent(write.sql, sql -> new ArrayList<>()).add(row);
+        }
+
+        try {
+            inTransaction(conn -> {
+                for (Map.Entry<String, List<WritableTableQueryRow>> batch : rowsBySQL.entrySet()) {
+                    try (PreparedStatement ps = conn.prepareStatement(batch.getKey())) {
+                        for (WritableTableQueryRow row : batch.getValue()) {
+                            writes.get(row).bind(ps);
+                            ps.addBatch();
+                        }
+                        int[] counts;
+                        try (QueryStats.Timer timer = QueryStats.start(batch.getKey())) {
+                            counts = ps.executeBatch();
+                            timer.stop(Arrays.stream(counts).filter(count -> count > 0).sum());
+                        } catch (BatchUpdateException e) {
+                            // Attribute the failure to the specific rows the driver reports as failed
+                            int[] failedCounts = e.getUpdateCounts();
+                            List<WritableTableQueryRow> batchRows = batch.getValue();
+                            for (int i = 0; i < batchRows.size(); i++) {
+                                if (i >= failedCounts.length || failedCounts[i] == Statement.EXECUTE_FAILED)
+                                    failures.put(batchRows.get(i), new RuntimeException(e.getMessage(), e));
+                            }
+                            throw e;
+                        }
+                        // An optimistic UPDATE which matched no rows means the row changed (or was deleted) since it was read
+                        if (isOptimisticWrites()) {
+                            List<WritableTableQueryRow> batchRows = batch.getValue();
+                            String conflict = Session.getBundle().getString("rowCommit.Conflict");
+                            for (int i = 0; i < batchRows.size(); i++) {
+                                if (counts[i] == 0) failures.put(batchRows.get(i), new RowValidationFailedException(conflict));
+                            }
+                            if (batchRows.stream().anyMatch(failures::containsKey)) throw new SQLException(conflict);
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            // The transaction rolled back, so nothing was saved. Every row we attempted is reported.
+            String rolledBack = Session.getBundle().getString("rowCommit.RolledBack");
+            for (WritableTableQueryRow row : toWrite) failures.putIfAbsent(row, new RuntimeException(rolledBack, e));
+            return failures;
+        }
+
+        // Step 3: Refresh once, preserving any edits which weren't saved
+        Map<List<Object>, List<Object>> unsavedEdits = new LinkedHashMap<>();
+        for (IWritableRow row : failures.keySet()) {
+            unsavedEdits.put(((WritableTableQueryRow) row).getPKValues(), ((WritableTableQueryRow) row).getValues());
+        }
+        getDResultSet().invalidated();
+        if (!unsavedEdits.isEmpty()) {
+            for (IWritableRow row : getRows()) {
+                List<Object> edits = unsavedEdits.get(((WritableTableQueryRow) row).getPKValues());
+                if (edits == null) continue;
+                for (int i = 0; i < edits.size(); i++) row.setRowEntry(i + 1, edits.get(i));
+            }
+        }
+        return failures;
+    }
+
+    // Deleting rows ///////////////////////////////////////////////////////////////
+    /**
+     * Rows in some tables are referenced by rows in other tables, and those referencing rows must be deleted along with them.
+     * This map goes from a referenced table, to each referencing table and the column it references by.
+     */
+    protected static final Map<String, Map<String, String>> cascadingDeletes = Map.of(
+            "customers", Map.of("appointments", "Customer_ID")
+    );
+
+    /**
+     * Some referencing rows are deleted by the database itself, through a foreign key's ON DELETE CASCADE, so their tables
+     * aren't in {@link #cascadingDeletes}; eg recurrence_rules, which may not even exist. This map goes from a referenced
+     * table to those referencing tables, whose channels are told every row may have changed.
+     */
+    protected static final Map<String, Set<String>> databaseCascadedDeletes = Map.of(
+            "customers", Set.of("recurrence_rules")
+    );
+
+    /**
+     * The largest number of keys placed in a single IN (...) list. Larger deletes are split across several statements in the same transaction.
+     */
+    protected static final int maxKeysPerStatement = 500;
+
+    /**
+     * This method deletes the rows with the given Primary Keys from this query's table, along with any rows in other tables
+     * which reference them (see {@link #cascadingDeletes} and {@link #databaseCascadedDeletes}). Every delete is a set-based statement, and they all run inside a
+     * single transaction. Afterwards, one {@link ChannelEvent} naming every deleted key is published to all affected channels.
+     * @param primaryKeys The Primary Key values of the rows to delete.
+     * @return The number of rows deleted from this query's table.
+     * @throws IllegalStateException If this query's table doesn't have exactly one Primary Key column.
+     */
+    public int deleteRows(Set<?> primaryKeys) {
+        Set<String> pkColumns = getPKColumns();
+        if (pkColumns.size() != 1) throw new IllegalStateException("deleteRows cannot run on tables without exactly one Primary Key");
+        if (primaryKeys.isEmpty()) return 0;
+        String pkColumn = pkColumns.iterator().next();
+        List<List<Object>> keyChunks = chunk(primaryKeys);
+
+        ChannelEvent event = new ChannelEvent(getTableName(), primaryKeys);
+        int deleted;
+        try {
+            deleted = inTransaction(conn -> {
+                // Step 1: Delete the referencing rows, remembering which were deleted so their channels know
+                for (Map.Entry<String, String> cascade : cascadingDeletes.getOrDefault(getTableName(), Map.of()).entrySet()) {
+                    String childTable = cascade.getKey();
+                    String childColumn = cascade.getValue();
+                    Set<String> childPKColumns = getPKColumns(childTable);
+                    List<Object> childKeys = new ArrayList<>();
+                    for (List<Object> keys : keyChunks) {
+                        if (childPKColumns.size() == 1) {
+                            String select = String.format("SELECT %s FROM %s WHERE %s IN (%s)", childPKColumns.iterator().next(), childTable, childColumn, placeholders(keys.size()));
+                            try (PreparedStatement ps = conn.prepareStatement(select)) {
+                                bindAll(ps, keys);
+                                int found = 0;
+                                try (QueryStats.Timer timer = QueryStats.start(select); ResultSet rs = ps.executeQuery()) {
+                                    for (; rs.next(); found++) childKeys.add(rs.getObject(1));
+                                    timer.stop(found);
+                                }
+                            }
+                        }
+                        executeKeyedUpdate(conn, String.format("DELETE FROM %s WHERE %s IN (%s)", childTable, childColumn, placeholders(keys.size())), keys);
+                    }
+                    event.with(childTable, childPKColumns.size() == 1 ? childKeys : null);
+                }
+
+                // Step 2: Delete the rows themselves
+                int count = 0;
+                for (List<Object> keys : keyChunks)
+                    count += executeKeyedUpdate(conn, String.format("DELETE FROM %s WHERE %s IN (%s)", getTableName(), pkColumn, placeholders(keys.size())), keys);
+                return count;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        for (String cascadedTable : databaseCascadedDeletes.getOrDefault(getTableName(), Set.of())) event.with(cascadedTable, null);
+        BaseQuery.publish(event);
+        return deleted;
+    }
+
+    /**
+     * Split the given keys into lists no longer than {@link #maxKeysPerStatement}.
+     */
+    private static List<List<Object>> chunk(Collection<?> keys) {
+        List<List<Object>> chunks = new ArrayList<>();
+        List<Object> current = new ArrayList<>();
+        for (Object key : keys) {
+            current.add(key);
+            if (current.size() == maxKeysPerStatement) {
+                chunks.add(current);
+                current = new ArrayList<>();
+            }
+        }
+        if (!current.isEmpty()) chunks.add(current);
+        return chunks;
+    }
+
+    /**
+     * @return A comma-separated list of the given number of '?' placeholders.
+     */
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static void bindAll(PreparedStatement ps, List<Object> params) throws SQLException {
+        int i = 1;
+        for (Object param : params) ps.setObject(i++, param);
+    }
+
+    private static int executeKeyedUpdate(Connection conn, String sql, List<Object> keys) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            bindAll(ps, keys);
+            try (QueryStats.Timer timer = QueryStats.start(sql)) {
+                int affected = ps.executeUpdate();
+                timer.stop(affected);
+                return affected;
+            }
+        }
+    }
 
     /**
      * WritableTableQueryRow provides a default Writable row for use in WritableTableQuery.
@@ -148,6 +562,7 @@ public class WritableTableQuery extends TableQuery<IWritableRow> {
 
         public WritableTableQueryRow(int rowNum) {
             super(rowNum);
+            originalValues = getValues().toArray();
             refreshEditProperties();
         }
 
@@ -157,6 +572,27 @@ public class WritableTableQuery extends TableQuery<IWritableRow> {
 
         private final ReadOnlyBooleanWrapper hasLiveEdits = new ReadOnlyBooleanWrapper(false);
         private final ReadOnlyBooleanWrapper meetsSubmissionCriteria = new ReadOnlyBooleanWrapper(false);
+        private final ReadOnlyObjectWrapper<ValidationState> validationState = new ReadOnlyObjectWrapper<>(ValidationState.UNCHECKED);
+        private final ReadOnlyStringWrapper validationMessage = new ReadOnlyStringWrapper(null);
+
+        /**
+         * The validation scheduled by the latest edit, and a count of edits which lets late results from superseded
+         * validations be ignored. Both are only touched on the thread making edits (the FX thread).
+         */
+        private Future<?> pendingValidation;
+        private volatile int validationGeneration = 0;
+
+        /**
+         * The values of this row as they were last read from (or written to) the Database, in column order. Local edits are
+         * compared against this snapshot, rather than against the ResultSet.
+         */
+        private Object[] originalValues;
+
+        /**
+         * The 0-indexed columns whose local values differ from {@link #originalValues}. Kept up to date by {@link #setRowEntry},
+         * so checking whether this row has edits doesn't need to scan every column.
+         */
+        private final BitSet dirtyColumns = new BitSet();
 
         @Override
         public ReadOnlyBooleanProperty hasLiveEditsProperty() {
@@ -166,50 +602,61 @@ public class WritableTableQuery extends TableQuery<IWritableRow> {
         @Override
         public ReadOnlyBooleanProperty meetsSubmissionCriteriaProperty() { return meetsSubmissionCriteria.getReadOnlyProperty();}
 
+        @Override
+        public ReadOnlyObjectProperty<ValidationState> validationStateProperty() { return validationState.getReadOnlyProperty();}
+
+        @Override
+        public ReadOnlyStringProperty validationMessageProperty() { return validationMessage.getReadOnlyProperty();}
+
         protected void refreshEditProperties(){
             refreshHasLiveEdits();
             refreshMeetsSubmissionCriteria();
         }
 
         protected void setHasLiveEdits(Boolean expectedValue) {
+            if (hasLiveEdits.get() == expectedValue) return;
             hasLiveEdits.set(expectedValue);
+            countDirtyRows();
         }
 
         protected void refreshHasLiveEdits(){
-            if (getRowNum() == -1) {
-                for (Property<?> pj : getData()) {
-                    Object pjv = pj.getValue();
-                    if (Objects.nonNull(pjv)){
-                        setHasLiveEdits(true);
-                        return;
-                    }
-                }
-                setHasLiveEdits(false);
-                return;
-            }
-            int i = 1;
-            ResultSet rs = getRowBacker();
-            // This probably has a valid Stream implementation
-            try {
-                for (Property<?> pj : getData()) {
-                    Object pjv = pj.getValue();
-                    Object rjv = rs.getObject(i++);
-                    if (!Objects.equals(rjv, pjv)){
-                        setHasLiveEdits(true);
-                        return;
-                    }
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
-            setHasLiveEdits(false);
+            setHasLiveEdits(!dirtyColumns.isEmpty());
+        }
+
+        /**
+         * @param columnId The 1-indexed column to check.
+         * @return Whether the local value of that column differs from the Database.
+         */
+        protected boolean isColumnDirty(int columnId) {
+            return dirtyColumns.get(columnId - 1);
+        }
+
+        /**
+         * This method records that the row's current local values now match the Database, eg after they've been written.
+         */
+        protected void markCommitted() {
+            originalValues = getValues().toArray();
+            dirtyColumns.clear();
+            cancelValidation();
+            refreshEditProperties();
         }
 
         protected void setMeetsSubmissionCriteria(Boolean meetsCriteria){
             meetsSubmissionCriteria.setValue(meetsCriteria);
         }
 
+        /**
+         * A row meets submission criteria when it's complete, and hasn't failed its latest validation. A validation which
+         * is still running doesn't hold the row back, since saving validates again anyway.
+         */
         protected void refreshMeetsSubmissionCriteria(){
+            setMeetsSubmissionCriteria(isComplete() && validationState.get() != ValidationState.INVALID);
+        }
+
+        /**
+         * @return Whether every column which must be filled in is.
+         */
+        protected boolean isComplete(){
             // TODO: DB-Constraints: This overrules the DB constraints and won't permit any null entries.
             ResultSetMetaData rsmd = getResultSetMetaData();
             Set<String> primaryKeyColumns = getPKColumns();
@@ -217,14 +664,67 @@ public class WritableTableQuery extends TableQuery<IWritableRow> {
                 for (int i = 0; i < rsmd.getColumnCount(); i++) {
                     String identifiedColumn = rsmd.getColumnName(i+1);
                     if (!primaryKeyColumns.contains(identifiedColumn) && !invisibleColumns.contains(identifiedColumn) && Objects.isNull(getEntryValue(i+1))){
-                        setMeetsSubmissionCriteria(false);
-                        return;
+                        return false;
                     }
                 }
             } catch (SQLException e){
                 throw new RuntimeException(e);
             }
-            setMeetsSubmissionCriteria(true);
+            return true;
+        }
+
+        protected void setValidationState(ValidationState state, String message){
+            validationState.set(state);
+            validationMessage.set(message);
+            refreshMeetsSubmissionCriteria();
+        }
+
+        /**
+         * This method validates the row's current local state in the background, once it has gone {@link #liveValidationDelayMillis}
+         * without another edit. Any validation which is already scheduled or running for this row is cancelled, and its result ignored.
+         * <br>The validators see a {@link DetachedRow} copy of the row, so later edits can't change what they're looking at,
+         * and the outcome is published to {@link #validationStateProperty()} on the FX thread. Any queries they make run on the
+         * {@link ValidationEngine}'s own Connections, never the shared one.
+         */
+        protected void scheduleValidation(){
+            cancelValidation();
+            if (!hasLiveEdits.get() || !isComplete()) return;
+
+            int generation = validationGeneration;
+            DetachedRow snapshot = new DetachedRow(getColumnIndices(), getValues().toArray());
+            ValidationEngine engine = getValidationEngine();
+            setValidationState(ValidationState.PENDING, null);
+            pendingValidation = liveValidator.schedule(() -> {
+                ValidationState outcome;
+                String message = null;
+                try {
+                    engine.validate(snapshot);
+                    outcome = ValidationState.VALID;
+                } catch (RowValidationFailedException e) {
+                    outcome = ValidationState.INVALID;
+                    message = e.getMessage();
+                } catch (RuntimeException e) {
+                    if (generation != validationGeneration) return; // Superseded by a newer edit
+                    outcome = ValidationState.UNCHECKED; // Saving will validate again, so this doesn't block it
+                    message = MessageFormat.format(Session.getBundle().getString("rowValidation.CheckFailed{reason}"),
+                            Objects.toString(e.getMessage(), e.getClass().getSimpleName()));
+                }
+                ValidationState finalOutcome = outcome;
+                String finalMessage = message;
+                Platform.runLater(() -> {
+                    if (generation == validationGeneration) setValidationState(finalOutcome, finalMessage);
+                });
+            }, liveValidationDelayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * This method cancels any validation scheduled or running for this row, and forgets the outcome of the last one.
+         */
+        protected void cancelValidation(){
+            validationGeneration++;
+            if (pendingValidation != null) pendingValidation.cancel(false); // A running check finishes on its own Connection, and is ignored
+            pendingValidation = null;
+            if (validationState.get() != ValidationState.UNCHECKED) setValidationState(ValidationState.UNCHECKED, null);
         }
 
         @Override
@@ -235,6 +735,8 @@ public class WritableTableQuery extends TableQuery<IWritableRow> {
             try {
                 rs = getResultSet();
                 rs.moveToInsertRow();
+                // A result copied by the WindowPrefetcher has nothing on its insert row until it's set, where the driver's reads as nulls
+                if (rs instanceof CachedRowSet) for (int i = 1; i < rs.getMetaData().getColumnCount() + 1; i++) rs.updateNull(i);
             } catch (SQLException e) {
                 e.printStackTrace();
             }
@@ -247,61 +749,147 @@ public class WritableTableQuery extends TableQuery<IWritableRow> {
             V dataValue = data.getValue();
             if (dataValue == null || !dataValue.equals(newO)) {
                 data.setValue(newO);
+                dirtyColumns.set(columnId - 1, !Objects.equals(originalValues[columnId - 1], newO));
                 refreshEditProperties();
+                scheduleValidation();
                 return true;
             }
             return false;
         }
 
+        @Override
+        public <V> boolean setRowEntry(String columnName, V newO) {
+            Integer columnId = getColumnIndices().get(columnName);
+            return columnId != null && setRowEntry(columnId, newO);
+        }
+
         // XTODO: Auditing: Updating a row needs to write a new Last_Updated, or use the Database's.
+        /**
+         * This method writes the columns which were edited locally (plus the audit columns) with a parameterized statement.
+         * If the row changed in the database since it was read, a {@link RowValidationFailedException} describing the conflict is thrown.
+         * <br><br>{@inheritDoc}
+         * @see #tryCommitRowEdits()
+         */
         @Override
         public void commitRowEdits(){
-            // XTODO: Validation: commitRowEdits needs to hook into a Validation pipeline
-            if(!hasLiveEdits.get()) return;
+            CommitResult result = tryCommitRowEdits();
+            if (result.isConflict()) throw new RowValidationFailedException(Session.getBundle().getString(
+                    result.getServerRow() == null ? "rowCommit.ConflictDeleted" : "rowCommit.Conflict"));
+        }
 
-            ResultSet rowBacker = getRowBacker();
+        /**
+         * This method validates the row, then writes the columns which were edited locally (plus the audit columns) with a
+         * parameterized statement.
+         * <br>If the query {@link #isOptimisticWrites() writes optimistically}, an existing row is only UPDATEd if its
+         * {@link #versionColumn} still matches what was read. When it does, the row adopts the values it wrote without
+         * refreshing the query (unless the edit means the query no longer shows it, see {@link #stillMatches}), and other
+         * subscribers of the table's channel are notified of the single changed row. When it
+         * doesn't, nothing is written and the row as it now exists in the database is returned as a conflict.
+         * <br>Otherwise (and always for the insert row), the write is unconditional and the query is refreshed. An existing
+         * row which the unconditional UPDATE didn't find has been deleted, which is returned as a conflict too.
+         * <br><br>{@inheritDoc}
+         */
+        @Override
+        public CommitResult tryCommitRowEdits(){
+            // XTODO: Validation: commitRowEdits needs to hook into a Validation pipeline
+            if(!hasLiveEdits.get()) return CommitResult.noChanges();
             validate();
 
-
-            int i = 1;
-            try {
-                for (Property<?> o : getData()) {
-                    rowBacker.updateObject(i++, o.getValue());
+            boolean optimistic = isOptimisticWrites() && getRowNum() != -1;
+            RowWrite write = prepareWrite(optimistic);
+            int affectedRows;
+            try (PreparedStatement ps = getDConn().getValue().prepareStatement(write.sql)) {
+                write.bind(ps);
+                try (QueryStats.Timer timer = QueryStats.start(write.sql)) {
+                    affectedRows = ps.executeUpdate();
+                    timer.stop(affectedRows);
                 }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
 
-                // Deal with Last_Update and Last_Updated_By
-                try {
-                    rowBacker.updateDate(rowBacker.findColumn("Last_Update"), new java.sql.Date(System.currentTimeMillis()));
-                    rowBacker.updateString(rowBacker.findColumn("Last_Updated_By"), Session.getUserName());
-                } catch (SQLException e) {
-                    // We don't care - we just have to update Last_Update and Last_Updated_By if they exist.
-                }
+            if (affectedRows == 0 && getRowNum() != -1) {
+                Map<String, Object> serverRow = fetchServerRow();
+                if (serverRow == null) refresh(); // The row is gone, so the query needs to drop it
+                return CommitResult.conflict(serverRow);
+            }
 
-                if (getRowNum() != -1) rowBacker.updateRow();
-                else rowBacker.insertRow();
+            if (!optimistic) {
+                markCommitted();
                 refresh();
+                return CommitResult.committed();
+            }
+
+            // Adopt the audit values we wrote, so the row's version matches the Database without re-reading it
+            write.written.forEach((column, value) -> {
+                if (auditUpdateColumns.contains(column)) ((Property<Object>) getEntry(column)).setValue(value);
+            });
+            markCommitted();
+            committedInPlace(this);
+            BaseQuery.publish(new ChannelEvent(getTableName(), List.of(getKey())), getDResultSet());
+            if (!stillMatches(this)) refresh(); // The edit moved the row out of what this query shows, so drop it like an insert would add it
+            return CommitResult.committed();
+        }
+
+        /**
+         * This method reads this row as it currently exists in the database, by its Primary Key.
+         * @return The row's column names and values, or null if the row no longer exists.
+         */
+        protected Map<String, Object> fetchServerRow() {
+            List<String> pkColumns = new ArrayList<>(getPKColumns());
+            String sql = String.format("SELECT * FROM %s WHERE %s", getTableName(),
+                    pkColumns.stream().map(c -> c + " = ?").collect(Collectors.joining(" AND ")));
+            try (PreparedStatement ps = getDConn().getValue().prepareStatement(sql)) {
+                int i = 1;
+                for (String pkColumn : pkColumns) ps.setObject(i++, getEntryValue(pkColumn));
+                try (QueryStats.Timer timer = QueryStats.start(sql); ResultSet rs = ps.executeQuery()) {
+                    boolean exists = rs.next();
+                    timer.stop(exists ? 1 : 0);
+                    if (!exists) return null;
+                    Map<String, Object> serverRow = new LinkedHashMap<>();
+                    ResultSetMetaData md = rs.getMetaData();
+                    for (int j = 1; j < md.getColumnCount() + 1; j++) serverRow.put(md.getColumnName(j), rs.getObject(j));
+                    return serverRow;
+                }
             } catch (SQLException e) {
                 throw new RuntimeException(e);
             }
         }
 
+        @Override
+        public void rebaseRowEdits(Map<String, ?> serverRow) {
+            for (Map.Entry<String, Integer> column : getColumnIndices().entrySet()) {
+                if (!serverRow.containsKey(column.getKey())) continue;
+                int i = column.getValue() - 1;
+                Object serverValue = serverRow.get(column.getKey());
+                originalValues[i] = serverValue;
+                Property<Object> data = (Property<Object>) getData().get(i);
+                if (!dirtyColumns.get(i)) data.setValue(serverValue);
+                dirtyColumns.set(i, !Objects.equals(serverValue, data.getValue()));
+            }
+            refreshEditProperties();
+            scheduleValidation(); // The edits now sit on different values
+        }
+
         @Override
         public void clearRowEdits(){
-            int i = 1;
-            ResultSet rs = getRowBacker();
-            try {
-                for (Property watchedP : getData()) {
-                    watchedP.setValue(rs.getObject(i++));
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
+            int i = 0;
+            for (Property watchedP : getData()) {
+                watchedP.setValue(originalValues[i++]);
             }
+            dirtyColumns.clear();
+            cancelValidation();
             refreshEditProperties();
         }
 
 
         @Override
         public String deleteRow(){
+            if (getRowNum() == -1) {
+                // The insert row isn't in the Database, so deleting it just discards what was typed into it
+                clearRowEdits();
+                return null;
+            }
             String message;
             switch (getTableName()) {
                 case "appointments" ->
@@ -312,40 +900,98 @@ public class WritableTableQuery extends TableQuery<IWritableRow> {
                                 this.getEntryValue("Appointment_ID")
                         );
                 // message = "Deleted '" + this.getRowEntryValue("Title") + "', a '" + this.getRowEntryValue("Type") + "' Appointment (ID " + this.getRowEntryValue("Appointment_ID") + ")";
-                case "customers" -> {
-                    // XTODO: REQUIRED: Remove Appointments associated with the deleting Customer
-                    PreparedStatement p = AppointmentDeleter.getValue();
-                    try {
-                        p.setInt(1, (Integer) this.getEntryValue("Customer_ID"));
-                        p.executeUpdate();
-                        BaseQuery.updateChannels(AppointmentDeleter, "appointments"); // TODO: Stability: AppointmentDeleter needs to encapsulate this deletion behavior
-                    } catch (SQLException e) {
-                        throw new RuntimeException(e);
-                    }
+                case "customers" ->
                     // XTODO: REQUIRED: Show message of deleted Customer
                     message = MessageFormat.format(Session.getBundle().getString("constrainedQuery.deletedCustomer{name,ID}"),
                             this.getEntryValue("Customer_Name"),
                             this.getEntryValue("Customer_ID")
                     );
                     // message = "Deleted Customer '" + this.getRowEntryValue("Customer_Name") + "' (ID " + this.getRowEntryValue("Customer_ID") + ")";
-                }
                 default -> message = null;
             }
-            try {
-                getRowBacker().deleteRow();
-                refresh();
-                return message;
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
-            }
+            deleteRows(Set.of(getKey()));
+            return message;
         }
 
         protected Set<IRowPredicate> getValidators() {
             return WritableTableQuery.this.getValidators();
         }
 
+        /**
+         * @return The current local values of this row, in column order.
+         */
+        protected List<Object> getValues() {
+            return getData().stream().map(Property::getValue).collect(Collectors.toList());
+        }
+
+        /**
+         * @return The values of this row's Primary Key columns, or a list of nulls for the insert row.
+         */
+        protected List<Object> getPKValues() {
+            List<Object> pkValues = new ArrayList<>();
+            for (String pkColumn : getPKColumns()) pkValues.add(getEntryValue(pkColumn));
+            return pkValues;
+        }
+
+        /**
+         * @return The value identifying this row on its table's channel: its Primary Key value, or a list of values if the
+         * table has several Primary Key columns.
+         * @see ChannelEvent
+         */
+        protected Object getKey() {
+            List<Object> pkValues = getPKValues();
+            return pkValues.size() == 1 ? pkValues.get(0) : pkValues;
+        }
+
+        /**
+         * This method prepares a parameterized UPDATE (or, for the insert row, INSERT) which writes only the columns edited
+         * locally, plus the audit columns.
+         * @param versioned Whether an UPDATE should also require the {@link #versionColumn} to still hold the value it had when read.
+         * @return The statement and parameters which write this row.
+         */
+        protected RowWrite prepareWrite(boolean versioned) {
+            Map<String, Integer> columnIndices = getColumnIndices();
+            Set<String> pkColumns = getPKColumns();
+            boolean isInsert = getRowNum() == -1;
+
+            List<String> columns = new ArrayList<>();
+            List<Object> params = new ArrayList<>();
+            Map<String, Object> written = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> column : columnIndices.entrySet()) {
+                String columnName = column.getKey();
+                if (!isColumnDirty(column.getValue())) continue;
+                if (pkColumns.contains(columnName) || auditUpdateColumns.contains(columnName) || auditCreateColumns.contains(columnName)) continue;
+                columns.add(columnName);
+                params.add(getEntryValue(column.getValue()));
+            }
+            for (String auditColumn : auditUpdateColumns) {
+                if (!columnIndices.containsKey(auditColumn)) continue;
+                columns.add(auditColumn);
+                params.add(auditValue(auditColumn));
+            }
+
+            if (isInsert) {
+                for (String auditColumn : auditCreateColumns) {
+                    if (!columnIndices.containsKey(auditColumn)) continue;
+                    columns.add(auditColumn);
+                    params.add(auditValue(auditColumn));
+                }
+                for (int i = 0; i < columns.size(); i++) written.put(columns.get(i), params.get(i));
+                return new RowWrite(buildInsertSQL(columns), params, written);
+            }
+            for (int i = 0; i < columns.size(); i++) written.put(columns.get(i), params.get(i));
+
+            List<String> whereColumns = new ArrayList<>(pkColumns);
+            for (String pkColumn : whereColumns) params.add(getEntryValue(pkColumn));
+            if (versioned && columnIndices.containsKey(versionColumn)) {
+                whereColumns.add(versionColumn);
+                params.add(originalValues[columnIndices.get(versionColumn) - 1]);
+            }
+            return new RowWrite(buildUpdateSQL(columns, whereColumns), params, written);
+        }
+
         protected void validate() {
-            for (IRowPredicate pred : getValidators()) pred.test(this);
+            getValidationEngine().validate(this);
         }
 
         protected void refresh() {
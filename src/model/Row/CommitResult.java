@@ -0,0 +1,56 @@
+package model.Row;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This class describes the outcome of attempting to push a row's local edits to the database via {@link IWritableRow#tryCommitRowEdits()}.
+ */
+public class CommitResult {
+    public enum Status {
+        COMMITTED, NO_CHANGES, CONFLICT
+    }
+
+    private static final CommitResult committed = new CommitResult(Status.COMMITTED, null);
+    private static final CommitResult noChanges = new CommitResult(Status.NO_CHANGES, null);
+
+    private final Status status;
+    private final Map<String, Object> serverRow;
+
+    private CommitResult(Status status, Map<String, Object> serverRow) {
+        this.status = status;
+        this.serverRow = serverRow;
+    }
+
+    public static CommitResult committed() {
+        return committed;
+    }
+
+    public static CommitResult noChanges() {
+        return noChanges;
+    }
+
+    /**
+     * @param serverRow The row as it currently exists in the database, as column names and values, or null if it no longer exists.
+     * @return A CommitResult describing a write which was refused because the row changed in the database since it was read.
+     */
+    public static CommitResult conflict(Map<String, Object> serverRow) {
+        return new CommitResult(Status.CONFLICT, serverRow == null ? null : Collections.unmodifiableMap(serverRow));
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isConflict() {
+        return status == Status.CONFLICT;
+    }
+
+    /**
+     * @return For a conflict, the row as it currently exists in the database (column names and values), or null if the row was deleted.
+     * Null for any other outcome.
+     */
+    public Map<String, Object> getServerRow() {
+        return serverRow;
+    }
+}
@@ -0,0 +1,180 @@
+package model.Row;
+
+import javafx.beans.property.Property;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.property.SimpleObjectProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class implements a Row which isn't backed by any {@link java.sql.ResultSet}: its values are held in memory, under
+ * column names shared with the table it describes. Detached rows let {@link model.Row.RowPredicate.IRowPredicate validators}
+ * evaluate data which hasn't reached the database yet (eg records being imported), or a copy of a row taken at a point in time.
+ * <br>Since there's no database behind a detached row, its values as constructed are its baseline: committing adopts the local
+ * edits as the new baseline, clearing returns to it, and deleting the row (like deleting the insert row) only clears it.
+ */
+public class DetachedRow implements IWritableRow {
+    private final Map<String, Integer> columnIndices;
+    private final List<Property<?>> data = new ArrayList<>();
+    private final Object[] baseline;
+    private final ReadOnlyBooleanWrapper meetsSubmissionCriteria = new ReadOnlyBooleanWrapper(true);
+    private final ReadOnlyBooleanWrapper hasLiveEdits = new ReadOnlyBooleanWrapper(false);
+    private final ReadOnlyObjectWrapper<ValidationState> validationState = new ReadOnlyObjectWrapper<>(ValidationState.UNCHECKED);
+    private final ReadOnlyStringWrapper validationMessage = new ReadOnlyStringWrapper(null);
+
+    /**
+     * Construct a DetachedRow holding the given values.
+     * @param columnIndices A map from column names to their 1-indexed positions, which may be shared between many rows.
+     * @param values The value of each column, in column order.
+     */
+    public DetachedRow(Map<String, Integer> columnIndices, Object[] values) {
+        this.columnIndices = columnIndices;
+        this.baseline = values.clone();
+        for (Object value : values) data.add(new SimpleObjectProperty<>(value));
+    }
+
+    /**
+     * Detached rows aren't in any ResultSet, so like the insert row they have a RowNum of -1.
+     */
+    @Override
+    public Integer getRowNum() {
+        return -1;
+    }
+
+    @Override
+    public Property<?> getEntry(int columnId) {
+        return data.get(columnId - 1);
+    }
+
+    @Override
+    public Property<?> getEntry(String columnName) {
+        Integer columnId = columnIndices.get(columnName);
+        return columnId == null ? null : getEntry(columnId);
+    }
+
+    @Override
+    public Object getEntryValue(int columnId) {
+        return getEntry(columnId).getValue();
+    }
+
+    @Override
+    public Object getEntryValue(String columnName) {
+        Property<?> entry = getEntry(columnName);
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * @return The current values of this row, in column order.
+     */
+    public Object[] getValues() {
+        return data.stream().map(Property::getValue).toArray();
+    }
+
+    @Override
+    public ReadOnlyBooleanProperty hasLiveEditsProperty() {
+        return hasLiveEdits.getReadOnlyProperty();
+    }
+
+    @Override
+    public ReadOnlyBooleanProperty meetsSubmissionCriteriaProperty() {
+        return meetsSubmissionCriteria.getReadOnlyProperty();
+    }
+
+    /**
+     * Detached rows are validated by whoever holds them, so they're always {@link ValidationState#UNCHECKED UNCHECKED}.
+     */
+    @Override
+    public ReadOnlyObjectProperty<ValidationState> validationStateProperty() {
+        return validationState.getReadOnlyProperty();
+    }
+
+    @Override
+    public ReadOnlyStringProperty validationMessageProperty() {
+        return validationMessage.getReadOnlyProperty();
+    }
+
+    @Override
+    public <V> boolean setRowEntry(int columnId, V newO) {
+        ((Property<V>) data.get(columnId - 1)).setValue(newO);
+        refreshHasLiveEdits();
+        return true;
+    }
+
+    @Override
+    public <V> boolean setRowEntry(String columnName, V newO) {
+        Integer columnId = columnIndices.get(columnName);
+        return columnId != null && setRowEntry(columnId, newO);
+    }
+
+    private void refreshHasLiveEdits() {
+        for (int i = 0; i < baseline.length; i++) {
+            if (!Objects.equals(baseline[i], data.get(i).getValue())) {
+                hasLiveEdits.set(true);
+                return;
+            }
+        }
+        hasLiveEdits.set(false);
+    }
+
+    /**
+     * Adopts the local edits as the row's baseline.
+     */
+    @Override
+    public void commitRowEdits() {
+        for (int i = 0; i < baseline.length; i++) baseline[i] = data.get(i).getValue();
+        hasLiveEdits.set(false);
+    }
+
+    /**
+     * Adopts the local edits as the row's baseline, which can't conflict with anything.
+     * @return {@link CommitResult#committed()}, or {@link CommitResult#noChanges()} if there were no edits.
+     */
+    @Override
+    public CommitResult tryCommitRowEdits() {
+        if (!hasLiveEdits.get()) return CommitResult.noChanges();
+        commitRowEdits();
+        return CommitResult.committed();
+    }
+
+    /**
+     * {@inheritDoc} Columns the row doesn't have are ignored.
+     */
+    @Override
+    public void rebaseRowEdits(Map<String, ?> serverRow) {
+        serverRow.forEach((columnName, value) -> {
+            Integer columnId = columnIndices.get(columnName);
+            if (columnId == null) return;
+            boolean edited = !Objects.equals(baseline[columnId - 1], data.get(columnId - 1).getValue());
+            baseline[columnId - 1] = value;
+            if (!edited) ((Property<Object>) data.get(columnId - 1)).setValue(value);
+        });
+        refreshHasLiveEdits();
+    }
+
+    /**
+     * Returns every column to its baseline value.
+     */
+    @Override
+    public void clearRowEdits() {
+        for (int i = 0; i < baseline.length; i++) ((Property<Object>) data.get(i)).setValue(baseline[i]);
+        hasLiveEdits.set(false);
+    }
+
+    /**
+     * A detached row isn't stored anywhere, so like the insert row, deleting it just clears its edits.
+     * @return null
+     */
+    @Override
+    public String deleteRow() {
+        clearRowEdits();
+        return null;
+    }
+}
@@ -2,6 +2,10 @@ package model.Row;
 
 import javafx.beans.property.Property;
 import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyStringProperty;
+
+import java.util.Map;
 
 /**
  * This interface describes the interactions required for a row to be writable.
@@ -20,6 +24,32 @@ public interface IWritableRow extends IBaseRow<Property<?>> {
      */
     ReadOnlyBooleanProperty meetsSubmissionCriteriaProperty();
 
+    /**
+     * The states a row's local edits can be in, relative to its validators.
+     */
+    enum ValidationState {
+        /** The row's local state hasn't been validated, eg because it has no edits or is incomplete. */
+        UNCHECKED,
+        /** The row's local state is being validated in the background. */
+        PENDING,
+        /** The row's local state passed validation. */
+        VALID,
+        /** The row's local state failed validation; see {@link #validationMessageProperty()}. */
+        INVALID
+    }
+
+    /**
+     * This method exposes the outcome of validating the row's local state as it was edited. A row which is
+     * {@link ValidationState#INVALID INVALID} doesn't meet submission criteria.
+     * @return A Read-only property holding the row's current validation state.
+     */
+    ReadOnlyObjectProperty<ValidationState> validationStateProperty();
+
+    /**
+     * @return A Read-only property holding why the row failed validation, or null if it hasn't.
+     */
+    ReadOnlyStringProperty validationMessageProperty();
+
     /**
      * This method writes a new value temporarily to the local row, and does not submit that value to the database.
      * @param columnId The 1-indexed ID of the column to write to.
@@ -29,11 +59,34 @@ public interface IWritableRow extends IBaseRow<Property<?>> {
      */
     <V> boolean setRowEntry(int columnId, V newO);
 
+    /**
+     * This method writes a new value temporarily to the named column of the local row, like {@link #setRowEntry(int, Object)}.
+     * @param columnName The name of the column to write to.
+     * @param newO The new Object to write to that column
+     * @param <V> The type of the new Object being written
+     * @return Whether the object could be written; false if the row has no such column.
+     */
+    <V> boolean setRowEntry(String columnName, V newO);
+
     /**
      * This method attempts to push the new changes to the database. Upon failures, an {@link model.Row.RowPredicate.RowValidationFailedException} gets thrown.
      */
     void commitRowEdits();
 
+    /**
+     * This method attempts to push the new changes to the database like {@link #commitRowEdits()}, but reports the outcome rather than
+     * throwing when the row was changed in the database since it was read. Validation failures still throw a {@link model.Row.RowPredicate.RowValidationFailedException}.
+     * @return The outcome of the attempt, including the row as it exists in the database if there was a conflict.
+     */
+    CommitResult tryCommitRowEdits();
+
+    /**
+     * This method adopts the given database state as the row's new baseline, keeping local edits on top of it: columns which were
+     * edited locally keep their edited values, and every other column takes the database's value.
+     * @param serverRow The row as it exists in the database, as column names and values (eg from a {@link CommitResult}).
+     */
+    void rebaseRowEdits(Map<String, ?> serverRow);
+
     /**
      * This method synchronizes the local row with the source of truth, removing local temporary changes.
      */
@@ -2,10 +2,95 @@ package model.Row.RowPredicate;
 
 import model.Row.IWritableRow;
 
+import java.sql.Connection;
+import java.util.*;
 import java.util.function.Predicate;
 
 /**
  * This interface is a simple time-saver, to specify a specific type of Predicate which accepts IWritableRows.
+ * <br>Predicates can also validate many rows at once via {@link #testAll(Collection)}, which predicates that consult the
+ * Database should override to avoid a round trip per row.
+ * <br>Predicates which consult the Database should also override {@link #test(IWritableRow, Connection)} and
+ * {@link #testAll(Collection, Connection)}, which run their queries on a Connection given by the caller; the shared Connection
+ * (see {@link model.Query.SConnection#getDConn()}) is only safe to use on the JavaFX thread.
  */
 public interface IRowPredicate extends Predicate<IWritableRow> {
+
+    /**
+     * A rough description of how expensive a predicate is to evaluate, which {@link ValidationEngine} uses to decide the
+     * order predicates run in, and which of them are worth running in parallel.
+     */
+    enum Cost {
+        /**
+         * Evaluated entirely in memory.
+         */
+        LOCAL,
+        /**
+         * May need a round trip to the Database.
+         */
+        REMOTE
+    }
+
+    /**
+     * @return How expensive this predicate is to evaluate. By default, predicates are assumed to be {@link Cost#LOCAL}.
+     */
+    default Cost getCost() {
+        return Cost.LOCAL;
+    }
+
+    /**
+     * @return The longest this predicate may take to evaluate, in milliseconds, before {@link ValidationEngine} gives up on it
+     * and treats the rows it was testing as invalid.
+     */
+    default long getTimeoutMillis() {
+        return 5000;
+    }
+
+    /**
+     * This method tests every given row, collecting failures rather than stopping at the first. By default it calls
+     * {@link #test(IWritableRow)} on each row in turn.
+     * @param rows The rows being tested, which are to be saved together.
+     * @return A map from each row which failed, to the reason it failed. Rows which passed are absent.
+     */
+    default Map<IWritableRow, RowValidationFailedException> testAll(Collection<? extends IWritableRow> rows) {
+        Map<IWritableRow, RowValidationFailedException> failures = new LinkedHashMap<>();
+        for (IWritableRow row : rows) {
+            try {
+                test(row);
+            } catch (RowValidationFailedException e) {
+                failures.put(row, e);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * This method tests a row like {@link #test(IWritableRow)}, running any queries on the given Connection, so it can be
+     * called away from the JavaFX thread. By default the Connection is ignored, which suits {@link Cost#LOCAL LOCAL} predicates.
+     * @param row The row being tested
+     * @param conn The Connection to query, which the caller owns.
+     * @return Whether the row passed.
+     */
+    default boolean test(IWritableRow row, Connection conn) {
+        return test(row);
+    }
+
+    /**
+     * This method tests every given row like {@link #testAll(Collection)}, running any queries on the given Connection. By
+     * default it calls {@link #test(IWritableRow, Connection)} on each row in turn.
+     * @param rows The rows being tested, which are to be saved together.
+     * @param conn The Connection to query, which the caller owns.
+     * @return A map from each row which failed, to the reason it failed. Rows which passed are absent.
+     */
+    default Map<IWritableRow, RowValidationFailedException> testAll(Collection<? extends IWritableRow> rows, Connection conn) {
+        Map<IWritableRow, RowValidationFailedException> failures = new LinkedHashMap<>();
+        for (IWritableRow row : rows) {
+            try {
+                test(row, conn);
+            } catch (RowValidationFailedException e) {
+                failures.put(row, e);
+            }
+        }
+        return failures;
+    }
 }
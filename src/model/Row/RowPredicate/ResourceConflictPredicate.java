@@ -0,0 +1,272 @@
+package model.Row.RowPredicate;
+
+import model.Query.QueryStats;
+import model.Query.SConnection;
+import model.Row.IWritableRow;
+import model.Schedule.AppointmentIndex;
+import model.Schedule.RecurrenceRule;
+import model.Schedule.RecurrenceStore;
+import model.Session;
+
+import java.sql.*;
+import java.text.MessageFormat;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * This class describes a predicate to test whether a changed appointment would occupy any resource (a customer, a contact,
+ * or a user) at the same time as another appointment does.
+ * <br>
+ * Every configured resource column is checked in one pass, and every conflict is reported, grouped by the resource it's on,
+ * rather than only the first. Occurrences of {@link RecurrenceRule recurring appointments} count as conflicts too.
+ */
+public class ResourceConflictPredicate extends SConnection implements IRowPredicate {
+
+    /**
+     * The most candidate appointments sent to the Database in one query by {@link #testAll(Collection)}.
+     */
+    private static final int maxCandidatesPerQuery = 200;
+
+    private final List<String> resourceColumns;
+
+    /**
+     * Construct a predicate checking every resource column the {@link AppointmentIndex} knows about.
+     */
+    public ResourceConflictPredicate() {
+        this(AppointmentIndex.resourceColumns.toArray(new String[0]));
+    }
+
+    /**
+     * Construct a predicate checking the given resource columns.
+     * @param resourceColumns Some of {@link AppointmentIndex#resourceColumns}, eg "Contact_ID".
+     */
+    public ResourceConflictPredicate(String... resourceColumns) {
+        for (String column : resourceColumns) {
+            if (!AppointmentIndex.resourceColumns.contains(column)) throw new IllegalArgumentException("Not a resource column: " + column);
+        }
+        this.resourceColumns = List.of(resourceColumns);
+    }
+
+    public List<String> getResourceColumns() {
+        return resourceColumns;
+    }
+
+    /**
+     * This predicate may query the Database, whenever the {@link AppointmentIndex} is stale.
+     */
+    @Override
+    public Cost getCost() {
+        return Cost.REMOTE;
+    }
+
+    /**
+     * An appointment being tested, as read from its row.
+     */
+    private final class Candidate {
+        final IWritableRow row;
+        final Integer appointmentId;
+        final Object startValue;
+        final Object endValue;
+        final long start;
+        final long end;
+        final Integer[] resourceIds; // Parallel to resourceColumns; null where the row has none
+        final Map<String, Set<Object>> conflicts = new LinkedHashMap<>();
+
+        Candidate(IWritableRow row) {
+            this.row = row;
+            this.appointmentId = (Integer) row.getEntryValue("Appointment_ID");
+            this.startValue = row.getEntryValue("Start");
+            this.endValue = row.getEntryValue("End");
+            this.start = AppointmentIndex.toMillis(startValue);
+            this.end = AppointmentIndex.toMillis(endValue);
+            this.resourceIds = new Integer[resourceColumns.size()];
+            for (int i = 0; i < resourceIds.length; i++) {
+                Object value = row.getEntryValue(resourceColumns.get(i));
+                resourceIds[i] = value instanceof Integer ? (Integer) value : null;
+            }
+        }
+
+        boolean hasResources() {
+            return Arrays.stream(resourceIds).anyMatch(Objects::nonNull);
+        }
+
+        void addConflict(int column, Object appointmentId) {
+            conflicts.computeIfAbsent(resourceColumns.get(column), k -> new LinkedHashSet<>()).add(appointmentId);
+        }
+
+        RowValidationFailedException failure() {
+            ResourceBundle bundle = Session.getBundle();
+            String byResource = conflicts.entrySet().stream()
+                    .map(e -> bundle.getString("table.columnName." + e.getKey()) + ": " + e.getValue())
+                    .collect(Collectors.joining("; "));
+            return new RowValidationFailedException(MessageFormat.format(bundle.getString("rowValidation.ResourceConflict{appt}{conflicts}"),
+                    appointmentId == null ? bundle.getString("queryTableView.newRow") : appointmentId.toString(), byResource));
+        }
+    }
+
+    private Candidate candidateFor(IWritableRow row) {
+        if (row.getEntryValue("Start") == null || row.getEntryValue("End") == null) return null;
+        Candidate c = new Candidate(row);
+        return c.hasResources() ? c : null;
+    }
+
+    /**
+     * This method returns true if the given row occupies none of its resources at the same time as an existing appointment.
+     * The {@link AppointmentIndex} answers this in memory whenever it's fresh; otherwise the database is asked directly.
+     * @param testingRow The row being tested
+     * @return Whether the row conflicts with no existing appointments
+     * @throws RowValidationFailedException Listing every conflicting appointment, by resource.
+     */
+    @Override
+    public boolean test(IWritableRow testingRow) {
+        return test(testingRow, getDConn().getValue());
+    }
+
+    /**
+     * This method tests the given row like {@link #test(IWritableRow)}, asking the database on the given Connection when it must.
+     * <br>{@inheritDoc}
+     */
+    @Override
+    public boolean test(IWritableRow testingRow, Connection conn) {
+        Candidate c = candidateFor(testingRow);
+        if (c == null) return true;
+        AppointmentIndex index = AppointmentIndex.shared();
+        if (index.isFresh()) findConflictsInIndex(index, List.of(c), Set.of());
+        else findConflictsInDatabase(List.of(c), Set.of(), conn);
+        findConflictsWithRecurrences(List.of(c));
+        if (c.conflicts.isEmpty()) return true;
+        throw c.failure();
+    }
+
+    /**
+     * This method tests many appointments at once. Each is checked against the existing appointments (via the {@link AppointmentIndex}
+     * when it's fresh, otherwise with one query per {@value #maxCandidatesPerQuery} rows), and against the other rows being
+     * tested, since they'll be saved together. An existing appointment which is one of the rows being tested is compared by
+     * its new times and resources, not its stored ones.
+     * <br>{@inheritDoc}
+     */
+    @Override
+    public Map<IWritableRow, RowValidationFailedException> testAll(Collection<? extends IWritableRow> rows) {
+        return testAll(rows, getDConn().getValue());
+    }
+
+    /**
+     * This method tests many appointments at once like {@link #testAll(Collection)}, querying on the given Connection.
+     * <br>{@inheritDoc}
+     */
+    @Override
+    public Map<IWritableRow, RowValidationFailedException> testAll(Collection<? extends IWritableRow> rows, Connection conn) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (IWritableRow row : rows) {
+            Candidate c = candidateFor(row);
+            if (c != null) candidates.add(c);
+        }
+        Set<Integer> candidateIds = candidates.stream().map(c -> c.appointmentId).filter(Objects::nonNull).collect(Collectors.toSet());
+
+        AppointmentIndex index = AppointmentIndex.shared();
+        if (index.isFresh()) findConflictsInIndex(index, candidates, candidateIds);
+        else findConflictsInDatabase(candidates, candidateIds, conn);
+        findConflictsWithRecurrences(candidates);
+
+        // Against each other: within each resource, sorted by start, each candidate can only overlap those which start before it ends
+        String newRowName = Session.getBundle().getString("queryTableView.newRow");
+        for (int column = 0; column < resourceColumns.size(); column++) {
+            final int col = column;
+            candidates.stream().filter(c -> c.resourceIds[col] != null)
+                    .collect(Collectors.groupingBy(c -> c.resourceIds[col])).values().forEach(sharing -> {
+                sharing.sort(Comparator.comparingLong(c -> c.start));
+                for (int i = 0; i < sharing.size(); i++) {
+                    Candidate a = sharing.get(i);
+                    for (int j = i + 1; j < sharing.size() && sharing.get(j).start < a.end; j++) {
+                        Candidate b = sharing.get(j);
+                        if (b.end <= a.start) continue;
+                        a.addConflict(col, b.appointmentId == null ? newRowName : b.appointmentId);
+                        b.addConflict(col, a.appointmentId == null ? newRowName : a.appointmentId);
+                    }
+                }
+            });
+        }
+
+        Map<IWritableRow, RowValidationFailedException> failures = new LinkedHashMap<>();
+        for (Candidate c : candidates) if (!c.conflicts.isEmpty()) failures.put(c.row, c.failure());
+        return failures;
+    }
+
+    /**
+     * Record each candidate's conflicts with the indexed appointments, ignoring those which are themselves being tested.
+     */
+    private void findConflictsInIndex(AppointmentIndex index, List<Candidate> candidates, Set<Integer> candidateIds) {
+        for (Candidate c : candidates) {
+            for (int column = 0; column < resourceColumns.size(); column++) {
+                if (c.resourceIds[column] == null) continue;
+                for (Integer apptId : index.overlapping(resourceColumns.get(column), c.resourceIds[column], c.start, c.end, c.appointmentId))
+                    if (!candidateIds.contains(apptId)) c.addConflict(column, apptId);
+            }
+        }
+    }
+
+    /**
+     * Record each candidate's conflicts with occurrences of recurring appointments, which are expanded only around the candidate.
+     */
+    private void findConflictsWithRecurrences(List<Candidate> candidates) {
+        RecurrenceStore store = RecurrenceStore.shared();
+        if (!store.isAvailable()) return;
+        String occurrenceFormat = Session.getBundle().getString("recurrence.Occurrence{rule}{date}");
+        for (Candidate c : candidates) {
+            for (int column = 0; column < resourceColumns.size(); column++) {
+                if (c.resourceIds[column] == null) continue;
+                for (RecurrenceRule.Occurrence o : store.overlapping(resourceColumns.get(column), c.resourceIds[column], c.start, c.end))
+                    c.addConflict(column, MessageFormat.format(occurrenceFormat, String.valueOf(o.rule.getRuleId()), o.date.toString()));
+            }
+        }
+    }
+
+    /**
+     * Record each candidate's conflicts with the stored appointments, ignoring those which are themselves being tested.
+     * Candidates are sent in chunks, each as a derived table joined against appointments on any shared resource, so every
+     * resource is checked in the same query.
+     */
+    private void findConflictsInDatabase(List<Candidate> candidates, Set<Integer> candidateIds, Connection conn) {
+        for (int from = 0; from < candidates.size(); from += maxCandidatesPerQuery) {
+            List<Candidate> chunk = candidates.subList(from, Math.min(candidates.size(), from + maxCandidatesPerQuery));
+
+            StringBuilder row = new StringBuilder("SELECT ? AS Position, ? AS Start, ? AS End");
+            StringBuilder matches = new StringBuilder("c.Position, a.Appointment_ID");
+            List<String> anyShared = new ArrayList<>();
+            for (String column : resourceColumns) {
+                row.append(", ? AS ").append(column);
+                matches.append(", a.").append(column).append(" <=> c.").append(column);
+                anyShared.add("a." + column + " = c." + column);
+            }
+            String sql = "SELECT " + matches + " FROM (" + String.join(" UNION ALL ", Collections.nCopies(chunk.size(), row)) + ") AS c "
+                    + "INNER JOIN appointments a ON a.Start < c.End AND a.End > c.Start AND (" + String.join(" OR ", anyShared) + ")";
+
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                // A check which has timed out gives up on its own, rather than holding its Connection busy
+                ps.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(getTimeoutMillis() + 999)));
+                int i = 1;
+                for (int position = 0; position < chunk.size(); position++) {
+                    Candidate c = chunk.get(position);
+                    ps.setInt(i++, position);
+                    ps.setObject(i++, c.startValue);
+                    ps.setObject(i++, c.endValue);
+                    for (Integer resourceId : c.resourceIds) ps.setObject(i++, resourceId);
+                }
+                int found = 0;
+                try (QueryStats.Timer timer = QueryStats.start(sql); ResultSet rs = ps.executeQuery()) {
+                    for (; rs.next(); found++) {
+                        Candidate c = chunk.get(rs.getInt(1));
+                        int apptId = rs.getInt(2);
+                        if ((c.appointmentId != null && c.appointmentId == apptId) || candidateIds.contains(apptId)) continue;
+                        for (int column = 0; column < resourceColumns.size(); column++)
+                            if (rs.getBoolean(3 + column)) c.addConflict(column, apptId);
+                    }
+                    timer.stop(found);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package model.Row.RowPredicate;
+
+import model.Query.SConnection;
+import model.Row.IWritableRow;
+import model.Session;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ValidationEngine runs a set of {@link IRowPredicate IRowPredicates} against rows, so that a row's validation takes about
+ * as long as its slowest predicate, rather than the sum of all of them.
+ * <br>
+ * Predicates are ordered by their declared {@link IRowPredicate.Cost}. {@link IRowPredicate.Cost#LOCAL LOCAL} predicates run first,
+ * in order, on the calling thread; they're cheap, and if one fails there's no need to ask the Database anything. The
+ * {@link IRowPredicate.Cost#REMOTE REMOTE} predicates then run in parallel on a small shared pool of threads. Each is given
+ * its own {@link IRowPredicate#getTimeoutMillis() timeout}, and a predicate which doesn't finish in time fails the rows it was
+ * testing. When validating a single row, the first failure cancels whatever is still running.
+ * <br>
+ * Each pool thread queries on a Connection of its own (see {@link SConnection#openConnection()}), never the shared one, and
+ * cancelling is cooperative: abandoned predicates which haven't started are skipped, and those already querying finish (or
+ * hit their query timeout) on their own Connection, rather than being interrupted mid-call.
+ */
+public class ValidationEngine {
+    private static final ExecutorService remoteExecutor;
+
+    static {
+        AtomicInteger threadNumber = new AtomicInteger(0);
+        remoteExecutor = Executors.newFixedThreadPool(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())), r -> {
+            Thread t = new Thread(r, "row-validation-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Each pool thread's own Connection, opened the first time it's needed and reopened if it's lost.
+     */
+    private static final ThreadLocal<Connection> workerConnection = new ThreadLocal<>();
+
+    private static Connection workerConnection() throws SQLException {
+        Connection c = workerConnection.get();
+        if (c == null || !c.isValid(5)) {
+            c = SConnection.openConnection();
+            workerConnection.set(c);
+        }
+        return c;
+    }
+
+    private final List<IRowPredicate> localPredicates = new ArrayList<>();
+    private final List<IRowPredicate> remotePredicates = new ArrayList<>();
+
+    /**
+     * Construct a ValidationEngine over the given predicates.
+     * @param predicates The predicates every row must pass.
+     */
+    public ValidationEngine(Collection<? extends IRowPredicate> predicates) {
+        for (IRowPredicate predicate : predicates) {
+            if (predicate.getCost() == IRowPredicate.Cost.LOCAL) localPredicates.add(predicate);
+            else remotePredicates.add(predicate);
+        }
+    }
+
+    /**
+     * Validate a single row, stopping at the first failure.
+     * @param row The row to validate.
+     * @throws RowValidationFailedException The first failure found.
+     */
+    public void validate(IWritableRow row) {
+        for (IRowPredicate predicate : localPredicates) predicate.test(row);
+        if (remotePredicates.isEmpty()) return;
+
+        ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>(remoteExecutor);
+        Map<Future<Void>, IRowPredicate> running = new HashMap<>();
+        AtomicBoolean abandoned = new AtomicBoolean(false);
+        long startNanos = System.nanoTime();
+        for (IRowPredicate predicate : remotePredicates) {
+            running.put(completion.submit(() -> {
+                if (!abandoned.get()) predicate.test(row, workerConnection());
+                return null;
+            }), predicate);
+        }
+
+        try {
+            while (!running.isEmpty()) {
+                Future<Void> done = completion.poll(nextDeadlineNanos(running.values(), startNanos), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    // Something ran out of time
+                    IRowPredicate expired = running.values().stream()
+                            .filter(p -> System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(p.getTimeoutMillis()))
+                            .findFirst().orElse(null);
+                    if (expired != null) throw timedOut(expired);
+                    continue;
+                }
+                running.remove(done);
+                unwrap(done);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            // Short-circuit anything which hasn't started; anything running finishes on its own Connection
+            abandoned.set(true);
+            running.keySet().forEach(future -> future.cancel(false));
+        }
+    }
+
+    /**
+     * Validate many rows which are to be saved together. Each predicate tests, as one batch (see {@link IRowPredicate#testAll}),
+     * every row which hasn't already failed a cheaper predicate; the expensive predicates test their batches in parallel.
+     * @param rows The rows to validate.
+     * @return A map from each row which failed, to the reason it failed, with failures of earlier (cheaper) predicates
+     * taking precedence. Rows which passed are absent.
+     */
+    public Map<IWritableRow, RowValidationFailedException> validateAll(Collection<? extends IWritableRow> rows) {
+        Map<IWritableRow, RowValidationFailedException> failures = new LinkedHashMap<>();
+        List<IWritableRow> remaining = new ArrayList<>(rows);
+        for (IRowPredicate predicate : localPredicates) {
+            if (remaining.isEmpty()) return failures;
+            Map<IWritableRow, RowValidationFailedException> predicateFailures = predicate.testAll(remaining);
+            failures.putAll(predicateFailures);
+            remaining.removeAll(predicateFailures.keySet());
+        }
+        if (remaining.isEmpty() || remotePredicates.isEmpty()) return failures;
+
+        long startNanos = System.nanoTime();
+        AtomicBoolean abandoned = new AtomicBoolean(false);
+        List<Future<Map<IWritableRow, RowValidationFailedException>>> futures = new ArrayList<>();
+        for (IRowPredicate predicate : remotePredicates) futures.add(remoteExecutor.submit(() ->
+                abandoned.get() ? Map.<IWritableRow, RowValidationFailedException>of() : predicate.testAll(remaining, workerConnection())));
+
+        // Collect in declaration order, so a row's reported failure doesn't depend on which thread finished first
+        for (int i = 0; i < futures.size(); i++) {
+            IRowPredicate predicate = remotePredicates.get(i);
+            Future<Map<IWritableRow, RowValidationFailedException>> future = futures.get(i);
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(predicate.getTimeoutMillis()) - (System.nanoTime() - startNanos);
+            Map<IWritableRow, RowValidationFailedException> predicateFailures;
+            try {
+                predicateFailures = future.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(false);
+                RowValidationFailedException timeout = timedOut(predicate);
+                predicateFailures = new HashMap<>();
+                for (IWritableRow row : remaining) predicateFailures.put(row, timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon(abandoned, futures);
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                abandon(abandoned, futures);
+                throw rethrow(e.getCause());
+            }
+            predicateFailures.forEach(failures::putIfAbsent);
+        }
+        return failures;
+    }
+
+    /**
+     * Validate many rows like {@link #validateAll(Collection)}, but entirely on the calling thread, with every predicate querying
+     * the given Connection in turn. This suits callers which already own a Connection away from the JavaFX thread, eg imports.
+     * Predicates aren't timed out by the engine here; the statements they run carry their own query timeouts.
+     * @param rows The rows to validate.
+     * @param conn The Connection the predicates query, which the caller owns.
+     * @return A map from each row which failed, to the reason it failed, with failures of earlier (cheaper) predicates
+     * taking precedence. Rows which passed are absent.
+     */
+    public Map<IWritableRow, RowValidationFailedException> validateAll(Collection<? extends IWritableRow> rows, Connection conn) {
+        Map<IWritableRow, RowValidationFailedException> failures = new LinkedHashMap<>();
+        List<IWritableRow> remaining = new ArrayList<>(rows);
+        for (IRowPredicate predicate : localPredicates) {
+            if (remaining.isEmpty()) return failures;
+            Map<IWritableRow, RowValidationFailedException> predicateFailures = predicate.testAll(remaining);
+            failures.putAll(predicateFailures);
+            remaining.removeAll(predicateFailures.keySet());
+        }
+        if (remaining.isEmpty()) return failures;
+        for (IRowPredicate predicate : remotePredicates) predicate.testAll(remaining, conn).forEach(failures::putIfAbsent);
+        return failures;
+    }
+
+    private static void abandon(AtomicBoolean abandoned, List<? extends Future<?>> futures) {
+        abandoned.set(true);
+        futures.forEach(f -> f.cancel(false));
+    }
+
+    /**
+     * @return How long to wait for the next predicate to finish before one of the running predicates is out of time.
+     */
+    private static long nextDeadlineNanos(Collection<IRowPredicate> running, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        return running.stream()
+                .mapToLong(p -> TimeUnit.MILLISECONDS.toNanos(p.getTimeoutMillis()) - elapsed)
+                .min().orElse(0);
+    }
+
+    private static void unwrap(Future<Void> done) throws InterruptedException {
+        try {
+            done.get();
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException) return (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        return new RuntimeException(cause);
+    }
+
+    private static RowValidationFailedException timedOut(IRowPredicate predicate) {
+        return new RowValidationFailedException(MessageFormat.format(Session.getBundle().getString("rowValidation.Timeout{check}"),
+                predicate.getClass().getSimpleName()));
+    }
+}
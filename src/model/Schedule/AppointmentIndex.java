@@ -0,0 +1,442 @@
+package model.Schedule;
+
+import javafx.beans.Observable;
+import model.Query.BaseQuery;
+import model.Query.ChannelEvent;
+import model.Query.QueryStats;
+import model.Query.VersionedIndex;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * AppointmentIndex holds every appointment's Title, Customer, Contact, User, Start, and End in memory, so questions like "which
+ * appointments overlap this one" (or "which appointments fall in this week", for the calendar) can be answered without a
+ * round trip to the database.
+ * <br>
+ * For each resource (each of the {@link #resourceColumns}, eg each customer or each contact), that resource's appointments
+ * are kept in arrays sorted by Start, alongside a running maximum of End. Every appointment
+ * which overlaps [start, end) starts before {@code end} (found by binary search), and can only be at or after the first
+ * position whose running maximum End is after {@code start} (also found by binary search), so a query only looks at the
+ * appointments which could overlap. Every appointment is also kept in one such time index, for range queries across all resources.
+ * <br>
+ * The index is immutable once built: changes build a new one, which replaces the old one atomically (see
+ * {@link VersionedIndex}), so readers never need to lock. It's kept in sync by subscribing to the appointments channel. Events which name the changed appointments
+ * are patched in; anything else triggers a full reload. Updates happen on a background thread with its own Connection,
+ * and while one is pending (or if the index is older than {@code scheduling.appointmentIndexMaxAgeMillis}, since other
+ * clients' edits don't publish here) the index reports itself as stale, so callers can fall back to SQL. An update which
+ * fails leaves the last contents in place for the calendar to show, but the index stays stale until a full reload succeeds.
+ */
+public class AppointmentIndex extends VersionedIndex<AppointmentIndex.Contents> {
+    private static final String tableName = "appointments";
+    private static final String selectSQL = "SELECT Appointment_ID, Customer_ID, Contact_ID, User_ID, Start, End, Title FROM appointments";
+    private static final long maxAgeNanos = Long.getLong("scheduling.appointmentIndexMaxAgeMillis", 60_000) * 1_000_000;
+
+    /**
+     * The columns naming resources an appointment occupies, which the index keeps intervals for.
+     */
+    public static final List<String> resourceColumns = List.of("Customer_ID", "Contact_ID", "User_ID");
+
+    private static AppointmentIndex shared;
+
+    private static final Updater updater = new Updater("appointment-index-update");
+
+    private volatile boolean missedUpdate = false; // An update failed, so the contents may lack changes until a reload succeeds
+
+    /**
+     * A single appointment's position in time.
+     */
+    public static final class Appointment {
+        public final int appointmentId;
+        public final int customerId;
+        public final int contactId;
+        public final int userId;
+        public final long start;
+        public final long end;
+        public final String title;
+
+        Appointment(int appointmentId, int customerId, int contactId, int userId, long start, long end, String title) {
+            this.appointmentId = appointmentId;
+            this.customerId = customerId;
+            this.contactId = contactId;
+            this.userId = userId;
+            this.start = start;
+            this.end = end;
+            this.title = title;
+        }
+
+        /**
+         * @param resourceColumn One of the {@link #resourceColumns}.
+         * @return The ID of the resource this appointment occupies in that column.
+         */
+        public int resourceId(String resourceColumn) {
+            switch (resourceColumn) {
+                case "Customer_ID": return customerId;
+                case "Contact_ID": return contactId;
+                case "User_ID": return userId;
+                default: throw new IllegalArgumentException(resourceColumn);
+            }
+        }
+    }
+
+    /**
+     * One resource's appointments, sorted by start.
+     */
+    private static final class ResourceIntervals {
+        final int[] appointmentIds;
+        final long[] starts;
+        final long[] ends;
+        final long[] maxEnds; // maxEnds[i] is the latest End of any appointment at or before i
+
+        ResourceIntervals(Collection<Appointment> appointments) {
+            List<Appointment> sorted = new ArrayList<>(appointments);
+            sorted.sort(Comparator.comparingLong(a -> a.start));
+            int n = sorted.size();
+            appointmentIds = new int[n];
+            starts = new long[n];
+            ends = new long[n];
+            for (int i = 0; i < n; i++) {
+                Appointment a = sorted.get(i);
+                appointmentIds[i] = a.appointmentId;
+                starts[i] = a.start;
+                ends[i] = a.end;
+            }
+            maxEnds = runningMax(ends);
+        }
+
+        private ResourceIntervals(int[] appointmentIds, long[] starts, long[] ends) {
+            this.appointmentIds = appointmentIds;
+            this.starts = starts;
+            this.ends = ends;
+            this.maxEnds = runningMax(ends);
+        }
+
+        private static long[] runningMax(long[] ends) {
+            long[] maxEnds = new long[ends.length];
+            long maxEnd = Long.MIN_VALUE;
+            for (int i = 0; i < ends.length; i++) {
+                maxEnd = Math.max(maxEnd, ends[i]);
+                maxEnds[i] = maxEnd;
+            }
+            return maxEnds;
+        }
+
+        /**
+         * @return New intervals without the removed appointments, and with the added ones merged in by start, so only the
+         * added appointments are sorted.
+         */
+        ResourceIntervals patched(Set<Integer> removedIds, List<Appointment> added) {
+            List<Appointment> sortedAdded = new ArrayList<>(added);
+            sortedAdded.sort(Comparator.comparingLong(a -> a.start));
+            int kept = 0;
+            for (int id : appointmentIds) if (!removedIds.contains(id)) kept++;
+            int n = kept + sortedAdded.size();
+            int[] newIds = new int[n];
+            long[] newStarts = new long[n];
+            long[] newEnds = new long[n];
+            int i = 0, j = 0, k = 0;
+            while (k < n) {
+                if (i < appointmentIds.length && removedIds.contains(appointmentIds[i])) {
+                    i++;
+                } else if (j == sortedAdded.size() || (i < appointmentIds.length && starts[i] <= sortedAdded.get(j).start)) {
+                    newIds[k] = appointmentIds[i];
+                    newStarts[k] = starts[i];
+                    newEnds[k++] = ends[i++];
+                } else {
+                    Appointment next = sortedAdded.get(j++);
+                    newIds[k] = next.appointmentId;
+                    newStarts[k] = next.start;
+                    newEnds[k++] = next.end;
+                }
+            }
+            return new ResourceIntervals(newIds, newStarts, newEnds);
+        }
+
+        /**
+         * @return The IDs of the appointments which overlap [start, end), other than excludedId.
+         */
+        List<Integer> overlapping(long start, long end, Integer excludedId) {
+            int upper = firstIndex(starts, end); // Everything from here on starts too late
+            int lower = firstIndex(maxEnds, start + 1); // Everything before here ends too early
+            List<Integer> found = new ArrayList<>();
+            for (int i = lower; i < upper; i++) {
+                if (ends[i] > start && (excludedId == null || appointmentIds[i] != excludedId)) found.add(appointmentIds[i]);
+            }
+            return found;
+        }
+
+        /**
+         * @return The [start, end) spans of the appointments which overlap [start, end), other than excludedId, sorted by start.
+         */
+        List<long[]> spans(long start, long end, Integer excludedId) {
+            int upper = firstIndex(starts, end);
+            int lower = firstIndex(maxEnds, start + 1);
+            List<long[]> found = new ArrayList<>();
+            for (int i = lower; i < upper; i++) {
+                if (ends[i] > start && (excludedId == null || appointmentIds[i] != excludedId)) found.add(new long[]{starts[i], ends[i]});
+            }
+            return found;
+        }
+
+        /**
+         * @return The first index in the (non-decreasing) array whose value is at least the given value.
+         */
+        private static int firstIndex(long[] sorted, long value) {
+            int lo = 0, hi = sorted.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sorted[mid] < value) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * An immutable version of the index.
+     */
+    static final class Contents {
+        final Map<Integer, Appointment> byId;
+        final Map<String, Map<Integer, ResourceIntervals>> byResource; // Resource column -> resource ID -> intervals
+        final ResourceIntervals byTime; // Every appointment
+        final long builtAtNanos = System.nanoTime();
+
+        Contents(Map<Integer, Appointment> byId, Map<String, Map<Integer, ResourceIntervals>> byResource, ResourceIntervals byTime) {
+            this.byId = byId;
+            this.byResource = byResource;
+            this.byTime = byTime;
+        }
+
+        static Contents of(Map<Integer, Appointment> byId) {
+            Map<String, Map<Integer, ResourceIntervals>> byResource = new HashMap<>();
+            for (String column : resourceColumns) {
+                Map<Integer, ResourceIntervals> intervals = new HashMap<>();
+                byId.values().stream()
+                        .collect(Collectors.groupingBy(a -> a.resourceId(column)))
+                        .forEach((resourceId, appointments) -> intervals.put(resourceId, new ResourceIntervals(appointments)));
+                byResource.put(column, intervals);
+            }
+            return new Contents(byId, byResource, new ResourceIntervals(byId.values()));
+        }
+
+        /**
+         * @return A new Contents with the given appointments replaced (or removed, where the value is null), rebuilding
+         * only the resources they occupy, and merging them into the time index.
+         */
+        Contents patched(Map<Integer, Appointment> changes) {
+            Map<Integer, Appointment> newById = new HashMap<>(byId);
+            List<Appointment> touched = new ArrayList<>();
+            changes.forEach((appointmentId, appointment) -> {
+                Appointment old = appointment == null ? newById.remove(appointmentId) : newById.put(appointmentId, appointment);
+                if (old != null) touched.add(old);
+                if (appointment != null) touched.add(appointment);
+            });
+
+            Map<String, Map<Integer, ResourceIntervals>> newByResource = new HashMap<>();
+            for (String column : resourceColumns) {
+                Set<Integer> affectedIds = new HashSet<>();
+                for (Appointment a : touched) affectedIds.add(a.resourceId(column));
+                Map<Integer, List<Appointment>> affected = new HashMap<>();
+                for (Appointment a : newById.values()) {
+                    if (affectedIds.contains(a.resourceId(column))) affected.computeIfAbsent(a.resourceId(column), r -> new ArrayList<>()).add(a);
+                }
+                Map<Integer, ResourceIntervals> intervals = new HashMap<>(byResource.get(column));
+                for (Integer resourceId : affectedIds) {
+                    List<Appointment> appointments = affected.get(resourceId);
+                    if (appointments == null) intervals.remove(resourceId);
+                    else intervals.put(resourceId, new ResourceIntervals(appointments));
+                }
+                newByResource.put(column, intervals);
+            }
+            List<Appointment> added = new ArrayList<>();
+            for (Appointment appointment : changes.values()) if (appointment != null) added.add(appointment);
+            return new Contents(newById, newByResource, byTime.patched(changes.keySet(), added));
+        }
+    }
+
+    /**
+     * @return The application's shared AppointmentIndex, which starts loading the first time it's requested.
+     */
+    public static synchronized AppointmentIndex shared() {
+        if (shared == null) shared = new AppointmentIndex();
+        return shared;
+    }
+
+    private AppointmentIndex() {
+        super(updater, null);
+        BaseQuery.subscribe(tableName, this::onChannelChange);
+        reloadLater();
+    }
+
+    /**
+     * Construct an index holding exactly the given appointments, which doesn't follow the database, eg for tests.
+     * @param appointments The appointments to index.
+     */
+    AppointmentIndex(Collection<Appointment> appointments) {
+        super(updater, Contents.of(byId(appointments)));
+    }
+
+    private static Map<Integer, Appointment> byId(Collection<Appointment> appointments) {
+        Map<Integer, Appointment> byId = new HashMap<>();
+        for (Appointment appointment : appointments) byId.put(appointment.appointmentId, appointment);
+        return byId;
+    }
+
+    /**
+     * @return Whether the index can be trusted: it's loaded, has no updates pending (nor changes published from another
+     * thread still on their way to it), and isn't too old.
+     */
+    public boolean isFresh() {
+        Contents current = contents();
+        if (hasPendingUpdates() || BaseQuery.hasUndeliveredEvents(tableName)) return false;
+        if (current == null || missedUpdate) {
+            reloadLater(); // A previous update failed, so try again
+            return false;
+        }
+        if (System.nanoTime() - current.builtAtNanos > maxAgeNanos) {
+            reloadLater(); // Pick up other clients' changes, while callers use SQL in the meantime
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Find the appointments a customer has which overlap the given span. Only meaningful while {@link #isFresh()}.
+     * @param customerId The customer whose appointments to search.
+     * @param start The start of the span, in epoch milliseconds.
+     * @param end The end of the span (exclusive), in epoch milliseconds.
+     * @param excludedId An appointment to ignore (eg the one being tested), or null.
+     * @return The IDs of the overlapping appointments.
+     */
+    public List<Integer> overlapping(int customerId, long start, long end, Integer excludedId) {
+        return overlapping("Customer_ID", customerId, start, end, excludedId);
+    }
+
+    /**
+     * Find the appointments occupying a resource which overlap the given span. Only meaningful while {@link #isFresh()}.
+     * @param resourceColumn One of the {@link #resourceColumns}.
+     * @param resourceId The resource whose appointments to search.
+     * @param start The start of the span, in epoch milliseconds.
+     * @param end The end of the span (exclusive), in epoch milliseconds.
+     * @param excludedId An appointment to ignore (eg the one being tested), or null.
+     * @return The IDs of the overlapping appointments.
+     */
+    public List<Integer> overlapping(String resourceColumn, int resourceId, long start, long end, Integer excludedId) {
+        Contents current = contents();
+        if (current == null) return List.of();
+        ResourceIntervals intervals = current.byResource.get(resourceColumn).get(resourceId);
+        return intervals == null ? List.of() : intervals.overlapping(start, end, excludedId);
+    }
+
+    /**
+     * Find when a resource is busy during the given span. Only meaningful while {@link #isFresh()}.
+     * @param resourceColumn One of the {@link #resourceColumns}.
+     * @param resourceId The resource whose appointments to search.
+     * @param start The start of the span, in epoch milliseconds.
+     * @param end The end of the span (exclusive), in epoch milliseconds.
+     * @param excludedId An appointment to ignore (eg one being rescheduled), or null.
+     * @return The [start, end) spans of the overlapping appointments, sorted by start.
+     */
+    public List<long[]> busySpans(String resourceColumn, int resourceId, long start, long end, Integer excludedId) {
+        Contents current = contents();
+        if (current == null) return List.of();
+        ResourceIntervals intervals = current.byResource.get(resourceColumn).get(resourceId);
+        return intervals == null ? List.of() : intervals.spans(start, end, excludedId);
+    }
+
+    /**
+     * Find every appointment which overlaps the given span, eg to draw a calendar. Unlike the other queries, this answers
+     * from whatever the index holds, even while it's stale; {@link #versionProperty()} says when to ask again.
+     * @param start The start of the span, in epoch milliseconds.
+     * @param end The end of the span (exclusive), in epoch milliseconds.
+     * @return The overlapping appointments, sorted by start.
+     */
+    public List<Appointment> between(long start, long end) {
+        Contents current = contents();
+        if (current == null) return List.of();
+        List<Appointment> found = new ArrayList<>();
+        for (Integer appointmentId : current.byTime.overlapping(start, end, null)) found.add(current.byId.get(appointmentId));
+        return found;
+    }
+
+    /**
+     * @param appointmentId The ID of an appointment.
+     * @return The indexed appointment, or null if it isn't (yet) in the index.
+     */
+    public Appointment get(int appointmentId) {
+        Contents current = contents();
+        return current == null ? null : current.byId.get(appointmentId);
+    }
+
+    /**
+     * Convert a Start or End value, as read from the database or a row, to epoch milliseconds.
+     * @param value A {@link Timestamp} or {@link LocalDateTime}.
+     * @return The value in epoch milliseconds, or null if it's null.
+     */
+    public static Long toMillis(Object value) {
+        if (value == null) return null;
+        if (value instanceof LocalDateTime) return Timestamp.valueOf((LocalDateTime) value).getTime();
+        return ((java.util.Date) value).getTime();
+    }
+
+    // Keeping in sync ////////////////////////////////////////////
+
+    /**
+     * When the appointments channel publishes, patch in the appointments it names, or reload everything if it doesn't say.
+     */
+    private void onChannelChange(Observable observable) {
+        Set<Object> changedKeys = observable instanceof ChannelEvent ? ((ChannelEvent) observable).getChangedKeys(tableName) : null;
+        if (changedKeys == null || contents() == null || missedUpdate) reloadLater();
+        else patchLater(changedKeys);
+    }
+
+    private void reloadLater() {
+        queueRefresh(c -> {
+            Map<Integer, Appointment> byId = new HashMap<>();
+            readAppointments(c, selectSQL, List.of(), byId);
+            missedUpdate = false;
+            return Contents.of(byId);
+        });
+    }
+
+    private void patchLater(Set<Object> appointmentIds) {
+        queuePatch(c -> {
+            Map<Integer, Appointment> changes = new HashMap<>();
+            for (Object appointmentId : appointmentIds) changes.put(((Number) appointmentId).intValue(), null); // Removed, unless re-read below
+            List<Object> keys = new ArrayList<>(appointmentIds);
+            String sql = selectSQL + " WHERE Appointment_ID IN (" + String.join(", ", Collections.nCopies(keys.size(), "?")) + ")";
+            readAppointments(c, sql, keys, changes);
+            return changes;
+        }, (current, changes) -> current == null ? null : current.patched(changes)); // Otherwise the first reload is still to come
+    }
+
+    /**
+     * Updates which are pending already make the index stale. One which fails keeps it stale until a reload succeeds,
+     * since we can't know what it missed.
+     */
+    @Override
+    protected void updateFailed(SQLException e) {
+        e.printStackTrace();
+        missedUpdate = true;
+    }
+
+    private static void readAppointments(Connection c, String sql, List<Object> params, Map<Integer, Appointment> into) throws SQLException {
+        int read = 0;
+        try (QueryStats.Timer timer = QueryStats.start(sql); PreparedStatement ps = c.prepareStatement(sql)) {
+            int i = 1;
+            for (Object param : params) ps.setObject(i++, param);
+            try (ResultSet rs = ps.executeQuery()) {
+                for (; rs.next(); read++) {
+                    Long start = toMillis(rs.getTimestamp(5));
+                    Long end = toMillis(rs.getTimestamp(6));
+                    if (start == null || end == null) continue;
+                    int appointmentId = rs.getInt(1);
+                    into.put(appointmentId, new Appointment(appointmentId, rs.getInt(2), rs.getInt(3), rs.getInt(4), start, end, rs.getString(7)));
+                }
+            }
+            timer.stop(read);
+        }
+    }
+}
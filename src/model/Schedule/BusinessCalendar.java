@@ -0,0 +1,293 @@
+package model.Schedule;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.time.*;
+import java.time.zone.ZoneRules;
+import java.util.*;
+
+/**
+ * BusinessCalendar describes when each office is open: its weekly hours, in its own time zone, less any holidays and
+ * one-off closures.
+ * <br>
+ * Each {@link Office} precompiles its open intervals over a rolling horizon (a year back and two years forward, extended
+ * on demand) into sorted arrays of epoch milliseconds, with touching intervals merged. Asking whether a span is fully
+ * open is then a binary search, with no time zone arithmetic at all.
+ * <br>
+ * Offices are read from an optional, application-external {@code offices.xml} (next to {@code database.xml}):
+ * <pre>{@code
+ * <offices>
+ *     <office name="White Plains" zone="US/Eastern" default="true">
+ *         <hours days="MONDAY,TUESDAY,WEDNESDAY,THURSDAY,FRIDAY" open="08:00" close="22:00"/>
+ *         <holiday date="2024-12-25"/>
+ *         <closure start="2024-07-03T17:00" end="2024-07-05T08:00"/>
+ *     </office>
+ * </offices>
+ * }</pre>
+ * An appointment belongs to the office whose name matches its Location, or to the default office. Without the file, there's
+ * a single default office open 8:00-22:00 US/Eastern, every day.
+ */
+public class BusinessCalendar {
+    private static final String configFileName = "offices.xml";
+    private static final int horizonPastDays = 365;
+    private static final int horizonFutureDays = 730;
+
+    /**
+     * The office open 8:00-22:00 US/Eastern every day, which is used without an offices.xml.
+     */
+    public static final Office eastern = easternOffice();
+
+    private static BusinessCalendar shared;
+
+    private final Map<String, Office> officesByName = new HashMap<>();
+    private final Office defaultOffice;
+
+    /**
+     * An Office's weekly hours, holidays, and closures, along with its compiled open intervals.
+     */
+    public static final class Office {
+        private final String name;
+        private final ZoneId zone;
+        private final ZoneRules zoneRules;
+        private final Map<DayOfWeek, List<LocalTime[]>> weeklyHours;
+        private final Set<LocalDate> holidays;
+        private final List<LocalDateTime[]> closures;
+        private volatile Compiled compiled;
+
+        /**
+         * @param name The office's name, matched against appointments' Locations.
+         * @param zone The time zone the office's hours are expressed in.
+         * @param weeklyHours For each day of the week, the [open, close) times the office is open. A close of midnight means the end of the day.
+         * @param holidays Dates on which the office is closed all day.
+         * @param closures Other [start, end) spans, in the office's local time, when the office is closed.
+         */
+        public Office(String name, ZoneId zone, Map<DayOfWeek, List<LocalTime[]>> weeklyHours, Set<LocalDate> holidays, List<LocalDateTime[]> closures) {
+            this.name = name;
+            this.zone = zone;
+            this.zoneRules = zone.getRules();
+            this.weeklyHours = weeklyHours;
+            this.holidays = holidays;
+            this.closures = closures;
+            LocalDate today = LocalDate.now(zone);
+            this.compiled = compile(today.minusDays(horizonPastDays), today.plusDays(horizonFutureDays));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        /**
+         * @param start The start of a span, in epoch milliseconds.
+         * @param end The end of the span (exclusive), in epoch milliseconds.
+         * @return Whether the office is open for the whole span.
+         */
+        public boolean isOpen(long start, long end) {
+            Compiled c = compiledCovering(start, end);
+            int i = c.lastOpeningAtOrBefore(start);
+            return i >= 0 && end <= c.closes[i];
+        }
+
+        /**
+         * @param from A time, in epoch milliseconds.
+         * @return The [open, close) span of the first open interval which ends after the given time, or null if there's none within the horizon.
+         */
+        public long[] nextOpenInterval(long from) {
+            Compiled c = compiledCovering(from, from);
+            int i = c.lastOpeningAtOrBefore(from);
+            if (i < 0 || c.closes[i] <= from) i++;
+            return i < c.opens.length ? new long[]{c.opens[i], c.closes[i]} : null;
+        }
+
+        private Compiled compiledCovering(long start, long end) {
+            Compiled c = compiled;
+            if (start >= c.fromMillis && end <= c.toMillis) return c;
+            synchronized (this) {
+                c = compiled;
+                if (start >= c.fromMillis && end <= c.toMillis) return c;
+                LocalDate from = c.from, to = c.to;
+                LocalDate startDate = Instant.ofEpochMilli(start).atZone(zone).toLocalDate();
+                LocalDate endDate = Instant.ofEpochMilli(end).atZone(zone).toLocalDate();
+                if (startDate.isBefore(from.plusDays(1))) from = startDate.minusDays(horizonPastDays);
+                if (!endDate.isBefore(to.minusDays(1))) to = endDate.plusDays(horizonFutureDays);
+                compiled = compile(from, to);
+                return compiled;
+            }
+        }
+
+        /**
+         * Compile the open intervals between the given dates.
+         */
+        private Compiled compile(LocalDate from, LocalDate to) {
+            List<long[]> intervals = new ArrayList<>();
+            for (LocalDate date = from; date.isBefore(to); date = date.plusDays(1)) {
+                if (holidays.contains(date)) continue;
+                for (LocalTime[] hours : weeklyHours.getOrDefault(date.getDayOfWeek(), List.of())) {
+                    long open = toMillis(date.atTime(hours[0]));
+                    long close = toMillis(hours[1].equals(LocalTime.MIDNIGHT) ? date.plusDays(1).atStartOfDay() : date.atTime(hours[1]));
+                    if (open < close) intervals.add(new long[]{open, close});
+                }
+            }
+            intervals.sort(Comparator.comparingLong(interval -> interval[0]));
+
+            // Merge touching or overlapping intervals, so spans crossing midnight in a 24-hour office are seen as open
+            List<long[]> merged = new ArrayList<>();
+            for (long[] interval : intervals) {
+                long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                if (last != null && interval[0] <= last[1]) last[1] = Math.max(last[1], interval[1]);
+                else merged.add(interval.clone());
+            }
+
+            for (LocalDateTime[] closure : closures) merged = subtract(merged, toMillis(closure[0]), toMillis(closure[1]));
+
+            long[] opens = new long[merged.size()];
+            long[] closes = new long[merged.size()];
+            for (int i = 0; i < merged.size(); i++) {
+                opens[i] = merged.get(i)[0];
+                closes[i] = merged.get(i)[1];
+            }
+            return new Compiled(from, to, toMillis(from.atStartOfDay()), toMillis(to.atStartOfDay()), opens, closes);
+        }
+
+        private static List<long[]> subtract(List<long[]> intervals, long closedFrom, long closedTo) {
+            List<long[]> result = new ArrayList<>();
+            for (long[] interval : intervals) {
+                if (interval[1] <= closedFrom || interval[0] >= closedTo) {
+                    result.add(interval);
+                    continue;
+                }
+                if (interval[0] < closedFrom) result.add(new long[]{interval[0], closedFrom});
+                if (interval[1] > closedTo) result.add(new long[]{closedTo, interval[1]});
+            }
+            return result;
+        }
+
+        private long toMillis(LocalDateTime local) {
+            return local.toEpochSecond(zoneRules.getOffset(local)) * 1000;
+        }
+    }
+
+    /**
+     * An Office's open intervals between two dates: disjoint, sorted, and in epoch milliseconds.
+     */
+    private static final class Compiled {
+        final LocalDate from;
+        final LocalDate to;
+        final long fromMillis;
+        final long toMillis;
+        final long[] opens;
+        final long[] closes;
+
+        Compiled(LocalDate from, LocalDate to, long fromMillis, long toMillis, long[] opens, long[] closes) {
+            this.from = from;
+            this.to = to;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.opens = opens;
+            this.closes = closes;
+        }
+
+        /**
+         * @return The index of the last interval which opens at or before the given time, or -1 if there's none.
+         */
+        int lastOpeningAtOrBefore(long time) {
+            int lo = 0, hi = opens.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (opens[mid] <= time) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo - 1;
+        }
+    }
+
+    /**
+     * @return The application's shared BusinessCalendar, read from {@code offices.xml} the first time it's requested.
+     */
+    public static synchronized BusinessCalendar shared() {
+        if (shared == null) shared = fromFile(new File(configFileName));
+        return shared;
+    }
+
+    /**
+     * Construct a BusinessCalendar from the given offices.
+     * @param offices Every office, which must include at least one.
+     * @param defaultOffice The office appointments belong to when their Location doesn't name one.
+     */
+    public BusinessCalendar(Collection<Office> offices, Office defaultOffice) {
+        for (Office office : offices) officesByName.put(office.getName().toLowerCase(), office);
+        this.defaultOffice = defaultOffice;
+    }
+
+    private static Office easternOffice() {
+        Map<DayOfWeek, List<LocalTime[]>> hours = new EnumMap<>(DayOfWeek.class);
+        for (DayOfWeek day : DayOfWeek.values()) hours.put(day, List.<LocalTime[]>of(new LocalTime[]{LocalTime.of(8, 0), LocalTime.of(22, 0)}));
+        return new Office("Eastern", ZoneId.of("US/Eastern"), hours, Set.of(), List.of());
+    }
+
+    /**
+     * @param location An appointment's Location, which may be null.
+     * @return The office with that name, or the default office.
+     */
+    public Office officeFor(String location) {
+        if (location == null) return defaultOffice;
+        return officesByName.getOrDefault(location.strip().toLowerCase(), defaultOffice);
+    }
+
+    public Office getDefaultOffice() {
+        return defaultOffice;
+    }
+
+    /**
+     * Read offices from the given file, falling back to the Eastern office if it's missing or can't be read.
+     */
+    private static BusinessCalendar fromFile(File file) {
+        if (!file.exists()) return new BusinessCalendar(List.of(eastern), eastern);
+        try {
+            Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+            doc.getDocumentElement().normalize();
+            List<Office> offices = new ArrayList<>();
+            Office defaultOffice = null;
+            NodeList officeElements = doc.getElementsByTagName("office");
+            for (int i = 0; i < officeElements.getLength(); i++) {
+                Element officeElement = (Element) officeElements.item(i);
+                Map<DayOfWeek, List<LocalTime[]>> hours = new EnumMap<>(DayOfWeek.class);
+                for (Element hoursElement : children(officeElement, "hours")) {
+                    LocalTime open = LocalTime.parse(hoursElement.getAttribute("open"));
+                    String closeText = hoursElement.getAttribute("close");
+                    LocalTime close = closeText.equals("24:00") ? LocalTime.MIDNIGHT : LocalTime.parse(closeText);
+                    for (String day : hoursElement.getAttribute("days").split(","))
+                        hours.computeIfAbsent(DayOfWeek.valueOf(day.strip().toUpperCase()), d -> new ArrayList<>()).add(new LocalTime[]{open, close});
+                }
+                Set<LocalDate> holidays = new HashSet<>();
+                for (Element holiday : children(officeElement, "holiday")) holidays.add(LocalDate.parse(holiday.getAttribute("date")));
+                List<LocalDateTime[]> closures = new ArrayList<>();
+                for (Element closure : children(officeElement, "closure"))
+                    closures.add(new LocalDateTime[]{LocalDateTime.parse(closure.getAttribute("start")), LocalDateTime.parse(closure.getAttribute("end"))});
+
+                Office office = new Office(officeElement.getAttribute("name"), ZoneId.of(officeElement.getAttribute("zone")), hours, holidays, closures);
+                offices.add(office);
+                if (defaultOffice == null || Boolean.parseBoolean(officeElement.getAttribute("default"))) defaultOffice = office;
+            }
+            if (defaultOffice == null) throw new IllegalArgumentException(configFileName + " describes no offices");
+            return new BusinessCalendar(offices, defaultOffice);
+        } catch (Exception e) {
+            e.printStackTrace(); // Keep validating appointments against the usual hours
+            return new BusinessCalendar(List.of(eastern), eastern);
+        }
+    }
+
+    private static List<Element> children(Element parent, String tagName) {
+        List<Element> found = new ArrayList<>();
+        NodeList nodes = parent.getElementsByTagName(tagName);
+        for (int i = 0; i < nodes.getLength(); i++) found.add((Element) nodes.item(i));
+        return found;
+    }
+}
@@ -0,0 +1,298 @@
+package model.Schedule;
+
+import model.Query.QueryStats;
+import model.Query.SConnection;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+
+/**
+ * OverlapAudit finds every pair of appointments which occupy the same resource (eg the same customer) at the same time,
+ * including those saved before validation existed, or imported around it.
+ * <br>
+ * Appointments are streamed from the database into flat arrays, then, for each audited resource column, grouped by resource
+ * with a counting sort, so each resource's appointments sit in one contiguous segment. The segments are split across a
+ * {@link ForkJoinPool}, and each is sorted by start and swept: a running list of the appointments which haven't ended yet
+ * holds exactly the earlier appointments each new one overlaps. Apart from the pairs it reports, a resource costs
+ * O(n log n) to audit.
+ */
+public class OverlapAudit extends SConnection {
+    private static final String selectSQL = "SELECT Appointment_ID, Customer_ID, Contact_ID, User_ID, Start, End FROM appointments";
+
+    /**
+     * Segments with at least this many appointments in total are split further across the pool.
+     */
+    private static final int rowsPerTask = 16_384;
+
+    /**
+     * Start times are sorted in whole seconds (as DATETIME stores them), packed above each row's position in a single long.
+     */
+    private static final int rowBits = 31;
+
+    /**
+     * Two appointments which occupy the same resource at the same time.
+     */
+    public static final class Overlap {
+        public final String resourceColumn;
+        public final int resourceId;
+        public final int firstAppointmentId;
+        public final int secondAppointmentId;
+        public final long overlapStart;
+        public final long overlapEnd;
+
+        Overlap(String resourceColumn, int resourceId, int firstAppointmentId, int secondAppointmentId, long overlapStart, long overlapEnd) {
+            this.resourceColumn = resourceColumn;
+            this.resourceId = resourceId;
+            this.firstAppointmentId = firstAppointmentId;
+            this.secondAppointmentId = secondAppointmentId;
+            this.overlapStart = overlapStart;
+            this.overlapEnd = overlapEnd;
+        }
+    }
+
+    /**
+     * The outcome of an audit.
+     */
+    public static final class Report {
+        private final int appointmentsScanned;
+        private final List<Overlap> overlaps;
+        private final long elapsedMillis;
+
+        Report(int appointmentsScanned, List<Overlap> overlaps, long elapsedMillis) {
+            this.appointmentsScanned = appointmentsScanned;
+            this.overlaps = overlaps;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getAppointmentsScanned() {
+            return appointmentsScanned;
+        }
+
+        /**
+         * @return Every overlap found, grouped by resource column, then resource, then in order of the later appointment's start.
+         */
+        public List<Overlap> getOverlaps() {
+            return overlaps;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return How many overlaps were found in each audited resource column.
+         */
+        public Map<String, Integer> countsByResourceColumn() {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (Overlap overlap : overlaps) counts.merge(overlap.resourceColumn, 1, Integer::sum);
+            return counts;
+        }
+    }
+
+    /**
+     * Appointments as flat arrays, indexed by their position in the stream. An appointment without a resource in some column
+     * (a NULL ID) is left out of that column's audit.
+     */
+    public static final class Appointments {
+        int size = 0;
+        int[] appointmentIds = new int[1024];
+        long[] starts = new long[1024];
+        long[] ends = new long[1024];
+        final Map<String, int[]> resourceIds = new LinkedHashMap<>();
+        final Map<String, BitSet> missingResources = new HashMap<>();
+
+        public Appointments(Collection<String> resourceColumns) {
+            for (String column : resourceColumns) {
+                resourceIds.put(column, new int[1024]);
+                missingResources.put(column, new BitSet());
+            }
+        }
+
+        /**
+         * Append an appointment.
+         * @param resources The appointment's resource IDs, in the order of the resource columns given at construction, with
+         * null where it has none.
+         */
+        public void add(int appointmentId, long start, long end, Integer... resources) {
+            if (size == appointmentIds.length) {
+                int capacity = size * 2;
+                appointmentIds = Arrays.copyOf(appointmentIds, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                resourceIds.replaceAll((column, ids) -> Arrays.copyOf(ids, capacity));
+            }
+            appointmentIds[size] = appointmentId;
+            starts[size] = start;
+            ends[size] = end;
+            int i = 0;
+            for (Map.Entry<String, int[]> column : resourceIds.entrySet()) {
+                Integer resourceId = resources[i++];
+                if (resourceId == null) missingResources.get(column.getKey()).set(size);
+                else column.getValue()[size] = resourceId;
+            }
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Stream every appointment from the database and audit them.
+     * @param resourceColumns The resource columns to audit, from {@link AppointmentIndex#resourceColumns} (eg just "Customer_ID").
+     * @param progress Told how many appointments have been read, every 100,000, or null.
+     * @return The report.
+     */
+    public Report run(List<String> resourceColumns, IntConsumer progress) {
+        for (String column : resourceColumns) {
+            if (!AppointmentIndex.resourceColumns.contains(column)) throw new IllegalArgumentException("Not a resource column: " + column);
+        }
+        long startNanos = System.nanoTime();
+        Appointments appointments = new Appointments(resourceColumns);
+        try (Connection c = openConnection();
+             Statement statement = c.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(Integer.MIN_VALUE); // Stream rows rather than holding the whole ResultSet
+            try (QueryStats.Timer timer = QueryStats.start(selectSQL); ResultSet rs = statement.executeQuery(selectSQL)) {
+                Integer[] resources = new Integer[resourceColumns.size()];
+                while (rs.next()) {
+                    Long start = AppointmentIndex.toMillis(rs.getTimestamp(5));
+                    Long end = AppointmentIndex.toMillis(rs.getTimestamp(6));
+                    if (start == null || end == null) continue;
+                    for (int i = 0; i < resources.length; i++) {
+                        int resourceId = rs.getInt(resourceColumns.get(i));
+                        resources[i] = rs.wasNull() ? null : resourceId; // getInt reads NULL as 0, which isn't a resource
+                    }
+                    appointments.add(rs.getInt(1), start, end, resources);
+                    if (progress != null && appointments.size() % 100_000 == 0) progress.accept(appointments.size());
+                }
+                timer.stop(appointments.size());
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        List<Overlap> overlaps = audit(appointments);
+        return new Report(appointments.size(), overlaps, (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    /**
+     * Audit appointments which are already in memory.
+     * @param appointments The appointments, with the resource columns to audit.
+     * @return Every overlap found, grouped by resource column, then resource.
+     */
+    public static List<Overlap> audit(Appointments appointments) {
+        List<Overlap> overlaps = new ArrayList<>();
+        if (appointments.size() == 0) return overlaps;
+        long minSeconds = Long.MAX_VALUE;
+        for (int i = 0; i < appointments.size; i++) minSeconds = Math.min(minSeconds, Math.floorDiv(appointments.starts[i], 1000));
+        for (Map.Entry<String, int[]> column : appointments.resourceIds.entrySet()) {
+            Segments segments = Segments.of(appointments, column.getValue(), appointments.missingResources.get(column.getKey()), minSeconds);
+            overlaps.addAll(ForkJoinPool.commonPool().invoke(new SweepTask(appointments, column.getKey(), column.getValue(), segments, 0, segments.count())));
+        }
+        return overlaps;
+    }
+
+    /**
+     * Every row of one resource column which has a resource, grouped into a contiguous segment per resource. Each entry packs
+     * a row's start (in seconds since the earliest start) above the row's position.
+     */
+    private static final class Segments {
+        final long[] packed;
+        final int[] offsets; // Segment i is packed[offsets[i]] to packed[offsets[i + 1]]
+
+        Segments(long[] packed, int[] offsets) {
+            this.packed = packed;
+            this.offsets = offsets;
+        }
+
+        int count() {
+            return offsets.length - 1;
+        }
+
+        static Segments of(Appointments appointments, int[] resourceIds, BitSet missing, long minSeconds) {
+            int n = appointments.size;
+            Map<Integer, Integer> segmentOf = new HashMap<>();
+            int[] segments = new int[n];
+            for (int row = 0; row < n; row++) {
+                segments[row] = missing.get(row) ? -1 : segmentOf.computeIfAbsent(resourceIds[row], id -> segmentOf.size());
+            }
+
+            int[] offsets = new int[segmentOf.size() + 1];
+            for (int row = 0; row < n; row++) if (segments[row] >= 0) offsets[segments[row] + 1]++;
+            for (int i = 1; i < offsets.length; i++) offsets[i] += offsets[i - 1];
+
+            long[] packed = new long[offsets[offsets.length - 1]];
+            int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+            for (int row = 0; row < n; row++) {
+                if (segments[row] < 0) continue;
+                long seconds = Math.floorDiv(appointments.starts[row], 1000) - minSeconds;
+                packed[next[segments[row]]++] = (seconds << rowBits) | row;
+            }
+            return new Segments(packed, offsets);
+        }
+    }
+
+    /**
+     * Sorts and sweeps a range of segments, splitting ranges which hold too many rows.
+     */
+    private static final class SweepTask extends RecursiveTask<List<Overlap>> {
+        private static final long serialVersionUID = 1L;
+        private final Appointments appointments;
+        private final String column;
+        private final int[] resourceIds;
+        private final Segments segments;
+        private final int from;
+        private final int to;
+
+        SweepTask(Appointments appointments, String column, int[] resourceIds, Segments segments, int from, int to) {
+            this.appointments = appointments;
+            this.column = column;
+            this.resourceIds = resourceIds;
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Overlap> compute() {
+            int rows = segments.offsets[to] - segments.offsets[from];
+            if (to - from > 1 && rows > rowsPerTask) {
+                int middle = (from + to) >>> 1;
+                SweepTask later = new SweepTask(appointments, column, resourceIds, segments, middle, to);
+                later.fork();
+                List<Overlap> found = new SweepTask(appointments, column, resourceIds, segments, from, middle).compute();
+                found.addAll(later.join());
+                return found;
+            }
+            List<Overlap> found = new ArrayList<>();
+            int[] active = new int[16];
+            for (int segment = from; segment < to; segment++) {
+                int lo = segments.offsets[segment], hi = segments.offsets[segment + 1];
+                if (hi - lo < 2) continue;
+                Arrays.sort(segments.packed, lo, hi);
+                int activeCount = 0;
+                for (int i = lo; i < hi; i++) {
+                    int row = (int) (segments.packed[i] & ((1L << rowBits) - 1));
+                    long start = appointments.starts[row], end = appointments.ends[row];
+                    int kept = 0;
+                    for (int a = 0; a < activeCount; a++) {
+                        int other = active[a];
+                        if (appointments.ends[other] <= start) continue; // Over before this one starts, so over before any later one does
+                        active[kept++] = other;
+                        if (appointments.starts[other] < end) {
+                            found.add(new Overlap(column, resourceIds[row], appointments.appointmentIds[other], appointments.appointmentIds[row],
+                                    Math.max(start, appointments.starts[other]), Math.min(end, appointments.ends[other])));
+                        }
+                    }
+                    if (kept == active.length) active = Arrays.copyOf(active, kept * 2);
+                    active[kept++] = row;
+                    activeCount = kept;
+                }
+            }
+            return found;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package model.Schedule;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A RecurrenceRule describes an appointment which repeats (eg a weekly check-in) as a single rule, rather than as one row
+ * per occurrence.
+ * <br>
+ * Occurrences are never stored. They're expanded on request, and only inside the requested window: the first occurrence
+ * near the window is found by arithmetic rather than by stepping from the first one, so expanding a window costs about as
+ * much as the number of occurrences in it. Occurrences keep their wall-clock time in the office's time zone, so a 9:00
+ * check-in stays at 9:00 across daylight saving changes.
+ */
+public final class RecurrenceRule {
+    /**
+     * How often a rule repeats, in multiples of its {@link #getInterval() interval}.
+     */
+    public enum Frequency {
+        DAILY(ChronoUnit.DAYS),
+        WEEKLY(ChronoUnit.WEEKS),
+        MONTHLY(ChronoUnit.MONTHS);
+
+        private final ChronoUnit unit;
+
+        Frequency(ChronoUnit unit) {
+            this.unit = unit;
+        }
+    }
+
+    /**
+     * A single expanded occurrence of a rule.
+     */
+    public static final class Occurrence {
+        public final RecurrenceRule rule;
+        public final LocalDate date; // In the rule's time zone
+        public final long start;
+        public final long end;
+
+        Occurrence(RecurrenceRule rule, LocalDate date, long start, long end) {
+            this.rule = rule;
+            this.date = date;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final int ruleId;
+    private final String title;
+    private final String location;
+    private final Integer customerId;
+    private final Integer contactId;
+    private final Integer userId;
+    private final ZonedDateTime firstStart;
+    private final long durationMillis;
+    private final Frequency frequency;
+    private final int interval;
+    private final LocalDate until;
+    private final Set<LocalDate> exceptions;
+
+    /**
+     * @param ruleId The rule's ID in the recurrence_rules table.
+     * @param title The Title each occurrence has.
+     * @param location The Location each occurrence has.
+     * @param customerId The customer each occurrence occupies, or null.
+     * @param contactId The contact each occurrence occupies, or null.
+     * @param userId The user each occurrence occupies, or null.
+     * @param firstStart When the first occurrence starts, in the time zone occurrences keep their wall-clock time in.
+     * @param durationMillis How long each occurrence lasts.
+     * @param frequency How often the rule repeats.
+     * @param interval How many of the frequency's units there are between occurrences (eg 2 for fortnightly).
+     * @param until The last date an occurrence may start on, or null to repeat forever.
+     * @param exceptions Dates on which the rule doesn't occur.
+     */
+    public RecurrenceRule(int ruleId, String title, String location, Integer customerId, Integer contactId, Integer userId,
+                          ZonedDateTime firstStart, long durationMillis, Frequency frequency, int interval, LocalDate until, Set<LocalDate> exceptions) {
+        this.ruleId = ruleId;
+        this.title = title;
+        this.location = location;
+        this.customerId = customerId;
+        this.contactId = contactId;
+        this.userId = userId;
+        this.firstStart = firstStart;
+        this.durationMillis = durationMillis;
+        this.frequency = frequency;
+        this.interval = Math.max(1, interval);
+        this.until = until;
+        this.exceptions = Set.copyOf(exceptions);
+    }
+
+    public int getRuleId() {
+        return ruleId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public LocalDate getUntil() {
+        return until;
+    }
+
+    /**
+     * @param resourceColumn One of {@link AppointmentIndex#resourceColumns}.
+     * @return The ID of the resource every occurrence occupies in that column, or null.
+     */
+    public Integer resourceId(String resourceColumn) {
+        switch (resourceColumn) {
+            case "Customer_ID": return customerId;
+            case "Contact_ID": return contactId;
+            case "User_ID": return userId;
+            default: throw new IllegalArgumentException(resourceColumn);
+        }
+    }
+
+    /**
+     * Expand the occurrences which overlap [from, to).
+     * @param from The start of the window, in epoch milliseconds.
+     * @param to The end of the window (exclusive), in epoch milliseconds.
+     * @return The occurrences, earliest first, skipping exceptions.
+     */
+    public List<Occurrence> occurrences(long from, long to) {
+        List<Occurrence> found = new ArrayList<>();
+        // Jump to just before the first occurrence which could end inside the window, then step forward
+        ZonedDateTime windowStart = Instant.ofEpochMilli(from - durationMillis).atZone(firstStart.getZone());
+        long unitsBefore = frequency.unit.between(firstStart, windowStart);
+        for (long n = Math.max(0, unitsBefore / interval - 1); ; n++) {
+            ZonedDateTime start = nth(n);
+            long startMillis = start.toInstant().toEpochMilli();
+            if (startMillis >= to || (until != null && start.toLocalDate().isAfter(until))) break;
+            if (startMillis + durationMillis > from && !exceptions.contains(start.toLocalDate()))
+                found.add(new Occurrence(this, start.toLocalDate(), startMillis, startMillis + durationMillis));
+        }
+        return found;
+    }
+
+    /**
+     * @return The start of the n-th occurrence, counting from 0, calculated from the first so month lengths don't drift.
+     */
+    private ZonedDateTime nth(long n) {
+        return firstStart.plus(n * interval, frequency.unit);
+    }
+}
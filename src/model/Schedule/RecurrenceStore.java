@@ -0,0 +1,362 @@
+package model.Schedule;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import model.Query.BaseQuery;
+import model.Query.ChannelEvent;
+import model.Query.QueryStats;
+import model.Query.VersionedIndex;
+import model.Row.DetachedRow;
+import model.Row.IWritableRow;
+import model.Row.RowPredicate.IRowPredicate;
+import model.Row.RowPredicate.RowValidationFailedException;
+import model.Row.RowPredicate.ValidationEngine;
+import model.Session;
+
+import java.sql.*;
+import java.text.MessageFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * RecurrenceStore holds every {@link RecurrenceRule} from the {@code recurrence_rules} table (see {@code recurrence_rules.sql})
+ * in memory, indexed by the resources the rules occupy, so occurrences can be expanded and checked for conflicts without
+ * asking the database.
+ * <br>
+ * The store reloads whenever the {@code recurrence_rules} channel publishes, replacing its contents atomically (see
+ * {@link VersionedIndex}). Databases which don't have the table yet are
+ * tolerated: the store is then {@link #isAvailable() unavailable}, holds no rules, and refuses to add any.
+ * <br>
+ * The shared store is first requested on the JavaFX thread as the user logs in, so its first read uses the shared
+ * Connection there; if it's ever first requested elsewhere, that read happens on the store's own loader thread instead.
+ */
+public class RecurrenceStore extends VersionedIndex<RecurrenceStore.Contents> {
+    public static final String tableName = "recurrence_rules";
+    private static final String selectSQL = """
+            SELECT Rule_ID, Title, Location, Customer_ID, Contact_ID, User_ID, First_Start, Duration_Minutes,
+            Frequency, Repeat_Interval, Until, Exceptions FROM recurrence_rules""";
+    private static final String insertSQL = """
+            INSERT INTO recurrence_rules (Title, Description, Location, Type, Customer_ID, User_ID, Contact_ID, First_Start,
+            Duration_Minutes, Frequency, Repeat_Interval, Until, Exceptions, Create_Date, Created_By, Last_Update, Last_Updated_By)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+    private static final String addExceptionSQL = """
+            UPDATE recurrence_rules SET Exceptions = CONCAT_WS(',', NULLIF(Exceptions, ''), ?), Last_Update = ?, Last_Updated_By = ?
+            WHERE Rule_ID = ?""";
+
+    /**
+     * A new rule's occurrences are checked this many days ahead (or until the rule ends, if sooner) before it's stored.
+     */
+    protected static final int checkedDays = Integer.getInteger("scheduling.recurrenceCheckedDays", 365);
+
+    private static RecurrenceStore shared;
+
+    private static final Updater loader = new Updater("recurrence-store-load");
+
+    private final ReadOnlyBooleanWrapper availableProperty = new ReadOnlyBooleanWrapper(true);
+    private final ReadOnlyObjectWrapper<List<RecurrenceRule>> rules = new ReadOnlyObjectWrapper<>(List.of());
+
+    /**
+     * An immutable set of rules, indexed by resource, and whether the table they came from exists.
+     */
+    static final class Contents {
+        final List<RecurrenceRule> rules;
+        final boolean available;
+        final Map<String, Map<Integer, List<RecurrenceRule>>> byResource = new HashMap<>();
+
+        Contents(List<RecurrenceRule> rules, boolean available) {
+            this.rules = List.copyOf(rules);
+            this.available = available;
+            for (String column : AppointmentIndex.resourceColumns) {
+                Map<Integer, List<RecurrenceRule>> byId = new HashMap<>();
+                for (RecurrenceRule rule : rules) {
+                    Integer resourceId = rule.resourceId(column);
+                    if (resourceId != null) byId.computeIfAbsent(resourceId, r -> new ArrayList<>()).add(rule);
+                }
+                byResource.put(column, byId);
+            }
+        }
+    }
+
+    /**
+     * @return The application's shared RecurrenceStore, which loads the rules the first time it's requested.
+     */
+    public static synchronized RecurrenceStore shared() {
+        if (shared == null) shared = new RecurrenceStore();
+        return shared;
+    }
+
+    private RecurrenceStore() {
+        super(loader, new Contents(List.of(), true));
+        versionProperty().addListener(observable -> showContents());
+        if (Platform.isFxApplicationThread()) {
+            // Read the rules now, so the first conflict checks already see them
+            try {
+                Contents read = read(getDConn().getValue());
+                refresh(stamp(), current -> read);
+            } catch (SQLException e) {
+                updateFailed(e);
+            }
+            showContents();
+        } else {
+            reloadLater(); // The shared Connection belongs to the JavaFX thread
+        }
+        BaseQuery.subscribe(tableName, observable -> reloadLater());
+    }
+
+    /**
+     * Construct a store holding exactly the given rules, which doesn't follow the database, eg for tests.
+     * @param rules The rules to hold.
+     */
+    RecurrenceStore(List<RecurrenceRule> rules) {
+        super(loader, new Contents(rules, true));
+    }
+
+    /**
+     * @return Whether the database has a recurrence_rules table.
+     */
+    public boolean isAvailable() {
+        return contents().available;
+    }
+
+    /**
+     * @return Whether the database has a recurrence_rules table, as a property which changes on the JavaFX thread.
+     */
+    public ReadOnlyBooleanProperty availableProperty() {
+        return availableProperty.getReadOnlyProperty();
+    }
+
+    /**
+     * @return Every rule, as an immutable List which is replaced (on the JavaFX thread) whenever the rules change.
+     */
+    public ReadOnlyObjectProperty<List<RecurrenceRule>> rulesProperty() {
+        return rules.getReadOnlyProperty();
+    }
+
+    /**
+     * Expand every rule's occurrences inside the given window.
+     * @param from The start of the window, in epoch milliseconds.
+     * @param to The end of the window (exclusive), in epoch milliseconds.
+     * @return The occurrences, earliest first.
+     */
+    public List<RecurrenceRule.Occurrence> occurrences(long from, long to) {
+        List<RecurrenceRule.Occurrence> found = new ArrayList<>();
+        for (RecurrenceRule rule : contents().rules) found.addAll(rule.occurrences(from, to));
+        found.sort(Comparator.comparingLong(o -> o.start));
+        return found;
+    }
+
+    /**
+     * Find the occurrences occupying a resource which overlap the given span.
+     * @param resourceColumn One of {@link AppointmentIndex#resourceColumns}.
+     * @param resourceId The resource whose rules to expand.
+     * @param start The start of the span, in epoch milliseconds.
+     * @param end The end of the span (exclusive), in epoch milliseconds.
+     * @return The overlapping occurrences.
+     */
+    public List<RecurrenceRule.Occurrence> overlapping(String resourceColumn, int resourceId, long start, long end) {
+        List<RecurrenceRule> resourceRules = contents().byResource.get(resourceColumn).get(resourceId);
+        if (resourceRules == null) return List.of();
+        List<RecurrenceRule.Occurrence> found = new ArrayList<>();
+        for (RecurrenceRule rule : resourceRules) found.addAll(rule.occurrences(start, end));
+        return found;
+    }
+
+    /**
+     * Store a new rule repeating the given appointment. The appointment itself stays as it is, and its date is recorded as
+     * an exception, so the rule doesn't repeat it a second time.
+     * <br>Before the rule is stored, each of its occurrences over the next {@value #checkedDays} days (or until it ends) is
+     * validated as if it were a new appointment, so a series can't be booked over closed hours or other appointments.
+     * <br>Validating may take a while, so this is meant to be called away from the JavaFX thread, given a {@link #snapshot}
+     * of the appointment; the rule is inserted on a Connection of its own.
+     * @param appointment A saved appointment, whose fields and times each occurrence copies.
+     * @param frequency How often the appointment repeats.
+     * @param interval How many of the frequency's units there are between occurrences.
+     * @param until The last date an occurrence may start on, or null to repeat forever.
+     * @param validators The validators every occurrence must pass, eg those of the appointments' query.
+     * @return The new rule's ID.
+     * @throws RowValidationFailedException If any checked occurrence fails validation.
+     */
+    public int addRule(IWritableRow appointment, RecurrenceRule.Frequency frequency, int interval, LocalDate until,
+                       Collection<? extends IRowPredicate> validators) {
+        if (!isAvailable()) throw new IllegalStateException(Session.getBundle().getString("recurrence.Unavailable"));
+        Timestamp start = (Timestamp) appointment.getEntryValue("Start");
+        Timestamp end = (Timestamp) appointment.getEntryValue("End");
+        Object location = appointment.getEntryValue("Location");
+        ZoneId zone = BusinessCalendar.shared().officeFor(location == null ? null : location.toString()).getZone();
+        validateOccurrences(appointment, frequency, interval, until, zone, validators);
+        Timestamp now = new Timestamp(System.currentTimeMillis() / 1000 * 1000);
+
+        try (Connection c = openConnection(); PreparedStatement ps = c.prepareStatement(insertSQL, Statement.RETURN_GENERATED_KEYS)) {
+            int i = 1;
+            for (String column : List.of("Title", "Description", "Location", "Type", "Customer_ID", "User_ID", "Contact_ID"))
+                ps.setObject(i++, appointment.getEntryValue(column));
+            ps.setTimestamp(i++, start);
+            ps.setInt(i++, (int) ((end.getTime() - start.getTime()) / 60_000));
+            ps.setString(i++, frequency.name());
+            ps.setInt(i++, interval);
+            ps.setObject(i++, until);
+            ps.setString(i++, start.toInstant().atZone(zone).toLocalDate().toString());
+            ps.setTimestamp(i++, now);
+            ps.setString(i++, Session.getUserName());
+            ps.setTimestamp(i++, now);
+            ps.setString(i++, Session.getUserName());
+            try (QueryStats.Timer timer = QueryStats.start(insertSQL)) {
+                timer.stop(ps.executeUpdate());
+            }
+            int ruleId;
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                keys.next();
+                ruleId = keys.getInt(1);
+            }
+            BaseQuery.publishLater(new ChannelEvent(tableName, List.of(ruleId)));
+            return ruleId;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Stop a rule from occurring on the given date.
+     * @param ruleId The rule's ID.
+     * @param date The date to skip, in the rule's time zone.
+     */
+    public void addException(int ruleId, LocalDate date) {
+        try (PreparedStatement ps = getDConn().getValue().prepareStatement(addExceptionSQL)) {
+            ps.setString(1, date.toString());
+            ps.setTimestamp(2, new Timestamp(System.currentTimeMillis() / 1000 * 1000));
+            ps.setString(3, Session.getUserName());
+            ps.setInt(4, ruleId);
+            try (QueryStats.Timer timer = QueryStats.start(addExceptionSQL)) {
+                timer.stop(ps.executeUpdate());
+            }
+            BaseQuery.publish(new ChannelEvent(tableName, List.of(ruleId)));
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The columns of an appointment which {@link #addRule} reads.
+     */
+    private static final List<String> ruleColumns = List.of("Appointment_ID", "Title", "Description", "Location", "Type",
+            "Customer_ID", "Contact_ID", "User_ID", "Start", "End");
+
+    /**
+     * Copy the columns of an appointment which {@link #addRule} reads, so a rule can be added from it on another thread
+     * while the row itself carries on being edited. Only call on the JavaFX thread.
+     * @param appointment A saved appointment.
+     * @return A detached copy of the appointment.
+     */
+    public static IWritableRow snapshot(IWritableRow appointment) {
+        Map<String, Integer> columnIndices = new HashMap<>();
+        Object[] values = new Object[ruleColumns.size()];
+        for (int i = 0; i < values.length; i++) {
+            columnIndices.put(ruleColumns.get(i), i + 1);
+            values[i] = appointment.getEntryValue(ruleColumns.get(i));
+        }
+        return new DetachedRow(columnIndices, values);
+    }
+
+    /**
+     * The columns of an appointment which a rule's occurrences copy, and which validators may look at.
+     */
+    private static final List<String> occurrenceColumns = List.of("Appointment_ID", "Title", "Location", "Customer_ID", "Contact_ID", "User_ID", "Start", "End");
+
+    /**
+     * Validate the occurrences a new rule would have, as new appointments saved together.
+     * @throws RowValidationFailedException Describing how many occurrences failed, and why the first of them did.
+     */
+    private static void validateOccurrences(IWritableRow appointment, RecurrenceRule.Frequency frequency, int interval, LocalDate until,
+                                            ZoneId zone, Collection<? extends IRowPredicate> validators) {
+        Timestamp start = (Timestamp) appointment.getEntryValue("Start");
+        Timestamp end = (Timestamp) appointment.getEntryValue("End");
+        Object location = appointment.getEntryValue("Location");
+        RecurrenceRule rule = new RecurrenceRule(0, null, location == null ? null : location.toString(),
+                (Integer) appointment.getEntryValue("Customer_ID"), (Integer) appointment.getEntryValue("Contact_ID"),
+                (Integer) appointment.getEntryValue("User_ID"), start.toInstant().atZone(zone), end.getTime() - start.getTime(),
+                frequency, interval, until, Set.of(start.toInstant().atZone(zone).toLocalDate()));
+
+        Map<String, Integer> columnIndices = new HashMap<>();
+        for (int i = 0; i < occurrenceColumns.size(); i++) columnIndices.put(occurrenceColumns.get(i), i + 1);
+        Map<DetachedRow, RecurrenceRule.Occurrence> rows = new LinkedHashMap<>();
+        for (RecurrenceRule.Occurrence o : rule.occurrences(start.getTime(), start.getTime() + checkedDays * 24L * 60 * 60 * 1000)) {
+            Object[] values = new Object[occurrenceColumns.size()];
+            for (int i = 0; i < values.length; i++) values[i] = appointment.getEntryValue(occurrenceColumns.get(i));
+            values[0] = null; // Each occurrence is checked like a new appointment, so it conflicts with the original too
+            values[6] = new Timestamp(o.start);
+            values[7] = new Timestamp(o.end);
+            rows.put(new DetachedRow(columnIndices, values), o);
+        }
+        if (rows.isEmpty()) return;
+
+        Map<IWritableRow, RowValidationFailedException> failures = new ValidationEngine(validators).validateAll(rows.keySet());
+        if (failures.isEmpty()) return;
+        Map.Entry<IWritableRow, RowValidationFailedException> first = failures.entrySet().iterator().next();
+        throw new RowValidationFailedException(MessageFormat.format(Session.getBundle().getString("recurrence.OccurrencesInvalid{count}{date}{reason}"),
+                failures.size(), rows.get(first.getKey()).date.toString(), first.getValue().getMessage()));
+    }
+
+    // Loading ////////////////////////////////////////////////////
+
+    private void reloadLater() {
+        queueRefresh(RecurrenceStore::read);
+    }
+
+    /**
+     * Show the current rules in the JavaFX properties. Only called on the JavaFX thread.
+     */
+    private void showContents() {
+        Contents current = contents();
+        rules.set(current.rules);
+        availableProperty.set(current.available);
+    }
+
+    @Override
+    protected void updateFailed(SQLException e) {
+        if ("42S02".equals(e.getSQLState())) {
+            // The table hasn't been created (see recurrence_rules.sql), so there are simply no rules; the UI says so
+            refresh(stamp(), current -> new Contents(List.of(), false));
+        } else {
+            e.printStackTrace(); // Keep the rules we had
+        }
+    }
+
+    private static Contents read(Connection c) throws SQLException {
+        List<RecurrenceRule> read = new ArrayList<>();
+        try (QueryStats.Timer timer = QueryStats.start(selectSQL);
+             Statement statement = c.createStatement();
+             ResultSet rs = statement.executeQuery(selectSQL)) {
+            while (rs.next()) {
+                String location = rs.getString("Location");
+                ZoneId zone = BusinessCalendar.shared().officeFor(location).getZone();
+                Instant firstStart = rs.getTimestamp("First_Start").toInstant();
+                Set<LocalDate> exceptions = new HashSet<>();
+                String exceptionText = rs.getString("Exceptions");
+                if (exceptionText != null) {
+                    for (String date : exceptionText.split(",")) if (!date.isBlank()) exceptions.add(LocalDate.parse(date.strip()));
+                }
+                java.sql.Date until = rs.getDate("Until");
+                read.add(new RecurrenceRule(
+                        rs.getInt("Rule_ID"),
+                        rs.getString("Title"),
+                        location,
+                        (Integer) rs.getObject("Customer_ID"),
+                        (Integer) rs.getObject("Contact_ID"),
+                        (Integer) rs.getObject("User_ID"),
+                        firstStart.atZone(zone),
+                        rs.getInt("Duration_Minutes") * 60_000L,
+                        RecurrenceRule.Frequency.valueOf(rs.getString("Frequency")),
+                        rs.getInt("Repeat_Interval"),
+                        until == null ? null : until.toLocalDate(),
+                        exceptions));
+            }
+            timer.stop(read.size());
+        }
+        return new Contents(read, true);
+    }
+}
@@ -0,0 +1,162 @@
+package model.Schedule;
+
+import model.Query.QueryStats;
+import model.Query.SConnection;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * SlotFinder finds the earliest times a customer and a contact are both free, while their office is open, so an appointment
+ * can be booked there without trial and error against the validators.
+ * <br>
+ * The busy spans of both resources are taken from the {@link AppointmentIndex} (or, while it's stale, one query) and the
+ * {@link RecurrenceStore} (expanded only inside the search window), merged into a single sorted list, and swept alongside
+ * the office's open intervals from the {@link BusinessCalendar}. Both lists are sorted and are walked once, so a search costs about as much as the number of appointments and open days in its window,
+ * with no round trips to the database while the index is fresh.
+ * <br>
+ * Searches usually run away from the JavaFX thread, so while the index is stale the query runs on a Connection of its own
+ * (see {@link SConnection#openConnection()}), never the shared one.
+ */
+public class SlotFinder extends SConnection {
+    /**
+     * Slots start on multiples of this many milliseconds (15 minutes, unless {@code scheduling.slotGranularityMillis} says otherwise).
+     */
+    protected static final long slotGranularityMillis = Long.getLong("scheduling.slotGranularityMillis", 15 * 60_000);
+
+    private static final String busySQL = """
+            SELECT Start, End FROM appointments
+            WHERE (Customer_ID <=> ? OR Contact_ID <=> ?)
+            AND NOT Appointment_ID <=> ?
+            AND Start < ?
+            AND End > ?""";
+
+    private final AppointmentIndex index;
+    private final BusinessCalendar calendar;
+    private final RecurrenceStore recurrences;
+
+    /**
+     * A free [start, end) span, in epoch milliseconds.
+     */
+    public static final class Slot {
+        public final long start;
+        public final long end;
+
+        Slot(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public Timestamp getStart() {
+            return new Timestamp(start);
+        }
+
+        public Timestamp getEnd() {
+            return new Timestamp(end);
+        }
+    }
+
+    public SlotFinder() {
+        this(AppointmentIndex.shared(), BusinessCalendar.shared(), RecurrenceStore.shared());
+    }
+
+    public SlotFinder(AppointmentIndex index, BusinessCalendar calendar, RecurrenceStore recurrences) {
+        this.index = index;
+        this.calendar = calendar;
+        this.recurrences = recurrences;
+    }
+
+    /**
+     * Find the first free slots of the given length. Consecutive slots don't overlap each other.
+     * @param customerId The customer who must be free, or null for any.
+     * @param contactId The contact who must be free, or null for any.
+     * @param excludedId An appointment whose time doesn't count as busy (eg the one being rescheduled), or null.
+     * @param location The appointment's Location, which decides whose office hours apply.
+     * @param durationMillis How long each slot must be.
+     * @param from The earliest a slot may start, in epoch milliseconds.
+     * @param to The latest a slot may end, in epoch milliseconds.
+     * @param count The most slots to return.
+     * @return Up to {@code count} slots, earliest first.
+     */
+    public List<Slot> find(Integer customerId, Integer contactId, Integer excludedId, String location, long durationMillis, long from, long to, int count) {
+        if (durationMillis <= 0) throw new IllegalArgumentException("Slots must have a positive duration");
+        BusinessCalendar.Office office = calendar.officeFor(location);
+        List<long[]> busy = mergedBusySpans(customerId, contactId, excludedId, from, to);
+
+        List<Slot> slots = new ArrayList<>();
+        int b = 0;
+        long t = from;
+        while (slots.size() < count && t < to) {
+            long[] open = office.nextOpenInterval(t);
+            if (open == null || open[0] >= to) break;
+            long close = Math.min(open[1], to);
+            long cursor = alignUp(Math.max(open[0], t));
+            // Stop once the slot would run past closing, before skipping busy spans: the cursor may have jumped past the
+            // end of the day, and a busy span it jumped over may still cover the next open interval
+            while (slots.size() < count && cursor + durationMillis <= close) {
+                while (b < busy.size() && busy.get(b)[1] <= cursor) b++; // Busy spans which are already over
+                if (b < busy.size() && busy.get(b)[0] < cursor + durationMillis) {
+                    cursor = alignUp(busy.get(b)[1]); // Wait until the next busy span is over
+                    continue;
+                }
+                slots.add(new Slot(cursor, cursor + durationMillis));
+                cursor = alignUp(cursor + durationMillis);
+            }
+            t = open[1];
+        }
+        return slots;
+    }
+
+    /**
+     * @return The spans during which the customer or contact is busy between from and to, sorted, with overlapping and
+     * touching spans merged.
+     */
+    private List<long[]> mergedBusySpans(Integer customerId, Integer contactId, Integer excludedId, long from, long to) {
+        List<long[]> spans = new ArrayList<>();
+        if (index.isFresh()) {
+            if (customerId != null) spans.addAll(index.busySpans("Customer_ID", customerId, from, to, excludedId));
+            if (contactId != null) spans.addAll(index.busySpans("Contact_ID", contactId, from, to, excludedId));
+        } else if (customerId != null || contactId != null) {
+            spans.addAll(queryBusySpans(customerId, contactId, excludedId, from, to));
+        }
+        if (customerId != null) recurrences.overlapping("Customer_ID", customerId, from, to).forEach(o -> spans.add(new long[]{o.start, o.end}));
+        if (contactId != null) recurrences.overlapping("Contact_ID", contactId, from, to).forEach(o -> spans.add(new long[]{o.start, o.end}));
+        spans.sort(Comparator.comparingLong(span -> span[0]));
+
+        List<long[]> merged = new ArrayList<>();
+        for (long[] span : spans) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && span[0] <= last[1]) last[1] = Math.max(last[1], span[1]);
+            else merged.add(span.clone());
+        }
+        return merged;
+    }
+
+    private List<long[]> queryBusySpans(Integer customerId, Integer contactId, Integer excludedId, long from, long to) {
+        List<long[]> spans = new ArrayList<>();
+        try (Connection conn = openConnection(); PreparedStatement ps = conn.prepareStatement(busySQL)) {
+            ps.setObject(1, customerId);
+            ps.setObject(2, contactId);
+            ps.setObject(3, excludedId);
+            ps.setTimestamp(4, new Timestamp(to));
+            ps.setTimestamp(5, new Timestamp(from));
+            try (QueryStats.Timer timer = QueryStats.start(busySQL); ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Long start = AppointmentIndex.toMillis(rs.getTimestamp(1));
+                    Long end = AppointmentIndex.toMillis(rs.getTimestamp(2));
+                    if (start != null && end != null) spans.add(new long[]{start, end});
+                }
+                timer.stop(spans.size());
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return spans;
+    }
+
+    private static long alignUp(long millis) {
+        return Math.floorDiv(millis + slotGranularityMillis - 1, slotGranularityMillis) * slotGranularityMillis;
+    }
+}
@@ -1,5 +1,6 @@
 package model;
 
+import model.Query.QueryStats;
 import model.Query.SConnection;
 
 import javax.naming.AuthenticationException;
@@ -88,9 +89,15 @@ public class Session extends SConnection {
         try {
             authStatement.setString(1, UserName);
             authStatement.setString(2, Password);
-            ResultSet rs = authStatement.executeQuery();
+            ResultSet rs;
+            boolean authenticated;
+            try (QueryStats.Timer timer = QueryStats.start(authQuery)) {
+                rs = authStatement.executeQuery();
+                authenticated = rs.next();
+                timer.stop(authenticated ? 1 : 0);
+            }
 
-            if (rs.next()) {
+            if (authenticated) {
                 recordLoginAttempt(UserName, true);
                 Session.UserID = rs.getInt(1);
                 Session.UserName = UserName;
@@ -108,6 +115,8 @@ public class Session extends SConnection {
         UserID = null;
     }
 
+    private static final String authQuery = "SELECT User_ID FROM users WHERE User_Name = ? AND Password = ?";
+
     /**
      * This object is used to send queries determining if the given username and password appear in the database.
      */
@@ -119,7 +128,7 @@ public class Session extends SConnection {
 
         @Override
         protected PreparedStatement InnerConstruct(Map<String, ?> depValues) throws Throwable {
-            return ((Connection)depValues.get("conn")).prepareStatement("SELECT User_ID FROM users WHERE User_Name = ? AND Password = ?");
+            return ((Connection)depValues.get("conn")).prepareStatement(authQuery);
         }
     };
 }
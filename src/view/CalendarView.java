@@ -0,0 +1,518 @@
+package view;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.geometry.Orientation;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.*;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+import javafx.util.Duration;
+import model.Schedule.AppointmentIndex;
+import model.Schedule.RecurrenceRule;
+import model.Schedule.RecurrenceStore;
+import model.Session;
+
+import java.text.MessageFormat;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.time.temporal.WeekFields;
+import java.util.*;
+
+/**
+ * CalendarView draws appointments as blocks on a day, week, or month calendar.
+ * <br>
+ * Appointments are read from the {@link AppointmentIndex}, which keeps every appointment in memory sorted by start, and from
+ * the {@link RecurrenceStore}, which expands recurring appointments only inside the requested days. Drawing is virtualized:
+ * only the days on screen are queried and laid out, each day's layout (which appointments share lanes) is cached until
+ * the appointments change, and only the blocks inside the visible hours are drawn. Scrolling through the hours therefore
+ * redraws cached blocks without querying or laying anything out. Redraws are coalesced to at most one per frame.
+ * <br>
+ * How long each recent redraw took is kept (see {@link #frameTimesNanos()}), so it can be checked against the
+ * {@link #frameBudgetNanos budget} of a frame at 60 frames per second.
+ */
+public class CalendarView extends BorderPane {
+    public enum Mode {DAY, WEEK, MONTH}
+
+    private static final double hourHeight = 48;
+    private static final double headerHeight = 22;
+    private static final double gutterWidth = 52;
+    private static final double lineHeight = 14;
+    private static final long dayMillis = 24 * 60 * 60 * 1000L;
+
+    /**
+     * The time one frame may take at 60 frames per second, in nanoseconds.
+     */
+    public static final long frameBudgetNanos = 1_000_000_000L / 60;
+
+    private final AppointmentIndex store;
+    private final RecurrenceStore recurrences;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Locale locale = Session.getActiveLocale();
+    private final int firstDayOfWeek = WeekFields.of(locale).getFirstDayOfWeek().getValue();
+
+    private final ObjectProperty<Mode> mode = new SimpleObjectProperty<>(Mode.WEEK);
+    private final ObjectProperty<LocalDate> anchor = new SimpleObjectProperty<>(LocalDate.now());
+    private final ObjectProperty<Integer> selectedAppointment = new SimpleObjectProperty<>();
+
+    private final Canvas canvas = new Canvas();
+    private final ScrollBar hourScroll = new ScrollBar();
+    private final Label rangeLabel = new Label();
+    private final Tooltip blockTooltip = new Tooltip();
+
+    /**
+     * Each visible day's layout, until the appointments change or the day scrolls out of view.
+     */
+    private final Map<LocalDate, List<Block>> layouts = new HashMap<>();
+
+    /**
+     * The blocks drawn in the last frame, in drawing order, with their rectangles, for hit testing.
+     */
+    private final List<Block> drawnBlocks = new ArrayList<>();
+    private final List<double[]> drawnRects = new ArrayList<>();
+    private Block hoveredBlock;
+
+    /**
+     * How long each of the most recent redraws took, as a ring indexed by the number of redraws so far.
+     */
+    private final long[] frameTimes = new long[600];
+    private int framesDrawn = 0;
+
+    private boolean redrawRequested = false;
+    private final AnimationTimer redrawTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (redrawRequested) {
+                redrawRequested = false;
+                long started = System.nanoTime();
+                draw();
+                frameTimes[framesDrawn++ % frameTimes.length] = System.nanoTime() - started;
+            } else {
+                stop(); // Nothing changed since the last frame, so stop until something does
+            }
+        }
+    };
+
+    private final DateTimeFormatter timeFormatter;
+    private final DateTimeFormatter dayFormatter;
+    private final DateTimeFormatter weekdayFormatter;
+    private final DateTimeFormatter rangeFormatter;
+    private final DateTimeFormatter monthFormatter;
+    private final MessageFormat tooltipFormat = new MessageFormat(Session.getBundle().getString("calendar.BlockToolTip{title,start,end}"));
+    private final MessageFormat moreFormat = new MessageFormat(Session.getBundle().getString("calendar.More{count}"));
+
+    /**
+     * An appointment, or an occurrence of a recurring one, laid out in one day.
+     */
+    private static final class Block {
+        final Integer appointmentId; // Null for occurrences of recurring appointments
+        final String title;
+        final long start;
+        final long end;
+        final int colorKey;
+        int lane;
+        int lanes = 1;
+
+        Block(Integer appointmentId, String title, long start, long end, int colorKey) {
+            this.appointmentId = appointmentId;
+            this.title = title == null ? "" : title;
+            this.start = start;
+            this.end = end;
+            this.colorKey = colorKey;
+        }
+    }
+
+    /**
+     * A pane which sizes its canvas to itself, without the canvas's size feeding back into the pane's preferred size.
+     */
+    private static final class CanvasPane extends Pane {
+        private final Canvas canvas;
+
+        CanvasPane(Canvas canvas) {
+            this.canvas = canvas;
+            getChildren().add(canvas);
+            setMinSize(0, 0);
+            setPrefSize(700, 500);
+        }
+
+        @Override
+        protected void layoutChildren() {
+            canvas.setWidth(getWidth());
+            canvas.setHeight(getHeight());
+        }
+    }
+
+    public CalendarView() {
+        this(AppointmentIndex.shared(), RecurrenceStore.shared());
+    }
+
+    public CalendarView(AppointmentIndex store, RecurrenceStore recurrences) {
+        this.store = store;
+        this.recurrences = recurrences;
+        timeFormatter = DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT).withLocale(locale).withZone(zone);
+        dayFormatter = DateTimeFormatter.ofPattern("EEE d", locale);
+        weekdayFormatter = DateTimeFormatter.ofPattern("EEE", locale);
+        monthFormatter = DateTimeFormatter.ofPattern("MMMM yyyy", locale);
+        rangeFormatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM).withLocale(locale);
+
+        // Toolbar
+        ToggleGroup modes = new ToggleGroup();
+        HBox toolbar = new HBox();
+        for (Mode m : Mode.values()) {
+            ToggleButton modeButton = new ToggleButton(Session.getBundle().getString("calendar.Mode." + m.name()));
+            modeButton.setToggleGroup(modes);
+            modeButton.setSelected(m == mode.get());
+            modeButton.setOnAction(e -> {
+                modeButton.setSelected(true); // A mode can't be deselected
+                mode.set(m);
+            });
+            toolbar.getChildren().add(modeButton);
+        }
+        Button previous = new Button(Session.getBundle().getString("calendar.Previous"));
+        Button today = new Button(Session.getBundle().getString("calendar.Today"));
+        Button next = new Button(Session.getBundle().getString("calendar.Next"));
+        previous.setOnAction(e -> page(-1));
+        next.setOnAction(e -> page(1));
+        today.setOnAction(e -> anchor.set(LocalDate.now()));
+        toolbar.getChildren().addAll(previous, today, next, rangeLabel);
+
+        // Drawing surface, with a scroll bar over the hours of the day
+        hourScroll.setOrientation(Orientation.VERTICAL);
+        hourScroll.setMin(0);
+        hourScroll.setValue(8 * hourHeight); // Start at the beginning of a working day
+        hourScroll.setUnitIncrement(hourHeight / 4);
+        hourScroll.setBlockIncrement(hourHeight * 4);
+        setTop(toolbar);
+        setCenter(new CanvasPane(canvas));
+        setRight(hourScroll);
+
+        blockTooltip.setShowDelay(Duration.millis(300));
+        canvas.setOnMouseMoved(this::onMouseMoved);
+        canvas.setOnMouseClicked(e -> {
+            Block block = blockAt(e.getX(), e.getY());
+            if (block != null && block.appointmentId != null) selectedAppointment.set(block.appointmentId);
+        });
+        canvas.setOnScroll(this::onScroll);
+
+        // Anything which changes what's drawn asks for one redraw on the next frame
+        InvalidationListener redraw = o -> requestRedraw();
+        InvalidationListener relayout = o -> {
+            layouts.clear();
+            requestRedraw();
+        };
+        canvas.widthProperty().addListener(redraw);
+        canvas.heightProperty().addListener(redraw);
+        hourScroll.valueProperty().addListener(redraw);
+        selectedAppointment.addListener(redraw);
+        mode.addListener(redraw);
+        anchor.addListener(redraw);
+        store.versionProperty().addListener(relayout);
+        recurrences.rulesProperty().addListener(relayout);
+        store.isFresh(); // Make sure the store is loading
+        requestRedraw();
+    }
+
+    public ObjectProperty<Mode> modeProperty() {
+        return mode;
+    }
+
+    /**
+     * @return A date inside the period being shown.
+     */
+    public ObjectProperty<LocalDate> anchorProperty() {
+        return anchor;
+    }
+
+    /**
+     * @return The Appointment_ID of the appointment last clicked (or selected elsewhere), which is drawn highlighted.
+     */
+    public ObjectProperty<Integer> selectedAppointmentProperty() {
+        return selectedAppointment;
+    }
+
+    /**
+     * @return How long each of the most recent redraws (up to a few hundred) took, in nanoseconds, oldest first. To keep up
+     * with 60 frames per second, each should take well under {@link #frameBudgetNanos}.
+     */
+    public long[] frameTimesNanos() {
+        int count = Math.min(framesDrawn, frameTimes.length);
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) times[i] = frameTimes[(framesDrawn - count + i) % frameTimes.length];
+        return times;
+    }
+
+    private void page(int direction) {
+        switch (mode.get()) {
+            case DAY -> anchor.set(anchor.get().plusDays(direction));
+            case WEEK -> anchor.set(anchor.get().plusWeeks(direction));
+            case MONTH -> anchor.set(anchor.get().withDayOfMonth(1).plusMonths(direction));
+        }
+    }
+
+    private void requestRedraw() {
+        redrawRequested = true;
+        redrawTimer.start();
+    }
+
+    // Layout ////////////////////////////////////////////
+
+    /**
+     * @return The first day shown, and how many days are shown.
+     */
+    private LocalDate firstDay() {
+        LocalDate date = anchor.get();
+        return switch (mode.get()) {
+            case DAY -> date;
+            case WEEK -> startOfWeek(date);
+            case MONTH -> startOfWeek(date.withDayOfMonth(1));
+        };
+    }
+
+    private int dayCount() {
+        return switch (mode.get()) {
+            case DAY -> 1;
+            case WEEK -> 7;
+            case MONTH -> 42;
+        };
+    }
+
+    private LocalDate startOfWeek(LocalDate date) {
+        int offset = ((date.getDayOfWeek().getValue() - firstDayOfWeek) % 7 + 7) % 7;
+        return date.minusDays(offset);
+    }
+
+    private long startOf(LocalDate day) {
+        return day.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Lay out one day: each block gets the first lane which is free when it starts, and every block in a group of
+     * overlapping blocks shares the group's lane count, so they divide the day's width evenly.
+     */
+    private List<Block> layoutFor(LocalDate day) {
+        return layouts.computeIfAbsent(day, d -> {
+            long dayStart = startOf(d);
+            long dayEnd = startOf(d.plusDays(1));
+            List<Block> blocks = new ArrayList<>();
+            for (AppointmentIndex.Appointment a : store.between(dayStart, dayEnd))
+                blocks.add(new Block(a.appointmentId, a.title, a.start, a.end, a.contactId));
+            if (recurrences.isAvailable()) {
+                for (RecurrenceRule.Occurrence o : recurrences.occurrences(dayStart, dayEnd)) {
+                    Integer contactId = o.rule.resourceId("Contact_ID");
+                    blocks.add(new Block(null, o.rule.getTitle(), o.start, o.end, contactId == null ? 0 : contactId));
+                }
+                blocks.sort(Comparator.comparingLong(b -> b.start));
+            }
+
+            List<Long> laneEnds = new ArrayList<>();
+            int groupStart = 0;
+            long groupEnd = Long.MIN_VALUE;
+            for (int i = 0; i < blocks.size(); i++) {
+                Block block = blocks.get(i);
+                if (block.start >= groupEnd && i > groupStart) {
+                    // Nothing in the group is still going, so close it
+                    for (int j = groupStart; j < i; j++) blocks.get(j).lanes = laneEnds.size();
+                    laneEnds.clear();
+                    groupStart = i;
+                }
+                int lane = 0;
+                while (lane < laneEnds.size() && laneEnds.get(lane) > block.start) lane++;
+                if (lane == laneEnds.size()) laneEnds.add(block.end);
+                else laneEnds.set(lane, block.end);
+                block.lane = lane;
+                groupEnd = Math.max(groupEnd, block.end);
+            }
+            for (int j = groupStart; j < blocks.size(); j++) blocks.get(j).lanes = laneEnds.size();
+            return blocks;
+        });
+    }
+
+    // Drawing ////////////////////////////////////////////
+
+    private void draw() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        gc.clearRect(0, 0, width, height);
+        drawnBlocks.clear();
+        drawnRects.clear();
+        if (width <= gutterWidth || height <= headerHeight) return;
+
+        LocalDate first = firstDay();
+        int days = dayCount();
+        Set<LocalDate> visibleDays = new HashSet<>();
+        for (int i = 0; i < days; i++) visibleDays.add(first.plusDays(i));
+        layouts.keySet().retainAll(visibleDays); // Forget days which scrolled out of view
+
+        gc.setFont(Font.font(11));
+        gc.setTextBaseline(VPos.TOP);
+        if (mode.get() == Mode.MONTH) {
+            hourScroll.setVisible(false);
+            drawMonth(gc, first, width, height);
+            rangeLabel.setText(monthFormatter.format(first.plusDays(14)));
+        } else {
+            hourScroll.setVisible(true);
+            drawDays(gc, first, days, width, height);
+            rangeLabel.setText(days == 1 ? rangeFormatter.format(first) : rangeFormatter.format(first) + " - " + rangeFormatter.format(first.plusDays(days - 1)));
+        }
+    }
+
+    private void drawDays(GraphicsContext gc, LocalDate first, int days, double width, double height) {
+        double viewport = height - headerHeight;
+        hourScroll.setMax(Math.max(0, 24 * hourHeight - viewport));
+        hourScroll.setVisibleAmount(viewport);
+        double top = Math.min(hourScroll.getValue(), hourScroll.getMax());
+        double columnWidth = (width - gutterWidth) / days;
+
+        // Hour lines and labels, only for the visible hours
+        gc.setTextAlign(TextAlignment.RIGHT);
+        int firstHour = (int) Math.floor(top / hourHeight);
+        int lastHour = Math.min(23, (int) Math.ceil((top + viewport) / hourHeight));
+        for (int hour = firstHour; hour <= lastHour; hour++) {
+            double y = headerHeight + hour * hourHeight - top;
+            gc.setStroke(Color.gray(0.85));
+            gc.strokeLine(gutterWidth, y, width, y);
+            gc.setFill(Color.gray(0.4));
+            if (y >= headerHeight) gc.fillText(timeFormatter.format(first.atTime(hour, 0).atZone(zone)), gutterWidth - 4, y + 1);
+        }
+
+        gc.setTextAlign(TextAlignment.LEFT);
+        for (int d = 0; d < days; d++) {
+            LocalDate day = first.plusDays(d);
+            double x = gutterWidth + d * columnWidth;
+            gc.setStroke(Color.gray(0.75));
+            gc.strokeLine(x, 0, x, height);
+
+            long dayStart = startOf(day);
+            long dayEnd = startOf(day.plusDays(1));
+            double pixelsPerMilli = 24 * hourHeight / Math.max(1, dayEnd - dayStart); // Days with a daylight saving change are squeezed or stretched
+            for (Block block : layoutFor(day)) {
+                long from = Math.max(block.start, dayStart) - dayStart;
+                long to = Math.min(block.end, dayEnd) - dayStart;
+                double y = headerHeight + from * pixelsPerMilli - top;
+                double h = Math.max(2, (to - from) * pixelsPerMilli);
+                if (y + h < headerHeight || y > height) continue; // Outside the visible hours
+                double laneWidth = (columnWidth - 4) / block.lanes;
+                drawBlock(gc, block, x + 2 + block.lane * laneWidth, y, laneWidth, h, true);
+            }
+
+            // Day headers go over the blocks, which scroll beneath them
+            gc.setFill(Color.gray(0.96));
+            gc.fillRect(x, 0, columnWidth, headerHeight);
+            gc.setFill(day.equals(LocalDate.now()) ? Color.DARKBLUE : Color.BLACK);
+            gc.fillText(dayFormatter.format(day), x + 4, 4, columnWidth - 8);
+        }
+        gc.setFill(Color.gray(0.96));
+        gc.fillRect(0, 0, gutterWidth, headerHeight);
+        gc.setStroke(Color.gray(0.75));
+        gc.strokeLine(0, headerHeight, width, headerHeight);
+    }
+
+    private void drawMonth(GraphicsContext gc, LocalDate first, double width, double height) {
+        double cellWidth = width / 7;
+        double cellHeight = (height - headerHeight) / 6;
+        Month month = first.plusDays(14).getMonth();
+        int linesPerCell = (int) Math.max(0, Math.floor((cellHeight - lineHeight - 2) / lineHeight));
+
+        gc.setTextAlign(TextAlignment.LEFT);
+        for (int d = 0; d < 7; d++) {
+            gc.setFill(Color.BLACK);
+            gc.fillText(weekdayFormatter.format(first.plusDays(d)), d * cellWidth + 4, 4, cellWidth - 8);
+        }
+        for (int i = 0; i < 42; i++) {
+            LocalDate day = first.plusDays(i);
+            double x = (i % 7) * cellWidth;
+            double y = headerHeight + (i / 7) * cellHeight;
+            gc.setFill(day.getMonth() == month ? Color.WHITE : Color.gray(0.95));
+            gc.fillRect(x, y, cellWidth, cellHeight);
+            gc.setStroke(Color.gray(0.75));
+            gc.strokeRect(x, y, cellWidth, cellHeight);
+            gc.setFill(day.equals(LocalDate.now()) ? Color.DARKBLUE : Color.gray(0.3));
+            gc.fillText(String.valueOf(day.getDayOfMonth()), x + 4, y + 2);
+
+            List<Block> blocks = layoutFor(day);
+            boolean overflow = blocks.size() > linesPerCell;
+            int shown = overflow ? Math.max(0, linesPerCell - 1) : blocks.size();
+            for (int b = 0; b < shown; b++) {
+                drawBlock(gc, blocks.get(b), x + 2, y + lineHeight + 2 + b * lineHeight, cellWidth - 4, lineHeight - 1, false);
+            }
+            if (overflow && linesPerCell > 0) {
+                gc.setFill(Color.gray(0.3));
+                gc.fillText(moreFormat.format(new Object[]{blocks.size() - shown}), x + 4, y + lineHeight + 2 + shown * lineHeight, cellWidth - 8);
+            }
+        }
+    }
+
+    private void drawBlock(GraphicsContext gc, Block block, double x, double y, double w, double h, boolean withTime) {
+        boolean selected = block.appointmentId != null && block.appointmentId.equals(selectedAppointment.get());
+        Color base = Color.hsb((block.colorKey * 137.508) % 360, 0.35, 0.95);
+        gc.setFill(selected ? base.deriveColor(0, 1.6, 0.8, 1) : base);
+        gc.fillRect(x, y, w, h);
+        if (w >= 3 && h >= 3) {
+            gc.setStroke(base.darker());
+            gc.setLineDashes(block.appointmentId == null ? 3 : 0); // Dashed for occurrences of recurring appointments
+            gc.strokeRect(x + 0.5, y + 0.5, w - 1, h - 1);
+            gc.setLineDashes(0);
+        }
+        if (w >= 24 && h >= lineHeight - 1) {
+            String text = withTime ? timeFormatter.format(Instant.ofEpochMilli(block.start)) + " " + block.title : block.title;
+            gc.save();
+            gc.beginPath();
+            gc.rect(x, y, w, h);
+            gc.clip();
+            gc.setFill(Color.BLACK);
+            gc.fillText(text, x + 3, y + 1);
+            gc.restore();
+        }
+        drawnBlocks.add(block);
+        drawnRects.add(new double[]{x, y, w, h});
+    }
+
+    // Interaction ////////////////////////////////////////////
+
+    /**
+     * @return The block drawn at the given point, preferring the one drawn last (on top), or null.
+     */
+    private Block blockAt(double x, double y) {
+        if (mode.get() != Mode.MONTH && y < headerHeight) return null;
+        for (int i = drawnRects.size() - 1; i >= 0; i--) {
+            double[] r = drawnRects.get(i);
+            if (x >= r[0] && x < r[0] + r[2] && y >= r[1] && y < r[1] + r[3]) return drawnBlocks.get(i);
+        }
+        return null;
+    }
+
+    private void onMouseMoved(MouseEvent e) {
+        Block block = blockAt(e.getX(), e.getY());
+        if (block == hoveredBlock) return;
+        hoveredBlock = block;
+        if (block == null) {
+            Tooltip.uninstall(canvas, blockTooltip);
+        } else {
+            blockTooltip.setText(tooltipFormat.format(new Object[]{block.title,
+                    timeFormatter.format(Instant.ofEpochMilli(block.start)), timeFormatter.format(Instant.ofEpochMilli(block.end))}));
+            Tooltip.install(canvas, blockTooltip);
+        }
+    }
+
+    private void onScroll(ScrollEvent e) {
+        if (mode.get() == Mode.MONTH) {
+            // Move a week at a time, so the weeks around the month can be seen too
+            if (e.getDeltaY() != 0) anchor.set(anchor.get().plusWeeks(e.getDeltaY() < 0 ? 1 : -1));
+        } else {
+            hourScroll.setValue(Math.max(0, Math.min(hourScroll.getMax(), hourScroll.getValue() - e.getDeltaY())));
+        }
+        e.consume();
+    }
+}
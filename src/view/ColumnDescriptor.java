@@ -0,0 +1,221 @@
+package view;
+
+import javafx.util.StringConverter;
+import javafx.util.converter.*;
+import model.Query.KeyLookup;
+import model.Session;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * A ColumnDescriptor holds everything about a result column which a {@link QueryTableView} needs to display it, and which
+ * only depends on the shape of the result: its Java type, its display name, which kind of cell edits it, and the
+ * StringConverter those cells use.
+ * <br>
+ * Descriptors are resolved once per result shape (the name, label, and type of every column, in order, plus the bundle
+ * in use) by {@link #forSchema}, and shared by every table with that shape. Refreshing a query, opening another view of
+ * the same table, or rebuilding columns no longer calls {@code Class.forName}, searches the resource bundle, or builds
+ * converters. A column's kind and converter are only resolved once it's shown, so a hidden column of a type no cell can
+ * edit doesn't stop the rest of the result from displaying.
+ */
+public final class ColumnDescriptor {
+    /**
+     * How a column is displayed and edited.
+     */
+    public enum CellKind {
+        /** A Division_ID, picked by country then division with a {@link DivisionSelector}. */
+        DIVISION,
+        /** A foreign key shown by name, picked with a {@link TableKeyComboBoxCell}. */
+        FOREIGN_KEY,
+        INTEGER,
+        LONG,
+        TIMESTAMP,
+        DATE,
+        STRING
+    }
+
+    private static final Map<String, List<ColumnDescriptor>> schemas = new HashMap<>();
+    private static final Map<String, Class<?>> classes = new HashMap<>();
+
+    private final int columnId;
+    private final String columnName;
+    private final String columnLabel;
+    private final Class<?> columnClass;
+    private final String printableName;
+    private final ResourceBundle bundle;
+    private final String key;
+    private CellKind kind; // Both resolved when first asked for
+    private StringConverter<?> converter;
+
+    private ColumnDescriptor(int columnId, String columnName, String columnLabel, Class<?> columnClass, ResourceBundle bundle) {
+        this.columnId = columnId;
+        this.columnName = columnName;
+        this.columnLabel = columnLabel;
+        this.columnClass = columnClass;
+        String bundleKey = "table.columnName." + columnLabel;
+        this.printableName = bundle.containsKey(bundleKey) ? bundle.getString(bundleKey) : "\"" + columnLabel + "\"";
+        this.bundle = bundle;
+        this.key = columnId + "\u0000" + columnName + "\u0000" + columnLabel + "\u0000" + columnClass.getName();
+    }
+
+    /**
+     * Get the descriptors for every column of a result, resolving them only if no result of the same shape has been seen.
+     * @param md The result's metadata.
+     * @return The descriptors, in column order (so column i is at index i - 1). The List is immutable and shared.
+     */
+    public static List<ColumnDescriptor> forSchema(ResultSetMetaData md) {
+        ResourceBundle bundle = Session.getBundle();
+        try {
+            StringBuilder shape = new StringBuilder(bundle.getLocale().toString());
+            for (int i = 1; i <= md.getColumnCount(); i++) {
+                shape.append('\u0000').append(md.getColumnName(i))
+                        .append('\u0001').append(md.getColumnLabel(i))
+                        .append('\u0001').append(md.getColumnClassName(i));
+            }
+            synchronized (schemas) {
+                List<ColumnDescriptor> descriptors = schemas.get(shape.toString());
+                if (descriptors == null) {
+                    List<ColumnDescriptor> resolved = new ArrayList<>();
+                    for (int i = 1; i <= md.getColumnCount(); i++)
+                        resolved.add(new ColumnDescriptor(i, md.getColumnName(i), md.getColumnLabel(i), classFor(md.getColumnClassName(i)), bundle));
+                    descriptors = List.copyOf(resolved);
+                    schemas.put(shape.toString(), descriptors);
+                }
+                return descriptors;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Class<?> classFor(String className) {
+        synchronized (classes) {
+            return classes.computeIfAbsent(className, name -> {
+                try {
+                    return Class.forName(name);
+                } catch (ClassNotFoundException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+    }
+
+    private static CellKind kindOf(String columnName, Class<?> columnClass) {
+        if (columnClass == Integer.class) {
+            if (columnName.equals("Division_ID")) return CellKind.DIVISION;
+            if (KeyLookup.tableForKeyColumn(columnName) != null) return CellKind.FOREIGN_KEY;
+            return CellKind.INTEGER;
+        }
+        if (columnClass == Long.class) return CellKind.LONG;
+        if (columnClass == Timestamp.class) return CellKind.TIMESTAMP;
+        if (columnClass == java.sql.Date.class) return CellKind.DATE;
+        if (columnClass == String.class) return CellKind.STRING;
+        throw new IllegalArgumentException("Unexpected column class: " + columnClass);
+    }
+
+    /**
+     * @return The converter text cells of the given kind use. Integer columns use it too, whenever they aren't shown by name.
+     */
+    private static StringConverter<?> converterFor(CellKind kind, ResourceBundle bundle) {
+        switch (kind) {
+            case DIVISION:
+            case FOREIGN_KEY:
+            case INTEGER:
+                String newRow = bundle.getString("queryTableView.newRow");
+                return new IntegerStringConverter() {
+                    @Override
+                    public String toString(Integer i) {
+                        return i == null ? newRow : super.toString(i);
+                    }
+                };
+            case LONG:
+                return new LongStringConverter();
+            case TIMESTAMP:
+                return new StringConverter<Timestamp>() {
+                    private final DateTimeStringConverter inner = new DateTimeStringConverter();
+
+                    @Override
+                    public String toString(Timestamp t) {
+                        return inner.toString(t);
+                    }
+
+                    @Override
+                    public Timestamp fromString(String s) {
+                        if (s == null || s.isEmpty()) return null;
+                        return new Timestamp(inner.fromString(s).getTime());
+                    }
+                };
+            case DATE:
+                return new StringConverter<java.sql.Date>() {
+                    private final DateTimeStringConverter inner = new DateStringConverter();
+
+                    @Override
+                    public String toString(java.sql.Date d) {
+                        return inner.toString(d);
+                    }
+
+                    @Override
+                    public java.sql.Date fromString(String s) {
+                        if (s == null || s.isEmpty()) return null;
+                        return new java.sql.Date(inner.fromString(s).getTime());
+                    }
+                };
+            default:
+                return new DefaultStringConverter();
+        }
+    }
+
+    /**
+     * @return The 1-indexed position of the column in its result.
+     */
+    public int getColumnId() {
+        return columnId;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public String getColumnLabel() {
+        return columnLabel;
+    }
+
+    public Class<?> getColumnClass() {
+        return columnClass;
+    }
+
+    /**
+     * @return The column's translated name, or its label in quotes if it has no translation.
+     */
+    public String getPrintableName() {
+        return printableName;
+    }
+
+    /**
+     * @return How the column is displayed and edited.
+     * @throws IllegalArgumentException If no cell can display the column's type.
+     */
+    public synchronized CellKind getKind() {
+        if (kind == null) kind = kindOf(columnName, columnClass);
+        return kind;
+    }
+
+    /**
+     * @return The converter text cells of this column use. It's shared, so it must only be used on the JavaFX thread.
+     * @throws IllegalArgumentException If no cell can display the column's type.
+     */
+    public synchronized StringConverter<?> getConverter() {
+        if (converter == null) converter = converterFor(getKind(), bundle);
+        return converter;
+    }
+
+    /**
+     * @return A String identifying this column's position, name, label, and type, which is equal for equal descriptors.
+     */
+    public String getKey() {
+        return key;
+    }
+}
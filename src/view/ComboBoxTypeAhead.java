@@ -0,0 +1,73 @@
+package view;
+
+import javafx.beans.InvalidationListener;
+import javafx.scene.control.ComboBox;
+import javafx.scene.input.KeyEvent;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * ComboBoxTypeAhead lets users pick an item in a non-editable ComboBox by typing the start of its label, as native list
+ * boxes do. Typed characters accumulate into a prefix until the user pauses, and the first item whose label starts with
+ * the prefix is selected.
+ * <br>
+ * Matches come from a prefix index (eg {@link model.Query.KeyLookup#keysStartingWith}) rather than by converting and
+ * comparing every item, and checked against a set of the ComboBox's items (rebuilt when they change, not per key), so this
+ * stays fast over tens of thousands of items.
+ */
+public final class ComboBoxTypeAhead {
+    /**
+     * A pause this long (in milliseconds) between keys starts a new prefix.
+     */
+    private static final long resetMillis = 1000;
+
+    /**
+     * How many matches to ask for, in case the first few aren't among the ComboBox's items.
+     */
+    private static final int candidates = 64;
+
+    private ComboBoxTypeAhead() {
+    }
+
+    /**
+     * Install type-ahead on a ComboBox.
+     * @param comboBox The ComboBox.
+     * @param search Given a prefix and a limit, finds up to that many items whose labels start with the prefix, in label order.
+     * @param <V> The ComboBox's item type.
+     */
+    public static <V> void install(ComboBox<V> comboBox, BiFunction<String, Integer, List<V>> search) {
+        StringBuilder prefix = new StringBuilder();
+        long[] lastTyped = {0};
+        Set<V> items = new HashSet<>();
+        InvalidationListener itemsChanged = o -> {
+            items.clear();
+            if (comboBox.getItems() != null) items.addAll(comboBox.getItems());
+        };
+        if (comboBox.getItems() != null) comboBox.getItems().addListener(itemsChanged);
+        comboBox.itemsProperty().addListener((observable, oldItems, newItems) -> {
+            if (oldItems != null) oldItems.removeListener(itemsChanged);
+            if (newItems != null) newItems.addListener(itemsChanged);
+            itemsChanged.invalidated(observable);
+        });
+        itemsChanged.invalidated(comboBox.itemsProperty());
+        comboBox.addEventFilter(KeyEvent.KEY_TYPED, e -> {
+            String typed = e.getCharacter();
+            if (typed.isEmpty() || Character.isISOControl(typed.charAt(0)) || e.isShortcutDown()) return;
+            if (typed.equals(" ") && prefix.length() == 0) return; // Space opens the popup, as usual
+            long now = System.currentTimeMillis();
+            if (now - lastTyped[0] > resetMillis) prefix.setLength(0);
+            lastTyped[0] = now;
+            prefix.append(typed);
+            for (V match : search.apply(prefix.toString(), candidates)) {
+                if (items.contains(match)) {
+                    comboBox.getSelectionModel().select(match);
+                    break;
+                }
+            }
+            e.consume();
+        });
+    }
+}
@@ -1,23 +1,46 @@
 package view;
 
+import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
+import javafx.stage.FileChooser;
+import javafx.util.StringConverter;
+import model.Query.CSVImporter;
 import model.Query.ConstrainedQuery;
 import model.Query.SQLQueryConstraint;
+import model.Query.WindowPrefetcher;
+import model.Row.CommitResult;
 import model.Row.IWritableRow;
 import model.Row.RowPredicate.*;
+import model.Schedule.AppointmentIndex;
+import model.Schedule.RecurrenceRule;
+import model.Schedule.RecurrenceStore;
+import model.Schedule.SlotFinder;
 import model.Session;
 import view.QueryTableView;
 
+import java.io.File;
+import java.io.Reader;
+import java.nio.file.Files;
 import java.sql.Timestamp;
+import java.text.MessageFormat;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
 import java.time.temporal.WeekFields;
 import java.util.*;
 
@@ -40,6 +63,23 @@ public class ConstrainedQueryView extends VBox {
 
     private Set<SQLQueryConstraint> searchConstraints;
 
+    /**
+     * The date whose week or month of appointments is shown, or null unless this view shows appointments.
+     */
+    private DatePicker aroundDate;
+
+    /**
+     * How far ahead the 'next free slot' button searches, and how long a slot it looks for when the appointment has no length yet.
+     */
+    private static final int slotSearchDays = 30;
+    private static final long defaultSlotMillis = 30 * 60 * 1000L;
+
+    /**
+     * The [start, end) span, in epoch milliseconds, of the appointments being shown. Recurring appointments are only expanded
+     * inside it. Showing 'all time' expands the next {@link #slotSearchDays} days.
+     */
+    private final ObjectProperty<long[]> occurrenceWindow = new SimpleObjectProperty<>(allTimeWindow());
+
     /**
      * This monolith constructs a ConstrainedQueryView. This view wraps a Table which is synchronized with the ConstrainedQuery,
      * conditionally adds constraints about the timeframe appointments are shown in, and adds buttons for saving, deleting, and resetting rows.
@@ -52,6 +92,7 @@ public class ConstrainedQueryView extends VBox {
     public ConstrainedQueryView(String tableName) {
         super();
         this.query = new ConstrainedQuery(tableName, true);
+        this.query.setOptimisticWrites(true); // Several schedulers may be editing the same rows
         this.tableName = tableName;
         innerTableView = new QueryTableView(query);
         innerTableView.setEditable(true);
@@ -59,16 +100,13 @@ public class ConstrainedQueryView extends VBox {
         // XTODO: REQUIRED: Build constraintsBar.
         constraintsBar = new HBox();
 
+        // The validators expected for Appointments, which repeated appointments must pass too
+        Set<IRowPredicate> appointmentValidators = Objects.equals(tableName, "appointments")
+                ? Set.of(new NoClosedOfficePredicate(), new ResourceConflictPredicate())
+                : Set.of();
         if (Objects.equals(tableName, "appointments")){
             // Assign the validators expected for Appointments
-            this.query.addValidator(
-                    new HashSet<IRowPredicate>(
-                            Arrays.asList(
-                                    new NoClosedOfficePredicate(),
-                                    new NoDoubleBookingPredicate()
-                            )
-                    )
-            );
+            this.query.addValidator(appointmentValidators);
             // Construct the constraints expected for Appointments
             RadioButton allTime = new RadioButton(Session.getBundle().getString("constrainedQV.AllTime"));
             allTime.setSelected(true);
@@ -81,7 +119,7 @@ public class ConstrainedQueryView extends VBox {
             ToggleGroup timeframe = new ToggleGroup();
             timeframe.getToggles().addAll(allTime, byMonth, byWeek);
 
-            DatePicker aroundDate = new DatePicker(LocalDate.now());
+            aroundDate = new DatePicker(LocalDate.now());
             aroundDate.setDisable(true);
 
             // When the UI elements update, propagate those changes to the Query
@@ -89,34 +127,36 @@ public class ConstrainedQueryView extends VBox {
                 Set<SQLQueryConstraint> newConstraints = new HashSet<>();
                 if (allTime.isSelected()) {
                     aroundDate.setDisable(true);
+                    occurrenceWindow.set(allTimeWindow());
                 } else {
                     aroundDate.setDisable(false);
-                    LocalDate selectedDate = aroundDate.getValue();
-                    Timestamp spanStart;
-                    Timestamp spanEnd;
-
-                    if (byMonth.isSelected()) {
-                        spanStart = Timestamp.valueOf(selectedDate.withDayOfMonth(1).atStartOfDay());
-                        spanEnd = Timestamp.valueOf(selectedDate.withDayOfMonth(1).plusMonths(1).atStartOfDay()); // 'Before the end of the month' gets moved to 'Before the start of next month'
-                    } else { // Presuambly, byWeek
-                        int selectedDayOfWeek = selectedDate.getDayOfWeek().getValue();
-                        int zeroIndexedSelectedDayOfLocaleWeek = ((selectedDayOfWeek - localeFirstDayOfWeek)%7 + 7)%7; // Java's choice of 'remainder' operator pollutes the C naming conventions programmers rely on.
-
-                        LocalDate localeWeekStart = selectedDate.minusDays(zeroIndexedSelectedDayOfLocaleWeek);
-
-                        spanStart = Timestamp.valueOf(localeWeekStart.atStartOfDay());
-                        spanEnd = Timestamp.valueOf(localeWeekStart.plusWeeks(1).atStartOfDay());
-                    }
-
-                    newConstraints.add(new SQLQueryConstraint("Start", SQLQueryConstraint.SQLComparators.GTE, spanStart));
-                    newConstraints.add(new SQLQueryConstraint("End", SQLQueryConstraint.SQLComparators.LT, spanEnd));
+                    Timestamp[] span = windowAround(aroundDate.getValue(), byMonth.isSelected(), localeFirstDayOfWeek);
+                    occurrenceWindow.set(new long[]{span[0].getTime(), span[1].getTime()});
+                    newConstraints.addAll(windowConstraints(span));
                 }
 
 
-                this.query.removeConstraint(searchConstraints);
+                this.query.replaceConstraints(searchConstraints, newConstraints);
                 searchConstraints = newConstraints;
-                this.query.addConstraint(searchConstraints);
             };
+            // Weeks and months are filtered from the quarter(s) around them, so paging within a quarter doesn't re-query
+            this.query.setSupersetWidener(ConstrainedQueryView::widenToQuarters);
+
+            // Once a window has loaded, read the windows either side of it in the background, so paging doesn't wait
+            this.query.setPrefetcher(WindowPrefetcher.shared());
+            Runnable prefetchAdjacent = () -> {
+                if (allTime.isSelected()) return;
+                LocalDate selectedDate = aroundDate.getValue();
+                List<LocalDate> adjacent = byMonth.isSelected()
+                        ? List.of(selectedDate.minusMonths(1), selectedDate.plusMonths(1))
+                        : List.of(selectedDate.minusWeeks(1), selectedDate.plusWeeks(1));
+                for (LocalDate date : adjacent)
+                    this.query.prefetch(windowConstraints(windowAround(date, byMonth.isSelected(), localeFirstDayOfWeek)));
+            };
+            // After the publish which refreshed the query (and dropped what was prefetched) has reached everyone
+            this.query.getDResultSet().addListener((InvalidationListener) refreshed -> Platform.runLater(prefetchAdjacent));
+            timeframe.selectedToggleProperty().addListener(observable -> prefetchAdjacent.run());
+            aroundDate.valueProperty().addListener(observable -> prefetchAdjacent.run());
 
             timeframe.selectedToggleProperty().addListener(rebuildAppointmentConstraints);
             aroundDate.valueProperty().addListener(rebuildAppointmentConstraints);
@@ -128,33 +168,87 @@ public class ConstrainedQueryView extends VBox {
         Button saveBtn = new Button(Session.getBundle().getString("constrainedQV.Save"));
         Button undoBtn = new Button(Session.getBundle().getString("constrainedQV.Undo"));
         Button deltBtn = new Button(Session.getBundle().getString("constrainedQV.Delete"));
+        Button saveAllBtn = new Button(Session.getBundle().getString("constrainedQV.SaveAll"));
+        Button importBtn = new Button(Session.getBundle().getString("constrainedQV.Import"));
+        Label importStatus = new Label();
+        Label validationStatus = new Label(); // Why the selected row can't be saved, as found while it was edited
 
         saveBtn.setTooltip(new Tooltip(Session.getBundle().getString("constrainedQV.SaveToolTip")));
         undoBtn.setTooltip(new Tooltip(Session.getBundle().getString("constrainedQV.UndoToolTip")));
         deltBtn.setTooltip(new Tooltip(Session.getBundle().getString("constrainedQV.DeleteToolTip")));
+        saveAllBtn.setTooltip(new Tooltip(Session.getBundle().getString("constrainedQV.SaveAllToolTip")));
+        saveAllBtn.disableProperty().bind(query.dirtyRowCountProperty().isEqualTo(0));
+        importBtn.setTooltip(new Tooltip(Session.getBundle().getString("constrainedQV.ImportToolTip")));
 
         SelectionModel<IWritableRow> tableSelection = innerTableView.getSelectionModel();
 
         saveBtn.setOnAction((ActionEvent event) -> {
+            IWritableRow selectedRow = tableSelection.getSelectedItem();
             try {
-                tableSelection.getSelectedItem().commitRowEdits();
+                CommitResult result = selectedRow.tryCommitRowEdits();
+                if (!result.isConflict()) return;
+                if (result.getServerRow() == null) {
+                    showAlert(Alert.AlertType.ERROR, Session.getBundle().getString("rowCommit.ConflictDeleted"));
+                } else {
+                    // Keep the user's edits, on top of whatever someone else saved, so they can review and save again
+                    selectedRow.rebaseRowEdits(result.getServerRow());
+                    showAlert(Alert.AlertType.ERROR, Session.getBundle().getString("rowCommit.ConflictRebased"));
+                }
             } catch (RowValidationFailedException e) {
-                Alert validationAlert = new Alert(Alert.AlertType.ERROR);
-                Text validationText = new Text(e.getMessage());
-                validationText.setWrappingWidth(500);
-                validationAlert.getDialogPane().setContent(validationText);
-                validationAlert.show();
+                showAlert(Alert.AlertType.ERROR, e.getMessage());
             }
         });
+        saveAllBtn.setOnAction((ActionEvent event) -> {
+            Map<IWritableRow, RuntimeException> failures = query.commitAllRowEdits();
+            if (failures.isEmpty()) return;
+            // Describe each row which couldn't be saved, identified by its Primary Key
+            MessageFormat failureFormat = new MessageFormat(Session.getBundle().getString("constrainedQV.SaveAllFailure{row,message}"));
+            StringBuilder failureMessage = new StringBuilder();
+            failures.forEach((row, e) -> {
+                Object rowName = row.getRowNum() == -1
+                        ? Session.getBundle().getString("queryTableView.newRow")
+                        : query.getPKColumns().stream().map(row::getEntryValue).toList();
+                failureMessage.append(failureFormat.format(new Object[]{rowName, e.getMessage()})).append('\n');
+            });
+            showAlert(Alert.AlertType.ERROR, failureMessage.toString());
+        });
+        importBtn.setOnAction((ActionEvent event) -> {
+            FileChooser csvChooser = new FileChooser();
+            csvChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV", "*.csv"));
+            File csvFile = csvChooser.showOpenDialog(getScene().getWindow());
+            if (csvFile == null) return;
+
+            // Run the import away from the JavaFX thread, reporting progress after each batch
+            MessageFormat importFormat = new MessageFormat(Session.getBundle().getString("constrainedQV.ImportProgress{read,inserted,errors}"));
+            Task<CSVImporter.Report> importTask = new Task<>() {
+                @Override
+                protected CSVImporter.Report call() throws Exception {
+                    try (Reader csvReader = Files.newBufferedReader(csvFile.toPath())) {
+                        return new CSVImporter(query).importFrom(csvReader, report -> updateMessage(importFormat.format(
+                                new Object[]{report.getRecordsRead(), report.getRecordsInserted(), report.getErrorCount()})));
+                    }
+                }
+            };
+            importStatus.textProperty().bind(importTask.messageProperty());
+            importBtn.disableProperty().bind(importTask.runningProperty());
+            importTask.setOnSucceeded(e -> {
+                CSVImporter.Report report = importTask.getValue();
+                StringBuilder importMessage = new StringBuilder(importFormat.format(
+                        new Object[]{report.getRecordsRead(), report.getRecordsInserted(), report.getErrorCount()}));
+                report.getErrors().stream().limit(20).forEach(error -> importMessage.append('\n').append(error));
+                showAlert(report.getErrorCount() == 0 ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING, importMessage.toString());
+            });
+            importTask.setOnFailed(e -> showAlert(Alert.AlertType.ERROR, importTask.getException().getMessage()));
+
+            Thread importThread = new Thread(importTask, "csv-import-" + tableName);
+            importThread.setDaemon(true);
+            importThread.start();
+        });
         undoBtn.setOnAction((ActionEvent event) -> tableSelection.getSelectedItem().clearRowEdits());
         deltBtn.setOnAction((ActionEvent event) -> {
             String deleteMessage = tableSelection.getSelectedItem().deleteRow();
             if (deleteMessage == null) return;
-            Alert deleteAlert = new Alert(Alert.AlertType.INFORMATION);
-            Text deleteText = new Text(deleteMessage);
-            deleteText.setWrappingWidth(500);
-            deleteAlert.getDialogPane().setContent(deleteText);
-            deleteAlert.show();
+            showAlert(Alert.AlertType.INFORMATION, deleteMessage);
         });
         HBox editResponses = new HBox(saveBtn, undoBtn);
         saveBtn.setDisable(true);
@@ -165,7 +259,8 @@ public class ConstrainedQueryView extends VBox {
         InvalidationListener setSavable = observable -> saveBtn.setDisable(!((ReadOnlyBooleanProperty)observable).getValue());
         InvalidationListener setWasEdited = observable -> editResponses.setDisable(!((ReadOnlyBooleanProperty)observable).getValue());
 
-        editingBar = new HBox(editResponses, deltBtn);
+        editingBar = new HBox(editResponses, deltBtn, saveAllBtn, importBtn, importStatus, validationStatus);
+        String checkingMessage = Session.getBundle().getString("rowValidation.Checking");
 
         tableSelection.selectedItemProperty().addListener((observableValue, oldVal, newVal) -> {
             if (oldVal != null) {
@@ -180,13 +275,287 @@ public class ConstrainedQueryView extends VBox {
 
                 newVal.meetsSubmissionCriteriaProperty().addListener(setSavable);
                 newVal.hasLiveEditsProperty().addListener(setWasEdited);
+                validationStatus.textProperty().bind(Bindings.createStringBinding(
+                        () -> newVal.validationStateProperty().get() == IWritableRow.ValidationState.PENDING
+                                ? checkingMessage : newVal.validationMessageProperty().get(),
+                        newVal.validationStateProperty(), newVal.validationMessageProperty()));
             } else {
                 editingBar.setDisable(true);
                 editResponses.setDisable(true);
+                validationStatus.textProperty().unbind();
+                validationStatus.setText(null);
             }
 
         });
+        if (Objects.equals(tableName, "appointments")) {
+            // Move the selected appointment to the first time its customer and contact are both free, while the office is open
+            Button nextSlotBtn = new Button(Session.getBundle().getString("constrainedQV.NextSlot"));
+            nextSlotBtn.setTooltip(new Tooltip(Session.getBundle().getString("constrainedQV.NextSlotToolTip")));
+            nextSlotBtn.setOnAction((ActionEvent event) -> {
+                IWritableRow row = tableSelection.getSelectedItem();
+                if (row == null) return;
+                Integer customerId = (Integer) row.getEntryValue("Customer_ID");
+                Integer contactId = (Integer) row.getEntryValue("Contact_ID");
+                Integer appointmentId = (Integer) row.getEntryValue("Appointment_ID");
+                Object location = row.getEntryValue("Location");
+                Timestamp start = (Timestamp) row.getEntryValue("Start");
+                Timestamp end = (Timestamp) row.getEntryValue("End");
+                long duration = start != null && end != null && end.after(start) ? end.getTime() - start.getTime() : defaultSlotMillis;
+                long from = System.currentTimeMillis();
+                long to = from + slotSearchDays * 24 * 60 * 60 * 1000L;
+
+                // The index usually answers in memory, but may need the Database, so search away from the JavaFX thread
+                Task<List<SlotFinder.Slot>> slotTask = new Task<>() {
+                    @Override
+                    protected List<SlotFinder.Slot> call() {
+                        return new SlotFinder().find(customerId, contactId, appointmentId,
+                                location == null ? null : location.toString(), duration, from, to, 1);
+                    }
+                };
+                slotTask.setOnSucceeded(e -> {
+                    List<SlotFinder.Slot> slots = slotTask.getValue();
+                    if (slots.isEmpty()) {
+                        showAlert(Alert.AlertType.INFORMATION, MessageFormat.format(
+                                Session.getBundle().getString("constrainedQV.NoFreeSlot{days}"), slotSearchDays));
+                        return;
+                    }
+                    row.setRowEntry("Start", slots.get(0).getStart());
+                    row.setRowEntry("End", slots.get(0).getEnd());
+                });
+                slotTask.setOnFailed(e -> showAlert(Alert.AlertType.ERROR, slotTask.getException().getMessage()));
+                nextSlotBtn.disableProperty().bind(slotTask.runningProperty());
+
+                Thread slotThread = new Thread(slotTask, "slot-finder");
+                slotThread.setDaemon(true);
+                slotThread.start();
+            });
+            editingBar.getChildren().add(2, nextSlotBtn);
+        }
+        // Exporting doesn't depend on the selected row, so it lives beside the constraints it respects
+        constraintsBar.getChildren().add(0, new ExportButton(query, tableName));
         // ---
-        this.getChildren().addAll(constraintsBar, innerTableView, editingBar);
+        if (Objects.equals(tableName, "appointments")) {
+            this.getChildren().addAll(constraintsBar, buildCalendarTabs(tableSelection), editingBar, buildRecurrencePane(tableSelection, appointmentValidators));
+        } else {
+            this.getChildren().addAll(constraintsBar, innerTableView, editingBar);
+        }
+    }
+
+    /**
+     * Show the appointments both as the editable table and on a {@link CalendarView}, sharing one selection, so an
+     * appointment picked on the calendar can be edited, saved, or repeated with the usual buttons. Picking an appointment
+     * outside the table's week or month moves the table to the one it's in, and selects it there once it's loaded.
+     */
+    private TabPane buildCalendarTabs(SelectionModel<IWritableRow> tableSelection) {
+        CalendarView calendar = new CalendarView();
+        Integer[] pendingSelection = {null}; // Picked on the calendar, but not yet among the table's rows
+        calendar.selectedAppointmentProperty().addListener((observable, oldId, newId) -> {
+            pendingSelection[0] = null;
+            if (newId == null || selectAppointment(tableSelection, newId)) return;
+            AppointmentIndex.Appointment appointment = AppointmentIndex.shared().get(newId);
+            if (appointment == null || aroundDate.isDisabled()) return; // Showing all time, so it's filtered out some other way
+            pendingSelection[0] = newId;
+            aroundDate.setValue(new Timestamp(appointment.start).toLocalDateTime().toLocalDate());
+            if (selectAppointment(tableSelection, newId)) pendingSelection[0] = null;
+        });
+        innerTableView.getItems().addListener((InvalidationListener) changed -> {
+            if (pendingSelection[0] != null && selectAppointment(tableSelection, pendingSelection[0])) pendingSelection[0] = null;
+        });
+        tableSelection.selectedItemProperty().addListener((observable, oldRow, newRow) -> {
+            Object id = newRow == null ? null : newRow.getEntryValue("Appointment_ID");
+            if (newRow != null && !Objects.equals(id, pendingSelection[0])) pendingSelection[0] = null; // Picked something else since
+            if (id instanceof Integer && !id.equals(calendar.selectedAppointmentProperty().get())) calendar.selectedAppointmentProperty().set((Integer) id);
+        });
+
+        Tab tableTab = new Tab(Session.getBundle().getString("constrainedQV.TableTab"), innerTableView);
+        Tab calendarTab = new Tab(Session.getBundle().getString("constrainedQV.CalendarTab"), calendar);
+        tableTab.setClosable(false);
+        calendarTab.setClosable(false);
+        TabPane tabs = new TabPane(tableTab, calendarTab);
+        VBox.setVgrow(tabs, Priority.ALWAYS);
+        return tabs;
+    }
+
+    /**
+     * Select (and scroll to) the table's row for an appointment, if the table has one.
+     * @return Whether the table has a row for the appointment.
+     */
+    private boolean selectAppointment(SelectionModel<IWritableRow> tableSelection, Integer appointmentId) {
+        for (IWritableRow row : innerTableView.getItems()) {
+            if (appointmentId.equals(row.getEntryValue("Appointment_ID"))) {
+                tableSelection.select(row);
+                innerTableView.scrollTo(row);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The [start, end) span of the month or the (locale's) week containing the date.
+     */
+    private static Timestamp[] windowAround(LocalDate selectedDate, boolean byMonth, int localeFirstDayOfWeek) {
+        Timestamp spanStart;
+        Timestamp spanEnd;
+
+        if (byMonth) {
+            spanStart = Timestamp.valueOf(selectedDate.withDayOfMonth(1).atStartOfDay());
+            spanEnd = Timestamp.valueOf(selectedDate.withDayOfMonth(1).plusMonths(1).atStartOfDay()); // 'Before the end of the month' gets moved to 'Before the start of next month'
+        } else { // Presuambly, byWeek
+            int selectedDayOfWeek = selectedDate.getDayOfWeek().getValue();
+            int zeroIndexedSelectedDayOfLocaleWeek = ((selectedDayOfWeek - localeFirstDayOfWeek)%7 + 7)%7; // Java's choice of 'remainder' operator pollutes the C naming conventions programmers rely on.
+
+            LocalDate localeWeekStart = selectedDate.minusDays(zeroIndexedSelectedDayOfLocaleWeek);
+
+            spanStart = Timestamp.valueOf(localeWeekStart.atStartOfDay());
+            spanEnd = Timestamp.valueOf(localeWeekStart.plusWeeks(1).atStartOfDay());
+        }
+        return new Timestamp[]{spanStart, spanEnd};
+    }
+
+    /**
+     * @return The constraints limiting appointments to those inside the [start, end) span.
+     */
+    private static Set<SQLQueryConstraint> windowConstraints(Timestamp[] span) {
+        return Set.of(
+                new SQLQueryConstraint("Start", SQLQueryConstraint.SQLComparators.GTE, span[0]),
+                new SQLQueryConstraint("End", SQLQueryConstraint.SQLComparators.LT, span[1])
+        );
+    }
+
+    /**
+     * Widen appointment constraints of the form {@code Start >= a AND End < b} to the whole quarters which [a, b) falls in.
+     * @return The widened constraints, or the given ones if they aren't of that form.
+     */
+    private static Set<SQLQueryConstraint> widenToQuarters(Set<SQLQueryConstraint> constraints) {
+        Timestamp spanStart = null;
+        Timestamp spanEnd = null;
+        for (SQLQueryConstraint constraint : constraints) {
+            if (!(constraint.getCompareTo() instanceof Timestamp)) return constraints;
+            if (constraint.getColumnName().equals("Start") && constraint.getComparator() == SQLQueryConstraint.SQLComparators.GTE)
+                spanStart = (Timestamp) constraint.getCompareTo();
+            else if (constraint.getColumnName().equals("End") && constraint.getComparator() == SQLQueryConstraint.SQLComparators.LT)
+                spanEnd = (Timestamp) constraint.getCompareTo();
+            else return constraints;
+        }
+        if (spanStart == null || spanEnd == null) return constraints;
+
+        LocalDate firstDay = spanStart.toLocalDateTime().toLocalDate();
+        LocalDate lastDay = spanEnd.toLocalDateTime().minusNanos(1).toLocalDate();
+        LocalDate quarterStart = firstDay.withDayOfMonth(1).withMonth((firstDay.getMonthValue() - 1) / 3 * 3 + 1);
+        LocalDate quarterEnd = lastDay.withDayOfMonth(1).withMonth((lastDay.getMonthValue() - 1) / 3 * 3 + 1).plusMonths(3);
+        return Set.of(
+                new SQLQueryConstraint("Start", SQLQueryConstraint.SQLComparators.GTE, Timestamp.valueOf(quarterStart.atStartOfDay())),
+                new SQLQueryConstraint("End", SQLQueryConstraint.SQLComparators.LT, Timestamp.valueOf(quarterEnd.atStartOfDay()))
+        );
+    }
+
+    private static long[] allTimeWindow() {
+        long now = System.currentTimeMillis();
+        return new long[]{now, now + slotSearchDays * 24 * 60 * 60 * 1000L};
+    }
+
+    /**
+     * Build the controls for recurring appointments: making the selected appointment repeat, and listing (and skipping)
+     * the occurrences which fall inside the {@link #occurrenceWindow}.
+     * @param tableSelection The selection of the appointments table.
+     * @return The pane holding those controls.
+     */
+    private VBox buildRecurrencePane(SelectionModel<IWritableRow> tableSelection, Set<IRowPredicate> validators) {
+        RecurrenceStore store = RecurrenceStore.shared();
+        DateTimeFormatter occurrenceFormatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT)
+                .withLocale(Session.getActiveLocale()).withZone(ZoneId.systemDefault());
+        MessageFormat occurrenceFormat = new MessageFormat(Session.getBundle().getString("recurrence.ListItem{title,start,end}"));
+
+        ListView<RecurrenceRule.Occurrence> occurrences = new ListView<>();
+        occurrences.setPrefHeight(120);
+        occurrences.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(RecurrenceRule.Occurrence item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : occurrenceFormat.format(new Object[]{item.rule.getTitle(),
+                        occurrenceFormatter.format(Instant.ofEpochMilli(item.start)), occurrenceFormatter.format(Instant.ofEpochMilli(item.end))}));
+            }
+        });
+        InvalidationListener expand = observable -> {
+            long[] window = occurrenceWindow.get();
+            occurrences.getItems().setAll(store.occurrences(window[0], window[1]));
+        };
+        occurrenceWindow.addListener(expand);
+        store.rulesProperty().addListener(expand);
+        expand.invalidated(occurrenceWindow);
+
+        ChoiceBox<RecurrenceRule.Frequency> frequency = new ChoiceBox<>();
+        frequency.getItems().setAll(RecurrenceRule.Frequency.values());
+        frequency.setValue(RecurrenceRule.Frequency.WEEKLY);
+        frequency.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(RecurrenceRule.Frequency f) {
+                return f == null ? null : Session.getBundle().getString("recurrence.Frequency." + f.name());
+            }
+
+            @Override
+            public RecurrenceRule.Frequency fromString(String s) {
+                return null; // Only ever chosen from the list
+            }
+        });
+        DatePicker until = new DatePicker();
+        until.setPromptText(Session.getBundle().getString("recurrence.Until"));
+        Button repeatBtn = new Button(Session.getBundle().getString("recurrence.Repeat"));
+        repeatBtn.setTooltip(new Tooltip(Session.getBundle().getString("recurrence.RepeatToolTip")));
+        repeatBtn.setOnAction((ActionEvent event) -> {
+            IWritableRow row = tableSelection.getSelectedItem();
+            if (row == null) return;
+            if (row.getRowNum() == -1 || row.hasLiveEditsProperty().get()) {
+                showAlert(Alert.AlertType.INFORMATION, Session.getBundle().getString("recurrence.SaveFirst"));
+                return;
+            }
+            IWritableRow appointment = RecurrenceStore.snapshot(row);
+            RecurrenceRule.Frequency repeatFrequency = frequency.getValue();
+            LocalDate repeatUntil = until.getValue();
+            // Every occurrence is validated first, which may query the database many times, so it runs in the background
+            Task<Integer> repeatTask = new Task<>() {
+                @Override
+                protected Integer call() {
+                    return store.addRule(appointment, repeatFrequency, 1, repeatUntil, validators);
+                }
+            };
+            repeatTask.setOnFailed(e -> showAlert(Alert.AlertType.ERROR, repeatTask.getException().getMessage()));
+            repeatBtn.disableProperty().bind(repeatTask.runningProperty());
+
+            Thread repeatThread = new Thread(repeatTask, "recurrence-rule");
+            repeatThread.setDaemon(true);
+            repeatThread.start();
+        });
+        Button skipBtn = new Button(Session.getBundle().getString("recurrence.Skip"));
+        skipBtn.setTooltip(new Tooltip(Session.getBundle().getString("recurrence.SkipToolTip")));
+        skipBtn.disableProperty().bind(occurrences.getSelectionModel().selectedItemProperty().isNull());
+        skipBtn.setOnAction((ActionEvent event) -> {
+            RecurrenceRule.Occurrence occurrence = occurrences.getSelectionModel().getSelectedItem();
+            if (occurrence != null) store.addException(occurrence.rule.getRuleId(), occurrence.date);
+        });
+
+        HBox recurrenceBar = new HBox(frequency, until, repeatBtn, skipBtn);
+        Label heading = new Label();
+        heading.textProperty().bind(Bindings.when(store.availableProperty())
+                .then(Session.getBundle().getString("recurrence.Heading"))
+                .otherwise(Session.getBundle().getString("recurrence.Unavailable")));
+        occurrences.disableProperty().bind(store.availableProperty().not());
+        recurrenceBar.disableProperty().bind(store.availableProperty().not());
+        VBox recurrencePane = new VBox(heading, occurrences, recurrenceBar);
+        return recurrencePane;
+    }
+
+    /**
+     * Show a non-blocking Alert containing the given message, wrapped to a readable width.
+     * @param alertType The type of Alert to show.
+     * @param message The message to show.
+     */
+    static void showAlert(Alert.AlertType alertType, String message) {
+        Alert alert = new Alert(alertType);
+        Text alertText = new Text(message);
+        alertText.setWrappingWidth(500);
+        alert.getDialogPane().setContent(alertText);
+        alert.show();
     }
 }
@@ -1,6 +1,7 @@
 package view;
 
 import javafx.beans.InvalidationListener;
+import javafx.beans.WeakInvalidationListener;
 import javafx.beans.property.*;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
@@ -13,8 +14,8 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.util.StringConverter;
-import model.MapStringConverter;
-import model.Query.ConstrainedQuery;
+import model.Query.KeyLookup;
+import model.Query.DivisionHierarchy;
 import model.Row.IBaseRow;
 import model.Session;
 
@@ -28,78 +29,35 @@ import java.util.*;
  * @param <V> The value type this TableCell is selecting between
  */
 public class DivisionSelector<R extends IBaseRow<?>, V extends Integer> extends TableCell<R, V> {
-    private static final ConstrainedQuery divisionQueryResult = new ConstrainedQuery("first_level_divisions", "Division_ID", "Division", "Country_Id");
-    private static final ConstrainedQuery countryQueryResult = new ConstrainedQuery("countries", "Country_ID", "Country");
+    private static final DivisionHierarchy hierarchy = DivisionHierarchy.shared();
+    private static final KeyLookup countryLookup = KeyLookup.of("countries", "Country");
+    private static final KeyLookup divisionLookup = KeyLookup.of("first_level_divisions", "Division");
 
-    private static final Map<Integer, Set<Integer>> countryIdDivisionId = new HashMap<>();
-    private static final Map<Integer, Integer> divisionIdCountryId = new HashMap<>();
+    private static final SimpleObjectProperty<StringConverter<Integer>> countryConverter = new SimpleObjectProperty<>(countryLookup.converter());
+    private static final SimpleObjectProperty<StringConverter<Integer>> divisionConverter = new SimpleObjectProperty<>(divisionLookup.converter());
 
-    private static final SimpleObjectProperty<MapStringConverter<Integer>> countryConverter = new SimpleObjectProperty<>(new MapStringConverter<>());
-    private static final SimpleObjectProperty<MapStringConverter<Integer>> divisionConverter = new SimpleObjectProperty<>(new MapStringConverter<>());
-
-    private static final ObservableList<Integer> countryIds = FXCollections.observableArrayList();
+    private static final ObservableList<Integer> countryIds = countryLookup.getKeys();
     private        final SimpleIntegerProperty activeCountryId = new SimpleIntegerProperty();
     private        final ObservableList<V>  divisionIds     = FXCollections.observableArrayList();
 
-    private HBox comboHBox;
-
-    // NTODO: Stability: Upgrade to Dependables
-
     /**
-     * This static code uses Lambdas-as-{@link InvalidationListener InvalidationListeners} to build the relationships between Divisions, Countries, and their representative Names.
+     * Refreshes this cell's divisions when the hierarchy changes. Held here, and registered weakly, so cells can still be collected.
      */
-    static
-    {
-        InvalidationListener updateDivisionMapping = (divisionData) -> {
-            System.out.println("Updating DivisionSelector Divisions due to underlying changes");
-
-            // Grab references we're gonna update
-            Map<Integer, String> divisionIdsNames = new HashMap<>();
-            countryIdDivisionId.clear();
-
-            // Construct the contents of our updated values
-            for (IBaseRow<?> row : (List<IBaseRow<?>>) divisionData) {
-                Integer countryId = (Integer) row.getEntry("Country_ID").getValue();
-                Integer divisionId = (Integer) row.getEntry("Division_ID").getValue();
-                String divisionName = (String) row.getEntry("Division").getValue();
-
-                countryIdDivisionId.computeIfAbsent(countryId, cid -> new HashSet<>()).add(divisionId);
-                divisionIdCountryId.put(divisionId, countryId);
-                divisionIdsNames.put(divisionId, divisionName);
-            }
-            divisionConverter.set( new MapStringConverter<>(divisionIdsNames));
-        };
-
-        InvalidationListener updateCountryNames = (countryData) -> {
-            System.out.println("Updating DivisionSelector Countries due to underlying changes");
-
-            // Grab references we're gonna update
-            Map<Integer, String> countryIdsNames = new HashMap<>();
+    private final InvalidationListener hierarchyListener = o -> refreshDivisionIds();
 
-            // Construct the contents of our updated values
-            for (IBaseRow<?> row : (List<IBaseRow<?>>) countryData) {
-                Integer countryId = (Integer) row.getEntry("Country_ID").getValue();
-                String countryName = (String) row.getEntry("Country").getValue();
-                countryIdsNames.put(countryId, countryName);
-            }
-
-            // Project the results into outward-facing Observable
-            countryIds.setAll(countryIdsNames.keySet());
-            countryConverter.set(new MapStringConverter<>(countryIdsNames));
-        };
-
-        divisionQueryResult.getRows().addListener(updateDivisionMapping);
-        countryQueryResult.getRows().addListener(updateCountryNames);
+    private HBox comboHBox;
 
-        updateDivisionMapping.invalidated(divisionQueryResult.getRows());
-        updateCountryNames.invalidated(countryQueryResult.getRows());
+    {
+        activeCountryId.addListener((InvalidationListener) c -> refreshDivisionIds());
+        hierarchy.versionProperty().addListener(new WeakInvalidationListener(hierarchyListener));
     }
 
-    {
-        activeCountryId.addListener((InvalidationListener) c -> {
-            // System.out.println("Updating available divisionIds...");
-            divisionIds.setAll((Collection<? extends V>) countryIdDivisionId.get(((ObservableValue<Integer>) c).getValue()));
-        });
+    /**
+     * Show the active country's divisions, as of the current {@link DivisionHierarchy.Version}.
+     */
+    private void refreshDivisionIds() {
+        List<Integer> divisions = hierarchy.current().divisionsOf(activeCountryId.get());
+        if (!divisions.equals(divisionIds)) divisionIds.setAll((Collection<? extends V>) divisions);
     }
 
     
@@ -122,6 +80,12 @@ public class DivisionSelector<R extends IBaseRow<?>, V extends Integer> extends
             ComboBox<Integer> countryComboBox = createComboBox((Cell<Integer>) this, countryIds, countryConverter, false);
             countryComboBox.getSelectionModel().selectedItemProperty().addListener(o -> activeCountryId.set(((ObservableValue<Integer>)o).getValue()));
             ComboBox<Integer> divisionComboBox = createComboBox((Cell<Integer>) this, (ObservableList<Integer>) divisionIds, divisionConverter, true);
+            ComboBoxTypeAhead.install(countryComboBox, (prefix, limit) -> boxed(countryLookup.keysStartingWith(prefix, limit)));
+            // A country has few divisions, so its own list is searched rather than every division's
+            ComboBoxTypeAhead.install(divisionComboBox, (prefix, limit) -> divisionIds.stream()
+                    .filter(id -> KeyLookup.fold(Objects.toString(divisionLookup.label(id), "")).startsWith(KeyLookup.fold(prefix)))
+                    .sorted(Comparator.comparing(id -> KeyLookup.fold(divisionLookup.label(id))))
+                    .limit(limit).map(id -> (Integer) id).toList());
             comboHBox = new HBox(countryComboBox, divisionComboBox);
         }
 
@@ -130,6 +94,12 @@ public class DivisionSelector<R extends IBaseRow<?>, V extends Integer> extends
         setGraphic(comboHBox);
     }
 
+    private static List<Integer> boxed(int[] keys) {
+        List<Integer> boxed = new ArrayList<>(keys.length);
+        for (int key : keys) boxed.add(key);
+        return boxed;
+    }
+
     // I don't understand why CellUtils is private in JavaFX. Come on, seriously? It's literally a utility.
 
     /**
@@ -226,7 +196,7 @@ public class DivisionSelector<R extends IBaseRow<?>, V extends Integer> extends
      */
     private String getReprText(){
         String division = divisionConverter.getValue().toString(getItem());
-        String country = countryConverter.getValue().toString(divisionIdCountryId.get(getItem()));
+        String country = countryConverter.getValue().toString(hierarchy.current().countryOf(getItem()));
         if (division != null || country != null) return country + ", " + division;
         else return Session.getBundle().getString("divisionSelector.newDivision");
     }
@@ -236,7 +206,7 @@ public class DivisionSelector<R extends IBaseRow<?>, V extends Integer> extends
      */
     private void setComboBySource(){
         if (comboHBox != null) {
-            ((ComboBox<Integer>)comboHBox.getChildren().get(0)).getSelectionModel().select(divisionIdCountryId.get(getItem()));
+            ((ComboBox<Integer>)comboHBox.getChildren().get(0)).getSelectionModel().select(hierarchy.current().countryOf(getItem()));
             ((ComboBox<Integer>)comboHBox.getChildren().get(1)).getSelectionModel().select(getItem());
         }
     }
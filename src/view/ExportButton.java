@@ -0,0 +1,80 @@
+package view;
+
+import javafx.concurrent.Task;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.Tooltip;
+import javafx.stage.FileChooser;
+import model.Query.IBaseQuery;
+import model.Query.QueryExporter;
+import model.Session;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.text.MessageFormat;
+
+/**
+ * This class is a Button which exports every row of a Query, as it's currently constrained, to a CSV or JSON file chosen
+ * by the user. The export runs away from the JavaFX thread (see {@link QueryExporter}), and reports its progress in the
+ * Button's Tooltip.
+ */
+public class ExportButton extends Button {
+    /**
+     * Construct an ExportButton over the given Query.
+     * @param query The Query to export the results of.
+     * @param fileName The default name of the exported file, without an extension.
+     */
+    public ExportButton(IBaseQuery<?> query, String fileName) {
+        super(Session.getBundle().getString("queryExport.Export"));
+        Tooltip idleTooltip = new Tooltip(Session.getBundle().getString("queryExport.ExportToolTip"));
+        setTooltip(idleTooltip);
+
+        setOnAction(event -> {
+            FileChooser exportChooser = new FileChooser();
+            FileChooser.ExtensionFilter csvFilter = new FileChooser.ExtensionFilter("CSV", "*.csv");
+            exportChooser.getExtensionFilters().addAll(csvFilter, new FileChooser.ExtensionFilter("JSON", "*.json"));
+            exportChooser.setInitialFileName(fileName + ".csv");
+            File exportFile = exportChooser.showSaveDialog(getScene().getWindow());
+            if (exportFile == null) return;
+            // Prefer the extension the user typed, and fall back to the filter they chose
+            String exportName = exportFile.getName().toLowerCase();
+            boolean asJSON = exportName.endsWith(".json")
+                    || (!exportName.endsWith(".csv") && exportChooser.getSelectedExtensionFilter() != null && exportChooser.getSelectedExtensionFilter() != csvFilter);
+            QueryExporter.Format format = asJSON ? QueryExporter.Format.JSON : QueryExporter.Format.CSV;
+
+            // Read the SQL here, so the export reflects the Query's constraints at the moment it was requested. This selects
+            // only the rows shown, even where the Query fetched more (eg the quarter around a week) and filters them in memory.
+            String sql = query.getVisibleSQL();
+            MessageFormat progressFormat = new MessageFormat(Session.getBundle().getString("queryExport.Progress{rows,rate}"));
+            Task<QueryExporter.Stats> exportTask = new Task<>() {
+                @Override
+                protected QueryExporter.Stats call() throws Exception {
+                    try (Writer exportWriter = Files.newBufferedWriter(exportFile.toPath())) {
+                        return QueryExporter.export(sql, format, exportWriter, stats -> updateMessage(progressFormat.format(
+                                new Object[]{stats.getRows(), stats.getRowsPerSecond()})));
+                    }
+                }
+            };
+
+            Tooltip progressTooltip = new Tooltip();
+            progressTooltip.textProperty().bind(exportTask.messageProperty());
+            setTooltip(progressTooltip);
+            disableProperty().bind(exportTask.runningProperty());
+            exportTask.setOnSucceeded(e -> {
+                setTooltip(idleTooltip);
+                QueryExporter.Stats stats = exportTask.getValue();
+                ConstrainedQueryView.showAlert(Alert.AlertType.INFORMATION, MessageFormat.format(Session.getBundle().getString("queryExport.Done{rows,seconds,rate}"),
+                        stats.getRows(), stats.getElapsedMillis() / 1000.0, stats.getRowsPerSecond()));
+            });
+            exportTask.setOnFailed(e -> {
+                setTooltip(idleTooltip);
+                ConstrainedQueryView.showAlert(Alert.AlertType.ERROR, exportTask.getException().getMessage());
+            });
+
+            Thread exportThread = new Thread(exportTask, "query-export-" + fileName);
+            exportThread.setDaemon(true);
+            exportThread.start();
+        });
+    }
+}
@@ -5,16 +5,11 @@ import javafx.collections.*;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.util.*;
-import javafx.util.converter.*;
 import model.Dependable;
 import model.Query.*;
 import model.Row.*;
-import model.Session;
 
-import java.lang.reflect.InvocationTargetException;
 import java.sql.ResultSetMetaData;
-import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.util.*;
 import java.util.function.Predicate;
 
@@ -47,9 +42,7 @@ public class QueryTableView<R extends IBaseRow<?>> extends TableView<R> {
 
 
         TCD.addListener(
-                o -> this.getColumns().setAll(
-                        ((Dependable<ObservableList<TableColumn<R, ?>>>)o).getValue()
-                )
+                o -> applyColumns(((Dependable<ObservableList<TableColumn<R, ?>>>)o).getValue())
         );
 
         TCD.getValue();
@@ -58,6 +51,32 @@ public class QueryTableView<R extends IBaseRow<?>> extends TableView<R> {
         this(query, true);
     }
 
+    /**
+     * Built columns, keyed by their {@link ColumnDescriptor#getKey() descriptor's key} and editability, so a refresh whose
+     * schema hasn't changed reuses every column (and its cells) rather than rebuilding them. Only columns in the latest
+     * ResultSetMetaData are kept.
+     */
+    private final Map<String, TableColumn<R, ?>> columnCache = new HashMap<>();
+
+    /**
+     * Bring this table's columns in line with the given ones by diffing rather than replacing: columns no longer wanted are
+     * removed, new ones are inserted, and moved ones are moved. When the columns are unchanged, nothing is touched.
+     * @param wanted The columns to show, in order.
+     */
+    private void applyColumns(List<TableColumn<R, ?>> wanted) {
+        ObservableList<TableColumn<R, ?>> columns = getColumns();
+        if (columns.equals(wanted)) return;
+        Set<TableColumn<R, ?>> wantedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        wantedSet.addAll(wanted);
+        columns.removeIf(tc -> !wantedSet.contains(tc));
+        for (int i = 0; i < wanted.size(); i++) {
+            TableColumn<R, ?> tc = wanted.get(i);
+            if (i < columns.size() && columns.get(i) == tc) continue;
+            columns.remove(tc); // No-op unless it's moving
+            columns.add(i, tc);
+        }
+    }
+
     /**
      * This method constructs a {@link Dependable} ObservableList of {@link TableColumn}s, to update as the underlying query may update.
      * @param resultSetMetaDataObservableValue The Observable Value of the metadata of the query to listen to.
@@ -87,14 +106,21 @@ public class QueryTableView<R extends IBaseRow<?>> extends TableView<R> {
                 ResultSetMetaData md = (ResultSetMetaData) depValues.get("resultSetMetaData");
                 Map<String, Boolean> requestedColumns = (Map<String, Boolean>)depValues.get("requestedTableColumns");
 
-                // Construct the columns
-                for (int i = 1; i < md.getColumnCount() + 1; i++){
-                    String colName = md.getColumnName(i);
-                    if (requestedColumns.get(colName) && !TableQuery.invisibleColumns.contains(colName)) newColumns.add((buildTableColumn(i, md, colName, isColumnEditable.test(colName))));
+                // Construct the columns, reusing any whose schema hasn't changed
+                Set<String> currentKeys = new HashSet<>();
+                for (ColumnDescriptor descriptor : ColumnDescriptor.forSchema(md)){
+                    String colName = descriptor.getColumnName();
+                    boolean isPrimaryKey = isColumnEditable.test(colName);
+                    String key = descriptor.getKey() + "\u0000" + isPrimaryKey;
+                    currentKeys.add(key);
+                    if (requestedColumns.get(colName) && !TableQuery.invisibleColumns.contains(colName)) {
+                        newColumns.add(columnCache.computeIfAbsent(key, k -> buildTableColumn(descriptor, isPrimaryKey)));
+                    }
                 }
+                columnCache.keySet().retainAll(currentKeys);
 
-                if (rootObject == null) rootObject = FXCollections.observableList(newColumns);
-                else rootObject.setAll(newColumns);
+                if (rootObject == null) rootObject = FXCollections.observableArrayList(newColumns);
+                else if (!rootObject.equals(newColumns)) rootObject.setAll(newColumns);
 
                 return rootObject;
             }
@@ -103,34 +129,15 @@ public class QueryTableView<R extends IBaseRow<?>> extends TableView<R> {
 
     /**
      * This method constructs the requested Column. This method and some of its neighbors are really messy due to Java Generics.
-     * @param columnId The 1-indexed ID of the column in the ResultSet and ResultSetMetaData
-     * @param md The ResultSetMetaData
-     * @param columnName The name of the column to retrieve
+     * @param descriptor The column's {@link ColumnDescriptor}, which already knows its type, name, and converter
      * @param isPrimaryKey Whether or not the column is a Primary Key
      * @return A TableColumn which displays the requested Column in the ResultSet
      */
-    private TableColumn<R, ?> buildTableColumn(int columnId, ResultSetMetaData md, String columnName, Boolean isPrimaryKey) {
-        // Step 0: Class Discovery
-        Class<?> columnClass;
-        String columnPrintableName;
-        try {
-            columnClass = Class.forName(md.getColumnClassName(columnId));
-            String columnLabel = md.getColumnLabel(columnId);
-            try {
-                columnPrintableName = Session.getBundle().getString("table.columnName." + columnLabel);
-            } catch (MissingResourceException mre) {
-                columnPrintableName = "\""+columnLabel+"\"";
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
-
-        // Step 1: Convert a Class Literal to a Runtime Type Token
+    private TableColumn<R, ?> buildTableColumn(ColumnDescriptor descriptor, Boolean isPrimaryKey) {
+        // Convert a Class Literal to a Runtime Type Token
         // Informed by https://docs.oracle.com/javase/tutorial/extra/generics/literals.html
         // This is valuable because it enforces type correctness between cellValueFactory and cellFactory.
-        TableColumn<R, ?> tc = _buildTableColumn(columnId, columnClass, columnName, columnPrintableName, isPrimaryKey);
+        TableColumn<R, ?> tc = _buildTableColumn(descriptor, descriptor.getColumnClass(), isPrimaryKey);
         tc.setEditable(!isPrimaryKey);
         return tc;
     }
@@ -138,207 +145,73 @@ public class QueryTableView<R extends IBaseRow<?>> extends TableView<R> {
     /**
      * Due to Java Generics, this method is the other half of {@link #buildTableColumn}. This method constructs and assigns the attributes of the TableColumn.
      */
-    private <V> TableColumn<R, V> _buildTableColumn(int columnId, Class<V> columnClass, String columnName, String columnPrintableName, Boolean isPrimaryKey) {
+    private <V> TableColumn<R, V> _buildTableColumn(ColumnDescriptor descriptor, Class<V> columnClass, Boolean isPrimaryKey) {
+        int columnId = descriptor.getColumnId();
         Callback<TableColumn.CellDataFeatures<R, V>, ObservableValue<V>> cellValueFactoryCallback = cdf -> (ObservableValue<V>) cdf.getValue().getEntry(columnId);
-        Callback<TableColumn<R, V>, TableCell<R, V>> cellFactoryCallback = getCellFactoryCallback(columnId, columnClass, columnName, isPrimaryKey);
+        Callback<TableColumn<R, V>, TableCell<R, V>> cellFactoryCallback = getCellFactoryCallback(descriptor, isPrimaryKey);
 
-        TableColumn<R, V> newTC = new TableColumn<>(columnPrintableName);
+        TableColumn<R, V> newTC = new TableColumn<>(descriptor.getPrintableName());
         newTC.setCellFactory(cellFactoryCallback);
         newTC.setCellValueFactory(cellValueFactoryCallback);
         newTC.setReorderable(false);
         return newTC;
     }
 
-
-    Map<String, String> PKToTableMap = new HashMap<>(){{
-        put("Customer_ID", "customers");
-        put("User_ID", "users");
-        put("Contact_ID", "contacts");
-        put("Division_ID", "first_level_divisions");
-        put("Country_ID", "countries");
-        put("Appointment_ID", "appointments");
-    }};
-
-    Map<String, String> PKToReprMap = new HashMap<>(){{
-        put("Customer_ID", "Customer_Name");
-        put("User_ID", "User_Name");
-        put("Contact_ID", "Contact_Name");
-        put("Division_ID", "Division");
-        put("Country_ID", "Country");
-        put("Appointment_ID", "Title");
-    }};
-    // NTODO: Optimize: This needs significantly improved and generalized
     private String getTableNameFromPK(String PKColumn){
-        return PKToTableMap.get(PKColumn);
+        return KeyLookup.tableForKeyColumn(PKColumn);
     }
 
     private String getReprNameFromPK(String PKColumn){
-        return PKToReprMap.get(PKColumn);
+        return KeyLookup.labelColumnForKeyColumn(PKColumn);
     }
 
     /**
-     * This mess builds the Callbacks which construct Cells. Because there are several Cell types, and Java generics can't be used for instantiation,
-     * this method is very stable but a lot more messy than I'd like.
-     * <br><br>This mess is centrally dependent on constructing Lambdas which get implicitly typed as Callbacks for return.
-     * @param columnId
-     * @param clazz
-     * @param columnName
-     * @param isPrimaryKey
-     * @param <V>
-     * @return
+     * This builds the Callbacks which construct Cells, choosing the cell by the {@link ColumnDescriptor.CellKind} the
+     * descriptor resolved. Foreign keys get a combo box (and Divisions a {@link DivisionSelector}) when key replacement is
+     * on and the column isn't a Primary Key; everything else is a text cell using the descriptor's shared converter.
+     * <br><br>This is centrally dependent on constructing Lambdas which get implicitly typed as Callbacks for return.
+     * @param descriptor The column's descriptor
+     * @param isPrimaryKey Whether the column is a Primary Key, which is never shown by name
+     * @param <V> The column's value type
+     * @return A Callback constructing the column's cells
      */
-    private <V> Callback<TableColumn<R, V>, TableCell<R, V>> getCellFactoryCallback(Integer columnId, Class<V> clazz, String columnName, Boolean isPrimaryKey) {
-        Callback<TableColumn<R, V>, TableCell<R, V>> result = null;
-        if (false) {
-            result = null;
-        } else if (clazz == Integer.class) {
-            if (useKeyReplacement) {
-                if (columnName.equals("Division_ID")) {
-                    // XTODO: Display: buildTableColumn needs to support First Level Division selectors
-                    result = tc -> (TableCell<R, V>) new DivisionSelector<R, Integer>() {
-                        public void commitEdit(Integer v) {
-                            R queryRow = getTableRow().getItem();
-                            if ((queryRow instanceof IWritableRow) && ((IWritableRow) queryRow).setRowEntry(columnId, v))
-                                super.commitEdit(v);
-                            else cancelEdit();
-                        }
-                    };
-                } else if (!isPrimaryKey) {
-                    if (getTableNameFromPK(columnName) == null)
-                        throw new NullPointerException("CellFactoryCallback construction failed with column " + columnName);
-                    // XTODO: Display: buildTableColumn needs to support Customer, User, and Contact selectors
-                    result = tc -> new TableKeyComboBoxCell<R, V>(
-                            getTableNameFromPK(columnName),
-                            getReprNameFromPK(columnName)
-                    ) {
-                        @Override
-                        public void commitEdit(V v) {
-                            R queryRow = getTableRow().getItem();
-                            if (queryRow instanceof IWritableRow && ((IWritableRow) queryRow).setRowEntry(columnId, v))
-                                super.commitEdit(v);
-                            else cancelEdit();
-                        }
-                    };
-                }
-            }
-            if (result == null) { // If we're not using key replacement, or our key replacement search failed, go straight to an int
-                // This should be way simpler, EG just a TableCell
-                result = tc -> new TextFieldTableCell<R, V>(
-                        (StringConverter<V>) new IntegerStringConverter(){
-                            @Override
-                            public String toString(Integer i){
-                                if (i == null) return Session.getBundle().getString("queryTableView.newRow");
-                                else return super.toString(i);
-                            }
-                        }
-                ) {
-                    @Override
-                    public void commitEdit(V v) {
-                        R queryRow = getTableRow().getItem();
-                        if (queryRow instanceof IWritableRow && ((IWritableRow) queryRow).setRowEntry(columnId, v))
-                            super.commitEdit(v);
-                        else cancelEdit();
-                    }
-                };
-            }
-        } else if (clazz == Timestamp.class) {
-            // XTODO: Display: buildTableColumn needs to support Date selectors
-            result = tc -> new TextFieldTableCell<R, V>(
-                    // (StringConverter<V>) new DateTimeStringConverter()
-                    new StringConverter<V>() {
-                        private final DateTimeStringConverter innerDTSC = new DateTimeStringConverter();
-
-                        @Override
-                        public String toString(V v) {
-                            return innerDTSC.toString((Date) v);
-                        }
-
-                        @Override
-                        public V fromString(String s) {
-                            if (s.length() == 0 || s == null) return null;
-                            try {
-                                return clazz.getDeclaredConstructor(long.class).newInstance(innerDTSC.fromString(s).getTime());
-                            } catch (InstantiationException e) {
-                                throw new RuntimeException(e);
-                            } catch (IllegalAccessException e) {
-                                throw new RuntimeException(e);
-                            } catch (InvocationTargetException e) {
-                                throw new RuntimeException(e);
-                            } catch (NoSuchMethodException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                    }
-            ) {
-                @Override
-                public void commitEdit(V v) {
-                    R queryRow = getTableRow().getItem();
-                    if (queryRow instanceof IWritableRow && ((IWritableRow)queryRow).setRowEntry(columnId, v)) super.commitEdit(v);
-                    else cancelEdit();
-                }
-            };
-        } else if (clazz == java.sql.Date.class) {
-            // XTODO: Display: buildTableColumn needs to support Date selectors
-            result = tc -> new TextFieldTableCell<R, V>(
-                    // (StringConverter<V>) new DateTimeStringConverter()
-                    new StringConverter<V>() {
-                        private final DateTimeStringConverter innerDTSC = new DateStringConverter();
-
-                        @Override
-                        public String toString(V v) {
-                            return innerDTSC.toString((Date) v);
-                        }
-
-                        @Override
-                        public V fromString(String s) {
-                            if (s.length() == 0 || s == null) return null;
-                            try {
-                                return clazz.getDeclaredConstructor(long.class).newInstance(innerDTSC.fromString(s).getTime());
-                            } catch (InstantiationException e) {
-                                throw new RuntimeException(e);
-                            } catch (IllegalAccessException e) {
-                                throw new RuntimeException(e);
-                            } catch (InvocationTargetException e) {
-                                throw new RuntimeException(e);
-                            } catch (NoSuchMethodException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                    }
-            ) {
-                @Override
-                public void commitEdit(V v) {
+    private <V> Callback<TableColumn<R, V>, TableCell<R, V>> getCellFactoryCallback(ColumnDescriptor descriptor, Boolean isPrimaryKey) {
+        int columnId = descriptor.getColumnId();
+        String columnName = descriptor.getColumnName();
+        if (useKeyReplacement && descriptor.getKind() == ColumnDescriptor.CellKind.DIVISION) {
+            return tc -> (TableCell<R, V>) new DivisionSelector<R, Integer>() {
+                public void commitEdit(Integer v) {
                     R queryRow = getTableRow().getItem();
-                    if (queryRow instanceof IWritableRow && ((IWritableRow)queryRow).setRowEntry(columnId, v)) super.commitEdit(v);
+                    if ((queryRow instanceof IWritableRow) && ((IWritableRow) queryRow).setRowEntry(columnId, v))
+                        super.commitEdit(v);
                     else cancelEdit();
                 }
             };
-        } else if (clazz == String.class) {
-            result = tc -> new TextFieldTableCell<R, V>(
-                    (StringConverter<V>) new DefaultStringConverter()
-            ) {
-                @Override
-                public void commitEdit(V v) {
-                    R queryRow = getTableRow().getItem();
-                    if (queryRow instanceof IWritableRow && ((IWritableRow)queryRow).setRowEntry(columnId, v)) super.commitEdit(v);
-                    else cancelEdit();
-                }
-            };
-        } else if (clazz == Long.class) {
-            result = tc -> new TextFieldTableCell<R, V>(
-                    (StringConverter<V>) new LongStringConverter()
+        }
+        if (useKeyReplacement && descriptor.getKind() == ColumnDescriptor.CellKind.FOREIGN_KEY && !isPrimaryKey) {
+            return tc -> (TableCell<R, V>) new TableKeyComboBoxCell<R>(
+                    getTableNameFromPK(columnName),
+                    getReprNameFromPK(columnName)
             ) {
                 @Override
-                public void commitEdit(V v) {
+                public void commitEdit(Integer v) {
                     R queryRow = getTableRow().getItem();
-                    if (queryRow instanceof IWritableRow && ((IWritableRow)queryRow).setRowEntry(columnId, v)) super.commitEdit(v);
+                    if (queryRow instanceof IWritableRow && ((IWritableRow) queryRow).setRowEntry(columnId, v))
+                        super.commitEdit(v);
                     else cancelEdit();
                 }
             };
-        } else {
-            throw new IllegalArgumentException("Unexpected class in getCellFactoryCallback: " + clazz);
         }
-        return result;
+        // If we're not using key replacement, or the column can't be shown by name, edit its value as text
+        StringConverter<V> converter = (StringConverter<V>) descriptor.getConverter();
+        return tc -> new TextFieldTableCell<R, V>(converter) {
+            @Override
+            public void commitEdit(V v) {
+                R queryRow = getTableRow().getItem();
+                if (queryRow instanceof IWritableRow && ((IWritableRow)queryRow).setRowEntry(columnId, v)) super.commitEdit(v);
+                else cancelEdit();
+            }
+        };
     }
 
 }
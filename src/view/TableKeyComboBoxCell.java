@@ -1,6 +1,7 @@
 package view;
 
 import controller.TableQueryStringConverter;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.cell.ComboBoxTableCell;
 import model.Row.IBaseRow;
 
@@ -9,21 +10,37 @@ import java.util.*;
 /**
  * This class is a ComboBoxTableCell which wraps a {@link TableQueryStringConverter} in a {@link ComboBoxTableCell}. Much
  * of the behavior of this class is just stitching those two compatible interfaces together, without duplicating TableQueryStringConverters.
+ * While editing, typing the start of a name selects it (see {@link ComboBoxTypeAhead}).
  * @see TableQueryStringConverter
  * @see ComboBoxTableCell
  * @param <R> The type of Row underlying the TableView
- * @param <V> The type of value contained in the Database in the column we're representing
  */
-public class TableKeyComboBoxCell<R extends IBaseRow<?>, V> extends ComboBoxTableCell<R, V> {
-    private static final Map<String, TableQueryStringConverter<?>> sharedConfigs = new HashMap<>();
+public class TableKeyComboBoxCell<R extends IBaseRow<?>> extends ComboBoxTableCell<R, Integer> {
+    private static final Map<String, TableQueryStringConverter> sharedConfigs = new HashMap<>();
+    private final TableQueryStringConverter config;
+    private boolean typeAheadInstalled = false;
+
     private TableKeyComboBoxCell(TableQueryStringConverter config){
         super(config, config.getOptions()); // Passing directly to this constructor lets us share the ObservableList
+        this.config = config;
     }
 
     public TableKeyComboBoxCell(String tableName, String reprColumnName) {
         this(sharedConfigs.computeIfAbsent(
                 tableName+"->"+reprColumnName,
-                (keyDidntMatch) -> new TableQueryStringConverter<V>(tableName, reprColumnName)));
+                (keyDidntMatch) -> new TableQueryStringConverter(tableName, reprColumnName)));
+    }
+
+    /**
+     * Begin editing, installing type-ahead on the ComboBox the first time it's shown.
+     */
+    @Override
+    public void startEdit() {
+        super.startEdit();
+        if (!typeAheadInstalled && isEditing() && getGraphic() instanceof ComboBox) {
+            ComboBoxTypeAhead.install((ComboBox<Integer>) getGraphic(), config::startingWith);
+            typeAheadInstalled = true;
+        }
     }
 
 
@@ -0,0 +1,215 @@
+package model.Query;
+
+import model.Query.SQLQueryConstraint.SQLComparators;
+import model.Row.CommitResult;
+import model.Row.IWritableRow;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.rowset.RowSetMetaDataImpl;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for re-filtering the superset a {@link ConstrainedQuery} holds, against an in-memory stand-in for the database.
+ */
+class ConstrainedQueryTest {
+    private static final String[] columns = {"Appointment_ID", "Title", "Start", "Last_Update", "Last_Updated_By"};
+    private static final int[] types = {Types.INTEGER, Types.VARCHAR, Types.TIMESTAMP, Types.TIMESTAMP, Types.VARCHAR};
+    private static final List<Object[]> appointments = new ArrayList<>();
+
+    private static final Set<SQLQueryConstraint> firstWeek = Set.of(
+            new SQLQueryConstraint("Start", SQLComparators.GTE, "2024-03-04 00:00:00"),
+            new SQLQueryConstraint("Start", SQLComparators.LT, "2024-03-11 00:00:00"));
+    private static final Set<SQLQueryConstraint> secondWeek = Set.of(
+            new SQLQueryConstraint("Start", SQLComparators.GTE, "2024-03-11 00:00:00"),
+            new SQLQueryConstraint("Start", SQLComparators.LT, "2024-03-18 00:00:00"));
+    private static final Set<SQLQueryConstraint> firstQuarter = Set.of(
+            new SQLQueryConstraint("Start", SQLComparators.GTE, "2024-01-01 00:00:00"),
+            new SQLQueryConstraint("Start", SQLComparators.LT, "2024-04-01 00:00:00"));
+
+    @BeforeAll
+    static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(new InMemoryDriver());
+    }
+
+    private static IWritableRow row(ConstrainedQuery query, int id) {
+        return query.getRows().stream().filter(r -> Integer.valueOf(id).equals(r.getEntryValue("Appointment_ID"))).findFirst().orElseThrow();
+    }
+
+    @Test
+    void pagingAfterCommitShowsCommittedValues() {
+        Timestamp lastUpdate = Timestamp.valueOf("2024-01-01 00:00:00");
+        appointments.clear();
+        appointments.add(new Object[]{1, "Standup", Timestamp.valueOf("2024-03-05 09:00:00"), lastUpdate, "test"});
+        appointments.add(new Object[]{2, "Review", Timestamp.valueOf("2024-03-12 09:00:00"), lastUpdate, "test"});
+
+        ConstrainedQuery query = new ConstrainedQuery("appointments");
+        query.setOptimisticWrites(true);
+        query.replaceConstraints(Set.of(), firstWeek);
+        query.setSupersetWidener(requested -> firstQuarter);
+        query.replaceConstraints(firstWeek, secondWeek);
+        assertEquals(firstQuarter, query.getFetchedConstraints().get());
+        assertEquals(1, query.getRows().size());
+
+        row(query, 2).setRowEntry("Title", "Planning");
+        assertEquals(CommitResult.Status.COMMITTED, row(query, 2).tryCommitRowEdits().getStatus());
+        assertEquals("Planning", appointments.get(1)[1]);
+
+        query.replaceConstraints(secondWeek, firstWeek); // Both inside the quarter already fetched
+        query.replaceConstraints(firstWeek, secondWeek);
+        assertEquals(firstQuarter, query.getFetchedConstraints().get());
+        assertEquals("Planning", row(query, 2).getEntryValue("Title"));
+
+        row(query, 2).setRowEntry("Title", "Retrospective");
+        assertEquals(CommitResult.Status.COMMITTED, row(query, 2).tryCommitRowEdits().getStatus()); // Not a false conflict
+        assertEquals("Retrospective", appointments.get(1)[1]);
+    }
+
+    /**
+     * Answers any jdbc:mysql URL with a connection to {@link #appointments}. Queries read every row, whatever their WHERE
+     * clause; prepared statements understand "column = ?" conditions, and UPDATEs of the form the query writes.
+     */
+    private static class InMemoryDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) {
+            return acceptsURL(url) ? proxy(Connection.class, (p, m, args) -> switch (m.getName()) {
+                case "createStatement" -> statement(null);
+                case "prepareStatement" -> statement((String) args[0]);
+                case "getMetaData" -> proxy(DatabaseMetaData.class, (p2, m2, args2) -> switch (m2.getName()) {
+                    case "getPrimaryKeys" -> resultSet(new String[]{"COLUMN_NAME"}, new int[]{Types.VARCHAR}, List.<Object[]>of(new Object[]{"Appointment_ID"}));
+                    default -> unsupported(m2.getName());
+                });
+                case "isValid", "getAutoCommit" -> true;
+                case "isClosed" -> false;
+                case "close", "setAutoCommit", "commit", "rollback" -> null;
+                default -> unsupported(m.getName());
+            }) : null;
+        }
+
+        private static Statement statement(String preparedSQL) {
+            Map<Integer, Object> params = new HashMap<>();
+            return proxy(PreparedStatement.class, (p, m, args) -> switch (m.getName()) {
+                case "executeQuery" -> args == null ? select(preparedSQL, params) : select((String) args[0], Map.of());
+                case "executeUpdate" -> update(preparedSQL, params);
+                case "setObject", "setString", "setInt", "setTimestamp" -> { params.put((Integer) args[0], args[1]); yield null; }
+                case "close" -> null;
+                case "isClosed" -> false;
+                default -> unsupported(m.getName());
+            });
+        }
+
+        private static ResultSet select(String sql, Map<Integer, Object> params) {
+            List<Object[]> rows = new ArrayList<>();
+            List<String> where = conditions(sql.contains("?") ? sql.substring(sql.indexOf(" WHERE ") + 7) : "");
+            for (Object[] row : appointments) if (matches(row, where, params, 1)) rows.add(row.clone());
+            return resultSet(columns, types, rows);
+        }
+
+        private static int update(String sql, Map<Integer, Object> params) {
+            Matcher m = Pattern.compile("UPDATE appointments SET (.+) WHERE (.+)").matcher(sql);
+            assertTrue(m.matches(), sql);
+            List<String> set = conditions(m.group(1).replace(", ", " AND "));
+            List<String> where = conditions(m.group(2));
+            int affected = 0;
+            for (Object[] row : appointments) {
+                if (!matches(row, where, params, set.size() + 1)) continue;
+                for (int i = 0; i < set.size(); i++) row[List.of(columns).indexOf(set.get(i))] = params.get(i + 1);
+                affected++;
+            }
+            return affected;
+        }
+
+        private static List<String> conditions(String clause) {
+            List<String> columnNames = new ArrayList<>();
+            Matcher m = Pattern.compile("(\\w+) (=|<=>) \\?").matcher(clause);
+            while (m.find()) columnNames.add(m.group(1));
+            return columnNames;
+        }
+
+        private static boolean matches(Object[] row, List<String> where, Map<Integer, Object> params, int firstParam) {
+            for (int i = 0; i < where.size(); i++) {
+                if (!Objects.equals(row[List.of(columns).indexOf(where.get(i))], params.get(firstParam + i))) return false;
+            }
+            return true;
+        }
+
+        private static ResultSet resultSet(String[] names, int[] columnTypes, List<Object[]> rows) {
+            RowSetMetaDataImpl md = new RowSetMetaDataImpl();
+            int[] cursor = {0};
+            boolean[] closed = {false};
+            try {
+                md.setColumnCount(names.length);
+                for (int i = 0; i < names.length; i++) {
+                    md.setColumnName(i + 1, names[i]);
+                    md.setColumnLabel(i + 1, names[i]);
+                    md.setColumnType(i + 1, columnTypes[i]);
+                    md.setTableName(i + 1, "appointments");
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            return proxy(ResultSet.class, (p, m, args) -> switch (m.getName()) {
+                case "next" -> ++cursor[0] <= rows.size();
+                case "beforeFirst" -> { cursor[0] = 0; yield null; }
+                case "absolute" -> { cursor[0] = (Integer) args[0]; yield cursor[0] >= 1 && cursor[0] <= rows.size(); }
+                case "getRow" -> cursor[0] <= rows.size() ? cursor[0] : 0;
+                case "findColumn" -> List.of(names).indexOf((String) args[0]) + 1;
+                case "getObject", "getString" -> rows.get(cursor[0] - 1)[args[0] instanceof String
+                        ? List.of(names).indexOf((String) args[0]) : (Integer) args[0] - 1];
+                case "getMetaData" -> md;
+                case "getType" -> ResultSet.TYPE_SCROLL_INSENSITIVE;
+                case "isClosed" -> closed[0];
+                case "close" -> { closed[0] = true; yield null; }
+                case "wasNull" -> false;
+                default -> unsupported(m.getName());
+            });
+        }
+
+        private static Object unsupported(String method) {
+            throw new UnsupportedOperationException(method);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:mysql:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+}
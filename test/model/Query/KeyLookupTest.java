@@ -0,0 +1,92 @@
+package model.Query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for diffing and patching the labels held by a {@link KeyLookup}.
+ */
+class KeyLookupTest {
+    private static List<Object[]> rows(Object... keysAndLabels) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < keysAndLabels.length; i += 2) rows.add(new Object[]{keysAndLabels[i], keysAndLabels[i + 1]});
+        return rows;
+    }
+
+    private static void assertSameContents(KeyLookup.Contents expected, KeyLookup.Contents actual) {
+        assertArrayEquals(expected.labels.sortedKeys(), actual.labels.sortedKeys());
+        for (int key : expected.labels.keys()) assertEquals(expected.labels.get(key), actual.labels.get(key), "label of " + key);
+        assertEquals(expected.keysByLabel.keySet(), actual.keysByLabel.keySet());
+        expected.keysByLabel.forEach((label, keys) -> assertArrayEquals(keys, actual.keysByLabel.get(label), "keys of " + label));
+        assertArrayEquals(expected.foldedLabels, actual.foldedLabels);
+        assertArrayEquals(expected.foldedKeys, actual.foldedKeys);
+    }
+
+    @Test
+    void diffOfSameRowsIsEmpty() {
+        List<Object[]> rows = rows(1, "Alpha", 2, "beta", 3, null);
+        assertTrue(KeyLookup.Contents.of(rows).diff(rows(1, "Alpha", 2, "beta", 3, null)).isEmpty());
+    }
+
+    @Test
+    void nullLabelIsNotRemoval() {
+        KeyLookup.Contents before = KeyLookup.Contents.of(rows(1, "Alpha", 2, "Beta"));
+        KeyLookup.Changes changes = before.diff(rows(1, null));
+        assertEquals(Set.of(2), changes.removed);
+        assertTrue(changes.labels.containsKey(1));
+        assertNull(changes.labels.get(1));
+
+        KeyLookup.Contents after = before.patched(changes);
+        assertTrue(after.labels.containsKey(1));
+        assertNull(after.labels.get(1));
+        assertFalse(after.labels.containsKey(2));
+        assertEquals(0, after.foldedKeys.length);
+        assertTrue(after.keysByLabel.isEmpty());
+    }
+
+    @Test
+    void removalWinsOverEarlierLabel() {
+        KeyLookup.Changes changes = new KeyLookup.Changes();
+        changes.put(4, "Delta");
+        changes.remove(4);
+        assertEquals(Set.of(4), changes.removed);
+        assertFalse(changes.labels.containsKey(4));
+        changes.put(4, "Delta");
+        assertTrue(changes.removed.isEmpty());
+        assertEquals(List.of(4), changes.sortedKeys());
+    }
+
+    @Test
+    void patchingSharedLabelsKeepsBothIndexes() {
+        KeyLookup.Contents before = KeyLookup.Contents.of(rows(1, "Smith", 2, "Smith", 3, "Jones"));
+        KeyLookup.Contents after = before.patched(before.diff(rows(1, "Smith", 2, "smithers", 3, "Smith")));
+        assertArrayEquals(new int[]{1, 3}, after.keysByLabel.get("Smith"));
+        assertNull(after.keysByLabel.get("Jones"));
+        assertSameContents(KeyLookup.Contents.of(rows(1, "Smith", 2, "smithers", 3, "Smith")), after);
+    }
+
+    @Test
+    void patchedDiffMatchesRebuild() {
+        String[] labels = {null, "Ann", "ann", "Bob", "Cara", "Dan", "\u00C9va", "Zed"};
+        Random random = new Random(7);
+        for (int trial = 0; trial < 200; trial++) {
+            Map<Integer, String> before = new TreeMap<>();
+            for (int key = 1; key <= 40; key++) if (random.nextInt(4) > 0) before.put(key, labels[random.nextInt(labels.length)]);
+            Map<Integer, String> after = new TreeMap<>(before);
+            for (int change = random.nextInt(10); change > 0; change--) {
+                int key = 1 + random.nextInt(50);
+                if (random.nextBoolean()) after.remove(key);
+                else after.put(key, labels[random.nextInt(labels.length)]);
+            }
+            List<Object[]> beforeRows = new ArrayList<>(), afterRows = new ArrayList<>();
+            before.forEach((key, label) -> beforeRows.add(new Object[]{key, label}));
+            after.forEach((key, label) -> afterRows.add(new Object[]{key, label}));
+
+            KeyLookup.Contents contents = KeyLookup.Contents.of(beforeRows);
+            assertSameContents(KeyLookup.Contents.of(afterRows), contents.patched(contents.diff(afterRows)));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package model.Query;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for how {@link QueryExporter} quotes and escapes values in each format.
+ */
+class QueryExporterTest {
+    private static String csv(String text) throws IOException {
+        StringWriter sink = new StringWriter();
+        QueryExporter.writeCSVField(sink, text);
+        return sink.toString();
+    }
+
+    private static String json(Object value) throws IOException {
+        StringWriter sink = new StringWriter();
+        QueryExporter.writeJSONValue(sink, value);
+        return sink.toString();
+    }
+
+    @Test
+    void csvQuotesOnlyWhenNeeded() throws IOException {
+        assertEquals("plain text", csv("plain text"));
+        assertEquals("\"a,b\"", csv("a,b"));
+        assertEquals("\"line\r\nbreak\"", csv("line\r\nbreak"));
+        assertEquals("\"say \"\"hi\"\"\"", csv("say \"hi\""));
+        assertEquals("", csv(""));
+    }
+
+    @Test
+    void jsonEscapesStrings() throws IOException {
+        assertEquals("\"quote \\\" backslash \\\\\"", json("quote \" backslash \\"));
+        assertEquals("\"\\n\\r\\t\"", json("\n\r\t"));
+        assertEquals("\"\\u0000\\u001f\"", json("\u0000\u001f"));
+        assertEquals("\"caf\u00e9 \u2603\"", json("caf\u00e9 \u2603"));
+    }
+
+    @Test
+    void jsonWritesNumbersBareAndNonFiniteAsNull() throws IOException {
+        assertEquals("42", json(42));
+        assertEquals("1.5", json(1.5));
+        assertEquals("12.50", json(new BigDecimal("12.50")));
+        assertEquals("true", json(true));
+        assertEquals("null", json(null));
+        assertEquals("null", json(Double.NaN));
+        assertEquals("null", json(Double.POSITIVE_INFINITY));
+        assertEquals("null", json(Float.NEGATIVE_INFINITY));
+    }
+
+    @Test
+    void jsonWritesTimestampsAsText() throws IOException {
+        assertEquals("\"2024-03-05 09:07:00\"", json(Timestamp.valueOf("2024-03-05 09:07:00.25")));
+    }
+}
@@ -0,0 +1,88 @@
+package model.Query;
+
+import model.Query.SQLQueryConstraint.SQLComparators;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for evaluating {@link SQLQueryConstraint}s in memory, and for telling when one implies another.
+ */
+class SQLQueryConstraintTest {
+    private static SQLQueryConstraint c(String column, SQLComparators comparator, Object compareTo) {
+        return new SQLQueryConstraint(column, comparator, compareTo);
+    }
+
+    @Test
+    void boundsImplyLooserBounds() {
+        SQLQueryConstraint march = c("Start", SQLComparators.GTE, "2024-03-01 00:00:00");
+        SQLQueryConstraint january = c("Start", SQLComparators.GTE, "2024-01-01 00:00:00");
+        assertTrue(march.implies(january));
+        assertFalse(january.implies(march));
+        assertTrue(c("Start", SQLComparators.GT, "2024-01-01 00:00:00").implies(january));
+        assertFalse(january.implies(c("Start", SQLComparators.GT, "2024-01-01 00:00:00")));
+        assertTrue(c("Customer_ID", SQLComparators.LT, 5).implies(c("Customer_ID", SQLComparators.LTE, 5)));
+        assertTrue(c("Customer_ID", SQLComparators.EQ, 5).implies(c("Customer_ID", SQLComparators.LT, 6)));
+        assertTrue(c("Customer_ID", SQLComparators.GT, 5).implies(c("Customer_ID", SQLComparators.NEQ, 5)));
+        assertFalse(c("Customer_ID", SQLComparators.GTE, 5).implies(c("Customer_ID", SQLComparators.NEQ, 5)));
+    }
+
+    @Test
+    void onlyRecognisedCasesImply() {
+        SQLQueryConstraint byCustomer = c("Customer_ID", SQLComparators.GT, 5);
+        assertFalse(byCustomer.implies(c("Contact_ID", SQLComparators.GT, 1)));
+        assertFalse(byCustomer.implies(c("Customer_ID", SQLComparators.LT, 100)));
+        assertFalse(c("Customer_ID", SQLComparators.NEQ, 5).implies(c("Customer_ID", SQLComparators.NEQ, 6)));
+        assertFalse(byCustomer.implies(c("Customer_ID", SQLComparators.GT, "2024-01-01 00:00:00"))); // Doesn't compare
+        assertTrue(byCustomer.implies(new SQLQueryConstraint(true)));
+        assertTrue(new SQLQueryConstraint(false).implies(byCustomer));
+        assertFalse(new SQLQueryConstraint(true).implies(byCustomer));
+        assertFalse(byCustomer.implies(new SQLQueryConstraint(false)));
+    }
+
+    @Test
+    void testComparesLikeTheDatabase() {
+        assertTrue(c("Start", SQLComparators.GTE, "2024-03-01 00:00:00").test(Timestamp.valueOf("2024-03-01 00:00:00")));
+        assertTrue(c("Start", SQLComparators.LT, "2024-03-01 00:00:00").test(LocalDateTime.of(2024, 2, 29, 23, 59)));
+        assertTrue(c("Title", SQLComparators.EQ, "Planning").test("PLANNING"));
+        assertTrue(c("Customer_ID", SQLComparators.EQ, 5).test(new BigDecimal("5.0")));
+        assertTrue(c("Customer_ID", SQLComparators.EQ, 5).test(5L));
+        assertFalse(c("Customer_ID", SQLComparators.NEQ, 5).test(null)); // Like SQL, null satisfies no comparison
+        assertThrows(IllegalArgumentException.class, () -> c("Customer_ID", SQLComparators.EQ, "5").test(5));
+    }
+
+    @Test
+    void impliesAllNeedsEachConstraintImplied() {
+        Set<SQLQueryConstraint> week = Set.of(
+                c("Start", SQLComparators.GTE, "2024-03-04 00:00:00"),
+                c("Start", SQLComparators.LT, "2024-03-11 00:00:00"));
+        Set<SQLQueryConstraint> month = Set.of(
+                c("Start", SQLComparators.GTE, "2024-03-01 00:00:00"),
+                c("Start", SQLComparators.LT, "2024-04-01 00:00:00"));
+        assertTrue(SQLQueryConstraint.impliesAll(week, month));
+        assertFalse(SQLQueryConstraint.impliesAll(month, week));
+        assertTrue(SQLQueryConstraint.impliesAll(week, Set.of()));
+    }
+
+    @Test
+    void impliesIsSound() {
+        SQLComparators[] comparators = {SQLComparators.LT, SQLComparators.LTE, SQLComparators.GT, SQLComparators.GTE, SQLComparators.EQ, SQLComparators.NEQ};
+        List<SQLQueryConstraint> constraints = new ArrayList<>();
+        for (SQLComparators comparator : comparators) for (int bound = 0; bound <= 4; bound++) constraints.add(c("x", comparator, bound));
+        for (SQLQueryConstraint first : constraints) {
+            for (SQLQueryConstraint second : constraints) {
+                if (!first.implies(second)) continue;
+                // Halves too, since the column may hold values between the integer bounds
+                for (int twice = -2; twice <= 10; twice++) {
+                    BigDecimal value = BigDecimal.valueOf(twice).divide(BigDecimal.valueOf(2));
+                    if (first.test(value)) assertTrue(second.test(value), first.BuildSQLConstraint() + " implies " + second.BuildSQLConstraint() + " but not at " + value);
+                }
+            }
+        }
+    }
+}
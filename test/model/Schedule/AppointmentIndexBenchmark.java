@@ -0,0 +1,137 @@
+package model.Schedule;
+
+import model.Query.SConnection;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the latency of a double-booking check answered by {@link AppointmentIndex#overlapping} with the same check
+ * answered by the database, the way validation did before the index ({@code Customer_ID = ? AND Start < ? AND End > ?}).
+ * <br>
+ * Both paths see the same synthetic appointments: three years for 20,000 customers. The SQL path loads them into a
+ * temporary table (indexed on Customer_ID, Start) on a Connection from {@link SConnection#openConnection()}, so it needs the
+ * database in database.xml, and is skipped if that can't be reached. Usage:
+ * {@code java model.Schedule.AppointmentIndexBenchmark [appointments, default 1000000] [checks, default 20000] [sql appointments, default 100000]}
+ */
+public class AppointmentIndexBenchmark {
+    private static final long minute = 60_000, day = 24 * 60 * minute;
+    private static final int customers = 20_000;
+
+    public static void main(String[] args) throws SQLException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int checks = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int sqlCount = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+
+        List<AppointmentIndex.Appointment> appointments = synthetic(count);
+        long[][] probes = probes(checks);
+
+        long started = System.nanoTime();
+        AppointmentIndex index = new AppointmentIndex(appointments);
+        System.out.printf("index: built over %,d appointments in %,d ms%n", count, (System.nanoTime() - started) / 1_000_000);
+        for (int run = 0; run < 3; run++) { // The first runs warm up the JIT
+            long[] nanos = new long[checks];
+            int found = 0;
+            for (int i = 0; i < checks; i++) {
+                long t = System.nanoTime();
+                found += index.overlapping((int) probes[i][0], probes[i][1], probes[i][2], null).size();
+                nanos[i] = System.nanoTime() - t;
+            }
+            report("index run " + (run + 1), nanos, found);
+        }
+
+        Connection conn;
+        try {
+            conn = SConnection.openConnection();
+        } catch (SQLException e) {
+            System.out.println("sql: skipped, no database (" + e.getMessage() + ")");
+            return;
+        }
+        try (conn) {
+            benchmarkSQL(conn, synthetic(sqlCount), probes);
+        }
+    }
+
+    private static void benchmarkSQL(Connection conn, List<AppointmentIndex.Appointment> appointments, long[][] probes) throws SQLException {
+        try (Statement s = conn.createStatement()) {
+            s.execute("CREATE TEMPORARY TABLE benchmark_appointments (Appointment_ID INT PRIMARY KEY, Customer_ID INT NOT NULL, "
+                    + "Start DATETIME NOT NULL, End DATETIME NOT NULL, INDEX (Customer_ID, Start))");
+        }
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO benchmark_appointments VALUES (?, ?, ?, ?)")) {
+            conn.setAutoCommit(false);
+            for (AppointmentIndex.Appointment a : appointments) {
+                ps.setInt(1, a.appointmentId);
+                ps.setInt(2, a.customerId);
+                ps.setTimestamp(3, new Timestamp(a.start));
+                ps.setTimestamp(4, new Timestamp(a.end));
+                ps.addBatch();
+                if (a.appointmentId % 10_000 == 0) ps.executeBatch();
+            }
+            ps.executeBatch();
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+
+        AppointmentIndex index = new AppointmentIndex(appointments);
+        String sql = "SELECT Appointment_ID FROM benchmark_appointments WHERE Customer_ID = ? AND Start < ? AND End > ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            long[] sqlNanos = new long[probes.length], indexNanos = new long[probes.length];
+            int sqlFound = 0, indexFound = 0;
+            for (int i = 0; i < probes.length; i++) {
+                long t = System.nanoTime();
+                ps.setInt(1, (int) probes[i][0]);
+                ps.setTimestamp(2, new Timestamp(probes[i][2]));
+                ps.setTimestamp(3, new Timestamp(probes[i][1]));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) sqlFound++;
+                }
+                sqlNanos[i] = System.nanoTime() - t;
+
+                t = System.nanoTime();
+                indexFound += index.overlapping((int) probes[i][0], probes[i][1], probes[i][2], null).size();
+                indexNanos[i] = System.nanoTime() - t;
+            }
+            System.out.printf("over %,d appointments:%n", appointments.size());
+            report("sql", sqlNanos, sqlFound);
+            report("index", indexNanos, indexFound);
+        }
+    }
+
+    /**
+     * Appointments of 15 minutes to 2 hours on quarter hours during the day, spread over three years and {@link #customers}.
+     */
+    private static List<AppointmentIndex.Appointment> synthetic(int count) {
+        Random random = new Random(1);
+        List<AppointmentIndex.Appointment> appointments = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            long start = random.nextInt(3 * 365) * day + (8 * 60 + random.nextInt(40) * 15) * minute;
+            long end = start + (1 + random.nextInt(8)) * 15 * minute;
+            appointments.add(new AppointmentIndex.Appointment(id, 1 + random.nextInt(customers), 1 + random.nextInt(800),
+                    1 + random.nextInt(200), start, end, "Appointment " + id));
+        }
+        return appointments;
+    }
+
+    /**
+     * @return {customer, start, end} of hour-long candidate appointments, as a validator would check them.
+     */
+    private static long[][] probes(int checks) {
+        Random random = new Random(2);
+        long[][] probes = new long[checks][];
+        for (int i = 0; i < checks; i++) {
+            long start = random.nextInt(3 * 365) * day + (8 * 60 + random.nextInt(36) * 15) * minute;
+            probes[i] = new long[]{1 + random.nextInt(customers), start, start + 60 * minute};
+        }
+        return probes;
+    }
+
+    private static void report(String label, long[] nanos, int found) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%s: %,d checks, %,d overlaps found, median %.1f us, p99 %.1f us, max %.1f us%n", label, sorted.length,
+                found, sorted[sorted.length / 2] / 1e3, sorted[sorted.length * 99 / 100] / 1e3, sorted[sorted.length - 1] / 1e3);
+    }
+}
@@ -0,0 +1,89 @@
+package model.Schedule;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the compiled open intervals of a {@link BusinessCalendar.Office}.
+ */
+class BusinessCalendarTest {
+    private static final ZoneId eastern = ZoneId.of("US/Eastern");
+
+    private static long at(String localDateTime) {
+        return LocalDateTime.parse(localDateTime).atZone(eastern).toInstant().toEpochMilli();
+    }
+
+    private static BusinessCalendar.Office office(LocalTime open, LocalTime close, Set<LocalDate> holidays, List<LocalDateTime[]> closures) {
+        Map<DayOfWeek, List<LocalTime[]>> hours = new EnumMap<>(DayOfWeek.class);
+        for (DayOfWeek day : EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY)) hours.put(day, List.<LocalTime[]>of(new LocalTime[]{open, close}));
+        return new BusinessCalendar.Office("Test", eastern, hours, holidays, closures);
+    }
+
+    @Test
+    void openOnlyWithinDailyHours() {
+        BusinessCalendar.Office office = BusinessCalendar.eastern;
+        LocalDate today = LocalDate.now(eastern);
+        String day = today.toString();
+        assertTrue(office.isOpen(at(day + "T08:00"), at(day + "T09:00")));
+        assertTrue(office.isOpen(at(day + "T21:00"), at(day + "T22:00")));
+        assertFalse(office.isOpen(at(day + "T07:59"), at(day + "T09:00")));
+        assertFalse(office.isOpen(at(day + "T21:30"), at(day + "T22:30")));
+        assertFalse(office.isOpen(at(day + "T21:00"), at(today.plusDays(1) + "T09:00"))); // Closed overnight
+    }
+
+    @Test
+    void followsDaylightSavingTime() {
+        BusinessCalendar.Office office = BusinessCalendar.eastern;
+        // US/Eastern moved from UTC-5 to UTC-4 early on 2024-03-10, so the office opens an hour earlier in UTC
+        assertTrue(office.isOpen(at("2024-03-09T08:00"), at("2024-03-09T09:00")));
+        assertTrue(office.isOpen(at("2024-03-10T08:00"), at("2024-03-10T09:00")));
+        assertEquals(Instant.parse("2024-03-09T13:00:00Z").toEpochMilli(), office.nextOpenInterval(at("2024-03-09T07:00"))[0]);
+        assertEquals(Instant.parse("2024-03-10T12:00:00Z").toEpochMilli(), office.nextOpenInterval(at("2024-03-10T07:00"))[0]);
+    }
+
+    @Test
+    void holidaysAndClosuresAreClosed() {
+        LocalDate monday = LocalDate.now(eastern).with(DayOfWeek.MONDAY);
+        LocalDate tuesday = monday.plusDays(1);
+        BusinessCalendar.Office office = office(LocalTime.of(9, 0), LocalTime.of(17, 0), Set.of(monday),
+                List.<LocalDateTime[]>of(new LocalDateTime[]{tuesday.atTime(12, 0), tuesday.atTime(13, 0)}));
+
+        assertFalse(office.isOpen(at(monday + "T10:00"), at(monday + "T11:00")));
+        assertTrue(office.isOpen(at(tuesday + "T09:00"), at(tuesday + "T12:00")));
+        assertFalse(office.isOpen(at(tuesday + "T11:30"), at(tuesday + "T12:30")));
+        assertTrue(office.isOpen(at(tuesday + "T13:00"), at(tuesday + "T17:00")));
+        assertArrayEquals(new long[]{at(tuesday + "T09:00"), at(tuesday + "T12:00")}, office.nextOpenInterval(at(monday + "T10:00")));
+        assertArrayEquals(new long[]{at(tuesday + "T13:00"), at(tuesday + "T17:00")}, office.nextOpenInterval(at(tuesday + "T12:15")));
+    }
+
+    @Test
+    void midnightCloseMergesAcrossDays() {
+        LocalDate monday = LocalDate.now(eastern).with(DayOfWeek.MONDAY);
+        BusinessCalendar.Office office = office(LocalTime.MIDNIGHT, LocalTime.MIDNIGHT, Set.of(), List.of());
+        assertTrue(office.isOpen(at(monday + "T23:00"), at(monday.plusDays(1) + "T01:00")));
+        assertFalse(office.isOpen(at(monday.plusDays(4) + "T23:00"), at(monday.plusDays(5) + "T01:00"))); // Into Saturday
+    }
+
+    @Test
+    void extendsBeyondTheHorizon() {
+        BusinessCalendar.Office office = BusinessCalendar.eastern;
+        String farFuture = LocalDate.now(eastern).plusYears(10).toString();
+        String farPast = LocalDate.now(eastern).minusYears(10).toString();
+        assertTrue(office.isOpen(at(farFuture + "T10:00"), at(farFuture + "T11:00")));
+        assertFalse(office.isOpen(at(farFuture + "T23:00"), at(farFuture + "T23:30")));
+        assertTrue(office.isOpen(at(farPast + "T10:00"), at(farPast + "T11:00")));
+    }
+
+    @Test
+    void officesAreFoundByLocation() {
+        BusinessCalendar.Office phoenix = new BusinessCalendar.Office("Phoenix", ZoneId.of("America/Phoenix"), Map.of(), Set.of(), List.of());
+        BusinessCalendar calendar = new BusinessCalendar(List.of(BusinessCalendar.eastern, phoenix), BusinessCalendar.eastern);
+        assertSame(phoenix, calendar.officeFor(" phoenix "));
+        assertSame(BusinessCalendar.eastern, calendar.officeFor("Montreal"));
+        assertSame(BusinessCalendar.eastern, calendar.officeFor(null));
+    }
+}
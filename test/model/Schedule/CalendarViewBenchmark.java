@@ -0,0 +1,107 @@
+package model.Schedule;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import view.CalendarView;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that a {@link CalendarView} over a busy calendar keeps up with 60 frames per second while it's paged through.
+ * <br>
+ * The view shows an in-memory {@link AppointmentIndex} of synthetic appointments (which is why this lives beside the
+ * index), in a window on screen, so it needs a display. Each frame moves the view on by a day, so every frame both lays out
+ * a new day and redraws; each mode is driven for a few hundred frames. For each, it reports how long the view's redraws
+ * took ({@link CalendarView#frameTimesNanos()}) and the interval between frames, and exits with status 1 if the 99th
+ * percentile redraw took longer than a frame. Usage:
+ * {@code java model.Schedule.CalendarViewBenchmark [appointments per day, default 200] [frames per mode, default 300, at most 600]}
+ */
+public class CalendarViewBenchmark {
+    public static void main(String[] args) {
+        int perDay = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+        LocalDate first = LocalDate.now().minusDays(200);
+        long minute = 60_000;
+        Random random = new Random(1);
+        List<AppointmentIndex.Appointment> appointments = new ArrayList<>();
+        for (int day = 0; day < 400; day++) {
+            long dayStart = first.plusDays(day).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            for (int i = 0; i < perDay; i++) {
+                long start = dayStart + (7 * 60 + random.nextInt(48) * 15) * minute;
+                int id = appointments.size() + 1;
+                appointments.add(new AppointmentIndex.Appointment(id, 1 + random.nextInt(5000), 1 + random.nextInt(40),
+                        1 + random.nextInt(20), start, start + (1 + random.nextInt(8)) * 15 * minute, "Appointment " + id));
+            }
+        }
+        AppointmentIndex index = new AppointmentIndex(appointments);
+
+        Platform.startup(() -> {
+            CalendarView view = new CalendarView(index, new RecurrenceStore(List.of()));
+            Stage stage = new Stage();
+            stage.setScene(new Scene(view, 1280, 800));
+            stage.show();
+
+            List<CalendarView.Mode> modes = List.of(CalendarView.Mode.DAY, CalendarView.Mode.WEEK, CalendarView.Mode.MONTH);
+            new AnimationTimer() {
+                private final long[] intervals = new long[frames];
+                private int mode = 0;
+                private int frame = -1;
+                private long last;
+                private boolean failed = false;
+
+                @Override
+                public void handle(long now) {
+                    if (frame == -1) {
+                        view.modeProperty().set(modes.get(mode));
+                        view.anchorProperty().set(LocalDate.now().minusDays(frames / 2));
+                    } else {
+                        intervals[frame] = now - last;
+                    }
+                    last = now;
+                    if (++frame < frames) {
+                        view.anchorProperty().set(view.anchorProperty().get().plusDays(1));
+                        return;
+                    }
+                    long[] recent = view.frameTimesNanos(); // Only the last ones were drawn in this mode
+                    long[] redraws = Arrays.copyOfRange(recent, Math.max(0, recent.length - frames), recent.length);
+                    failed |= report(modes.get(mode), redraws, intervals);
+                    frame = -1;
+                    if (++mode == modes.size()) {
+                        stop();
+                        stage.close();
+                        Platform.exit();
+                        System.exit(failed ? 1 : 0);
+                    }
+                }
+            }.start();
+        });
+    }
+
+    /**
+     * @return Whether the 99th percentile redraw took longer than a frame.
+     */
+    private static boolean report(CalendarView.Mode mode, long[] redraws, long[] intervals) {
+        long[] sortedRedraws = redraws.clone();
+        long[] sortedIntervals = Arrays.copyOfRange(intervals, 1, intervals.length); // The first follows the mode change
+        Arrays.sort(sortedRedraws);
+        Arrays.sort(sortedIntervals);
+        long overBudget = Arrays.stream(redraws).filter(t -> t > CalendarView.frameBudgetNanos).count();
+        double p99 = percentile(sortedRedraws, 0.99);
+        System.out.printf("%s: redraw median %.2f ms, p99 %.2f ms, max %.2f ms, %d of %d over %.1f ms; frame interval median %.2f ms, p99 %.2f ms%n",
+                mode, percentile(sortedRedraws, 0.5), p99, sortedRedraws[sortedRedraws.length - 1] / 1e6, overBudget, redraws.length,
+                CalendarView.frameBudgetNanos / 1e6, percentile(sortedIntervals, 0.5), percentile(sortedIntervals, 0.99));
+        return p99 > CalendarView.frameBudgetNanos / 1e6;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1e6;
+    }
+}
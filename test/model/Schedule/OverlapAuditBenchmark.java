@@ -0,0 +1,34 @@
+package model.Schedule;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times {@link OverlapAudit#audit} over millions of synthetic appointments, without a database.
+ * <br>
+ * The calendar is three years of a large practice: 50,000 customers, 800 contacts, and 200 users, with appointments of
+ * 15 minutes to 2 hours on quarter hours during the day, a few percent of which collide. Usage:
+ * {@code java model.Schedule.OverlapAuditBenchmark [appointments, default 2000000] [runs, default 5]}
+ */
+public class OverlapAuditBenchmark {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long minute = 60_000, day = 24 * 60 * minute;
+
+        Random random = new Random(1);
+        OverlapAudit.Appointments appointments = new OverlapAudit.Appointments(AppointmentIndex.resourceColumns);
+        for (int id = 1; id <= count; id++) {
+            long start = random.nextInt(3 * 365) * day + (8 * 60 + random.nextInt(40) * 15) * minute;
+            long end = start + (1 + random.nextInt(8)) * 15 * minute;
+            appointments.add(id, start, end, 1 + random.nextInt(50_000), 1 + random.nextInt(800), 1 + random.nextInt(200));
+        }
+        System.out.printf("%,d appointments, %d cores%n", count, Runtime.getRuntime().availableProcessors());
+
+        for (int run = 1; run <= runs; run++) {
+            long started = System.nanoTime();
+            List<OverlapAudit.Overlap> overlaps = OverlapAudit.audit(appointments);
+            System.out.printf("run %d: %,d overlaps in %,d ms%n", run, overlaps.size(), (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package model.Schedule;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the sort-and-sweep overlap finder in {@link OverlapAudit}.
+ */
+class OverlapAuditTest {
+    private static final long minute = 60_000;
+
+    private static Set<List<Object>> pairs(List<OverlapAudit.Overlap> overlaps) {
+        Set<List<Object>> pairs = new HashSet<>();
+        for (OverlapAudit.Overlap o : overlaps) {
+            pairs.add(List.of(o.resourceColumn, o.resourceId, Math.min(o.firstAppointmentId, o.secondAppointmentId),
+                    Math.max(o.firstAppointmentId, o.secondAppointmentId), o.overlapStart, o.overlapEnd));
+        }
+        return pairs;
+    }
+
+    @Test
+    void reportsOverlapsPerResourceOnly() {
+        OverlapAudit.Appointments appointments = new OverlapAudit.Appointments(List.of("Customer_ID", "Contact_ID"));
+        appointments.add(1, 0, 60 * minute, 1, 1);
+        appointments.add(2, 30 * minute, 90 * minute, 1, 2);
+        appointments.add(3, 60 * minute, 120 * minute, 2, 2); // Touches 1 without overlapping it
+        List<OverlapAudit.Overlap> overlaps = OverlapAudit.audit(appointments);
+        assertEquals(Set.of(
+                List.of("Customer_ID", 1, 1, 2, 30 * minute, 60 * minute),
+                List.of("Contact_ID", 2, 2, 3, 60 * minute, 90 * minute)), pairs(overlaps));
+    }
+
+    @Test
+    void skipsMissingResources() {
+        OverlapAudit.Appointments appointments = new OverlapAudit.Appointments(List.of("Customer_ID", "User_ID"));
+        appointments.add(1, 0, 60 * minute, 1, null);
+        appointments.add(2, 0, 60 * minute, 2, null);
+        appointments.add(3, 0, 60 * minute, null, 0);
+        appointments.add(4, 0, 60 * minute, null, 0);
+        assertEquals(Set.of(List.of("User_ID", 0, 3, 4, 0L, 60 * minute)), pairs(OverlapAudit.audit(appointments)));
+    }
+
+    @Test
+    void reportsEveryPairInANest() {
+        OverlapAudit.Appointments appointments = new OverlapAudit.Appointments(List.of("Customer_ID"));
+        appointments.add(1, 0, 600 * minute, 1);
+        for (int id = 2; id <= 5; id++) appointments.add(id, id * 60 * minute, id * 60 * minute + 90 * minute, 1);
+        // 1 overlaps all four; each of 2..5 overlaps only its neighbours
+        assertEquals(4 + 3, OverlapAudit.audit(appointments).size());
+    }
+
+    /**
+     * Over random appointments, the sweep reports exactly the pairs a brute-force comparison finds, including across the
+     * segments it splits between tasks.
+     */
+    @Test
+    void agreesWithBruteForce() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 20; trial++) {
+            List<String> columns = List.of("Customer_ID", "Contact_ID");
+            OverlapAudit.Appointments appointments = new OverlapAudit.Appointments(columns);
+            int n = 2000 + random.nextInt(30_000);
+            int[][] resources = new int[n][2];
+            long[] starts = new long[n], ends = new long[n];
+            for (int i = 0; i < n; i++) {
+                starts[i] = random.nextInt(50_000) * 15 * minute;
+                ends[i] = starts[i] + (1 + random.nextInt(8)) * 15 * minute;
+                resources[i][0] = random.nextInt(n / 4 + 1);
+                resources[i][1] = random.nextInt(20);
+                appointments.add(i + 1, starts[i], ends[i], resources[i][0], resources[i][1]);
+            }
+            Set<List<Object>> expected = new HashSet<>();
+            for (int c = 0; c < 2; c++) {
+                Map<Integer, List<Integer>> byResource = new HashMap<>();
+                for (int i = 0; i < n; i++) byResource.computeIfAbsent(resources[i][c], r -> new ArrayList<>()).add(i);
+                for (Map.Entry<Integer, List<Integer>> resource : byResource.entrySet()) {
+                    List<Integer> rows = resource.getValue();
+                    for (int a = 0; a < rows.size(); a++) {
+                        for (int b = a + 1; b < rows.size(); b++) {
+                            int i = rows.get(a), j = rows.get(b);
+                            if (starts[i] < ends[j] && starts[j] < ends[i]) {
+                                expected.add(List.of(columns.get(c), resource.getKey(), Math.min(i, j) + 1, Math.max(i, j) + 1,
+                                        Math.max(starts[i], starts[j]), Math.min(ends[i], ends[j])));
+                            }
+                        }
+                    }
+                }
+            }
+            List<OverlapAudit.Overlap> overlaps = OverlapAudit.audit(appointments);
+            assertEquals(expected.size(), overlaps.size(), "trial " + trial);
+            assertEquals(expected, pairs(overlaps), "trial " + trial);
+        }
+    }
+}
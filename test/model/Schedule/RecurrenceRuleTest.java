@@ -0,0 +1,109 @@
+package model.Schedule;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for expanding {@link RecurrenceRule RecurrenceRules}, and finding their occurrences through a {@link RecurrenceStore}.
+ */
+class RecurrenceRuleTest {
+    private static final ZoneId eastern = ZoneId.of("US/Eastern");
+    private static final long hour = 60 * 60_000;
+
+    private static RecurrenceRule rule(ZonedDateTime firstStart, RecurrenceRule.Frequency frequency, int interval, LocalDate until, LocalDate... exceptions) {
+        return new RecurrenceRule(1, "Check-in", null, 10, 20, null, firstStart, hour, frequency, interval, until, Set.of(exceptions));
+    }
+
+    private static long millis(ZonedDateTime time) {
+        return time.toInstant().toEpochMilli();
+    }
+
+    private static List<LocalDate> dates(List<RecurrenceRule.Occurrence> occurrences) {
+        return occurrences.stream().map(o -> o.date).toList();
+    }
+
+    @Test
+    void expandsWeeklyInsideTheWindowOnly() {
+        ZonedDateTime first = ZonedDateTime.of(2024, 1, 1, 9, 0, 0, 0, eastern);
+        RecurrenceRule weekly = rule(first, RecurrenceRule.Frequency.WEEKLY, 1, null);
+        List<RecurrenceRule.Occurrence> found = weekly.occurrences(millis(first.plusWeeks(10)), millis(first.plusWeeks(13)));
+        assertEquals(List.of(LocalDate.of(2024, 3, 11), LocalDate.of(2024, 3, 18), LocalDate.of(2024, 3, 25)), dates(found));
+    }
+
+    @Test
+    void includesAnOccurrenceAlreadyUnderwayAtTheWindowStart() {
+        ZonedDateTime first = ZonedDateTime.of(2024, 1, 1, 9, 0, 0, 0, eastern);
+        RecurrenceRule daily = rule(first, RecurrenceRule.Frequency.DAILY, 1, null);
+        long halfwayThrough = millis(first.plusDays(3)) + hour / 2;
+        assertEquals(LocalDate.of(2024, 1, 4), daily.occurrences(halfwayThrough, halfwayThrough + 1).get(0).date);
+        assertTrue(daily.occurrences(millis(first.plusDays(3)) + hour, millis(first.plusDays(4))).isEmpty());
+    }
+
+    @Test
+    void honoursIntervalUntilAndExceptions() {
+        ZonedDateTime first = ZonedDateTime.of(2024, 1, 1, 9, 0, 0, 0, eastern);
+        RecurrenceRule fortnightly = rule(first, RecurrenceRule.Frequency.WEEKLY, 2, LocalDate.of(2024, 2, 26), LocalDate.of(2024, 1, 29));
+        assertEquals(List.of(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 15), LocalDate.of(2024, 2, 12), LocalDate.of(2024, 2, 26)),
+                dates(fortnightly.occurrences(millis(first), millis(first.plusYears(1)))));
+    }
+
+    @Test
+    void keepsWallClockTimeAcrossDaylightSaving() {
+        ZonedDateTime first = ZonedDateTime.of(2024, 3, 1, 9, 0, 0, 0, eastern);
+        RecurrenceRule weekly = rule(first, RecurrenceRule.Frequency.WEEKLY, 1, null);
+        for (RecurrenceRule.Occurrence o : weekly.occurrences(millis(first), millis(first.plusWeeks(6))))
+            assertEquals(LocalTime.of(9, 0), Instant.ofEpochMilli(o.start).atZone(eastern).toLocalTime(), o.date.toString());
+    }
+
+    @Test
+    void monthlyOccurrencesDontDriftAfterAShortMonth() {
+        ZonedDateTime first = ZonedDateTime.of(2024, 1, 31, 9, 0, 0, 0, eastern);
+        RecurrenceRule monthly = rule(first, RecurrenceRule.Frequency.MONTHLY, 1, null);
+        assertEquals(List.of(LocalDate.of(2024, 1, 31), LocalDate.of(2024, 2, 29), LocalDate.of(2024, 3, 31), LocalDate.of(2024, 4, 30)),
+                dates(monthly.occurrences(millis(first), millis(first.plusMonths(3)) + 1)));
+    }
+
+    /**
+     * Expanding any window gives exactly the occurrences found by stepping through the whole series from its first.
+     */
+    @Test
+    void windowsAgreeWithSteppingFromTheStart() {
+        Random random = new Random(3);
+        for (int trial = 0; trial < 300; trial++) {
+            RecurrenceRule.Frequency frequency = RecurrenceRule.Frequency.values()[random.nextInt(3)];
+            int interval = 1 + random.nextInt(3);
+            ZonedDateTime first = ZonedDateTime.of(2023, 1 + random.nextInt(12), 1 + random.nextInt(28), 8 + random.nextInt(8), 0, 0, 0, eastern);
+            RecurrenceRule rule = rule(first, frequency, interval, null);
+
+            long from = millis(first) + (long) random.nextInt(400) * 24 * hour + random.nextInt(24) * hour;
+            long to = from + (long) (1 + random.nextInt(90)) * 24 * hour;
+            List<Long> expected = new ArrayList<>();
+            for (long n = 0; ; n++) {
+                long start = millis(first.plus(n * interval, switch (frequency) {
+                    case DAILY -> java.time.temporal.ChronoUnit.DAYS;
+                    case WEEKLY -> java.time.temporal.ChronoUnit.WEEKS;
+                    case MONTHLY -> java.time.temporal.ChronoUnit.MONTHS;
+                }));
+                if (start >= to) break;
+                if (start + hour > from) expected.add(start);
+            }
+            assertEquals(expected, rule.occurrences(from, to).stream().map(o -> o.start).toList(), "trial " + trial);
+        }
+    }
+
+    @Test
+    void storeFindsOccurrencesByResource() {
+        ZonedDateTime first = ZonedDateTime.of(2024, 1, 1, 9, 0, 0, 0, eastern);
+        RecurrenceStore store = new RecurrenceStore(List.of(rule(first, RecurrenceRule.Frequency.DAILY, 1, null)));
+        long dayTen = millis(first.plusDays(9));
+        assertEquals(1, store.overlapping("Customer_ID", 10, dayTen, dayTen + hour).size());
+        assertEquals(1, store.overlapping("Contact_ID", 20, dayTen, dayTen + hour).size());
+        assertTrue(store.overlapping("Customer_ID", 11, dayTen, dayTen + hour).isEmpty());
+        assertTrue(store.overlapping("User_ID", 10, dayTen, dayTen + hour).isEmpty());
+        assertEquals(7, store.occurrences(dayTen, dayTen + 7 * 24 * hour).size());
+    }
+}
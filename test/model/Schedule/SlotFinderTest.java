@@ -0,0 +1,147 @@
+package model.Schedule;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for {@link SlotFinder}, over an in-memory {@link AppointmentIndex} and an office open 9:00-17:00 UTC on weekdays.
+ */
+class SlotFinderTest {
+    private static final long minute = 60_000;
+    private static final long hour = 60 * minute;
+    private static final long monday = LocalDate.now(ZoneOffset.UTC).plusWeeks(1).with(DayOfWeek.MONDAY).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+    private static BusinessCalendar weekdays() {
+        Map<DayOfWeek, List<LocalTime[]>> hours = new EnumMap<>(DayOfWeek.class);
+        for (DayOfWeek day : EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY))
+            hours.put(day, List.<LocalTime[]>of(new LocalTime[]{LocalTime.of(9, 0), LocalTime.of(17, 0)}));
+        BusinessCalendar.Office office = new BusinessCalendar.Office("Test", ZoneOffset.UTC, hours, Set.of(), List.of());
+        return new BusinessCalendar(List.of(office), office);
+    }
+
+    private static SlotFinder finder(AppointmentIndex.Appointment... appointments) {
+        return new SlotFinder(new AppointmentIndex(List.of(appointments)), weekdays(), new RecurrenceStore(List.of()));
+    }
+
+    private static AppointmentIndex.Appointment appointment(int id, int customerId, int contactId, long start, long end) {
+        return new AppointmentIndex.Appointment(id, customerId, contactId, 1, start, end, "Appointment " + id);
+    }
+
+    @Test
+    void firstSlotIsAtOpeningWhenFree() {
+        List<SlotFinder.Slot> slots = finder().find(1, 2, null, null, hour, monday, monday + 7 * 24 * hour, 1);
+        assertEquals(List.of(monday + 9 * hour), slots.stream().map(s -> s.start).toList());
+    }
+
+    @Test
+    void skipsBusySpansOfEitherResource() {
+        SlotFinder finder = finder(
+                appointment(1, 1, 99, monday + 9 * hour, monday + 10 * hour),
+                appointment(2, 98, 2, monday + 10 * hour, monday + 10 * hour + 20 * minute));
+        SlotFinder.Slot slot = finder.find(1, 2, null, null, hour, monday, monday + 7 * 24 * hour, 1).get(0);
+        assertEquals(monday + 10 * hour + 30 * minute, slot.start); // Aligned up to the next quarter hour
+        assertEquals(slot.start + hour, slot.end);
+    }
+
+    @Test
+    void ignoresTheExcludedAppointment() {
+        SlotFinder finder = finder(appointment(1, 1, 2, monday + 9 * hour, monday + 10 * hour));
+        assertEquals(monday + 9 * hour, finder.find(1, 2, 1, null, hour, monday, monday + 7 * 24 * hour, 1).get(0).start);
+    }
+
+    @Test
+    void movesToTheNextOpenDayWhenTheRestOfTheDayIsTooShort() {
+        SlotFinder finder = finder(appointment(1, 1, 2, monday + 9 * hour, monday + 16 * hour + 30 * minute));
+        assertEquals(monday + 24 * hour + 9 * hour, finder.find(1, 2, null, null, hour, monday, monday + 7 * 24 * hour, 1).get(0).start);
+    }
+
+    @Test
+    void skipsTheWeekend() {
+        long friday = monday + 4 * 24 * hour;
+        SlotFinder finder = finder(appointment(1, 1, 2, friday + 9 * hour, friday + 17 * hour));
+        assertEquals(monday + 7 * 24 * hour + 9 * hour, finder.find(1, 2, null, null, hour, friday, friday + 7 * 24 * hour, 1).get(0).start);
+    }
+
+    @Test
+    void consecutiveSlotsDontOverlap() {
+        List<SlotFinder.Slot> slots = finder().find(1, 2, null, null, 45 * minute, monday, monday + 7 * 24 * hour, 5);
+        assertEquals(5, slots.size());
+        for (int i = 1; i < slots.size(); i++) assertTrue(slots.get(i).start >= slots.get(i - 1).end);
+    }
+
+    @Test
+    void findsNothingWhenFullyBooked() {
+        List<AppointmentIndex.Appointment> busy = new ArrayList<>();
+        for (int day = 0; day < 7; day++) busy.add(appointment(day, 1, 2, monday + day * 24 * hour, monday + (day + 1) * 24 * hour));
+        SlotFinder finder = new SlotFinder(new AppointmentIndex(busy), weekdays(), new RecurrenceStore(List.of()));
+        assertTrue(finder.find(1, 2, null, null, hour, monday, monday + 7 * 24 * hour, 1).isEmpty());
+    }
+
+    /**
+     * Over random calendars, the first slot found is the first quarter hour at which a brute-force check finds both resources free.
+     */
+    @Test
+    void agreesWithBruteForce() {
+        BusinessCalendar calendar = weekdays();
+        BusinessCalendar.Office office = calendar.getDefaultOffice();
+        Random random = new Random(7);
+        for (int trial = 0; trial < 200; trial++) {
+            List<AppointmentIndex.Appointment> appointments = new ArrayList<>();
+            for (int id = 1; id <= 60; id++) {
+                long start = monday + random.nextInt(5 * 24 * 4) * 15 * minute;
+                appointments.add(appointment(id, 1 + random.nextInt(3), 1 + random.nextInt(3), start, start + (1 + random.nextInt(16)) * 15 * minute));
+            }
+            SlotFinder finder = new SlotFinder(new AppointmentIndex(appointments), calendar, new RecurrenceStore(List.of()));
+            int customerId = 1 + random.nextInt(3), contactId = 1 + random.nextInt(3);
+            long duration = (1 + random.nextInt(8)) * 15 * minute;
+            long from = monday, to = monday + 7 * 24 * hour;
+
+            Long expected = null;
+            for (long t = from; t + duration <= to && expected == null; t += 15 * minute) {
+                long start = t;
+                boolean free = office.isOpen(start, start + duration) && appointments.stream().noneMatch(a ->
+                        (a.customerId == customerId || a.contactId == contactId) && a.start < start + duration && a.end > start);
+                if (free) expected = start;
+            }
+            List<SlotFinder.Slot> slots = finder.find(customerId, contactId, null, null, duration, from, to, 1);
+            assertEquals(expected, slots.isEmpty() ? null : slots.get(0).start, "trial " + trial);
+        }
+    }
+
+    /**
+     * A year of a busy office's appointments: 200 customers and 40 contacts, each contact booked for most of each weekday.
+     * Searches for a contact's next free hour over the following month should each take well under 10 ms.
+     */
+    @Test
+    void searchesARealisticCalendarQuickly() {
+        Random random = new Random(42);
+        List<AppointmentIndex.Appointment> appointments = new ArrayList<>();
+        int id = 0;
+        for (int day = 0; day < 365; day++) {
+            long date = monday + day * 24 * hour;
+            if (LocalDate.ofEpochDay(Math.floorDiv(date, 24 * hour)).getDayOfWeek().getValue() > 5) continue;
+            for (int contact = 1; contact <= 40; contact++) {
+                for (long start = date + 9 * hour; start < date + 17 * hour; start += 30 * minute) {
+                    if (random.nextInt(10) < 8) appointments.add(appointment(++id, 1 + random.nextInt(200), contact, start, start + 30 * minute));
+                }
+            }
+        }
+        SlotFinder finder = new SlotFinder(new AppointmentIndex(appointments), weekdays(), new RecurrenceStore(List.of()));
+
+        int searches = 2000;
+        long[] nanos = new long[searches];
+        for (int i = -searches; i < searches; i++) { // The first half warms up
+            long from = monday + random.nextInt(300) * 24 * hour;
+            long started = System.nanoTime();
+            finder.find(1 + random.nextInt(200), 1 + random.nextInt(40), null, null, hour, from, from + 30 * 24 * hour, 1);
+            if (i >= 0) nanos[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(nanos);
+        long p99 = nanos[searches * 99 / 100];
+        assertTrue(p99 < 10_000_000, appointments.size() + " appointments: 99th percentile search took " + p99 / 1000 + " us");
+    }
+}